@@ -8,6 +8,8 @@ import com.facebook.react.bridge.ReactContext
 import com.facebook.react.bridge.WritableMap
 import com.p2pfiletransfer.P2pFileTransferModule.Companion.NAME
 import com.p2pfiletransfer.P2pFileTransferModule.Companion.PORT
+import com.spred.transfer.CoalescingSink
+import com.spred.transfer.TransferPipeline
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.io.BufferedInputStream
@@ -15,7 +17,6 @@ import java.io.BufferedOutputStream
 import java.io.DataInputStream
 import java.io.File
 import java.io.FileOutputStream
-import java.io.IOException
 import java.lang.Exception
 import java.net.InetSocketAddress
 import java.net.ServerSocket
@@ -57,24 +58,20 @@ internal object FileTransferServer {
             Log.i(NAME, "Server: copying file to ${file.absolutePath}")
 
             FileOutputStream(file).use { outputStream ->
-              val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
-              var bytesRead: Int
-              var totalReceived = 0L
-
-              while (totalReceived < size) {
-                bytesRead = inputStream.read(buffer)
-                outputStream.write(buffer, 0, bytesRead)
-                // Update progress
-                totalReceived += bytesRead
+              // Shared engine loop: exact-size reads, coalesced into large aligned positional writes
+              val sink = CoalescingSink(outputStream.channel, 0)
+              val body = TransferPipeline.receive(inputStream, size, sink, null) { totalReceived, total ->
                 sendEvent(
                   "PROGRESS_FILE_RECEIVE",
                   WiFiP2PDeviceMapper.mapSendFileBundleToReactEntity(
                     System.currentTimeMillis() - start,
                     null,
-                    (totalReceived / size.toFloat()) * 100,
+                    (totalReceived / total.toFloat()) * 100,
                   )
                 )
               }
+              sink.flush()
+              Log.i(NAME, "Server: ${body.bytes} bytes in ${body.ioCalls} reads, ${sink.writeCalls} write calls")
             }
 
             withContext(Dispatchers.Main) {
@@ -11,6 +11,7 @@ import androidx.work.WorkManager
 import androidx.work.WorkerParameters
 import androidx.work.workDataOf
 import com.p2pfiletransfer.P2pFileTransferModule.Companion.NAME
+import com.spred.transfer.TransferPipeline
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.io.BufferedOutputStream
@@ -60,19 +61,17 @@ internal class FileTransferWorker(
           outputStream.writeUTF(type)
           // Write the file
           getFileStream(file)?.use { inputStream ->
-            val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
-            var bytesRead: Int
-            var totalSent = 0L
-            while (inputStream.read(buffer).also { bytesRead = it } != -1) {
-              totalSent += bytesRead
-              outputStream.write(buffer, 0, bytesRead)
-              setProgress(
+            // Shared engine loop: large buffer, exact size, throttled progress
+            val body = TransferPipeline.send(inputStream, size, outputStream, null) { totalSent, total ->
+              setProgressAsync(
                 workDataOf(
-                  RESULT_PROGRESS to (totalSent / size.toFloat()) * 100,
+                  RESULT_PROGRESS to (totalSent / total.toFloat()) * 100,
                   RESULT_TIME to System.currentTimeMillis() - start
                 )
               )
             }
+            outputStream.flush()
+            Log.i(NAME, "Client: ${body.bytes} bytes in ${body.ioCalls} writes")
           } ?: throw FileNotFoundException("$fileUri not found")
 
           Log.i(NAME, "Client: File sent")
@@ -1,17 +1,28 @@
 package com.spred;
 
+import android.content.ClipData;
 import android.content.Intent;
 import android.net.Uri;
 import android.util.Log;
 
 import androidx.core.content.FileProvider;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.spred.library.IngestService;
+import com.spred.library.ReceivedLibrary;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * QuickShareModule - Android Quick Share integration
@@ -20,10 +31,80 @@ import java.io.File;
 public class QuickShareModule extends ReactContextBaseJavaModule {
     private static final String TAG = "QuickShareModule";
     private final ReactApplicationContext reactContext;
+    private final SharePreparer<Uri> sharePreparer;
+
+    // Incoming Quick Share copies run in IngestService; this forwards their progress to JS
+    private final IngestService.Listener ingestListener = new IngestService.Listener() {
+        @Override
+        public void onIngestProgress(String id, String fileName, long copiedBytes, long totalBytes) {
+            WritableMap progress = Arguments.createMap();
+            progress.putString("id", id);
+            progress.putString("fileName", fileName);
+            progress.putDouble("copiedBytes", copiedBytes);
+            progress.putDouble("totalBytes", totalBytes);
+            if (totalBytes > 0) {
+                progress.putDouble("progress", copiedBytes * 100.0 / totalBytes);
+            }
+            emit("onQuickShareIngestProgress", progress);
+        }
+
+        @Override
+        public void onIngestComplete(String id, File file, String mimeType, long bytes, long elapsedMs) {
+            WritableMap result = Arguments.createMap();
+            result.putString("id", id);
+            result.putString("fileName", file.getName());
+            result.putString("filePath", file.getAbsolutePath());
+            result.putString("mimeType", mimeType);
+            result.putDouble("fileSize", bytes);
+            result.putDouble("elapsedMs", elapsedMs);
+            emit("onQuickShareIngestComplete", result);
+        }
+
+        @Override
+        public void onIngestFailed(String id, String fileName, String code, String message) {
+            WritableMap error = Arguments.createMap();
+            error.putString("id", id);
+            error.putString("fileName", fileName);
+            error.putString("code", code);
+            error.putString("message", message);
+            emit("onQuickShareIngestFailed", error);
+        }
+
+        @Override
+        public void onBatchProgress(String batchId, int finishedItems, int totalItems, long copiedBytes, long totalBytes) {
+            WritableMap progress = Arguments.createMap();
+            progress.putString("batchId", batchId);
+            progress.putInt("finishedItems", finishedItems);
+            progress.putInt("totalItems", totalItems);
+            progress.putDouble("copiedBytes", copiedBytes);
+            progress.putDouble("totalBytes", totalBytes);
+            // Byte progress when every size is known, otherwise by items
+            progress.putDouble("progress", totalBytes > 0
+                ? copiedBytes * 100.0 / totalBytes
+                : finishedItems * 100.0 / Math.max(1, totalItems));
+            emit("onQuickShareBatchProgress", progress);
+        }
+
+        @Override
+        public void onBatchComplete(String batchId, int completedItems, int failedItems, long bytes, long elapsedMs) {
+            WritableMap result = Arguments.createMap();
+            result.putString("batchId", batchId);
+            result.putInt("completedItems", completedItems);
+            result.putInt("failedItems", failedItems);
+            result.putDouble("bytes", bytes);
+            result.putDouble("elapsedMs", elapsedMs);
+            emit("onQuickShareBatchComplete", result);
+        }
+    };
 
     public QuickShareModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.sharePreparer = new SharePreparer<>(file -> FileProvider.getUriForFile(
+            reactContext,
+            reactContext.getPackageName() + ".fileprovider",
+            file
+        ));
     }
 
     @Override
@@ -31,6 +112,41 @@ public class QuickShareModule extends ReactContextBaseJavaModule {
         return "QuickShareModule";
     }
 
+    @Override
+    public void initialize() {
+        super.initialize();
+        ReceivedLibrary.get(reactContext).getIngestService().addListener(ingestListener);
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        ReceivedLibrary.get(reactContext).getIngestService().removeListener(ingestListener);
+    }
+
+    private void emit(String event, WritableMap data) {
+        if (!reactContext.hasActiveReactInstance()) {
+            return; // Ingest finished while JS was not running; the library rescan still finds the file
+        }
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(event, data);
+    }
+
+    /**
+     * Counters for videos copied in from Quick Share.
+     */
+    @ReactMethod
+    public void getIngestStats(Promise promise) {
+        IngestService ingest = ReceivedLibrary.get(reactContext).getIngestService();
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("completed", ingest.getCompletedCount());
+        stats.putInt("failed", ingest.getFailedCount());
+        stats.putDouble("bytesIngested", ingest.getBytesIngested());
+        stats.putDouble("averageMbPerSecond", ingest.getAverageMbPerSecond());
+        stats.putInt("peakParallelCopies", ingest.getPeakParallelCopies());
+        stats.putInt("queued", ingest.getQueuedCount());
+        promise.resolve(stats);
+    }
+
     /**
      * Share a file using Android's Quick Share (Intent.ACTION_SEND)
      * This triggers the system share sheet which includes Quick Share
@@ -40,44 +156,113 @@ public class QuickShareModule extends ReactContextBaseJavaModule {
         Log.d(TAG, "quickShare() called with filePath: " + filePath);
 
         try {
-            File file = new File(filePath);
-            if (!file.exists()) {
+            SharePreparer.Result<Uri> prepared = sharePreparer.prepare(Collections.singletonList(filePath));
+            if (prepared.uris.isEmpty()) {
                 Log.e(TAG, "File does not exist: " + filePath);
                 promise.reject("FILE_NOT_FOUND", "File does not exist: " + filePath);
                 return;
             }
 
-            Uri fileUri = FileProvider.getUriForFile(
-                reactContext,
-                reactContext.getPackageName() + ".fileprovider",
-                file
-            );
+            Log.d(TAG, "Created URI: " + prepared.uris.get(0) + (prepared.cacheHits > 0 ? " (cached)" : ""));
+            launchChooser(prepared);
 
-            Log.d(TAG, "Created URI: " + fileUri.toString());
+            Log.d(TAG, "Quick Share initiated successfully");
+            promise.resolve("Quick Share initiated successfully for: " + filePath);
 
-            Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("video/*");
-            shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
-            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (Exception e) {
+            Log.e(TAG, "Quick Share failed", e);
+            promise.reject("SHARE_FAILED", "Failed to initiate Quick Share: " + e.getMessage(), e);
+        }
+    }
 
-            // Add flags for starting from React Native
-            shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            shareIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+    /**
+     * Share several files through one chooser (Intent.ACTION_SEND_MULTIPLE).
+     * Files that no longer exist are left out and listed in "missing"; the
+     * call only fails when none of them can be shared.
+     */
+    @ReactMethod
+    public void quickShareMany(ReadableArray filePaths, Promise promise) {
+        long start = System.currentTimeMillis();
+        Log.d(TAG, "quickShareMany() called with " + filePaths.size() + " files");
 
-            // Create chooser to ensure user gets options
-            Intent chooser = Intent.createChooser(shareIntent, "Share via Quick Share");
-            chooser.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            chooser.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        try {
+            List<String> paths = new ArrayList<>(filePaths.size());
+            for (int i = 0; i < filePaths.size(); i++) {
+                paths.add(filePaths.getString(i));
+            }
+            SharePreparer.Result<Uri> prepared = sharePreparer.prepare(paths);
+            if (prepared.uris.isEmpty()) {
+                Log.e(TAG, "None of the " + paths.size() + " files exist");
+                promise.reject("FILE_NOT_FOUND", "None of the " + paths.size() + " files exist");
+                return;
+            }
 
-            Log.d(TAG, "Starting share activity...");
-            reactContext.startActivity(chooser);
+            launchChooser(prepared);
+            long latencyMs = System.currentTimeMillis() - start;
+            Log.d(TAG, "✅ Quick Share initiated for " + prepared.uris.size() + " files in " + latencyMs + " ms (prepare "
+                + prepared.elapsedMs + " ms, " + prepared.cacheHits + " cached URIs, " + prepared.missing.size() + " missing)");
 
-            Log.d(TAG, "Quick Share initiated successfully");
-            promise.resolve("Quick Share initiated successfully for: " + filePath);
+            WritableArray missing = Arguments.createArray();
+            for (String path : prepared.missing) {
+                missing.pushString(path);
+            }
+            WritableMap result = Arguments.createMap();
+            result.putInt("shared", prepared.uris.size());
+            result.putArray("missing", missing);
+            result.putString("mimeType", prepared.mimeType);
+            result.putInt("cachedUris", prepared.cacheHits);
+            result.putDouble("prepareMs", prepared.elapsedMs);
+            result.putDouble("latencyMs", latencyMs);
+            promise.resolve(result);
 
         } catch (Exception e) {
             Log.e(TAG, "Quick Share failed", e);
             promise.reject("SHARE_FAILED", "Failed to initiate Quick Share: " + e.getMessage(), e);
         }
     }
+
+    private void launchChooser(SharePreparer.Result<Uri> prepared) {
+        Intent shareIntent;
+        if (prepared.uris.size() == 1) {
+            shareIntent = new Intent(Intent.ACTION_SEND);
+            shareIntent.putExtra(Intent.EXTRA_STREAM, prepared.uris.get(0));
+        } else {
+            shareIntent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+            shareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, prepared.uris);
+        }
+        shareIntent.setType(prepared.mimeType);
+        // The read grant covers ClipData URIs; createChooser carries the clip over to the chosen target
+        ClipData clip = ClipData.newRawUri(null, prepared.uris.get(0));
+        for (int i = 1; i < prepared.uris.size(); i++) {
+            clip.addItem(new ClipData.Item(prepared.uris.get(i)));
+        }
+        shareIntent.setClipData(clip);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        // Add flags for starting from React Native
+        shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        shareIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+        // Create chooser to ensure user gets options
+        Intent chooser = Intent.createChooser(shareIntent, "Share via Quick Share");
+        chooser.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        chooser.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+        Log.d(TAG, "Starting share activity...");
+        reactContext.startActivity(chooser);
+    }
+
+    /**
+     * Counters for quickShare / quickShareMany URI preparation.
+     */
+    @ReactMethod
+    public void getQuickShareStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("prepares", sharePreparer.getPrepareCount());
+        stats.putInt("uriCacheHits", sharePreparer.getCacheHits());
+        stats.putInt("uriCacheMisses", sharePreparer.getCacheMisses());
+        stats.putInt("cachedUris", sharePreparer.getCachedUriCount());
+        stats.putDouble("lastPrepareMs", sharePreparer.getLastElapsedMs());
+        promise.resolve(stats);
+    }
 }
@@ -3,11 +3,12 @@ package com.spred
 import android.content.Intent
 import android.net.Uri
 import android.os.Bundle
+import android.os.ParcelFileDescriptor
+import android.provider.OpenableColumns
 import android.util.Log
 import androidx.appcompat.app.AppCompatActivity
-import java.io.File
-import java.io.FileOutputStream
-import java.io.InputStream
+import com.spred.library.IngestService
+import com.spred.library.ReceivedLibrary
 
 /**
  * QuickShareReceiverActivity - Receives files from Android Quick Share
@@ -21,79 +22,82 @@ class QuickShareReceiverActivity : AppCompatActivity() {
 
         Log.d(TAG, "QuickShareReceiverActivity launched")
 
-        // Handle the received file
+        // Handle the received file(s)
         val intent = intent
-        if (intent?.action == Intent.ACTION_SEND) {
-            if (intent.type?.startsWith("video/") == true) {
-                Log.d(TAG, "Received video file via Quick Share")
-
+        when (intent?.action) {
+            Intent.ACTION_SEND -> {
                 // Get the file URI
                 val fileUri = intent.getParcelableExtra<Uri>(Intent.EXTRA_STREAM)
                 if (fileUri != null) {
-                    Log.d(TAG, "File URI: $fileUri")
-                    saveReceivedVideo(fileUri)
+                    Log.d(TAG, "Received video file via Quick Share: $fileUri")
+                    saveReceivedVideos(listOf(fileUri), intent.type)
                 } else {
                     Log.e(TAG, "No file URI in intent")
-                    finish()
                 }
-            } else {
-                Log.w(TAG, "Received non-video file, type: ${intent.type}")
-                finish()
             }
-        } else {
-            Log.w(TAG, "Invalid intent action: ${intent?.action}")
-            finish()
+            Intent.ACTION_SEND_MULTIPLE -> {
+                val fileUris = intent.getParcelableArrayListExtra<Uri>(Intent.EXTRA_STREAM)
+                if (!fileUris.isNullOrEmpty()) {
+                    Log.d(TAG, "Received ${fileUris.size} files via Quick Share")
+                    saveReceivedVideos(fileUris, intent.type)
+                } else {
+                    Log.e(TAG, "No file URIs in intent")
+                }
+            }
+            else -> Log.w(TAG, "Invalid intent action: ${intent?.action}")
         }
+        finish()
     }
 
-    private fun saveReceivedVideo(fileUri: Uri) {
-        try {
-            // Create SpredP2PReceived directory if it doesn't exist
-            val receivedDir = File(getExternalFilesDir(null), "SpredP2PReceived")
-            if (!receivedDir.exists()) {
-                receivedDir.mkdirs()
-                Log.d(TAG, "Created SpredP2PReceived directory: ${receivedDir.absolutePath}")
-            }
-
-            // Get file name from URI or create one
-            val fileName = "QuickShare_${System.currentTimeMillis()}.mp4"
-            val destFile = File(receivedDir, fileName)
-
-            Log.d(TAG, "Saving received video to: ${destFile.absolutePath}")
+    private fun saveReceivedVideos(fileUris: List<Uri>, intentType: String?) {
+        val items = ArrayList<IngestService.Item>()
+        for (fileUri in fileUris) {
+            try {
+                // The intent type can be a wildcard ("video/*") for a mixed share; the provider knows each item
+                val mimeType = contentResolver.getType(fileUri) ?: intentType
+                if (mimeType?.startsWith("video/") != true) {
+                    Log.w(TAG, "Skipping non-video item $fileUri, type: $mimeType")
+                    continue
+                }
 
-            // Copy file from URI to our directory
-            val inputStream: InputStream? = contentResolver.openInputStream(fileUri)
-            if (inputStream != null) {
-                FileOutputStream(destFile).use { outputStream ->
-                    val buffer = ByteArray(1024)
-                    var bytesRead: Int
-                    while (inputStream.read(buffer).also { bytesRead = it } != -1) {
-                        outputStream.write(buffer, 0, bytesRead)
-                    }
-                    outputStream.flush()
+                // Open the descriptor here: the URI grant may end with this activity, an open fd does not
+                val descriptor = contentResolver.openFileDescriptor(fileUri, "r")
+                if (descriptor == null) {
+                    Log.e(TAG, "Failed to open file descriptor for $fileUri")
+                    continue
                 }
-                inputStream.close()
+                items.add(
+                    IngestService.Item(
+                        ParcelFileDescriptor.AutoCloseInputStream(descriptor),
+                        descriptor.statSize,
+                        displayNameOf(fileUri),
+                        mimeType
+                    )
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "Error opening received video $fileUri", e)
+            }
+        }
+        if (items.isEmpty()) {
+            Log.w(TAG, "Nothing to ingest")
+            return
+        }
 
-                Log.d(TAG, "✅ Video saved successfully to SPRED ecosystem")
-                Log.d(TAG, "File size: ${destFile.length()} bytes")
-                Log.d(TAG, "File path: ${destFile.absolutePath}")
+        // Copies run on the ingest pool; progress and completion reach JS through QuickShareModule
+        val batchId = ReceivedLibrary.get(this).ingestService.ingestAll(items)
+        Log.d(TAG, "📥 Queued $batchId with ${items.size} of ${fileUris.size} items")
+    }
 
-                // Show success message
-                showSuccessMessage(destFile.absolutePath)
-            } else {
-                Log.e(TAG, "Failed to open input stream from URI")
+    private fun displayNameOf(fileUri: Uri): String? {
+        try {
+            contentResolver.query(fileUri, arrayOf(OpenableColumns.DISPLAY_NAME), null, null, null)?.use { cursor ->
+                if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                    return cursor.getString(0)
+                }
             }
-
         } catch (e: Exception) {
-            Log.e(TAG, "Error saving received video", e)
+            Log.w(TAG, "Could not query display name for $fileUri", e)
         }
-    }
-
-    private fun showSuccessMessage(filePath: String) {
-        // Show a simple toast-like message and finish
-        Log.d(TAG, "🎉 Video received and saved to SPRED ecosystem: $filePath")
-
-        // Close the activity
-        finish()
+        return fileUri.lastPathSegment
     }
 }
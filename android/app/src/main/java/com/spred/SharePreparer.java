@@ -0,0 +1,211 @@
+package com.spred;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SharePreparer - Turns a selection of file paths into content URIs for the
+ * share sheet.
+ *
+ * Files are checked in parallel, since on external storage each stat is a
+ * FUSE round trip and fifty of them back to back add up. URIs are cached by
+ * path for as long as the file's size and mtime are unchanged, so sharing
+ * the same videos again skips FileProvider's canonical-path resolution.
+ * The URI type is a parameter so the preparer runs in JVM tests.
+ *
+ * @param <U> android.net.Uri on the device
+ */
+final class SharePreparer<U> {
+    static final int STAT_THREADS = 4;
+    static final int MAX_CACHED_URIS = 256;
+
+    /** FileProvider.getUriForFile on the device. */
+    interface UriFactory<U> {
+        U uriFor(File file);
+    }
+
+    static final class Result<U> {
+        final ArrayList<U> uris;
+        final List<String> missing;
+        final String mimeType;
+        final int cacheHits;
+        final long elapsedMs;
+
+        Result(ArrayList<U> uris, List<String> missing, String mimeType, int cacheHits, long elapsedMs) {
+            this.uris = uris;
+            this.missing = missing;
+            this.mimeType = mimeType;
+            this.cacheHits = cacheHits;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    private static final class CachedUri<U> {
+        final U uri;
+        final long size;
+        final long lastModified;
+
+        CachedUri(U uri, long size, long lastModified) {
+            this.uri = uri;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /** Outcome for one path; uri is null when the file can't be shared. */
+    private static final class Checked<U> {
+        final String path;
+        final U uri;
+        final String mimeType;
+        final boolean cacheHit;
+
+        Checked(String path, U uri, String mimeType, boolean cacheHit) {
+            this.path = path;
+            this.uri = uri;
+            this.mimeType = mimeType;
+            this.cacheHit = cacheHit;
+        }
+    }
+
+    private final UriFactory<U> factory;
+    private final ThreadPoolExecutor pool;
+    private final Map<String, CachedUri<U>> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Counters
+    private final AtomicInteger prepares = new AtomicInteger();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger cacheMisses = new AtomicInteger();
+    private volatile long lastElapsedMs;
+
+    SharePreparer(UriFactory<U> factory) {
+        this.factory = factory;
+        AtomicInteger threadId = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(STAT_THREADS, STAT_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(r, "SpredShareStat-" + threadId.incrementAndGet()));
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** URIs for every shareable path, in the order given; the rest are listed as missing. */
+    Result<U> prepare(List<String> paths) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        prepares.incrementAndGet();
+        List<Checked<U>> checked = new ArrayList<>(paths.size());
+        if (paths.size() == 1) {
+            checked.add(check(paths.get(0))); // Not worth a thread hop
+        } else {
+            List<Future<Checked<U>>> futures = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                futures.add(pool.submit(() -> check(path)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    checked.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    checked.add(new Checked<>(paths.get(i), null, null, false));
+                }
+            }
+        }
+
+        ArrayList<U> uris = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        String mimeType = null;
+        int hits = 0;
+        for (Checked<U> item : checked) {
+            if (item.uri == null) {
+                missing.add(item.path);
+                continue;
+            }
+            uris.add(item.uri);
+            if (item.cacheHit) {
+                hits++;
+            }
+            // One concrete type when they all agree, otherwise the family wildcard
+            mimeType = mimeType == null || mimeType.equals(item.mimeType) ? item.mimeType : "video/*";
+        }
+        lastElapsedMs = System.currentTimeMillis() - start;
+        return new Result<>(uris, missing, mimeType != null ? mimeType : "video/*", hits, lastElapsedMs);
+    }
+
+    private Checked<U> check(String path) {
+        if (path == null) {
+            return new Checked<>(null, null, null, false);
+        }
+        File file = new File(path);
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (lastModified == 0 || !file.isFile() || !file.canRead()) {
+            return new Checked<>(path, null, null, false);
+        }
+        String mimeType = mimeTypeFor(file.getName());
+        synchronized (cache) {
+            CachedUri<U> cached = cache.get(path);
+            if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+                cacheHits.incrementAndGet();
+                return new Checked<>(path, cached.uri, mimeType, true);
+            }
+        }
+        cacheMisses.incrementAndGet();
+        U uri = factory.uriFor(file);
+        if (uri != null) {
+            synchronized (cache) {
+                cache.put(path, new CachedUri<>(uri, size, lastModified));
+                if (cache.size() > MAX_CACHED_URIS) {
+                    Iterator<String> eldest = cache.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return new Checked<>(path, uri, mimeType, false);
+    }
+
+    static String mimeTypeFor(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        if (lower.endsWith(".mov")) {
+            return "video/quicktime";
+        }
+        if (lower.endsWith(".mkv")) {
+            return "video/x-matroska";
+        }
+        if (lower.endsWith(".avi")) {
+            return "video/x-msvideo";
+        }
+        if (lower.endsWith(".webm")) {
+            return "video/webm";
+        }
+        return "video/mp4";
+    }
+
+    int getPrepareCount() {
+        return prepares.get();
+    }
+
+    int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    int getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    int getCachedUriCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    long getLastElapsedMs() {
+        return lastElapsedMs;
+    }
+}
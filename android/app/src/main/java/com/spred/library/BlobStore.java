@@ -0,0 +1,320 @@
+package com.spred.library;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BlobStore - Content-addressed storage under SpredP2PReceived/.blobs.
+ *
+ * Every distinct file content is kept once, as .blobs/&lt;sha256&gt;. The
+ * user-facing files in SpredP2PReceived are hard links to their blob, so a
+ * video received from three peers (or via P2P and Quick Share) costs its
+ * size once. A name table (.blobs/names.tsv, name -> hash) holds the
+ * reference counts; a blob with no names left is garbage-collected.
+ *
+ * Filesystems without hard links (sdcardfs on Android 10 and older) can't
+ * share an inode. There the table still records each name, the bytes stay
+ * as plain copies, and getLinkFailures() shows why nothing was saved.
+ */
+final class BlobStore {
+    private static final String TAG = "BlobStore";
+    static final String BLOB_DIR = ".blobs";
+    private static final String TABLE_HEADER = "spred-blobs\t1";
+
+    /** Filesystem operations that differ between Android (Os) and a plain JVM (java.nio.file). */
+    interface Linker {
+        void link(File existing, File newLink) throws IOException;
+
+        boolean isSameFile(File a, File b) throws IOException;
+    }
+
+    enum Outcome {
+        /** First copy of this content; it now backs the blob. */
+        STORED,
+        /** Content already stored; the duplicate bytes were replaced by a link. */
+        DEDUPED,
+        /** Already a link to its blob (re-ingest after a rescan). */
+        UNCHANGED,
+        /** No hard links on this filesystem; the file stays a full copy. */
+        COPY_KEPT
+    }
+
+    private final File libraryDir;
+    private final File blobDir;
+    private final File tableFile;
+    private final Linker linker;
+
+    private final Map<String, String> names = new HashMap<>();
+    private final Map<String, Integer> refs = new HashMap<>();
+    private boolean loaded;
+
+    // Counters
+    private long savedBytes;
+    private int dedupes;
+    private int linkFailures;
+    private int collected;
+
+    BlobStore(File libraryDir, Linker linker) {
+        this.libraryDir = libraryDir;
+        this.blobDir = new File(libraryDir, BLOB_DIR);
+        this.tableFile = new File(blobDir, "names.tsv");
+        this.linker = linker;
+    }
+
+    File blobFile(String hash) {
+        return new File(blobDir, hash);
+    }
+
+    /**
+     * Register {@code named} (a file directly in the library folder) under its
+     * full content hash, linking it to the shared blob.
+     */
+    synchronized Outcome ingest(File named, String hash) throws IOException {
+        ensureLoaded();
+        if (!blobDir.exists() && !blobDir.mkdirs()) {
+            throw new IOException("Could not create " + blobDir);
+        }
+        String name = named.getName();
+        File blob = blobFile(hash);
+        Outcome outcome;
+
+        if (!blob.isFile()) {
+            try {
+                linker.link(named, blob);
+                outcome = Outcome.STORED;
+            } catch (IOException e) {
+                linkFailures++;
+                Log.w(TAG, "⚠️ Hard links unavailable, keeping " + name + " as a full copy: " + e.getMessage());
+                outcome = Outcome.COPY_KEPT;
+            }
+        } else if (linker.isSameFile(named, blob)) {
+            outcome = Outcome.UNCHANGED;
+        } else if (blob.length() != named.length()) {
+            throw new IOException("Blob " + hash + " size mismatch, refusing to link " + name);
+        } else {
+            // Link next to the duplicate, then atomically swap it in
+            File temp = new File(libraryDir, "." + name + ".link");
+            temp.delete();
+            try {
+                linker.link(blob, temp);
+            } catch (IOException e) {
+                linkFailures++;
+                Log.w(TAG, "⚠️ Could not link duplicate " + name + ": " + e.getMessage());
+                setName(name, hash);
+                persist();
+                return Outcome.COPY_KEPT;
+            }
+            long size = named.length();
+            if (!temp.renameTo(named)) {
+                temp.delete();
+                throw new IOException("Could not replace " + name + " with its blob link");
+            }
+            savedBytes += size;
+            dedupes++;
+            outcome = Outcome.DEDUPED;
+            Log.d(TAG, "✅ " + name + " deduplicated against blob " + hash.substring(0, 12) + " (" + size + " bytes saved)");
+        }
+
+        setName(name, hash);
+        persist();
+        return outcome;
+    }
+
+    /** A user-facing file was deleted; collect its blob if nothing else points at it. */
+    synchronized void onNameRemoved(String name) {
+        ensureLoaded();
+        String hash = names.remove(name);
+        if (hash == null) {
+            return;
+        }
+        if (decrement(hash) == 0) {
+            deleteBlob(hash);
+        }
+        persist();
+    }
+
+    /**
+     * Drop table entries for names no longer present and delete blobs nobody
+     * references (including strays left by a crash mid-ingest).
+     */
+    synchronized int collectGarbage(Set<String> presentNames) {
+        ensureLoaded();
+        int before = collected;
+        for (String name : new ArrayList<>(names.keySet())) {
+            if (!presentNames.contains(name)) {
+                onNameRemoved(name);
+            }
+        }
+        File[] blobs = blobDir.listFiles();
+        if (blobs != null) {
+            for (File blob : blobs) {
+                String hash = blob.getName();
+                if (blob.isFile() && !hash.startsWith(".") && !blob.equals(tableFile) && !refs.containsKey(hash)) {
+                    deleteBlob(hash);
+                }
+            }
+        }
+        persist();
+        return collected - before;
+    }
+
+    private void setName(String name, String hash) {
+        String previous = names.put(name, hash);
+        if (hash.equals(previous)) {
+            return;
+        }
+        Integer count = refs.get(hash);
+        refs.put(hash, count == null ? 1 : count + 1);
+        if (previous != null && decrement(previous) == 0) {
+            deleteBlob(previous);
+        }
+    }
+
+    private int decrement(String hash) {
+        Integer count = refs.get(hash);
+        int remaining = count == null ? 0 : count - 1;
+        if (remaining <= 0) {
+            refs.remove(hash);
+            return 0;
+        }
+        refs.put(hash, remaining);
+        return remaining;
+    }
+
+    private void deleteBlob(String hash) {
+        File blob = blobFile(hash);
+        if (blob.isFile() && blob.delete()) {
+            collected++;
+            Log.d(TAG, "🗑️ Collected unreferenced blob " + hash.substring(0, Math.min(12, hash.length())));
+        }
+    }
+
+    // --- Persistence ---
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!tableFile.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(tableFile), StandardCharsets.UTF_8))) {
+            if (!TABLE_HEADER.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    setName(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Blob name table unreadable, rebuilding from ingest: " + e.getMessage());
+            names.clear();
+            refs.clear();
+        }
+    }
+
+    private void persist() {
+        File temp = new File(blobDir, ".names.tsv.tmp");
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(TABLE_HEADER);
+            writer.newLine();
+            for (Map.Entry<String, String> entry : names.entrySet()) {
+                if (entry.getKey().indexOf('\n') >= 0) {
+                    continue;
+                }
+                writer.write(entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Could not write blob name table: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(tableFile)) {
+            Log.w(TAG, "⚠️ Could not replace blob name table");
+        }
+    }
+
+    // --- Stats ---
+
+    synchronized String hashOf(String name) {
+        ensureLoaded();
+        return names.get(name);
+    }
+
+    synchronized int getNameCount() {
+        ensureLoaded();
+        return names.size();
+    }
+
+    synchronized int getBlobCount() {
+        ensureLoaded();
+        return refs.size();
+    }
+
+    /** Bytes actually on disk for library content: each blob once. */
+    synchronized long getUniqueBytes() {
+        ensureLoaded();
+        long total = 0;
+        for (String hash : refs.keySet()) {
+            total += blobFile(hash).length();
+        }
+        return total;
+    }
+
+    /** What the library would occupy without sharing: every name at full size. */
+    synchronized long getLogicalBytes() {
+        ensureLoaded();
+        long total = 0;
+        for (String name : names.keySet()) {
+            total += new File(libraryDir, name).length();
+        }
+        return total;
+    }
+
+    synchronized List<String> namesFor(String hash) {
+        ensureLoaded();
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            if (entry.getValue().equals(hash)) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    synchronized long getSavedBytes() {
+        return savedBytes;
+    }
+
+    synchronized int getDedupes() {
+        return dedupes;
+    }
+
+    synchronized int getLinkFailures() {
+        return linkFailures;
+    }
+
+    synchronized int getCollected() {
+        return collected;
+    }
+}
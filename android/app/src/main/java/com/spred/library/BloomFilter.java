@@ -0,0 +1,66 @@
+package com.spred.library;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BloomFilter - Lock-free membership pre-check for content hashes.
+ *
+ * Keys are already uniformly distributed digests, so the k bit positions
+ * are derived from two 64-bit words of the key (Kirsch-Mitzenmacher double
+ * hashing) instead of rehashing. A negative answer is definite; a positive
+ * one must be confirmed against the real map. Entries can't be removed, so
+ * owners rebuild the filter when it has grown stale or full.
+ */
+final class BloomFilter {
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+
+    /** Sized for {@code capacity} entries at roughly a 1% false-positive rate. */
+    BloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, 64);
+        // m = -n ln(p) / (ln 2)^2 with p = 0.01 is ~9.6 bits per entry; k = 7
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 64L, (long) Math.ceil(this.capacity * 9.6));
+        this.hashCount = 7;
+        this.bits = new AtomicLongArray((bitCount + 63) / 64);
+    }
+
+    void add(long h1, long h2) {
+        for (int i = 0; i < hashCount; i++) {
+            int bit = position(h1, h2, i);
+            long mask = 1L << (bit & 63);
+            int word = bit >>> 6;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    boolean mightContain(long h1, long h2) {
+        for (int i = 0; i < hashCount; i++) {
+            int bit = position(h1, h2, i);
+            if ((bits.get(bit >>> 6) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getBitCount() {
+        return bitCount;
+    }
+
+    private int position(long h1, long h2, int i) {
+        long combined = h1 + i * h2;
+        return (int) ((combined & Long.MAX_VALUE) % bitCount);
+    }
+}
@@ -0,0 +1,532 @@
+package com.spred.library;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ContentIndex - Content identity of every received video.
+ *
+ * Each file gets a sampled hash (SHA-256 over its size, first 64 KB and last
+ * 64 KB) as soon as it is indexed. Reading 128 KB costs the same for a 20 MB
+ * clip as for a 2 GB film, so "do we have this?" is constant time no matter
+ * how large the file or the library is. A full streaming SHA-256 follows on
+ * a background thread and confirms that two files with the same sample
+ * really are identical.
+ *
+ * Lookups go Bloom filter first (lock-free, definite "no") and then the
+ * sample map. Records persist to a TSV in filesDir so full hashes are
+ * computed once per file, not once per launch.
+ */
+public final class ContentIndex {
+    private static final String TAG = "ContentIndex";
+    private static final String HEADER = "spred-content-index\t1";
+
+    static final int SAMPLE_BYTES = 64 * 1024;
+    static final String SAMPLE_PREFIX = "s1:";
+
+    public static final class Record {
+        public final String path;
+        public final long size;
+        public final long lastModified;
+        public final String sampledHash;
+        public final String fullHash;
+
+        Record(String path, long size, long lastModified, String sampledHash, String fullHash) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sampledHash = sampledHash;
+            this.fullHash = fullHash;
+        }
+
+        Record withFullHash(String hash) {
+            return new Record(path, size, lastModified, sampledHash, hash);
+        }
+
+        boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /** Called on the hashing thread once a file's full hash is known. */
+    public interface FullHashListener {
+        void onFullHash(Record record);
+    }
+
+    private final File storeFile;
+    private volatile FullHashListener fullHashListener;
+    private final Map<String, Record> byPath = new HashMap<>();
+    private final Map<String, Set<String>> bySample = new HashMap<>();
+    private volatile BloomFilter bloom = new BloomFilter(1024);
+    private final ExecutorService hasher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "SpredContentHash");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private boolean loaded;
+    private boolean dirty;
+
+    // Counters
+    private final AtomicInteger sampledHashes = new AtomicInteger();
+    private final AtomicInteger fullHashes = new AtomicInteger();
+    private final AtomicInteger bloomRejects = new AtomicInteger();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    ContentIndex(File storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    void setFullHashListener(FullHashListener listener) {
+        this.fullHashListener = listener;
+    }
+
+    // --- Hashing ---
+
+    /** Size + head + tail. Reads at most 2 x SAMPLE_BYTES whatever the file size. */
+    public static String sampledHash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long size = raf.length();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                digest.update((byte) (size >>> shift));
+            }
+            byte[] buffer = new byte[(int) Math.min(SAMPLE_BYTES, size)];
+            raf.readFully(buffer);
+            digest.update(buffer);
+            if (size > SAMPLE_BYTES) {
+                long tailStart = Math.max(SAMPLE_BYTES, size - SAMPLE_BYTES);
+                buffer = new byte[(int) (size - tailStart)];
+                raf.seek(tailStart);
+                raf.readFully(buffer);
+                digest.update(buffer);
+            }
+        }
+        return SAMPLE_PREFIX + hex(digest.digest(), 16);
+    }
+
+    /** Streaming SHA-256 of the whole file. */
+    public static String fullHash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[256 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest(), 32);
+    }
+
+    /**
+     * The full hash the background hasher already computed for this exact,
+     * unchanged file, or null. Never reads the file: a send must not wait
+     * on hashing gigabytes before its first byte.
+     */
+    public String knownFullHash(File file) {
+        Record record = getByPath(file);
+        return record != null ? record.fullHash : null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes, int count) {
+        StringBuilder hex = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /** The two 64-bit words the Bloom filter probes with, straight from the hex digest. */
+    private static long[] bloomWords(String sampledHash) {
+        String hex = sampledHash.startsWith(SAMPLE_PREFIX) ? sampledHash.substring(SAMPLE_PREFIX.length()) : sampledHash;
+        if (hex.length() < 32) {
+            long h = hex.hashCode();
+            return new long[]{h, h * 0x9E3779B97F4A7C15L | 1};
+        }
+        return new long[]{hexWord(hex, 0), hexWord(hex, 16) | 1};
+    }
+
+    // Long.parseUnsignedLong needs API 26; minSdk is 21
+    private static long hexWord(String hex, int offset) {
+        return (Long.parseLong(hex.substring(offset, offset + 8), 16) << 32)
+            | Long.parseLong(hex.substring(offset + 8, offset + 16), 16);
+    }
+
+    // --- Index maintenance ---
+
+    /**
+     * Index {@code file} if it is new or changed: sampled hash now, full hash
+     * queued in the background. Returns the (possibly existing) record.
+     */
+    public Record index(File file) throws IOException {
+        ensureLoaded();
+        String path = file.getAbsolutePath();
+        synchronized (this) {
+            Record existing = byPath.get(path);
+            if (existing != null && existing.matches(file)) {
+                return existing;
+            }
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        String sampled = sampledHash(file);
+        sampledHashes.incrementAndGet();
+        Record record = new Record(path, size, lastModified, sampled, null);
+        synchronized (this) {
+            putLocked(record);
+        }
+        queueFullHash(record);
+        return record;
+    }
+
+    /** Index in the background; for arrival hooks that must not block. */
+    public void indexAsync(File file) {
+        hasher.execute(() -> {
+            try {
+                index(file);
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Could not index " + file.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * The file at {@code path} was swapped for another link to identical
+     * content (BlobStore dedupe). Re-stat it but keep the known hashes, so
+     * the mtime change doesn't trigger another full hash.
+     */
+    synchronized void refresh(Record record) {
+        File file = new File(record.path);
+        putLocked(new Record(record.path, file.length(), file.lastModified(), record.sampledHash, record.fullHash));
+    }
+
+    public synchronized void remove(String path) {
+        Record record = byPath.remove(path);
+        if (record != null) {
+            Set<String> paths = bySample.get(record.sampledHash);
+            if (paths != null) {
+                paths.remove(path);
+                if (paths.isEmpty()) {
+                    bySample.remove(record.sampledHash);
+                }
+            }
+            dirty = true;
+        }
+    }
+
+    /** Bring the index in line with the library: drop gone files, index new ones in the background. */
+    public void sync(List<LibraryIndex.Entry> entries) {
+        ensureLoaded();
+        List<File> toIndex = new ArrayList<>();
+        synchronized (this) {
+            Set<String> present = new HashSet<>();
+            for (LibraryIndex.Entry entry : entries) {
+                present.add(entry.path);
+                Record record = byPath.get(entry.path);
+                if (record == null || record.size != entry.size || record.lastModified != entry.lastModified) {
+                    toIndex.add(new File(entry.path));
+                } else if (record.fullHash == null) {
+                    queueFullHash(record);
+                }
+            }
+            for (String path : new ArrayList<>(byPath.keySet())) {
+                if (!present.contains(path)) {
+                    remove(path);
+                }
+            }
+        }
+        for (File file : toIndex) {
+            indexAsync(file);
+        }
+        if (!toIndex.isEmpty() || isDirty()) {
+            hasher.execute(this::flushQuietly);
+        }
+    }
+
+    private void putLocked(Record record) {
+        Record previous = byPath.put(record.path, record);
+        if (previous != null && !previous.sampledHash.equals(record.sampledHash)) {
+            Set<String> paths = bySample.get(previous.sampledHash);
+            if (paths != null) {
+                paths.remove(record.path);
+                if (paths.isEmpty()) {
+                    bySample.remove(previous.sampledHash);
+                }
+            }
+        }
+        Set<String> paths = bySample.get(record.sampledHash);
+        if (paths == null) {
+            paths = new HashSet<>(2);
+            bySample.put(record.sampledHash, paths);
+        }
+        paths.add(record.path);
+        if (byPath.size() > bloom.getCapacity()) {
+            rebuildBloomLocked(byPath.size() * 2);
+        } else {
+            long[] words = bloomWords(record.sampledHash);
+            bloom.add(words[0], words[1]);
+        }
+        dirty = true;
+    }
+
+    private void rebuildBloomLocked(int capacity) {
+        BloomFilter rebuilt = new BloomFilter(capacity);
+        for (String sampled : bySample.keySet()) {
+            long[] words = bloomWords(sampled);
+            rebuilt.add(words[0], words[1]);
+        }
+        bloom = rebuilt;
+    }
+
+    private void queueFullHash(Record record) {
+        hasher.execute(() -> {
+            File file = new File(record.path);
+            synchronized (this) {
+                Record current = byPath.get(record.path);
+                if (current == null || current.fullHash != null || !current.matches(file)) {
+                    return;
+                }
+            }
+            try {
+                long start = System.currentTimeMillis();
+                String hash = fullHash(file);
+                fullHashes.incrementAndGet();
+                Record hashed = null;
+                synchronized (this) {
+                    Record current = byPath.get(record.path);
+                    if (current != null && current.sampledHash.equals(record.sampledHash) && current.matches(file)) {
+                        hashed = current.withFullHash(hash);
+                        byPath.put(record.path, hashed);
+                        dirty = true;
+                    }
+                }
+                Log.d(TAG, "✅ Full hash for " + file.getName() + " in " + (System.currentTimeMillis() - start) + "ms");
+                FullHashListener listener = fullHashListener;
+                if (hashed != null && listener != null) {
+                    listener.onFullHash(hashed);
+                }
+                flushQuietly();
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Full hash failed for " + file.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // --- Lookups ---
+
+    /** The indexed, unchanged record for exactly this path, or null. No file reads beyond a stat. */
+    public Record getByPath(File file) {
+        ensureLoaded();
+        synchronized (this) {
+            Record record = byPath.get(file.getAbsolutePath());
+            return record != null && record.matches(file) ? record : null;
+        }
+    }
+
+    /** A library file with this sampled hash and size, or null. */
+    public Record findBySample(String sampledHash, long size) {
+        return find(sampledHash, size, null);
+    }
+
+    /**
+     * A library file whose full hash is confirmed equal to {@code fullHash},
+     * or null. Records still waiting on the background hasher never match:
+     * a sample collision must not let a receiver skip different bytes.
+     */
+    public Record findByFullHash(String sampledHash, long size, String fullHash) {
+        return fullHash != null ? find(sampledHash, size, fullHash) : null;
+    }
+
+    private Record find(String sampledHash, long size, String fullHash) {
+        ensureLoaded();
+        lookups.incrementAndGet();
+        long[] words = bloomWords(sampledHash);
+        if (!bloom.mightContain(words[0], words[1])) {
+            bloomRejects.incrementAndGet();
+            return null;
+        }
+        synchronized (this) {
+            Set<String> paths = bySample.get(sampledHash);
+            if (paths == null) {
+                return null;
+            }
+            for (String path : paths) {
+                Record record = byPath.get(path);
+                if (record != null && record.size == size && (fullHash == null || fullHash.equals(record.fullHash))
+                    && new File(path).isFile()) {
+                    return record;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Other library files with identical content (full hash confirmed). */
+    public synchronized List<Record> findDuplicates(Record record) {
+        List<Record> duplicates = new ArrayList<>();
+        Set<String> paths = bySample.get(record.sampledHash);
+        if (paths == null || record.fullHash == null) {
+            return duplicates;
+        }
+        for (String path : paths) {
+            Record other = byPath.get(path);
+            if (other != null && !other.path.equals(record.path) && record.fullHash.equals(other.fullHash)) {
+                duplicates.add(other);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Is this file's content already in the library? Constant time: a stat
+     * when the path is indexed, otherwise one sampled hash and a map lookup.
+     */
+    public boolean containsContentOf(File file) throws IOException {
+        if (getByPath(file) != null) {
+            return true;
+        }
+        return findBySample(sampledHash(file), file.length()) != null;
+    }
+
+    // --- Persistence ---
+
+    private void ensureLoaded() {
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            if (!storeFile.isFile()) {
+                return;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(storeFile), StandardCharsets.UTF_8))) {
+                if (!HEADER.equals(reader.readLine())) {
+                    return;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] f = line.split("\t", -1);
+                    if (f.length != 5) {
+                        continue;
+                    }
+                    try {
+                        putLocked(new Record(f[0], Long.parseLong(f[1]), Long.parseLong(f[2]), f[3],
+                            f[4].isEmpty() ? null : f[4]));
+                    } catch (NumberFormatException e) {
+                        // Skip the corrupt line, keep the rest
+                    }
+                }
+                rebuildBloomLocked(Math.max(1024, byPath.size() * 2));
+                dirty = false;
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Content index unreadable, starting empty: " + e.getMessage());
+                byPath.clear();
+                bySample.clear();
+            }
+        }
+    }
+
+    private synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Could not persist content index: " + e.getMessage());
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File parent = storeFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(storeFile.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Record r : byPath.values()) {
+                if (r.path.indexOf('\t') >= 0 || r.path.indexOf('\n') >= 0) {
+                    continue;
+                }
+                writer.write(r.path + "\t" + r.size + "\t" + r.lastModified + "\t" + r.sampledHash + "\t"
+                    + (r.fullHash != null ? r.fullHash : ""));
+                writer.newLine();
+            }
+        }
+        if (!temp.renameTo(storeFile)) {
+            throw new IOException("Could not replace " + storeFile);
+        }
+        dirty = false;
+    }
+
+    // --- Stats ---
+
+    public synchronized int size() {
+        ensureLoaded();
+        return byPath.size();
+    }
+
+    public synchronized int getFullyHashedCount() {
+        ensureLoaded();
+        int count = 0;
+        for (Record record : byPath.values()) {
+            if (record.fullHash != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getSampledHashes() {
+        return sampledHashes.get();
+    }
+
+    public int getFullHashes() {
+        return fullHashes.get();
+    }
+
+    public int getLookups() {
+        return lookups.get();
+    }
+
+    public int getBloomRejects() {
+        return bloomRejects.get();
+    }
+}
@@ -0,0 +1,413 @@
+package com.spred.library;
+
+import android.util.Log;
+
+import com.spred.transfer.ReceiveFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IngestService - Copies videos shared into the app (Quick Share) into the
+ * library folder off the main thread.
+ *
+ * The caller opens the sources and hands over the open streams, so an
+ * activity can finish right away: an open descriptor stays readable after
+ * the URI grant that produced it goes away. Sized sources are copied with
+ * FileChannel.transferFrom in 8 MB steps; pipes and sources that stop short
+ * fall back to a 256 KB direct buffer. Bytes land in a hidden ".name.part"
+ * file that is renamed when complete, so the library never lists a
+ * half-copied video.
+ *
+ * A share of many items is one batch. Its items are copied a few at a time
+ * (flash write bandwidth stops scaling after two or three streams), the
+ * storage preflight runs once for the whole batch, and listeners get
+ * aggregate progress alongside the per-item events.
+ */
+public final class IngestService {
+    private static final String TAG = "IngestService";
+
+    static final long TRANSFER_CHUNK_BYTES = 8L * 1024 * 1024;
+    static final int BUFFER_BYTES = 256 * 1024;
+    static final long PROGRESS_INTERVAL_MS = 250;
+    static final int MAX_PARALLEL_COPIES = 3;
+
+    public interface Listener {
+        void onIngestProgress(String id, String fileName, long copiedBytes, long totalBytes);
+
+        void onIngestComplete(String id, File file, String mimeType, long bytes, long elapsedMs);
+
+        void onIngestFailed(String id, String fileName, String code, String message);
+
+        /** {@code totalBytes} is -1 while any item's size is unknown. */
+        void onBatchProgress(String batchId, int finishedItems, int totalItems, long copiedBytes, long totalBytes);
+
+        void onBatchComplete(String batchId, int completedItems, int failedItems, long bytes, long elapsedMs);
+    }
+
+    /** Where copies land; ReceivedLibrary in the app, a plain folder in tests. */
+    interface Destination {
+        File getDirectory();
+
+        ReceivedLibrary.Preflight preflight(File destinationDir, long incomingBytes);
+
+        void onFileArrived(File file);
+    }
+
+    /** Bytes copied so far; called after each transfer step. */
+    interface Progress {
+        void onCopied(long copiedBytes);
+    }
+
+    /** One shared item: an open source plus what the sender said about it. */
+    public static final class Item {
+        final FileInputStream source;
+        final long declaredSize;
+        final String displayName;
+        final String mimeType;
+
+        /** {@code declaredSize} is -1 when unknown; name and type may be null. */
+        public Item(FileInputStream source, long declaredSize, String displayName, String mimeType) {
+            this.source = source;
+            this.declaredSize = declaredSize;
+            this.displayName = displayName;
+            this.mimeType = mimeType;
+        }
+    }
+
+    private final class Batch {
+        final String id;
+        final Item[] items;
+        final long[] copied;
+        final long totalBytes;
+        final long startedAt = System.currentTimeMillis();
+        Boolean admitted;
+        String rejectCode;
+        String rejectMessage;
+        int completedItems;
+        int failedItems;
+        long lastReportAt;
+
+        Batch(String id, List<Item> items) {
+            this.id = id;
+            this.items = items.toArray(new Item[0]);
+            this.copied = new long[this.items.length];
+            long total = 0;
+            for (Item item : this.items) {
+                total = item.declaredSize < 0 || total < 0 ? -1 : total + item.declaredSize;
+            }
+            this.totalBytes = total;
+        }
+
+        /** The first item to start runs the preflight for the whole batch; the rest wait on it. */
+        synchronized boolean admit() {
+            if (admitted == null) {
+                long known = 0;
+                for (Item item : items) {
+                    known += Math.max(0, item.declaredSize);
+                }
+                ReceivedLibrary.Preflight preflight = library.preflight(library.getDirectory(), known);
+                admitted = preflight.allowed;
+                rejectCode = preflight.code;
+                rejectMessage = preflight.message;
+            }
+            return admitted;
+        }
+
+        void progress(int index, long bytes) {
+            long sum = 0;
+            int finished;
+            synchronized (this) {
+                copied[index] = bytes;
+                long now = System.currentTimeMillis();
+                if (now - lastReportAt < PROGRESS_INTERVAL_MS) {
+                    return;
+                }
+                lastReportAt = now;
+                for (long c : copied) {
+                    sum += c;
+                }
+                finished = completedItems + failedItems;
+            }
+            for (Listener listener : listeners) {
+                listener.onBatchProgress(id, finished, items.length, sum, totalBytes);
+            }
+        }
+
+        void finished(int index, boolean ok, long bytes) {
+            long sum = 0;
+            int finished;
+            int completed;
+            int failed;
+            synchronized (this) {
+                copied[index] = ok ? bytes : 0;
+                if (ok) {
+                    completedItems++;
+                } else {
+                    failedItems++;
+                }
+                for (long c : copied) {
+                    sum += c;
+                }
+                completed = completedItems;
+                failed = failedItems;
+                finished = completed + failed;
+            }
+            for (Listener listener : listeners) {
+                listener.onBatchProgress(id, finished, items.length, sum, totalBytes);
+            }
+            if (finished == items.length) {
+                long elapsed = System.currentTimeMillis() - startedAt;
+                Log.d(TAG, "📦 Batch " + id + ": " + completed + "/" + items.length + " items, " + sum + " bytes in " + elapsed + " ms");
+                for (Listener listener : listeners) {
+                    listener.onBatchComplete(id, completed, failed, sum, elapsed);
+                }
+            }
+        }
+    }
+
+    private final Destination library;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger nextBatchId = new AtomicInteger(1);
+
+    // Counters
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesIngested = new AtomicLong();
+    private final AtomicLong copyMs = new AtomicLong();
+    private final AtomicInteger peakParallel = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    IngestService(Destination library) {
+        this(library, MAX_PARALLEL_COPIES);
+    }
+
+    IngestService(Destination library, int parallelCopies) {
+        this.library = library;
+        AtomicInteger threadId = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(parallelCopies, parallelCopies, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "SpredIngest-" + threadId.incrementAndGet());
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queue a copy of every item into the library. Streams are closed when
+     * their copy ends. Returns the batch id; item ids are "&lt;batch&gt;:&lt;index&gt;".
+     */
+    public String ingestAll(List<Item> items) {
+        Batch batch = new Batch("batch_" + nextBatchId.getAndIncrement(), items);
+        Log.d(TAG, "📥 Batch " + batch.id + " queued: " + batch.items.length + " items, " + batch.totalBytes + " bytes");
+        if (batch.items.length == 0) {
+            for (Listener listener : listeners) {
+                listener.onBatchComplete(batch.id, 0, 0, 0, 0);
+            }
+        }
+        for (int i = 0; i < batch.items.length; i++) {
+            int index = i;
+            pool.execute(() -> run(batch, index));
+        }
+        return batch.id;
+    }
+
+    private void run(Batch batch, int index) {
+        Item item = batch.items[index];
+        String id = batch.id + ":" + index;
+        long start = System.currentTimeMillis();
+        File directory = library.getDirectory();
+        String fileName = libraryName(item.displayName, item.mimeType, start);
+        File target = null;
+        File temp = null;
+        int running = active.incrementAndGet();
+        for (int peak = peakParallel.get(); running > peak && !peakParallel.compareAndSet(peak, running); ) {
+            peak = peakParallel.get();
+        }
+        try {
+            if (!batch.admit()) {
+                fail(batch, index, id, fileName, batch.rejectCode, batch.rejectMessage);
+                return;
+            }
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            // Shared with receives, which commit into the same directory
+            target = ReceiveFile.reserveTarget(directory, fileName);
+            temp = new File(directory, "." + target.getName() + ".part");
+
+            String name = target.getName();
+            long copied;
+            try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+                out.setLength(0);
+                long[] lastReportAt = {0};
+                copied = copy(item.source.getChannel(), item.declaredSize, out.getChannel(), copiedBytes -> {
+                    batch.progress(index, copiedBytes);
+                    long now = System.currentTimeMillis();
+                    if (now - lastReportAt[0] >= PROGRESS_INTERVAL_MS) {
+                        lastReportAt[0] = now;
+                        for (Listener listener : listeners) {
+                            listener.onIngestProgress(id, name, copiedBytes, item.declaredSize);
+                        }
+                    }
+                });
+            }
+            if (item.declaredSize > 0 && copied < item.declaredSize) {
+                temp.delete();
+                fail(batch, index, id, name, "INGEST_INCOMPLETE", "Source ended after " + copied + " of " + item.declaredSize + " bytes");
+                return;
+            }
+            if (!temp.renameTo(target)) {
+                throw new IOException("Could not rename " + temp.getName() + " to " + name);
+            }
+
+            long elapsed = System.currentTimeMillis() - start;
+            completed.incrementAndGet();
+            bytesIngested.addAndGet(copied);
+            copyMs.addAndGet(elapsed);
+            Log.d(TAG, "✅ Ingested " + name + " (" + item.mimeType + "): " + copied + " bytes in " + elapsed + " ms");
+
+            library.onFileArrived(target);
+            for (Listener listener : listeners) {
+                listener.onIngestProgress(id, name, copied, copied);
+                listener.onIngestComplete(id, target, item.mimeType, copied, elapsed);
+            }
+            batch.finished(index, true, copied);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "❌ Ingest of " + fileName + " failed", e);
+            if (temp != null) {
+                temp.delete();
+            }
+            fail(batch, index, id, fileName, "INGEST_FAILED", e.getMessage());
+        } finally {
+            active.decrementAndGet();
+            if (target != null) {
+                ReceiveFile.releaseTarget(target);
+            }
+            try {
+                item.source.close();
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Could not close ingest source: " + e.getMessage());
+            }
+        }
+    }
+
+    private void fail(Batch batch, int index, String id, String fileName, String code, String message) {
+        failed.incrementAndGet();
+        Log.w(TAG, "⚠️ Ingest " + id + " (" + fileName + ") failed: " + code + " " + message);
+        for (Listener listener : listeners) {
+            listener.onIngestFailed(id, fileName, code, message);
+        }
+        batch.finished(index, false, 0);
+    }
+
+    /**
+     * The sender's display name made safe for the library: no path parts or
+     * leading dots, and a video extension (from the MIME type) when it has
+     * none the library lists.
+     */
+    static String libraryName(String displayName, String mimeType, long now) {
+        String name = displayName == null ? "" : new File(displayName.replace('\\', '/')).getName().trim();
+        while (name.startsWith(".")) {
+            name = name.substring(1);
+        }
+        if (name.isEmpty()) {
+            name = "QuickShare_" + now;
+        }
+        return LibraryIndex.isLibraryFile(name) ? name : name + extensionFor(mimeType);
+    }
+
+    static String extensionFor(String mimeType) {
+        String type = mimeType == null ? "" : mimeType.toLowerCase(Locale.US);
+        switch (type) {
+            case "video/quicktime":
+                return ".mov";
+            case "video/x-matroska":
+            case "video/webm":
+                return ".mkv";
+            case "video/x-msvideo":
+            case "video/avi":
+                return ".avi";
+            default:
+                return ".mp4";
+        }
+    }
+
+    /**
+     * Copy {@code source} from its current position to EOF into
+     * {@code target} starting at offset 0. Returns the bytes copied.
+     */
+    static long copy(FileChannel source, long declaredSize, FileChannel target, Progress progress) throws IOException {
+        long copied = 0;
+        // A pipe stats as size 0 and can't seek, which transferFrom needs (ESPIPE); the buffer loop reads it all
+        long sized = source.size() > 0 ? declaredSize : 0;
+        while (copied < sized) {
+            long n = target.transferFrom(source, copied, Math.min(TRANSFER_CHUNK_BYTES, sized - copied));
+            if (n <= 0) {
+                break; // Shorter than stat said, or not transferable; the buffer loop finds out which
+            }
+            copied += n;
+            progress.onCopied(copied);
+        }
+
+        // Unsized sources (pipes), and anything past the declared size
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        while (source.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                copied += target.write(buffer, copied);
+            }
+            buffer.clear();
+            progress.onCopied(copied);
+        }
+        return copied;
+    }
+
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    public long getBytesIngested() {
+        return bytesIngested.get();
+    }
+
+    public int getPeakParallelCopies() {
+        return peakParallel.get();
+    }
+
+    public int getQueuedCount() {
+        return pool.getQueue().size();
+    }
+
+    /** Average per-copy rate over completed ingests, in MB/s; 0 before the first one. */
+    public double getAverageMbPerSecond() {
+        long ms = copyMs.get();
+        return ms > 0 ? bytesIngested.get() / (1024.0 * 1024.0) / (ms / 1000.0) : 0;
+    }
+}
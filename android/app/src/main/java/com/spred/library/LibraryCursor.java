@@ -0,0 +1,125 @@
+package com.spred.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * LibraryCursor - Sorted, filtered, paged view over a LibraryIndex snapshot.
+ *
+ * The snapshot is taken and sorted once when the cursor opens, so pages stay
+ * stable while new files arrive (those show up in onLibraryChanged instead).
+ * Each nextPage() only copies the requested slice, which keeps bridge payloads
+ * small no matter how large the folder is.
+ */
+public final class LibraryCursor {
+
+    public enum Sort {
+        RECEIVED_TIME,
+        SIZE,
+        NAME;
+
+        /** Parse the JS sort key; unknown keys fall back to newest first. */
+        public static Sort fromKey(String key) {
+            if ("size".equals(key)) {
+                return SIZE;
+            }
+            if ("name".equals(key)) {
+                return NAME;
+            }
+            return RECEIVED_TIME;
+        }
+    }
+
+    private static final Comparator<LibraryIndex.Entry> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.lastModified, a.lastModified);
+        return byTime != 0 ? byTime : a.name.compareTo(b.name);
+    };
+
+    private static final Comparator<LibraryIndex.Entry> LARGEST_FIRST = (a, b) -> {
+        int bySize = Long.compare(b.size, a.size);
+        return bySize != 0 ? bySize : a.name.compareTo(b.name);
+    };
+
+    private static final Comparator<LibraryIndex.Entry> BY_NAME = (a, b) -> {
+        int byName = a.name.compareToIgnoreCase(b.name);
+        return byName != 0 ? byName : a.name.compareTo(b.name);
+    };
+
+    private final String id;
+    private final LibraryIndex.Entry[] entries;
+    private int position;
+    private volatile long lastAccessAt;
+
+    LibraryCursor(String id, List<LibraryIndex.Entry> snapshot, Sort sort, String filter) {
+        this.id = id;
+        this.entries = filterAndSort(snapshot, sort, filter);
+        this.lastAccessAt = System.currentTimeMillis();
+    }
+
+    static LibraryIndex.Entry[] filterAndSort(List<LibraryIndex.Entry> snapshot, Sort sort, String filter) {
+        String needle = filter == null || filter.trim().isEmpty() ? null : filter.trim().toLowerCase(Locale.US);
+        List<LibraryIndex.Entry> matching;
+        if (needle == null) {
+            matching = snapshot;
+        } else {
+            matching = new ArrayList<>();
+            for (LibraryIndex.Entry entry : snapshot) {
+                if (entry.name.toLowerCase(Locale.US).contains(needle)) {
+                    matching.add(entry);
+                }
+            }
+        }
+
+        LibraryIndex.Entry[] sorted = matching.toArray(new LibraryIndex.Entry[0]);
+        Arrays.sort(sorted, comparatorFor(sort));
+        return sorted;
+    }
+
+    private static Comparator<LibraryIndex.Entry> comparatorFor(Sort sort) {
+        switch (sort) {
+            case SIZE:
+                return LARGEST_FIRST;
+            case NAME:
+                return BY_NAME;
+            case RECEIVED_TIME:
+            default:
+                return NEWEST_FIRST;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getTotal() {
+        return entries.length;
+    }
+
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    public synchronized boolean hasMore() {
+        return position < entries.length;
+    }
+
+    /** Next {@code count} entries; empty once the cursor is exhausted. */
+    public synchronized List<LibraryIndex.Entry> nextPage(int count) {
+        lastAccessAt = System.currentTimeMillis();
+        if (count <= 0 || position >= entries.length) {
+            return Collections.emptyList();
+        }
+        int end = Math.min(entries.length, position + count);
+        List<LibraryIndex.Entry> page = Arrays.asList(Arrays.copyOfRange(entries, position, end));
+        position = end;
+        return page;
+    }
+
+    long getLastAccessAt() {
+        return lastAccessAt;
+    }
+}
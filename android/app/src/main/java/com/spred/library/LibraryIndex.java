@@ -0,0 +1,215 @@
+package com.spred.library;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LibraryIndex - In-memory view of the SpredP2PReceived folder.
+ *
+ * File events only tell us which name changed; reconcile() stats that one
+ * file and records an added / updated / removed change. Changes are coalesced
+ * until drainDelta() (added then removed = nothing, removed then added =
+ * updated), so a burst of events becomes one small delta. rescan() diffs the
+ * whole directory and is only needed at start-up or after an event overflow.
+ * Without a watcher, rescanIfStale() reuses the last scan while the folder's
+ * mtime is unchanged and the scan is younger than SCAN_TTL_MS.
+ *
+ * Plain java.io only, so it runs against any Linux filesystem.
+ */
+public class LibraryIndex {
+
+    public static final class Entry {
+        public final String name;
+        public final String path;
+        public final long size;
+        public final long lastModified;
+
+        Entry(String name, String path, long size, long lastModified) {
+            this.name = name;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean sameContentAs(Entry other) {
+            return other != null && size == other.size && lastModified == other.lastModified;
+        }
+    }
+
+    public static final class Delta {
+        public final List<Entry> added;
+        public final List<Entry> updated;
+        public final List<String> removed;
+
+        Delta(List<Entry> added, List<Entry> updated, List<String> removed) {
+            this.added = added;
+            this.updated = updated;
+            this.removed = removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private enum Change {
+        ADDED,
+        UPDATED,
+        REMOVED
+    }
+
+    private final File directory;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Change> pending = new LinkedHashMap<>();
+    private int rescans;
+
+    // A create, rename or delete bumps the folder mtime; the TTL covers coarse
+    // mtime granularity and files rewritten in place, which leave it alone
+    static final long SCAN_TTL_MS = 2000;
+    private boolean stale = true;
+    private long scannedAt;
+    private long scannedDirectoryModified;
+
+    public LibraryIndex(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /** Video files only; dot-prefixed names are in-progress temp files. */
+    public static boolean isLibraryFile(String name) {
+        if (name == null || name.startsWith(".")) {
+            return false;
+        }
+        String lower = name.toLowerCase(Locale.US);
+        return lower.endsWith(".mp4") || lower.endsWith(".mov") || lower.endsWith(".avi") || lower.endsWith(".mkv");
+    }
+
+    /** Re-check one name after a file event. */
+    public synchronized void reconcile(String name) {
+        if (name == null || !isLibraryFile(name)) {
+            return;
+        }
+        File file = new File(directory, name);
+        Entry previous = entries.get(name);
+        if (file.isFile()) {
+            Entry current = new Entry(name, file.getAbsolutePath(), file.length(), file.lastModified());
+            entries.put(name, current);
+            if (previous == null) {
+                record(name, Change.ADDED);
+            } else if (!current.sameContentAs(previous)) {
+                record(name, Change.UPDATED);
+            }
+        } else if (previous != null) {
+            entries.remove(name);
+            record(name, Change.REMOVED);
+        }
+    }
+
+    /** Full directory diff; used at start-up and after the event queue overflowed. */
+    public synchronized void rescan() {
+        rescans++;
+        stale = false;
+        // Read before listing, so a change that lands mid-scan still looks new next time
+        scannedDirectoryModified = directory.lastModified();
+        Set<String> seen = new HashSet<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && isLibraryFile(file.getName())) {
+                    seen.add(file.getName());
+                    reconcile(file.getName());
+                }
+            }
+        }
+        for (String name : new ArrayList<>(entries.keySet())) {
+            if (!seen.contains(name)) {
+                entries.remove(name);
+                record(name, Change.REMOVED);
+            }
+        }
+    }
+
+    /** rescan() unless the last scan still describes the folder; returns whether it scanned. */
+    public synchronized boolean rescanIfStale(long now) {
+        if (!stale && directory.lastModified() == scannedDirectoryModified
+            && now >= scannedAt && now - scannedAt < SCAN_TTL_MS) {
+            return false;
+        }
+        rescan();
+        scannedAt = now;
+        return true;
+    }
+
+    /** The next rescanIfStale() scans regardless of mtime and age. */
+    public synchronized void invalidate() {
+        stale = true;
+    }
+
+    private void record(String name, Change change) {
+        Change previous = pending.get(name);
+        if (previous == null) {
+            pending.put(name, change);
+        } else if (previous == Change.ADDED && change == Change.REMOVED) {
+            pending.remove(name); // Came and went before anyone looked
+        } else if (previous == Change.ADDED) {
+            pending.put(name, Change.ADDED);
+        } else if (previous == Change.REMOVED && change == Change.ADDED) {
+            pending.put(name, Change.UPDATED);
+        } else {
+            pending.put(name, change);
+        }
+    }
+
+    /** Take all changes recorded since the last drain. */
+    public synchronized Delta drainDelta() {
+        List<Entry> added = new ArrayList<>();
+        List<Entry> updated = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, Change> change : pending.entrySet()) {
+            switch (change.getValue()) {
+                case ADDED:
+                    added.add(entries.get(change.getKey()));
+                    break;
+                case UPDATED:
+                    updated.add(entries.get(change.getKey()));
+                    break;
+                case REMOVED:
+                default:
+                    removed.add(change.getKey());
+                    break;
+            }
+        }
+        pending.clear();
+        return new Delta(added, updated, removed);
+    }
+
+    public synchronized boolean hasPendingChanges() {
+        return !pending.isEmpty();
+    }
+
+    public synchronized List<Entry> snapshot() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getRescanCount() {
+        return rescans;
+    }
+}
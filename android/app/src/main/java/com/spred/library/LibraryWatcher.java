@@ -0,0 +1,106 @@
+package com.spred.library;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+/**
+ * LibraryWatcher - Keeps a LibraryIndex current from inotify events.
+ *
+ * Close-write, move and delete events reconcile the single name they refer
+ * to. Deltas are flushed to the listener at most every COALESCE_MS, so a
+ * multi-file transfer produces a handful of events instead of one per write.
+ * The index is only rescanned when the kernel event queue overflows.
+ */
+public class LibraryWatcher {
+    private static final String TAG = "LibraryWatcher";
+
+    static final long COALESCE_MS = 250;
+
+    // inotify IN_Q_OVERFLOW; FileObserver passes the raw mask through but has no constant for it
+    private static final int IN_Q_OVERFLOW = 0x00004000;
+    private static final int MASK = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.MOVED_FROM
+        | FileObserver.DELETE | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    public interface Listener {
+        void onLibraryChanged(LibraryIndex.Delta delta, int total);
+    }
+
+    private final LibraryIndex index;
+    private final Listener listener;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final FileObserver observer;
+    private boolean flushScheduled;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LibraryWatcher.this) {
+                flushScheduled = false;
+            }
+            LibraryIndex.Delta delta = index.drainDelta();
+            if (!delta.isEmpty()) {
+                listener.onLibraryChanged(delta, index.size());
+            }
+        }
+    };
+
+    @SuppressWarnings("deprecation")
+    public LibraryWatcher(LibraryIndex index, Listener listener) {
+        this.index = index;
+        this.listener = listener;
+        this.thread = new HandlerThread("SpredLibraryWatcher");
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+        // String constructor: the File overload needs API 29 and minSdk is 21
+        this.observer = new FileObserver(index.getDirectory().getAbsolutePath(), MASK) {
+            @Override
+            public void onEvent(int event, String path) {
+                handleEvent(event, path);
+            }
+        };
+    }
+
+    public void start() {
+        index.getDirectory().mkdirs();
+        observer.startWatching();
+        // Catch anything that changed while nobody was watching
+        handler.post(() -> {
+            index.rescan();
+            scheduleFlush();
+        });
+        Log.d(TAG, "👀 Watching " + index.getDirectory().getAbsolutePath());
+    }
+
+    public void stop() {
+        observer.stopWatching();
+        handler.removeCallbacks(flush);
+        thread.quitSafely();
+        Log.d(TAG, "👀 Stopped watching library");
+    }
+
+    private void handleEvent(int event, String path) {
+        if ((event & IN_Q_OVERFLOW) != 0 || path == null
+            || (event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0) {
+            Log.w(TAG, "⚠️ Event overflow or folder moved, rescanning library");
+            handler.post(() -> {
+                index.rescan();
+                scheduleFlush();
+            });
+            return;
+        }
+        handler.post(() -> {
+            index.reconcile(path);
+            scheduleFlush();
+        });
+    }
+
+    private synchronized void scheduleFlush() {
+        if (!flushScheduled && index.hasPendingChanges()) {
+            flushScheduled = true;
+            handler.postDelayed(flush, COALESCE_MS);
+        }
+    }
+}
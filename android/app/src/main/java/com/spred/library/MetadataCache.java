@@ -0,0 +1,137 @@
+package com.spred.library;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MetadataCache - Persistent VideoMetadata store keyed by (path, size, mtime).
+ *
+ * Lookups are a single map read. An entry only counts as a hit while the
+ * file's size and mtime still match, so a file that was overwritten in
+ * place is re-extracted. The store is a small TSV file rewritten through a
+ * temp file + rename, so a crash mid-write leaves the previous copy intact.
+ */
+final class MetadataCache {
+    private static final String HEADER = "spred-metadata\t1";
+
+    private static final class Record {
+        final long size;
+        final long lastModified;
+        final VideoMetadata metadata;
+
+        Record(long size, long lastModified, VideoMetadata metadata) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+        }
+    }
+
+    private final File storeFile;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    MetadataCache(File storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    VideoMetadata get(String path, long size, long lastModified) {
+        Record record = records.get(path);
+        if (record == null || record.size != size || record.lastModified != lastModified) {
+            return null;
+        }
+        return record.metadata;
+    }
+
+    void put(String path, long size, long lastModified, VideoMetadata metadata) {
+        records.put(path, new Record(size, lastModified, metadata));
+        dirty = true;
+    }
+
+    void remove(String path) {
+        if (records.remove(path) != null) {
+            dirty = true;
+        }
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /** Load the store; a missing or unreadable file just means an empty cache. */
+    void load() {
+        if (!storeFile.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(storeFile), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (f.length != 8) {
+                    continue;
+                }
+                try {
+                    records.put(f[0], new Record(Long.parseLong(f[1]), Long.parseLong(f[2]),
+                        new VideoMetadata(Long.parseLong(f[3]), Integer.parseInt(f[4]), Integer.parseInt(f[5]),
+                            f[6], Long.parseLong(f[7]))));
+                } catch (NumberFormatException e) {
+                    // Skip the corrupt line, keep the rest
+                }
+            }
+        } catch (IOException e) {
+            records.clear();
+        }
+    }
+
+    /** Write the store if anything changed since the last flush. */
+    synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        File parent = storeFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(storeFile.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                String path = entry.getKey();
+                if (path.indexOf('\t') >= 0 || path.indexOf('\n') >= 0) {
+                    continue; // Not representable in the TSV; re-extracted next launch
+                }
+                Record r = entry.getValue();
+                VideoMetadata m = r.metadata;
+                writer.write(path + "\t" + r.size + "\t" + r.lastModified + "\t" + m.durationMs + "\t"
+                    + m.width + "\t" + m.height + "\t" + m.codec.replace('\t', ' ') + "\t" + m.bitrate);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+        if (!temp.renameTo(storeFile)) {
+            dirty = true;
+            throw new IOException("Could not replace " + storeFile);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.spred.library;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MetadataService - Extracts video metadata on a bounded worker pool.
+ *
+ * Answers come from the MetadataCache when the file's size and mtime still
+ * match; otherwise the file is queued for extraction. Concurrent requests
+ * for the same file share one extraction. The pure-Java header parser runs
+ * first and the fallback Extractor (MediaMetadataRetriever on device) only
+ * sees containers the parser can't read. The cache is flushed to disk a
+ * moment after the last write so a backfill burst costs one rewrite.
+ */
+public final class MetadataService {
+    private static final String TAG = "MetadataService";
+
+    static final int QUEUE_CAPACITY = 256;
+    static final long FLUSH_DELAY_MS = 2000;
+
+    public interface Extractor {
+        VideoMetadata extract(File file) throws IOException;
+    }
+
+    public interface Callback {
+        void onMetadata(VideoMetadata metadata);
+
+        void onError(String message);
+    }
+
+    private final MetadataCache cache;
+    private final Extractor fallback;
+    private final ThreadPoolExecutor pool;
+    private final ScheduledExecutorService flusher;
+    private final Map<String, List<Callback>> inFlight = new HashMap<>();
+    private boolean flushScheduled;
+
+    // Counters
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger extractions = new AtomicInteger();
+    private final AtomicInteger fallbackExtractions = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    MetadataService(File storeFile, Extractor fallback) {
+        this(storeFile, fallback, Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    MetadataService(File storeFile, Extractor fallback, int threads) {
+        this.cache = new MetadataCache(storeFile);
+        this.fallback = fallback;
+        AtomicInteger threadId = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                Thread t = new Thread(r, "SpredMetadata-" + threadId.incrementAndGet());
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "SpredMetadataFlush"));
+        this.pool.execute(cache::load);
+    }
+
+    /** Cached metadata for the file as it is now, or null. Never touches the file's contents. */
+    public VideoMetadata getCached(File file) {
+        return getCached(file.getAbsolutePath(), file.length(), file.lastModified());
+    }
+
+    /** Same, for callers that already have the stat results (library index entries). */
+    public VideoMetadata getCached(String path, long size, long lastModified) {
+        VideoMetadata cached = cache.get(path, size, lastModified);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /** Serve from cache or queue an extraction; {@code callback} may be null for backfill. */
+    public void request(File file, Callback callback) {
+        VideoMetadata cached = getCached(file);
+        if (cached != null) {
+            if (callback != null) {
+                callback.onMetadata(cached);
+            }
+            return;
+        }
+
+        String path = file.getAbsolutePath();
+        synchronized (inFlight) {
+            List<Callback> waiting = inFlight.get(path);
+            if (waiting != null) {
+                if (callback != null) {
+                    waiting.add(callback);
+                }
+                return;
+            }
+            waiting = new ArrayList<>();
+            if (callback != null) {
+                waiting.add(callback);
+            }
+            inFlight.put(path, waiting);
+        }
+
+        try {
+            pool.execute(() -> extract(file));
+        } catch (RejectedExecutionException e) {
+            complete(path, null, "Metadata queue full");
+        }
+    }
+
+    /** Queue extraction for a file that just arrived, so the library view finds it cached. */
+    public void backfill(File file) {
+        request(file, null);
+    }
+
+    /** Drop the cached entry for a file that was deleted. */
+    public void forget(File file) {
+        cache.remove(file.getAbsolutePath());
+        scheduleFlush();
+    }
+
+    private void extract(File file) {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        try {
+            VideoMetadata metadata;
+            try {
+                metadata = VideoHeaderParser.parse(file);
+            } catch (IOException | RuntimeException e) {
+                // A damaged header can underflow a buffer or ask for a negative array instead of failing cleanly
+                if (fallback == null) {
+                    throw e;
+                }
+                Log.d(TAG, "📋 Header parser gave up on " + file.getName() + " (" + e.getMessage() + "), using fallback");
+                fallbackExtractions.incrementAndGet();
+                metadata = fallback.extract(file);
+            }
+            extractions.incrementAndGet();
+            cache.put(path, size, lastModified, metadata);
+            scheduleFlush();
+            complete(path, metadata, null);
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            Log.w(TAG, "⚠️ Metadata extraction failed for " + file.getName() + ": " + e.getMessage());
+            complete(path, null, "Metadata extraction failed: " + e.getMessage());
+        }
+    }
+
+    private void complete(String path, VideoMetadata metadata, String error) {
+        List<Callback> waiting;
+        synchronized (inFlight) {
+            waiting = inFlight.remove(path);
+        }
+        if (waiting == null) {
+            return;
+        }
+        for (Callback callback : waiting) {
+            if (metadata != null) {
+                callback.onMetadata(metadata);
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (inFlight) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        flusher.schedule(() -> {
+            synchronized (inFlight) {
+                flushScheduled = false;
+            }
+            try {
+                cache.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Could not persist metadata cache: " + e.getMessage());
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public int getCachedCount() {
+        return cache.size();
+    }
+
+    public int getPendingCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    public int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public int getExtractions() {
+        return extractions.get();
+    }
+
+    public int getFallbackExtractions() {
+        return fallbackExtractions.get();
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,251 @@
+package com.spred.library;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * MkvHeaderParser - Reads video metadata from Matroska / WebM headers.
+ *
+ * Walks the Segment's top-level elements until the first Cluster, parsing
+ * Info (TimecodeScale, Duration) and Tracks (first video TrackEntry:
+ * CodecID, PixelWidth, PixelHeight). Plain Java, no Android APIs.
+ */
+final class MkvHeaderParser {
+    private static final int ID_EBML = 0x1A45DFA3;
+    private static final int ID_SEGMENT = 0x18538067;
+    private static final int ID_CLUSTER = 0x1F43B675;
+    private static final int ID_INFO = 0x1549A966;
+    private static final int ID_TRACKS = 0x1654AE6B;
+    private static final int ID_TIMECODE_SCALE = 0x2AD7B1;
+    private static final int ID_DURATION = 0x4489;
+    private static final int ID_TRACK_ENTRY = 0xAE;
+    private static final int ID_TRACK_TYPE = 0x83;
+    private static final int ID_CODEC_ID = 0x86;
+    private static final int ID_VIDEO = 0xE0;
+    private static final int ID_PIXEL_WIDTH = 0xB0;
+    private static final int ID_PIXEL_HEIGHT = 0xBA;
+
+    private static final int TRACK_TYPE_VIDEO = 1;
+    private static final long MAX_ELEMENT_BYTES = 8L * 1024 * 1024;
+    private static final long UNKNOWN_SIZE = -1;
+
+    private MkvHeaderParser() {
+    }
+
+    static VideoMetadata parse(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long fileSize = raf.length();
+            if (readId(raf) != ID_EBML) {
+                throw new IOException("Not an EBML file");
+            }
+            long ebmlSize = readSize(raf);
+            raf.seek(raf.getFilePointer() + ebmlSize);
+
+            if (readId(raf) != ID_SEGMENT) {
+                throw new IOException("No Matroska segment");
+            }
+            long segmentSize = readSize(raf);
+            long segmentEnd = segmentSize == UNKNOWN_SIZE ? fileSize : Math.min(fileSize, raf.getFilePointer() + segmentSize);
+
+            long timecodeScale = 1_000_000L;
+            double duration = 0;
+            String codec = null;
+            int width = 0;
+            int height = 0;
+            boolean haveTracks = false;
+
+            while (raf.getFilePointer() < segmentEnd && !(haveTracks && duration > 0)) {
+                int id = readId(raf);
+                long size = readSize(raf);
+                if (id == ID_CLUSTER || size == UNKNOWN_SIZE) {
+                    break;
+                }
+                if (id == ID_INFO || id == ID_TRACKS) {
+                    if (size > MAX_ELEMENT_BYTES) {
+                        throw new IOException("Unreasonable element size: " + size);
+                    }
+                    byte[] body = new byte[(int) size];
+                    raf.readFully(body);
+                    ByteBuffer buf = ByteBuffer.wrap(body);
+                    if (id == ID_INFO) {
+                        while (buf.hasRemaining()) {
+                            int child = readId(buf);
+                            int childSize = (int) readSize(buf);
+                            if (child == ID_TIMECODE_SCALE) {
+                                timecodeScale = readUnsigned(buf, childSize);
+                            } else if (child == ID_DURATION) {
+                                duration = childSize == 4 ? buf.getFloat() : buf.getDouble();
+                            } else {
+                                skip(buf, childSize);
+                            }
+                        }
+                    } else {
+                        haveTracks = true;
+                        while (buf.hasRemaining() && codec == null) {
+                            int child = readId(buf);
+                            int childSize = (int) readSize(buf);
+                            if (child != ID_TRACK_ENTRY) {
+                                skip(buf, childSize);
+                                continue;
+                            }
+                            ByteBuffer entry = slice(buf, childSize);
+                            long trackType = 0;
+                            String trackCodec = null;
+                            int trackWidth = 0;
+                            int trackHeight = 0;
+                            while (entry.hasRemaining()) {
+                                int field = readId(entry);
+                                int fieldSize = (int) readSize(entry);
+                                if (field == ID_TRACK_TYPE) {
+                                    trackType = readUnsigned(entry, fieldSize);
+                                } else if (field == ID_CODEC_ID) {
+                                    byte[] text = new byte[fieldSize];
+                                    entry.get(text);
+                                    trackCodec = new String(text, Charset.forName("US-ASCII")).trim();
+                                } else if (field == ID_VIDEO) {
+                                    ByteBuffer video = slice(entry, fieldSize);
+                                    while (video.hasRemaining()) {
+                                        int videoField = readId(video);
+                                        int videoFieldSize = (int) readSize(video);
+                                        if (videoField == ID_PIXEL_WIDTH) {
+                                            trackWidth = (int) readUnsigned(video, videoFieldSize);
+                                        } else if (videoField == ID_PIXEL_HEIGHT) {
+                                            trackHeight = (int) readUnsigned(video, videoFieldSize);
+                                        } else {
+                                            skip(video, videoFieldSize);
+                                        }
+                                    }
+                                } else {
+                                    skip(entry, fieldSize);
+                                }
+                            }
+                            if (trackType == TRACK_TYPE_VIDEO) {
+                                codec = codecName(trackCodec);
+                                width = trackWidth;
+                                height = trackHeight;
+                            }
+                        }
+                    }
+                } else {
+                    raf.seek(raf.getFilePointer() + size);
+                }
+            }
+
+            if (codec == null) {
+                throw new IOException("No video track");
+            }
+            long durationMs = Math.round(duration * timecodeScale / 1_000_000.0);
+            return new VideoMetadata(durationMs, width, height, codec, VideoMetadata.averageBitrate(fileSize, durationMs));
+        }
+    }
+
+    static String codecName(String codecId) {
+        if (codecId == null) {
+            return "unknown";
+        }
+        switch (codecId) {
+            case "V_MPEG4/ISO/AVC":
+                return "h264";
+            case "V_MPEGH/ISO/HEVC":
+                return "hevc";
+            case "V_VP8":
+                return "vp8";
+            case "V_VP9":
+                return "vp9";
+            case "V_AV1":
+                return "av1";
+            default:
+                return codecId;
+        }
+    }
+
+    // --- EBML variable-length integers ---
+
+    private static int readId(RandomAccessFile raf) throws IOException {
+        int first = raf.read();
+        if (first < 0) {
+            throw new EOFException();
+        }
+        int length = idLength(first);
+        int id = first;
+        for (int i = 1; i < length; i++) {
+            id = (id << 8) | raf.readUnsignedByte();
+        }
+        return id;
+    }
+
+    private static long readSize(RandomAccessFile raf) throws IOException {
+        int first = raf.readUnsignedByte();
+        int length = sizeLength(first);
+        long value = first & (0xFF >>> length);
+        boolean allOnes = value == (0xFF >>> length);
+        for (int i = 1; i < length; i++) {
+            int next = raf.readUnsignedByte();
+            allOnes &= next == 0xFF;
+            value = (value << 8) | next;
+        }
+        return allOnes ? UNKNOWN_SIZE : value;
+    }
+
+    private static int readId(ByteBuffer buf) throws IOException {
+        int first = buf.get() & 0xFF;
+        int length = idLength(first);
+        int id = first;
+        for (int i = 1; i < length; i++) {
+            id = (id << 8) | (buf.get() & 0xFF);
+        }
+        return id;
+    }
+
+    private static long readSize(ByteBuffer buf) throws IOException {
+        int first = buf.get() & 0xFF;
+        int length = sizeLength(first);
+        long value = first & (0xFF >>> length);
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (buf.get() & 0xFF);
+        }
+        if (value > buf.remaining()) {
+            throw new IOException("Element overruns its parent");
+        }
+        return value;
+    }
+
+    private static int idLength(int first) throws IOException {
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length < 1 || length > 4) {
+            throw new IOException("Invalid EBML id");
+        }
+        return length;
+    }
+
+    private static int sizeLength(int first) throws IOException {
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length < 1 || length > 8) {
+            throw new IOException("Invalid EBML size");
+        }
+        return length;
+    }
+
+    private static long readUnsigned(ByteBuffer buf, int size) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | (buf.get() & 0xFF);
+        }
+        return value;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int size) {
+        ByteBuffer child = buf.slice();
+        child.limit(size);
+        skip(buf, size);
+        return child;
+    }
+
+    private static void skip(ByteBuffer buf, int size) {
+        buf.position(buf.position() + size);
+    }
+}
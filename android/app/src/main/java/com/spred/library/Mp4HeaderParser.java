@@ -0,0 +1,219 @@
+package com.spred.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Mp4HeaderParser - Reads video metadata from the ISO BMFF 'moov' box.
+ *
+ * Only box headers are read until 'moov' is found (it may sit at the start
+ * or at the end of the file), then the moov payload is parsed in memory:
+ * mvhd for duration, and the first 'vide' track's tkhd / stsd for the
+ * resolution and codec. No Android APIs, so it runs on any JVM.
+ */
+final class Mp4HeaderParser {
+    // Real moov boxes are a few hundred KB even for long videos
+    private static final long MAX_MOOV_BYTES = 32L * 1024 * 1024;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private interface BoxVisitor {
+        void visit(String type, ByteBuffer body);
+    }
+
+    private static final class Track {
+        String handler;
+        int width;
+        int height;
+        String codec;
+    }
+
+    private Mp4HeaderParser() {
+    }
+
+    static VideoMetadata parse(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long fileSize = raf.length();
+            long offset = 0;
+            while (offset + 8 <= fileSize) {
+                raf.seek(offset);
+                long size = raf.readInt() & 0xFFFFFFFFL;
+                byte[] fourcc = new byte[4];
+                raf.readFully(fourcc);
+                String type = new String(fourcc, ASCII);
+                long header = 8;
+                if (size == 1) {
+                    size = raf.readLong();
+                    header = 16;
+                } else if (size == 0) {
+                    size = fileSize - offset;
+                }
+                if (size < header) {
+                    throw new IOException("Corrupt MP4 box '" + type + "' at " + offset);
+                }
+
+                if ("moov".equals(type)) {
+                    long bodySize = size - header;
+                    if (bodySize > MAX_MOOV_BYTES || offset + size > fileSize) {
+                        throw new IOException("Unreasonable moov box size: " + bodySize);
+                    }
+                    byte[] moov = new byte[(int) bodySize];
+                    raf.readFully(moov);
+                    return parseMoov(ByteBuffer.wrap(moov), fileSize);
+                }
+                offset += size;
+            }
+        }
+        throw new IOException("No moov box found");
+    }
+
+    private static VideoMetadata parseMoov(ByteBuffer moov, long fileSize) throws IOException {
+        final long[] duration = {0};
+        final Track[] video = {null};
+
+        forEachBox(moov, (type, body) -> {
+            if ("mvhd".equals(type)) {
+                int version = body.get() & 0xFF;
+                skip(body, 3);
+                long timescale;
+                long units;
+                if (version == 1) {
+                    skip(body, 16);
+                    timescale = body.getInt() & 0xFFFFFFFFL;
+                    units = body.getLong();
+                } else {
+                    skip(body, 8);
+                    timescale = body.getInt() & 0xFFFFFFFFL;
+                    units = body.getInt() & 0xFFFFFFFFL;
+                }
+                duration[0] = timescale > 0 ? units * 1000L / timescale : 0;
+            } else if ("trak".equals(type) && video[0] == null) {
+                Track track = parseTrack(body);
+                if ("vide".equals(track.handler)) {
+                    video[0] = track;
+                }
+            }
+        });
+
+        if (video[0] == null) {
+            throw new IOException("No video track");
+        }
+        return new VideoMetadata(duration[0], video[0].width, video[0].height, video[0].codec,
+            VideoMetadata.averageBitrate(fileSize, duration[0]));
+    }
+
+    private static Track parseTrack(ByteBuffer trak) {
+        Track track = new Track();
+        forEachBox(trak, (type, body) -> {
+            if ("tkhd".equals(type)) {
+                int version = body.get() & 0xFF;
+                skip(body, 3);
+                skip(body, version == 1 ? 32 : 20);
+                skip(body, 8 + 2 + 2 + 2 + 2 + 36);
+                track.width = body.getInt() >>> 16;  // 16.16 fixed point
+                track.height = body.getInt() >>> 16;
+            } else if ("mdia".equals(type)) {
+                parseMedia(body, track);
+            }
+        });
+        return track;
+    }
+
+    private static void parseMedia(ByteBuffer mdia, Track track) {
+        forEachBox(mdia, (type, body) -> {
+            if ("hdlr".equals(type)) {
+                skip(body, 8);
+                track.handler = fourcc(body);
+            } else if ("minf".equals(type)) {
+                forEachBox(body, (minfType, minfBody) -> {
+                    if ("stbl".equals(minfType)) {
+                        forEachBox(minfBody, (stblType, stblBody) -> {
+                            if ("stsd".equals(stblType)) {
+                                parseSampleDescription(stblBody, track);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    private static void parseSampleDescription(ByteBuffer stsd, Track track) {
+        skip(stsd, 8); // version/flags + entry count
+        if (stsd.remaining() < 8 + 28) {
+            return;
+        }
+        skip(stsd, 4);
+        track.codec = codecName(fourcc(stsd));
+        // VisualSampleEntry: reserved(6) data_reference_index(2) pre_defined/reserved(16) width(2) height(2)
+        skip(stsd, 24);
+        int width = stsd.getShort() & 0xFFFF;
+        int height = stsd.getShort() & 0xFFFF;
+        if (track.width == 0 || track.height == 0) {
+            track.width = width;
+            track.height = height;
+        }
+    }
+
+    static String codecName(String fourcc) {
+        switch (fourcc) {
+            case "avc1":
+            case "avc3":
+                return "h264";
+            case "hvc1":
+            case "hev1":
+                return "hevc";
+            case "vp09":
+                return "vp9";
+            case "av01":
+                return "av1";
+            case "mp4v":
+                return "mpeg4";
+            default:
+                return fourcc.trim();
+        }
+    }
+
+    private static void forEachBox(ByteBuffer buffer, BoxVisitor visitor) {
+        ByteBuffer buf = buffer.slice();
+        while (buf.remaining() >= 8) {
+            int start = buf.position();
+            long size = buf.getInt() & 0xFFFFFFFFL;
+            String type = fourcc(buf);
+            int header = 8;
+            if (size == 1) {
+                if (buf.remaining() < 8) {
+                    return;
+                }
+                size = buf.getLong();
+                header = 16;
+            } else if (size == 0) {
+                size = buf.limit() - start;
+            }
+            if (size < header || start + size > buf.limit()) {
+                return;
+            }
+            ByteBuffer body = buf.duplicate();
+            body.position(start + header);
+            body.limit((int) (start + size));
+            try {
+                visitor.visit(type, body.slice());
+            } catch (RuntimeException e) {
+                // Truncated child box - ignore it and keep what we have
+            }
+            buf.position((int) (start + size));
+        }
+    }
+
+    private static String fourcc(ByteBuffer buf) {
+        byte[] bytes = new byte[4];
+        buf.get(bytes);
+        return new String(bytes, ASCII);
+    }
+
+    private static void skip(ByteBuffer buf, int count) {
+        buf.position(buf.position() + count);
+    }
+}
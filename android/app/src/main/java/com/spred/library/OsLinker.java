@@ -0,0 +1,34 @@
+package com.spred.library;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * OsLinker - Hard links through android.system.Os (java.nio.file needs API 26).
+ */
+final class OsLinker implements BlobStore.Linker {
+
+    @Override
+    public void link(File existing, File newLink) throws IOException {
+        try {
+            Os.link(existing.getAbsolutePath(), newLink.getAbsolutePath());
+        } catch (ErrnoException e) {
+            throw new IOException("link failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isSameFile(File a, File b) throws IOException {
+        try {
+            StructStat sa = Os.stat(a.getAbsolutePath());
+            StructStat sb = Os.stat(b.getAbsolutePath());
+            return sa.st_dev == sb.st_dev && sa.st_ino == sb.st_ino;
+        } catch (ErrnoException e) {
+            throw new IOException("stat failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.spred.library;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ReceivedLibrary - Process-wide catalog of the SpredP2PReceived folder.
+ *
+ * Shared by WifiDirectModule and QuickShareReceiverActivity so both see the
+ * same index. While a LibraryWatcher is running the index is kept current by
+ * file events; otherwise callers get a rescan whenever the folder may have
+ * changed since the last one.
+ */
+public final class ReceivedLibrary implements IngestService.Destination {
+    private static final String TAG = "ReceivedLibrary";
+    public static final String FOLDER_NAME = "SpredP2PReceived";
+
+    // JS can forget closeCursor; the least recently used cursor is dropped beyond this
+    static final int MAX_OPEN_CURSORS = 8;
+
+    private static ReceivedLibrary instance;
+
+    private final File directory;
+    private final LibraryIndex index;
+    private final MetadataService metadata;
+    private final ThumbnailService thumbnails;
+    private final ContentIndex content;
+    private final BlobStore blobs;
+    private final StorageQuota quota;
+    private final IngestService ingest;
+    private LibraryWatcher watcher;
+    private boolean collectedSinceLaunch;
+
+    private final Map<String, LibraryCursor> cursors = new LinkedHashMap<>();
+    private int nextCursorId = 1;
+
+    // Thumbnails are ~15-25 KB at 320 px, so these hold a few hundred / a few thousand
+    static final long THUMBNAIL_MEMORY_BUDGET_BYTES = Math.min(8L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 32);
+    static final long THUMBNAIL_DISK_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private ReceivedLibrary(File directory, File stateDirectory, File cacheDirectory) {
+        this.directory = directory;
+        this.index = new LibraryIndex(directory);
+        this.metadata = new MetadataService(new File(stateDirectory, "spred_metadata.tsv"), new RetrieverExtractor());
+        this.thumbnails = new ThumbnailService(
+            new ThumbnailCache(new File(cacheDirectory, "spred_thumbnails"), THUMBNAIL_MEMORY_BUDGET_BYTES, THUMBNAIL_DISK_BUDGET_BYTES),
+            new RetrieverFrameDecoder(), 2);
+        this.content = new ContentIndex(new File(stateDirectory, "spred_content_index.tsv"));
+        this.blobs = new BlobStore(directory, new OsLinker());
+        this.quota = new StorageQuota(new File(stateDirectory, "spred_playback.tsv"));
+        this.ingest = new IngestService(this);
+        // Runs on the hashing thread, so re-index requests queued behind it see the refreshed record
+        this.content.setFullHashListener(record -> {
+            File file = new File(record.path);
+            if (!directory.equals(file.getParentFile())) {
+                return;
+            }
+            try {
+                if (blobs.ingest(file, record.fullHash) == BlobStore.Outcome.DEDUPED) {
+                    content.refresh(record);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Blob ingest failed for " + file.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    public static synchronized ReceivedLibrary get(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            File root = app.getExternalFilesDir(null);
+            instance = new ReceivedLibrary(new File(root, FOLDER_NAME), app.getFilesDir(), app.getCacheDir());
+        }
+        return instance;
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    public MetadataService getMetadataService() {
+        return metadata;
+    }
+
+    public ThumbnailService getThumbnailService() {
+        return thumbnails;
+    }
+
+    public ContentIndex getContentIndex() {
+        return content;
+    }
+
+    public IngestService getIngestService() {
+        return ingest;
+    }
+
+    BlobStore getBlobStore() {
+        return blobs;
+    }
+
+    /** Unreferenced blobs are deleted; returns how many. */
+    public int collectGarbage() {
+        Set<String> present = new HashSet<>();
+        for (LibraryIndex.Entry entry : getIndex().snapshot()) {
+            present.add(entry.name);
+        }
+        return blobs.collectGarbage(present);
+    }
+
+    public int getBlobCount() {
+        return blobs.getBlobCount();
+    }
+
+    public long getUniqueBytes() {
+        return blobs.getUniqueBytes();
+    }
+
+    public long getLogicalBytes() {
+        return blobs.getLogicalBytes();
+    }
+
+    public long getDedupeSavedBytes() {
+        return blobs.getSavedBytes();
+    }
+
+    public int getDedupeCount() {
+        return blobs.getDedupes();
+    }
+
+    public int getLinkFailures() {
+        return blobs.getLinkFailures();
+    }
+
+    /**
+     * A file finished arriving (P2P receive or Quick Share). Warms the
+     * per-file caches in the background so the library view finds it ready.
+     */
+    @Override
+    public void onFileArrived(File file) {
+        if (file != null && LibraryIndex.isLibraryFile(file.getName())) {
+            metadata.backfill(file);
+            thumbnails.request(file, ThumbnailService.PRIORITY_BACKGROUND, null);
+            content.indexAsync(file);
+            index.invalidate();
+        }
+    }
+
+    /** The index, rescanned first if stale unless a watcher is keeping it current. */
+    public synchronized LibraryIndex getIndex() {
+        if (watcher == null && (index.rescanIfStale(System.currentTimeMillis()) || index.hasPendingChanges())) {
+            afterRescan(index.drainDelta());
+        }
+        return index;
+    }
+
+    private void afterRescan(LibraryIndex.Delta delta) {
+        List<LibraryIndex.Entry> snapshot = index.snapshot();
+        content.sync(snapshot);
+        if (!collectedSinceLaunch) {
+            // Files deleted while the app was closed never produced a delta
+            collectedSinceLaunch = true;
+            Set<String> present = new HashSet<>();
+            for (LibraryIndex.Entry entry : snapshot) {
+                present.add(entry.name);
+            }
+            blobs.collectGarbage(present);
+        } else {
+            for (String name : delta.removed) {
+                blobs.onNameRemoved(name);
+                quota.forget(name);
+            }
+        }
+    }
+
+    /** Outcome of the storage check that runs before a receive starts. */
+    public static final class Preflight {
+        public final boolean allowed;
+        public final String code;
+        public final String message;
+        public final int evicted;
+        public final long freedBytes;
+
+        Preflight(boolean allowed, String code, String message, int evicted, long freedBytes) {
+            this.allowed = allowed;
+            this.code = code;
+            this.message = message;
+            this.evicted = evicted;
+            this.freedBytes = freedBytes;
+        }
+    }
+
+    /**
+     * Make sure {@code incomingBytes} fit in {@code destinationDir}. For the
+     * library folder this enforces the cap and evicts least recently used
+     * videos when needed; other destinations only get the free-space check.
+     */
+    @Override
+    public Preflight preflight(File destinationDir, long incomingBytes) {
+        return preflight(destinationDir, incomingBytes, null);
+    }
+
+    /** As preflight(), but never evicts {@code keep}, e.g. the base a delta receive reads from. */
+    public synchronized Preflight preflight(File destinationDir, long incomingBytes, File keep) {
+        if (!destinationDir.exists()) {
+            destinationDir.mkdirs();
+        }
+        boolean isLibrary = directory.getAbsoluteFile().equals(destinationDir.getAbsoluteFile());
+        List<StorageQuota.Item> items = isLibrary ? usageItems() : new ArrayList<StorageQuota.Item>();
+        Set<String> kept = keep != null && directory.getAbsoluteFile().equals(keep.getAbsoluteFile().getParentFile())
+            ? Collections.singleton(keep.getName()) : Collections.<String>emptySet();
+        StorageQuota.Plan plan = StorageQuota.plan(items, Math.max(0, incomingBytes), destinationDir.getUsableSpace(),
+            isLibrary ? quota.getCapBytes() : StorageQuota.UNLIMITED, quota.getReserveBytes(), kept);
+
+        List<StorageQuota.Item> evicted = new ArrayList<>();
+        if (plan.allowed) {
+            for (StorageQuota.Item victim : plan.victims) {
+                File file = new File(directory, victim.name);
+                if (!file.delete() && file.exists()) {
+                    Log.w(TAG, "⚠️ Could not evict " + victim.name);
+                    continue;
+                }
+                Log.d(TAG, "🗑️ Evicted " + victim.name + " (" + victim.size + " bytes, last used " + victim.lastUsedAt + ")");
+                evicted.add(victim);
+                content.remove(file.getAbsolutePath());
+                blobs.onNameRemoved(victim.name);
+                quota.forget(victim.name);
+                if (watcher == null) {
+                    index.reconcile(victim.name); // A running watcher reports the delete itself
+                    index.invalidate();
+                }
+            }
+        }
+        quota.recordPreflight(plan, evicted, plan.allowed ? plan.bytesFreed : 0);
+        return new Preflight(plan.allowed, plan.rejectCode, plan.reason, evicted.size(), plan.allowed ? plan.bytesFreed : 0);
+    }
+
+    /** Library files for the quota planner; names sharing a blob share a content key. */
+    private List<StorageQuota.Item> usageItems() {
+        List<StorageQuota.Item> items = new ArrayList<>();
+        for (LibraryIndex.Entry entry : getIndex().snapshot()) {
+            String hash = blobs.hashOf(entry.name);
+            items.add(new StorageQuota.Item(entry.name, entry.size, quota.lastUsedAt(entry.name, entry.lastModified),
+                hash != null ? hash : "path:" + entry.path));
+        }
+        return items;
+    }
+
+    /** Bytes the library occupies, counting shared blobs once. */
+    public synchronized long getUsedBytes() {
+        Set<String> seen = new HashSet<>();
+        long used = 0;
+        for (StorageQuota.Item item : usageItems()) {
+            if (seen.add(item.contentKey)) {
+                used += item.size;
+            }
+        }
+        return used;
+    }
+
+    public void markPlayed(File file) {
+        if (directory.getAbsoluteFile().equals(file.getAbsoluteFile().getParentFile())) {
+            quota.markPlayed(file.getName(), System.currentTimeMillis());
+        }
+    }
+
+    public long getStorageCapBytes() {
+        return quota.getCapBytes();
+    }
+
+    /** 0 removes the cap. */
+    public void setStorageCapBytes(long capBytes) {
+        quota.setCapBytes(capBytes);
+    }
+
+    public long getStorageReserveBytes() {
+        return quota.getReserveBytes();
+    }
+
+    public int getQuotaPreflights() {
+        return quota.getPreflights();
+    }
+
+    public int getQuotaRejections() {
+        return quota.getRejections();
+    }
+
+    public int getQuotaEvictions() {
+        return quota.getEvictions();
+    }
+
+    public long getQuotaEvictedBytes() {
+        return quota.getEvictedBytes();
+    }
+
+    public synchronized boolean isWatching() {
+        return watcher != null;
+    }
+
+    public synchronized void startWatching(LibraryWatcher.Listener listener) {
+        if (watcher != null) {
+            return;
+        }
+        // Baseline without emitting it; listeners only get changes from here on
+        index.rescan();
+        afterRescan(index.drainDelta());
+        watcher = new LibraryWatcher(index, (delta, total) -> {
+            for (LibraryIndex.Entry entry : delta.added) {
+                content.indexAsync(new File(entry.path));
+            }
+            for (LibraryIndex.Entry entry : delta.updated) {
+                content.indexAsync(new File(entry.path));
+            }
+            for (String name : delta.removed) {
+                content.remove(new File(directory, name).getAbsolutePath());
+                blobs.onNameRemoved(name);
+                quota.forget(name);
+            }
+            listener.onLibraryChanged(delta, total);
+        });
+        watcher.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+            index.invalidate(); // Events still queued on the watcher thread are lost
+        }
+    }
+
+    public synchronized LibraryCursor openCursor(LibraryCursor.Sort sort, String filter) {
+        if (cursors.size() >= MAX_OPEN_CURSORS) {
+            evictLeastRecentlyUsedCursor();
+        }
+        LibraryCursor cursor = new LibraryCursor("cursor_" + nextCursorId++, getIndex().snapshot(), sort, filter);
+        cursors.put(cursor.getId(), cursor);
+        return cursor;
+    }
+
+    public synchronized LibraryCursor getCursor(String id) {
+        return cursors.get(id);
+    }
+
+    public synchronized boolean closeCursor(String id) {
+        return cursors.remove(id) != null;
+    }
+
+    private void evictLeastRecentlyUsedCursor() {
+        String oldestId = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (Iterator<LibraryCursor> it = cursors.values().iterator(); it.hasNext(); ) {
+            LibraryCursor cursor = it.next();
+            if (cursor.getLastAccessAt() < oldestAccess) {
+                oldestAccess = cursor.getLastAccessAt();
+                oldestId = cursor.getId();
+            }
+        }
+        if (oldestId != null) {
+            cursors.remove(oldestId);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.spred.library;
+
+import android.media.MediaMetadataRetriever;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * RetrieverExtractor - MediaMetadataRetriever fallback for containers the
+ * header parser doesn't understand (AVI, fragmented or odd MP4s).
+ */
+final class RetrieverExtractor implements MetadataService.Extractor {
+
+    @Override
+    public VideoMetadata extract(File file) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(file.getAbsolutePath());
+            long durationMs = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+            int width = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+            int height = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+            long bitrate = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE));
+            String mime = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE);
+            if (bitrate <= 0) {
+                bitrate = VideoMetadata.averageBitrate(file.length(), durationMs);
+            }
+            return new VideoMetadata(durationMs, width, height, mime != null ? mime : "unknown", bitrate);
+        } catch (RuntimeException e) {
+            throw new IOException("MediaMetadataRetriever failed: " + e.getMessage(), e);
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception ignored) {
+                // release() throws IOException on API 29+
+            }
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
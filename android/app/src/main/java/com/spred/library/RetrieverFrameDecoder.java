@@ -0,0 +1,70 @@
+package com.spred.library;
+
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * RetrieverFrameDecoder - Grabs a frame one second in (or the first sync
+ * frame) with MediaMetadataRetriever and encodes it as a JPEG.
+ */
+final class RetrieverFrameDecoder implements ThumbnailService.FrameDecoder {
+    private static final long FRAME_TIME_US = 1_000_000L;
+    private static final int JPEG_QUALITY = 80;
+
+    @Override
+    public byte[] decodeThumbnail(File video, int maxSizePx) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        Bitmap frame = null;
+        try {
+            retriever.setDataSource(video.getAbsolutePath());
+            frame = frameAt(retriever, FRAME_TIME_US, maxSizePx);
+            if (frame == null) {
+                frame = frameAt(retriever, 0, maxSizePx);
+            }
+            if (frame == null) {
+                throw new IOException("No decodable frame");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+            frame.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            return out.toByteArray();
+        } catch (RuntimeException e) {
+            throw new IOException("MediaMetadataRetriever failed: " + e.getMessage(), e);
+        } finally {
+            if (frame != null) {
+                frame.recycle();
+            }
+            try {
+                retriever.release();
+            } catch (Exception ignored) {
+                // release() throws IOException on API 29+
+            }
+        }
+    }
+
+    /** getScaledFrameAtTime is API 27; older devices decode at full size and scale down here. */
+    private static Bitmap frameAt(MediaMetadataRetriever retriever, long timeUs, int maxSizePx) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            return retriever.getScaledFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, maxSizePx, maxSizePx);
+        }
+        Bitmap full = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+        if (full == null) {
+            return null;
+        }
+        int longest = Math.max(full.getWidth(), full.getHeight());
+        if (longest <= maxSizePx) {
+            return full;
+        }
+        float scale = (float) maxSizePx / longest;
+        Bitmap scaled = Bitmap.createScaledBitmap(full, Math.max(1, Math.round(full.getWidth() * scale)),
+            Math.max(1, Math.round(full.getHeight() * scale)), true);
+        if (scaled != full) {
+            full.recycle();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,274 @@
+package com.spred.library;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StorageQuota - Cap and free-space policy for SpredP2PReceived.
+ *
+ * Before a receive starts, plan() works out whether the incoming file fits
+ * under the cap and above the device free-space reserve. If not, the least
+ * recently used videos (last played, or received if never played) are
+ * picked as victims until enough space is freed. Files sharing a blob only
+ * free space once their last name goes. If even evicting everything isn't
+ * enough, the receive is rejected before any bytes flow.
+ *
+ * Last-played times persist to a small TSV next to the other library state.
+ */
+final class StorageQuota {
+    private static final String TAG = "StorageQuota";
+    private static final String HEADER = "spred-playback\t1";
+
+    /** Never fill the device completely; the OS and other apps need room too. */
+    static final long DEFAULT_RESERVE_BYTES = 200L * 1024 * 1024;
+    /** 0 = no cap, only the free-space reserve applies. */
+    static final long UNLIMITED = 0;
+
+    /** One library file as the planner sees it. */
+    static final class Item {
+        final String name;
+        final long size;
+        final long lastUsedAt;
+        final String contentKey;
+
+        Item(String name, long size, long lastUsedAt, String contentKey) {
+            this.name = name;
+            this.size = size;
+            this.lastUsedAt = lastUsedAt;
+            this.contentKey = contentKey;
+        }
+    }
+
+    static final class Plan {
+        final boolean allowed;
+        final List<Item> victims;
+        final long bytesToFree;
+        final long bytesFreed;
+        final String rejectCode;
+        final String reason;
+
+        private Plan(boolean allowed, List<Item> victims, long bytesToFree, long bytesFreed, String rejectCode, String reason) {
+            this.allowed = allowed;
+            this.victims = victims;
+            this.bytesToFree = bytesToFree;
+            this.bytesFreed = bytesFreed;
+            this.rejectCode = rejectCode;
+            this.reason = reason;
+        }
+
+        static Plan allow(List<Item> victims, long bytesToFree, long bytesFreed) {
+            return new Plan(true, victims, bytesToFree, bytesFreed, null, null);
+        }
+
+        static Plan reject(String code, String reason, long bytesToFree) {
+            return new Plan(false, Collections.<Item>emptyList(), bytesToFree, 0, code, reason);
+        }
+    }
+
+    private final File playbackFile;
+    private final Map<String, Long> lastPlayed = new ConcurrentHashMap<>();
+    private volatile long capBytes = UNLIMITED;
+    private volatile long reserveBytes = DEFAULT_RESERVE_BYTES;
+    private boolean loaded;
+
+    // Counters
+    private volatile int preflights;
+    private volatile int rejections;
+    private volatile int evictions;
+    private volatile long evictedBytes;
+
+    StorageQuota(File playbackFile) {
+        this.playbackFile = playbackFile;
+    }
+
+    static Plan plan(List<Item> items, long incoming, long usableBytes, long capBytes, long reserveBytes) {
+        return plan(items, incoming, usableBytes, capBytes, reserveBytes, Collections.<String>emptySet());
+    }
+
+    /**
+     * Pure planning: which items to evict so {@code incoming} bytes fit.
+     * {@code usableBytes} is the device's free space for the library volume.
+     * Names in {@code keep} count towards usage but are never evicted (the
+     * base a delta receive is about to build on).
+     */
+    static Plan plan(List<Item> items, long incoming, long usableBytes, long capBytes, long reserveBytes, Set<String> keep) {
+        if (capBytes > UNLIMITED && incoming > capBytes) {
+            return Plan.reject("FILE_EXCEEDS_QUOTA",
+                "File (" + incoming + " bytes) is larger than the storage cap (" + capBytes + " bytes)", incoming - capBytes);
+        }
+
+        Map<String, Integer> refs = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        long used = 0;
+        for (Item item : items) {
+            Integer count = refs.get(item.contentKey);
+            refs.put(item.contentKey, count == null ? 1 : count + 1);
+            if (count == null) {
+                sizes.put(item.contentKey, item.size);
+                used += item.size;
+            }
+        }
+
+        long needForCap = capBytes > UNLIMITED ? Math.max(0, used + incoming - capBytes) : 0;
+        long needForDisk = Math.max(0, incoming + reserveBytes - usableBytes);
+        long need = Math.max(needForCap, needForDisk);
+        if (need == 0) {
+            return Plan.allow(Collections.<Item>emptyList(), 0, 0);
+        }
+
+        Item[] byAge = items.toArray(new Item[0]);
+        Arrays.sort(byAge, (a, b) -> Long.compare(a.lastUsedAt, b.lastUsedAt));
+        List<Item> victims = new ArrayList<>();
+        long freed = 0;
+        for (Item item : byAge) {
+            if (freed >= need) {
+                break;
+            }
+            if (keep.contains(item.name)) {
+                continue;
+            }
+            victims.add(item);
+            int remaining = refs.get(item.contentKey) - 1;
+            refs.put(item.contentKey, remaining);
+            if (remaining == 0) {
+                freed += sizes.get(item.contentKey);
+            }
+        }
+        if (freed < need) {
+            return Plan.reject("INSUFFICIENT_STORAGE", "Need " + need + " bytes but only " + freed +
+                " can be freed from received videos (" + usableBytes + " bytes free on device)", need);
+        }
+        return Plan.allow(victims, need, freed);
+    }
+
+    /** Most recent use of a file: last played, or when it arrived. */
+    long lastUsedAt(String name, long lastModified) {
+        ensureLoaded();
+        Long played = lastPlayed.get(name);
+        return played != null ? Math.max(played, lastModified) : lastModified;
+    }
+
+    void markPlayed(String name, long when) {
+        ensureLoaded();
+        lastPlayed.put(name, when);
+        persist();
+    }
+
+    void forget(String name) {
+        ensureLoaded();
+        if (lastPlayed.remove(name) != null) {
+            persist();
+        }
+    }
+
+    void recordPreflight(Plan plan, List<Item> evicted, long freedBytes) {
+        preflights++;
+        if (!plan.allowed) {
+            rejections++;
+        }
+        evictions += evicted.size();
+        evictedBytes += freedBytes;
+    }
+
+    long getCapBytes() {
+        return capBytes;
+    }
+
+    void setCapBytes(long capBytes) {
+        this.capBytes = Math.max(UNLIMITED, capBytes);
+    }
+
+    long getReserveBytes() {
+        return reserveBytes;
+    }
+
+    void setReserveBytes(long reserveBytes) {
+        this.reserveBytes = Math.max(0, reserveBytes);
+    }
+
+    int getPreflights() {
+        return preflights;
+    }
+
+    int getRejections() {
+        return rejections;
+    }
+
+    int getEvictions() {
+        return evictions;
+    }
+
+    long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    // --- Persistence ---
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!playbackFile.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(playbackFile), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    try {
+                        lastPlayed.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+                    } catch (NumberFormatException e) {
+                        // Skip the corrupt line, keep the rest
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Playback log unreadable, starting empty: " + e.getMessage());
+        }
+    }
+
+    private synchronized void persist() {
+        File temp = new File(playbackFile.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Long> entry : lastPlayed.entrySet()) {
+                if (entry.getKey().indexOf('\n') >= 0) {
+                    continue;
+                }
+                writer.write(entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Could not write playback log: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(playbackFile)) {
+            Log.w(TAG, "⚠️ Could not replace playback log");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.spred.library;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ThumbnailCache - Memory LRU in front of a size-bounded disk cache.
+ *
+ * Both tiers hold encoded JPEG bytes under a content key. The memory tier is
+ * an access-ordered LinkedHashMap bounded by total bytes; the disk tier is
+ * one file per key, evicted oldest-access-first (a hit bumps the file's
+ * mtime) once it grows past its byte budget. Plain java.io, so the whole
+ * cache runs in a JVM test with a fake decoder behind it.
+ */
+final class ThumbnailCache {
+    private static final String SUFFIX = ".jpg";
+
+    private final long memoryBudgetBytes;
+    private final long diskBudgetBytes;
+    private final File diskDirectory;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes = -1; // Unknown until the first disk access
+
+    // Counters
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long memoryEvictions;
+    private long diskEvictions;
+
+    ThumbnailCache(File diskDirectory, long memoryBudgetBytes, long diskBudgetBytes) {
+        this.diskDirectory = diskDirectory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.diskBudgetBytes = diskBudgetBytes;
+    }
+
+    /** Memory tier only; safe to call on any thread, never touches disk. */
+    synchronized byte[] getFromMemory(String key) {
+        byte[] jpeg = memory.get(key);
+        if (jpeg != null) {
+            memoryHits++;
+        }
+        return jpeg;
+    }
+
+    /** Memory, then disk (promoting to memory). Null on a miss. */
+    byte[] get(String key) {
+        byte[] jpeg = getFromMemory(key);
+        if (jpeg != null) {
+            return jpeg;
+        }
+        File file = fileFor(key);
+        if (file.isFile()) {
+            try {
+                jpeg = readFully(file);
+                file.setLastModified(System.currentTimeMillis());
+                synchronized (this) {
+                    diskHits++;
+                    putInMemory(key, jpeg);
+                }
+                return jpeg;
+            } catch (IOException e) {
+                file.delete();
+            }
+        }
+        synchronized (this) {
+            misses++;
+        }
+        return null;
+    }
+
+    void put(String key, byte[] jpeg) throws IOException {
+        synchronized (this) {
+            putInMemory(key, jpeg);
+            // Before the write: a first scan after it would count this file, and then the += below again
+            ensureDiskSizeKnown();
+        }
+        if (!diskDirectory.exists()) {
+            diskDirectory.mkdirs();
+        }
+        File file = fileFor(key);
+        File temp = new File(diskDirectory, "." + key + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(jpeg);
+        }
+        long previous = file.isFile() ? file.length() : 0;
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not store thumbnail " + key);
+        }
+        synchronized (this) {
+            diskBytes += jpeg.length - previous;
+            if (diskBytes > diskBudgetBytes) {
+                trimDisk();
+            }
+        }
+    }
+
+    // java.nio.file needs API 26; minSdk is 21
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    File fileFor(String key) {
+        return new File(diskDirectory, key + SUFFIX);
+    }
+
+    private void putInMemory(String key, byte[] jpeg) {
+        if (jpeg.length > memoryBudgetBytes) {
+            return;
+        }
+        byte[] previous = memory.put(key, jpeg);
+        if (previous != null) {
+            memoryBytes -= previous.length;
+        }
+        memoryBytes += jpeg.length;
+        Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+        while (memoryBytes > memoryBudgetBytes && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            memoryBytes -= eldest.getValue().length;
+            it.remove();
+            memoryEvictions++;
+        }
+    }
+
+    private void ensureDiskSizeKnown() {
+        if (diskBytes >= 0) {
+            return;
+        }
+        diskBytes = 0;
+        for (File file : listCached()) {
+            diskBytes += file.length();
+        }
+    }
+
+    /** Drop least recently used files until the disk tier is back under 90% of budget. */
+    private void trimDisk() {
+        List<File> files = listCached();
+        File[] byAge = files.toArray(new File[0]);
+        long[] ages = new long[byAge.length];
+        for (int i = 0; i < byAge.length; i++) {
+            ages[i] = byAge[i].lastModified(); // Stat once, not per comparison
+        }
+        Integer[] order = new Integer[byAge.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(ages[a], ages[b]));
+
+        long target = diskBudgetBytes * 9 / 10;
+        for (Integer i : order) {
+            if (diskBytes <= target) {
+                break;
+            }
+            long length = byAge[i].length();
+            if (byAge[i].delete()) {
+                diskBytes -= length;
+                diskEvictions++;
+            }
+        }
+    }
+
+    private List<File> listCached() {
+        List<File> result = new ArrayList<>();
+        File[] files = diskDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(SUFFIX)) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getMemoryEvictions() {
+        return memoryEvictions;
+    }
+
+    synchronized long getDiskEvictions() {
+        return diskEvictions;
+    }
+
+    synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    synchronized int getMemoryEntries() {
+        return memory.size();
+    }
+
+    synchronized long getDiskBytes() {
+        ensureDiskSizeKnown();
+        return diskBytes;
+    }
+
+    long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    long getDiskBudgetBytes() {
+        return diskBudgetBytes;
+    }
+
+    /** Fraction of lookups served without decoding. */
+    synchronized double getHitRate() {
+        long total = memoryHits + diskHits + misses;
+        return total == 0 ? 0 : (double) (memoryHits + diskHits) / total;
+    }
+}
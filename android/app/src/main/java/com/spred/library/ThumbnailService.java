@@ -0,0 +1,299 @@
+package com.spred.library;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ThumbnailService - Decodes each video's thumbnail once and serves it from
+ * ThumbnailCache afterwards.
+ *
+ * Requests for the same file while a decode is queued or running share that
+ * decode. Decodes run on a small pool fed by a priority queue: thumbnails
+ * for rows on screen jump ahead of backfill work, and prioritize() re-ranks
+ * queued work when the list scrolls.
+ */
+public final class ThumbnailService {
+    private static final String TAG = "ThumbnailService";
+
+    public static final int PRIORITY_BACKGROUND = 0;
+    public static final int PRIORITY_VISIBLE = 1;
+
+    static final int DEFAULT_MAX_SIZE_PX = 320;
+
+    /** Produces an encoded JPEG thumbnail; the device uses MediaMetadataRetriever. */
+    public interface FrameDecoder {
+        byte[] decodeThumbnail(File video, int maxSizePx) throws IOException;
+    }
+
+    public interface Callback {
+        void onThumbnail(String key, byte[] jpeg, File cachedFile);
+
+        void onError(String message);
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        final File video;
+        final String key;
+        final long sequence;
+        volatile int priority;
+
+        Task(File video, String key, int priority) {
+            this.video = video;
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequenceCounter.incrementAndGet();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return other.priority - priority;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            decode(this);
+        }
+    }
+
+    private final ThumbnailCache cache;
+    private final FrameDecoder decoder;
+    private final int maxSizePx;
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong sequenceCounter = new AtomicLong();
+
+    // Keyed by video path
+    private final Map<String, Task> queued = new HashMap<>();
+    private final Map<String, List<Callback>> waiting = new HashMap<>();
+
+    // Counters
+    private final AtomicInteger decodes = new AtomicInteger();
+    private final AtomicInteger coalesced = new AtomicInteger();
+    private final AtomicInteger promotions = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong decodeTimeMs = new AtomicLong();
+
+    ThumbnailService(ThumbnailCache cache, FrameDecoder decoder, int threads) {
+        this(cache, decoder, threads, DEFAULT_MAX_SIZE_PX);
+    }
+
+    ThumbnailService(ThumbnailCache cache, FrameDecoder decoder, int threads, int maxSizePx) {
+        this.cache = cache;
+        this.decoder = decoder;
+        this.maxSizePx = maxSizePx;
+        AtomicInteger threadId = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "SpredThumbnail-" + threadId.incrementAndGet());
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Thumbnail key from the file's identity rather than its path, so the
+     * cache survives the app's storage path changing between installs.
+     */
+    static String keyFor(File video) {
+        String identity = video.getName() + "|" + video.length() + "|" + video.lastModified();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(identity.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Memory hit answers inline; anything else is queued at {@code priority}. */
+    public void request(File video, int priority, Callback callback) {
+        String key = keyFor(video);
+        byte[] jpeg = cache.getFromMemory(key);
+        if (jpeg != null) {
+            if (callback != null) {
+                callback.onThumbnail(key, jpeg, cache.fileFor(key));
+            }
+            return;
+        }
+
+        String path = video.getAbsolutePath();
+        synchronized (this) {
+            List<Callback> callbacks = waiting.get(path);
+            if (callbacks != null) {
+                coalesced.incrementAndGet();
+                if (callback != null) {
+                    callbacks.add(callback);
+                }
+                Task task = queued.get(path);
+                if (task != null && priority > task.priority) {
+                    promote(task, priority);
+                }
+                return;
+            }
+            callbacks = new ArrayList<>();
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+            waiting.put(path, callbacks);
+            Task task = new Task(video, key, priority);
+            queued.put(path, task);
+            pool.execute(task);
+        }
+    }
+
+    /** Bump queued work for these paths (the rows now on screen) ahead of everything else. */
+    public void prioritize(Collection<String> visiblePaths) {
+        synchronized (this) {
+            for (String path : visiblePaths) {
+                Task task = queued.get(path);
+                if (task != null && task.priority < PRIORITY_VISIBLE) {
+                    promote(task, PRIORITY_VISIBLE);
+                }
+            }
+        }
+    }
+
+    private void promote(Task task, int priority) {
+        // PriorityBlockingQueue only orders on insert, so re-insert with the new rank
+        if (pool.getQueue().remove(task)) {
+            task.priority = priority;
+            pool.getQueue().add(task);
+            promotions.incrementAndGet();
+        }
+    }
+
+    private void decode(Task task) {
+        String path = task.video.getAbsolutePath();
+        synchronized (this) {
+            queued.remove(path);
+        }
+        byte[] jpeg = cache.get(task.key);
+        String error = null;
+        if (jpeg == null) {
+            long start = System.currentTimeMillis();
+            try {
+                jpeg = decoder.decodeThumbnail(task.video, maxSizePx);
+                decodes.incrementAndGet();
+                decodeTimeMs.addAndGet(System.currentTimeMillis() - start);
+                cache.put(task.key, jpeg);
+            } catch (IOException | RuntimeException e) {
+                if (jpeg == null) {
+                    failures.incrementAndGet();
+                    error = "Thumbnail decode failed: " + e.getMessage();
+                    Log.w(TAG, "⚠️ " + error + " (" + task.video.getName() + ")");
+                } else {
+                    Log.w(TAG, "⚠️ Could not write thumbnail to disk cache: " + e.getMessage());
+                }
+            }
+        }
+
+        List<Callback> callbacks;
+        synchronized (this) {
+            callbacks = waiting.remove(path);
+        }
+        if (callbacks == null) {
+            return;
+        }
+        for (Callback callback : callbacks) {
+            if (jpeg != null) {
+                callback.onThumbnail(task.key, jpeg, cache.fileFor(task.key));
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+
+    ThumbnailCache getCache() {
+        return cache;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queued.size();
+    }
+
+    public int getDecodes() {
+        return decodes.get();
+    }
+
+    public int getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getPromotions() {
+        return promotions.get();
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    public long getAverageDecodeMs() {
+        int count = decodes.get();
+        return count == 0 ? 0 : decodeTimeMs.get() / count;
+    }
+
+    public long getMemoryHits() {
+        return cache.getMemoryHits();
+    }
+
+    public long getDiskHits() {
+        return cache.getDiskHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    public long getMemoryEvictions() {
+        return cache.getMemoryEvictions();
+    }
+
+    public long getDiskEvictions() {
+        return cache.getDiskEvictions();
+    }
+
+    public long getMemoryBytes() {
+        return cache.getMemoryBytes();
+    }
+
+    public int getMemoryEntries() {
+        return cache.getMemoryEntries();
+    }
+
+    public long getDiskBytes() {
+        return cache.getDiskBytes();
+    }
+
+    public long getMemoryBudgetBytes() {
+        return cache.getMemoryBudgetBytes();
+    }
+
+    public long getDiskBudgetBytes() {
+        return cache.getDiskBudgetBytes();
+    }
+}
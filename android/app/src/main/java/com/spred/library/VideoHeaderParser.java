@@ -0,0 +1,31 @@
+package com.spred.library;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * VideoHeaderParser - Picks the container parser from the file's magic bytes.
+ */
+public final class VideoHeaderParser {
+
+    private VideoHeaderParser() {
+    }
+
+    public static VideoMetadata parse(File file) throws IOException {
+        byte[] magic = new byte[12];
+        int read;
+        try (InputStream in = new FileInputStream(file)) {
+            read = in.read(magic);
+        }
+        if (read >= 8 && magic[4] == 'f' && magic[5] == 't' && magic[6] == 'y' && magic[7] == 'p') {
+            return Mp4HeaderParser.parse(file);
+        }
+        if (read >= 4 && (magic[0] & 0xFF) == 0x1A && (magic[1] & 0xFF) == 0x45
+            && (magic[2] & 0xFF) == 0xDF && (magic[3] & 0xFF) == 0xA3) {
+            return MkvHeaderParser.parse(file);
+        }
+        throw new IOException("Unsupported container: " + file.getName());
+    }
+}
@@ -0,0 +1,25 @@
+package com.spred.library;
+
+/**
+ * VideoMetadata - Duration, resolution, codec and bitrate of one video file.
+ */
+public final class VideoMetadata {
+    public final long durationMs;
+    public final int width;
+    public final int height;
+    public final String codec;
+    public final long bitrate;
+
+    public VideoMetadata(long durationMs, int width, int height, String codec, long bitrate) {
+        this.durationMs = durationMs;
+        this.width = width;
+        this.height = height;
+        this.codec = codec;
+        this.bitrate = bitrate;
+    }
+
+    /** Average bitrate in bits/s from the file size, for containers that don't store one. */
+    static long averageBitrate(long fileSize, long durationMs) {
+        return durationMs > 0 ? fileSize * 8L * 1000L / durationMs : 0;
+    }
+}
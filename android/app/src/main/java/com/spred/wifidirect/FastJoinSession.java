@@ -0,0 +1,121 @@
+package com.spred.wifidirect;
+
+/**
+ * FastJoinSession - Join-state logic for the fast-pair (QR) sender flow.
+ *
+ * The sender joins the receiver's group with the scanned credentials, then
+ * keeps trying the transfer socket until the link has an IP or the deadline
+ * passes. The radio calls live in WifiDirectModule; this class only decides
+ * what happens next, so it can be driven from plain Java with fake times.
+ */
+final class FastJoinSession {
+
+    enum State {
+        IDLE,
+        JOINING_GROUP,
+        GROUP_JOINED,
+        CONNECTING_SOCKET,
+        CONNECTED,
+        FAILED
+    }
+
+    static final long DEFAULT_DEADLINE_MS = 15000;
+    static final long SOCKET_RETRY_INTERVAL_MS = 500;
+
+    final FastPairPayload payload;
+    private final long deadlineMs;
+
+    private State state = State.IDLE;
+    private long startedAt;
+    private long groupJoinedAt;
+    private long connectedAt;
+    private int socketAttempts;
+    private String failureReason;
+
+    FastJoinSession(FastPairPayload payload) {
+        this(payload, DEFAULT_DEADLINE_MS);
+    }
+
+    FastJoinSession(FastPairPayload payload, long deadlineMs) {
+        this.payload = payload;
+        this.deadlineMs = deadlineMs;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized String getFailureReason() {
+        return failureReason;
+    }
+
+    synchronized int getSocketAttempts() {
+        return socketAttempts;
+    }
+
+    synchronized void onJoinRequested(long now) {
+        require(State.IDLE);
+        startedAt = now;
+        state = State.JOINING_GROUP;
+    }
+
+    synchronized void onGroupJoined(long now) {
+        require(State.JOINING_GROUP);
+        groupJoinedAt = now;
+        state = State.GROUP_JOINED;
+    }
+
+    synchronized void onJoinFailed(String reason) {
+        require(State.JOINING_GROUP);
+        fail(reason);
+    }
+
+    /** Called before each socket connect attempt. */
+    synchronized void onSocketAttempt(long now) {
+        if (state != State.GROUP_JOINED && state != State.CONNECTING_SOCKET) {
+            throw new IllegalStateException("Cannot connect socket in state " + state);
+        }
+        socketAttempts++;
+        state = State.CONNECTING_SOCKET;
+    }
+
+    synchronized void onSocketConnected(long now) {
+        require(State.CONNECTING_SOCKET);
+        connectedAt = now;
+        state = State.CONNECTED;
+    }
+
+    /**
+     * Record a failed socket attempt. Returns true if another attempt should be
+     * made after SOCKET_RETRY_INTERVAL_MS, false if the session has now failed.
+     */
+    synchronized boolean onSocketFailed(long now, String reason) {
+        require(State.CONNECTING_SOCKET);
+        if (now + SOCKET_RETRY_INTERVAL_MS - startedAt >= deadlineMs) {
+            fail("Receiver socket not reachable after " + socketAttempts + " attempts: " + reason);
+            return false;
+        }
+        return true;
+    }
+
+    /** Milliseconds from join request to group joined, or -1. */
+    synchronized long getJoinLatencyMs() {
+        return groupJoinedAt > 0 ? groupJoinedAt - startedAt : -1;
+    }
+
+    /** Milliseconds from join request to an open transfer socket, or -1. */
+    synchronized long getTimeToConnectedMs() {
+        return connectedAt > 0 ? connectedAt - startedAt : -1;
+    }
+
+    private void fail(String reason) {
+        failureReason = reason;
+        state = State.FAILED;
+    }
+
+    private void require(State expected) {
+        if (state != expected) {
+            throw new IllegalStateException("Expected " + expected + " but was " + state);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.spred.wifidirect;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FastPairPayload - Contents of the fast-pair QR code shown by the receiver.
+ *
+ * Carries everything a sender needs to join the receiver's group directly with
+ * WifiP2pConfig.Builder credentials and open the transfer socket, so no peer
+ * discovery or PBC negotiation is needed. Encoded as a small URI:
+ *
+ *   spred://pair?v=1&n=DIRECT-xy-Spred&p=passphrase&ip=192.168.49.1&port=8989&t=token
+ *
+ * Pure Java so the codec can be exercised without a radio.
+ */
+final class FastPairPayload {
+    static final String SCHEME_PREFIX = "spred://pair?";
+    static final int PROTOCOL_VERSION = 1;
+    /** How long a shown code keeps gating senders before it lapses. */
+    static final long CODE_TTL_MS = 10 * 60 * 1000L;
+
+    final int protocolVersion;
+    final String networkName;
+    final String passphrase;
+    final String groupOwnerIp;
+    final int port;
+    final String sessionToken;
+
+    FastPairPayload(int protocolVersion, String networkName, String passphrase,
+                    String groupOwnerIp, int port, String sessionToken) {
+        this.protocolVersion = protocolVersion;
+        this.networkName = networkName;
+        this.passphrase = passphrase;
+        this.groupOwnerIp = groupOwnerIp;
+        this.port = port;
+        this.sessionToken = sessionToken;
+        validate();
+    }
+
+    private void validate() {
+        if (protocolVersion < 1) {
+            throw new IllegalArgumentException("Invalid protocol version: " + protocolVersion);
+        }
+        // WifiP2pConfig.Builder only accepts "DIRECT-xy" network names
+        if (networkName == null || !networkName.startsWith("DIRECT-") || networkName.length() < 9) {
+            throw new IllegalArgumentException("Invalid network name: " + networkName);
+        }
+        if (passphrase == null || passphrase.length() < 8 || passphrase.length() > 63) {
+            throw new IllegalArgumentException("Passphrase must be 8-63 characters");
+        }
+        if (groupOwnerIp == null || groupOwnerIp.isEmpty() || groupOwnerIp.equals("0.0.0.0")) {
+            throw new IllegalArgumentException("Invalid group owner IP: " + groupOwnerIp);
+        }
+        if (port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        if (sessionToken == null || sessionToken.isEmpty()) {
+            throw new IllegalArgumentException("Missing session token");
+        }
+    }
+
+    String encode() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("v", String.valueOf(protocolVersion));
+        fields.put("n", networkName);
+        fields.put("p", passphrase);
+        fields.put("ip", groupOwnerIp);
+        fields.put("port", String.valueOf(port));
+        fields.put("t", sessionToken);
+
+        StringBuilder builder = new StringBuilder(SCHEME_PREFIX);
+        boolean first = true;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (!first) {
+                builder.append('&');
+            }
+            builder.append(field.getKey()).append('=').append(urlEncode(field.getValue()));
+            first = false;
+        }
+        return builder.toString();
+    }
+
+    static FastPairPayload decode(String text) {
+        if (text == null || !text.startsWith(SCHEME_PREFIX)) {
+            throw new IllegalArgumentException("Not a Spred fast-pair code");
+        }
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (String pair : text.substring(SCHEME_PREFIX.length()).split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Malformed field: " + pair);
+            }
+            fields.put(pair.substring(0, separator), urlDecode(pair.substring(separator + 1)));
+        }
+
+        int version = parseInt(fields.get("v"), "v");
+        if (version > PROTOCOL_VERSION) {
+            throw new IllegalArgumentException("Unsupported fast-pair version: " + version);
+        }
+        return new FastPairPayload(
+            version,
+            fields.get("n"),
+            fields.get("p"),
+            fields.get("ip"),
+            parseInt(fields.get("port"), "port"),
+            fields.get("t")
+        );
+    }
+
+    /** The token of a code shown at {@code shownAtMs}, or null once it is older than CODE_TTL_MS. */
+    static String liveToken(String token, long shownAtMs, long nowMs) {
+        return token != null && nowMs - shownAtMs < CODE_TTL_MS ? token : null;
+    }
+
+    /**
+     * Whether a receiver showing a code with {@code shownToken} (null when none
+     * is shown) takes a sender presenting {@code senderToken}. While a code is
+     * shown every sender must present its token, so a peer that skips the
+     * header field can't slip past; a token with no code shown is stale.
+     */
+    static boolean acceptsSender(String shownToken, String senderToken) {
+        if (shownToken == null || senderToken == null) {
+            return shownToken == null && senderToken == null;
+        }
+        try {
+            return MessageDigest.isEqual(shownToken.getBytes("UTF-8"), senderToken.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String urlDecode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.spred.wifidirect;
+
+import android.net.wifi.p2p.WifiP2pInfo;
+import android.net.wifi.p2p.WifiP2pManager;
+import android.util.Log;
+
+/**
+ * GroupLifecycleManager - Keeps one Wi-Fi Direct group alive across transfers.
+ *
+ * Every transfer used to run removeGroup + createGroup, costing 3-5 seconds
+ * and regularly tripping BUSY. Callers now ask for a group with ensureGroup():
+ * a healthy group we own is reused as-is, and the group is only rebuilt when
+ * it is broken (lost, not owner, no valid GO address) or has sat idle longer
+ * than the TTL.
+ */
+class GroupLifecycleManager {
+    private static final String TAG = "GroupLifecycleManager";
+
+    static final long DEFAULT_IDLE_TTL_MS = 10 * 60 * 1000L;
+
+    interface Callback {
+        void onGroupReady(String groupOwnerIP, boolean reused);
+
+        void onGroupFailed(String code, String message);
+    }
+
+    enum Decision {
+        REUSE,
+        CREATE,
+        REBUILD
+    }
+
+    private final WifiP2pManager manager;
+    private final WifiP2pManager.Channel channel;
+    private final RetryPolicy.Scheduler scheduler;
+    private final long idleTtlMs;
+
+    private volatile boolean broken;
+    private volatile long lastUsedAt;
+
+    // Counters
+    private volatile int reuses;
+    private volatile int creates;
+    private volatile int rebuilds;
+    private volatile int failures;
+
+    GroupLifecycleManager(WifiP2pManager manager, WifiP2pManager.Channel channel, RetryPolicy.Scheduler scheduler) {
+        this(manager, channel, scheduler, DEFAULT_IDLE_TTL_MS);
+    }
+
+    GroupLifecycleManager(WifiP2pManager manager, WifiP2pManager.Channel channel, RetryPolicy.Scheduler scheduler, long idleTtlMs) {
+        this.manager = manager;
+        this.channel = channel;
+        this.scheduler = scheduler;
+        this.idleTtlMs = idleTtlMs;
+    }
+
+    /**
+     * Pure decision function: what to do with the current group state.
+     */
+    static Decision decide(boolean groupFormed, boolean isGroupOwner, String groupOwnerIP,
+                           boolean markedBroken, long idleMs, long idleTtlMs) {
+        if (!groupFormed) {
+            return Decision.CREATE;
+        }
+        if (markedBroken || !isGroupOwner || RetryPolicy.isUnassignedAddress(groupOwnerIP) || idleMs > idleTtlMs) {
+            return Decision.REBUILD;
+        }
+        return Decision.REUSE;
+    }
+
+    /** Reuse the current group if healthy, otherwise (re)build it. */
+    void ensureGroup(Callback callback) {
+        manager.requestConnectionInfo(channel, info -> {
+            boolean groupFormed = info != null && info.groupFormed;
+            boolean isOwner = info != null && info.isGroupOwner;
+            String ip = addressOf(info);
+            long idleMs = lastUsedAt > 0 ? System.currentTimeMillis() - lastUsedAt : 0;
+
+            Decision decision = decide(groupFormed, isOwner, ip, broken, idleMs, idleTtlMs);
+            Log.d(TAG, "📋 Group decision: " + decision + " (formed=" + groupFormed + ", owner=" + isOwner +
+                  ", ip=" + ip + ", broken=" + broken + ", idleMs=" + idleMs + ")");
+
+            switch (decision) {
+                case REUSE:
+                    reuses++;
+                    markUsed();
+                    callback.onGroupReady(ip, true);
+                    break;
+                case CREATE:
+                    creates++;
+                    createGroup(callback);
+                    break;
+                case REBUILD:
+                default:
+                    rebuilds++;
+                    manager.removeGroup(channel, new WifiP2pManager.ActionListener() {
+                        @Override
+                        public void onSuccess() {
+                            Log.d(TAG, "✅ Broken/stale group removed, rebuilding...");
+                            createGroup(callback);
+                        }
+
+                        @Override
+                        public void onFailure(int reason) {
+                            Log.w(TAG, "⚠️ removeGroup failed: " + reason + ", rebuilding anyway...");
+                            createGroup(callback);
+                        }
+                    });
+                    break;
+            }
+        });
+    }
+
+    private void createGroup(Callback callback) {
+        RetryPolicy.GROUP_CREATION.execute(scheduler, (attempt, result) ->
+            manager.createGroup(channel, new WifiP2pManager.ActionListener() {
+                @Override
+                public void onSuccess() {
+                    Log.d(TAG, "✅ Group created on attempt " + attempt + ", waiting for GO address...");
+                    result.success();
+                }
+
+                @Override
+                public void onFailure(int reason) {
+                    Log.e(TAG, "❌ createGroup failed (attempt " + attempt + "): " + reason);
+                    if (RetryPolicy.isRetryableReason(reason)) {
+                        result.retry("createGroup failed: " + reason);
+                    } else {
+                        result.fail("createGroup failed: " + reason);
+                    }
+                }
+            }), new RetryPolicy.Callback() {
+                @Override
+                public void onSuccess(int attempts) {
+                    broken = false;
+                    awaitGroupOwnerAddress(callback);
+                }
+
+                @Override
+                public void onGiveUp(String reason, int attempts) {
+                    failures++;
+                    callback.onGroupFailed("GROUP_CREATION_FAILED", "Failed to create WiFi Direct group: " + reason);
+                }
+            });
+    }
+
+    private void awaitGroupOwnerAddress(Callback callback) {
+        final String[] groupOwnerIP = new String[1];
+        RetryPolicy.GROUP_OWNER_ADDRESS.execute(scheduler, (attempt, result) ->
+            manager.requestConnectionInfo(channel, info -> {
+                String ip = addressOf(info);
+                if (info != null && info.groupFormed && info.isGroupOwner && !RetryPolicy.isUnassignedAddress(ip)) {
+                    groupOwnerIP[0] = ip;
+                    result.success();
+                } else {
+                    result.retry("GO address not assigned yet (" + ip + ")");
+                }
+            }), new RetryPolicy.Callback() {
+                @Override
+                public void onSuccess(int attempts) {
+                    markUsed();
+                    callback.onGroupReady(groupOwnerIP[0], false);
+                }
+
+                @Override
+                public void onGiveUp(String reason, int attempts) {
+                    failures++;
+                    broken = true;
+                    callback.onGroupFailed("INVALID_ADDRESS", "Group owner address not assigned after group creation: " + reason);
+                }
+            });
+    }
+
+    private static String addressOf(WifiP2pInfo info) {
+        return info != null && info.groupOwnerAddress != null ? info.groupOwnerAddress.getHostAddress() : null;
+    }
+
+    /** Record activity so the idle TTL restarts. */
+    void markUsed() {
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    /** The group misbehaved (socket failures, lost connection); rebuild on next use. */
+    void markBroken() {
+        broken = true;
+    }
+
+    /** The group was removed on purpose (disconnect). */
+    void onGroupRemoved() {
+        lastUsedAt = 0;
+        broken = false;
+    }
+
+    int getReuses() {
+        return reuses;
+    }
+
+    int getCreates() {
+        return creates;
+    }
+
+    int getRebuilds() {
+        return rebuilds;
+    }
+
+    int getFailures() {
+        return failures;
+    }
+}
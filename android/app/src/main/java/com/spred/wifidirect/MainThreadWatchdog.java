@@ -0,0 +1,76 @@
+package com.spred.wifidirect;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * MainThreadWatchdog - Measures how long the UI thread is blocked.
+ *
+ * A heartbeat is posted to the main looper every INTERVAL_MS. When it runs
+ * late, the lateness is time the main thread spent on something else (for
+ * example a P2P callback sleeping inline). Lateness above STALL_THRESHOLD_MS
+ * is counted as blocked time.
+ */
+class MainThreadWatchdog {
+    static final long INTERVAL_MS = 100;
+    static final long STALL_THRESHOLD_MS = 32;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean running;
+    private long expectedAt;
+
+    private volatile long blockedMs;
+    private volatile long maxStallMs;
+    private volatile int stallCount;
+
+    private final Runnable heartbeat = new Runnable() {
+        @Override
+        public void run() {
+            if (!running) {
+                return;
+            }
+            long now = SystemClock.uptimeMillis();
+            record(now - expectedAt);
+            expectedAt = now + INTERVAL_MS;
+            mainHandler.postDelayed(this, INTERVAL_MS);
+        }
+    };
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        expectedAt = SystemClock.uptimeMillis() + INTERVAL_MS;
+        mainHandler.postDelayed(heartbeat, INTERVAL_MS);
+    }
+
+    synchronized void stop() {
+        running = false;
+        mainHandler.removeCallbacks(heartbeat);
+    }
+
+    private void record(long lateMs) {
+        if (lateMs < STALL_THRESHOLD_MS) {
+            return;
+        }
+        blockedMs += lateMs;
+        stallCount++;
+        if (lateMs > maxStallMs) {
+            maxStallMs = lateMs;
+        }
+    }
+
+    long getBlockedMs() {
+        return blockedMs;
+    }
+
+    long getMaxStallMs() {
+        return maxStallMs;
+    }
+
+    int getStallCount() {
+        return stallCount;
+    }
+}
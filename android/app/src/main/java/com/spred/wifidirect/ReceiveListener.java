@@ -0,0 +1,127 @@
+package com.spred.wifidirect;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * ReceiveListener - Always-ready receive endpoint on the transfer port.
+ *
+ * The server socket is bound once (at init, or when the app comes back to the
+ * foreground) instead of after receiveFile has finished its removeGroup /
+ * createGroup / sleep sequence. The accept thread simply blocks in accept(),
+ * so an idle listener costs no CPU. Each accepted sender is handed to the
+ * Handler on its own thread so the listener is immediately ready again.
+ */
+class ReceiveListener {
+    private static final String TAG = "ReceiveListener";
+
+    interface Handler {
+        void onSenderConnected(Socket socket);
+    }
+
+    private final int port;
+    private final Handler handler;
+
+    private volatile ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    // Latency tracking (nanoTime based)
+    private volatile long bindStartedAt;
+    private volatile long readyAt;
+    private volatile long lastStartToReadyMs = -1;
+    private volatile int acceptedConnections;
+
+    ReceiveListener(int port, Handler handler) {
+        this.port = port;
+        this.handler = handler;
+    }
+
+    /**
+     * Bind the port and start the accept loop. Returns true if the listener is
+     * (or already was) ready to accept senders.
+     */
+    synchronized boolean start() {
+        if (isReady()) {
+            return true;
+        }
+
+        bindStartedAt = System.nanoTime();
+        try {
+            ServerSocket socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(port));
+            serverSocket = socket;
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to bind receive listener on port " + port, e);
+            serverSocket = null;
+            return false;
+        }
+        readyAt = System.nanoTime();
+        lastStartToReadyMs = (readyAt - bindStartedAt) / 1_000_000L;
+        Log.d(TAG, "✅ Receive listener bound on port " + port + " in " + lastStartToReadyMs + " ms");
+
+        final ServerSocket boundSocket = serverSocket;
+        acceptThread = new Thread(() -> acceptLoop(boundSocket), "SpredReceiveListener");
+        acceptThread.start();
+        return true;
+    }
+
+    private void acceptLoop(ServerSocket boundSocket) {
+        while (!boundSocket.isClosed()) {
+            try {
+                // Blocks without spinning until a sender connects or the socket is closed
+                Socket client = boundSocket.accept();
+                acceptedConnections++;
+                Log.d(TAG, "✅ Sender connected to pre-warmed listener: " + client.getInetAddress().getHostAddress());
+                new Thread(() -> handler.onSenderConnected(client), "SpredReceiveSession").start();
+            } catch (SocketException e) {
+                // Closed by stop()
+                break;
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Accept failed on receive listener", e);
+            }
+        }
+        Log.d(TAG, "📡 Receive listener accept loop stopped");
+    }
+
+    synchronized void stop() {
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Failed to close receive listener", e);
+            }
+        }
+        acceptThread = null;
+    }
+
+    boolean isReady() {
+        ServerSocket socket = serverSocket;
+        return socket != null && socket.isBound() && !socket.isClosed();
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    /** Time between starting the bind and the listener accepting connections, or -1 if never started. */
+    long getStartToReadyMs() {
+        return lastStartToReadyMs;
+    }
+
+    /** Milliseconds since the listener became ready, or -1 if it is not bound. */
+    long getReadyForMs() {
+        return isReady() ? (System.nanoTime() - readyAt) / 1_000_000L : -1;
+    }
+
+    int getAcceptedConnections() {
+        return acceptedConnections;
+    }
+}
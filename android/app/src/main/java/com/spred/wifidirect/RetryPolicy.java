@@ -0,0 +1,175 @@
+package com.spred.wifidirect;
+
+import java.util.Random;
+
+/**
+ * RetryPolicy - Exponential backoff with jitter and a deadline budget.
+ *
+ * Replaces the hand-rolled "N attempts x 1.5 s" loops around createGroup and
+ * requestConnectionInfo. Attempts are asynchronous (they finish from a P2P
+ * callback) and delays go through a Scheduler, so no thread ever sleeps while
+ * waiting for the next attempt. With a virtual-clock Scheduler the whole
+ * retry sequence runs deterministically in plain Java.
+ */
+final class RetryPolicy {
+
+    // Mirrors of WifiP2pManager failure reasons, kept here so the policy stays plain Java
+    static final int REASON_ERROR = 0;
+    static final int REASON_P2P_UNSUPPORTED = 1;
+    static final int REASON_BUSY = 2;
+
+    /** createGroup: BUSY usually clears within a few seconds. */
+    static final RetryPolicy GROUP_CREATION = new RetryPolicy(6, 500, 2.0, 4000, 0.5, 20000);
+    /** requestConnectionInfo while waiting for the GO address to be assigned. */
+    static final RetryPolicy GROUP_OWNER_ADDRESS = new RetryPolicy(12, 150, 1.5, 1500, 0.3, 12000);
+    /** requestGroupInfo while waiting for the passphrase to show up. */
+    static final RetryPolicy GROUP_INFO = new RetryPolicy(10, 200, 1.5, 1500, 0.3, 8000);
+
+    interface Scheduler {
+        long nowMs();
+
+        void schedule(Runnable task, long delayMs);
+    }
+
+    interface Attempt {
+        /** Run attempt number {@code attempt} (1-based) and report through {@code result}. */
+        void run(int attempt, Result result);
+    }
+
+    interface Callback {
+        void onSuccess(int attempts);
+
+        void onGiveUp(String reason, int attempts);
+    }
+
+    final int maxAttempts;
+    final long initialDelayMs;
+    final double multiplier;
+    final long maxDelayMs;
+    final double jitter;
+    final long deadlineMs;
+
+    RetryPolicy(int maxAttempts, long initialDelayMs, double multiplier, long maxDelayMs, double jitter, long deadlineMs) {
+        if (maxAttempts < 1 || initialDelayMs < 0 || multiplier < 1.0 || jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMs = initialDelayMs;
+        this.multiplier = multiplier;
+        this.maxDelayMs = maxDelayMs;
+        this.jitter = jitter;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /** BUSY and ERROR are transient on most devices; P2P_UNSUPPORTED never recovers. */
+    static boolean isRetryableReason(int reason) {
+        return reason == REASON_BUSY || reason == REASON_ERROR;
+    }
+
+    /** The GO address reads as null / 0.0.0.0 until DHCP on the group interface completes. */
+    static boolean isUnassignedAddress(String ip) {
+        return ip == null || ip.isEmpty() || ip.equals("0.0.0.0");
+    }
+
+    /**
+     * Delay before attempt {@code attempt} (2-based; the first attempt runs
+     * immediately). {@code random} is in [0, 1) and shaves up to {@code jitter}
+     * of the backoff off so retries from both phones don't line up.
+     */
+    long delayBeforeAttempt(int attempt, double random) {
+        double base = initialDelayMs * Math.pow(multiplier, Math.max(0, attempt - 2));
+        double capped = Math.min(base, maxDelayMs);
+        return Math.round(capped * (1.0 - jitter * random));
+    }
+
+    void execute(Scheduler scheduler, Attempt attempt, Callback callback) {
+        execute(scheduler, new Random(), attempt, callback);
+    }
+
+    void execute(Scheduler scheduler, Random random, Attempt attempt, Callback callback) {
+        new Execution(scheduler, random, attempt, callback).start();
+    }
+
+    /** Outcome reporter for one attempt. Only the first call counts. */
+    static final class Result {
+        private final Execution execution;
+        private final int attempt;
+        private boolean done;
+
+        private Result(Execution execution, int attempt) {
+            this.execution = execution;
+            this.attempt = attempt;
+        }
+
+        void success() {
+            if (complete()) {
+                execution.callback.onSuccess(attempt);
+            }
+        }
+
+        /** Transient failure: try again if attempts and deadline allow. */
+        void retry(String reason) {
+            if (complete()) {
+                execution.scheduleNext(attempt, reason);
+            }
+        }
+
+        /** Permanent failure: give up now. */
+        void fail(String reason) {
+            if (complete()) {
+                execution.callback.onGiveUp(reason, attempt);
+            }
+        }
+
+        private synchronized boolean complete() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            return true;
+        }
+    }
+
+    private final class Execution {
+        final Scheduler scheduler;
+        final Random random;
+        final Attempt attempt;
+        final Callback callback;
+        long startedAt;
+
+        Execution(Scheduler scheduler, Random random, Attempt attempt, Callback callback) {
+            this.scheduler = scheduler;
+            this.random = random;
+            this.attempt = attempt;
+            this.callback = callback;
+        }
+
+        void start() {
+            startedAt = scheduler.nowMs();
+            runAttempt(1);
+        }
+
+        void runAttempt(int number) {
+            try {
+                attempt.run(number, new Result(this, number));
+            } catch (RuntimeException e) {
+                callback.onGiveUp("Attempt threw: " + e.getMessage(), number);
+            }
+        }
+
+        void scheduleNext(int previous, String reason) {
+            int next = previous + 1;
+            if (next > maxAttempts) {
+                callback.onGiveUp(reason + " (after " + previous + " attempts)", previous);
+                return;
+            }
+            long delay = delayBeforeAttempt(next, random.nextDouble());
+            long elapsed = scheduler.nowMs() - startedAt;
+            if (elapsed + delay > deadlineMs) {
+                callback.onGiveUp(reason + " (deadline " + deadlineMs + " ms exceeded)", previous);
+                return;
+            }
+            scheduler.schedule(() -> runAttempt(next), delay);
+        }
+    }
+}
@@ -4,16 +4,22 @@ import android.Manifest;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.net.wifi.p2p.WifiP2pManager;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.util.Log;
 
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.LifecycleEventListener;
 
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
@@ -22,54 +28,121 @@ import android.net.wifi.p2p.WifiP2pDeviceList;
 
 import android.net.wifi.p2p.WifiP2pInfo;
 import android.net.wifi.p2p.WifiP2pConfig;
+import android.net.wifi.p2p.WifiP2pGroup;
 import android.net.wifi.WpsInfo;
+import android.graphics.Bitmap;
+import android.util.Base64;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import androidx.core.content.ContextCompat;
 
+import com.spred.library.ContentIndex;
+import com.spred.library.LibraryCursor;
+import com.spred.library.LibraryIndex;
+import com.spred.library.MetadataService;
+import com.spred.library.ReceivedLibrary;
+import com.spred.library.ThumbnailService;
+import com.spred.library.VideoMetadata;
+import com.spred.transfer.ReceiveFile;
+import com.spred.transfer.TransferCompression;
+import com.spred.transfer.TransferDelta;
+import com.spred.transfer.TransferHeader;
+import com.spred.transfer.TransferPipeline;
+import com.spred.transfer.TransferReceiver;
+import com.spred.transfer.TransferReply;
+import com.spred.transfer.TransferSender;
+import com.spred.transfer.TransferSession;
+import com.spred.transfer.TransferSessionRegistry;
+import com.spred.transfer.TransferSockets;
+
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 
-public class WifiDirectModule extends ReactContextBaseJavaModule implements WifiP2pManager.PeerListListener, WifiP2pManager.ConnectionInfoListener {
+public class WifiDirectModule extends ReactContextBaseJavaModule implements WifiP2pManager.PeerListListener, WifiP2pManager.ConnectionInfoListener, LifecycleEventListener {
     private static final String TAG = "WifiDirectModule";
+    private static final int RECEIVE_PORT = 8989;
+    private static final String PREFS_NAME = "spred_wifidirect";
+    private static final String PREF_PREWARM_DESTINATION = "prewarm_receiver_destination";
+    private static final String PREF_STORAGE_CAP_BYTES = "storage_cap_bytes";
+    private static final String PREF_FSYNC_POLICY = "receive_fsync_policy";
+    private static final String PREF_FSYNC_INTERVAL_MB = "receive_fsync_interval_mb";
+
+    // posix_fallocate reserves real blocks (setLength would only make a sparse file)
+    private static final ReceiveFile.Preallocator FALLOCATE = (fd, length) -> {
+        try {
+            Os.posix_fallocate(fd, 0, length);
+        } catch (ErrnoException e) {
+            throw new IOException("posix_fallocate failed: " + e.getMessage(), e);
+        }
+    };
     private final ReactApplicationContext reactContext;
     private WifiP2pManager manager;
     private WifiP2pManager.Channel channel;
+    private GroupLifecycleManager groupManager;
+    private RetryPolicy.Scheduler retryScheduler;
+
+    // All WifiP2pManager callbacks and P2P broadcasts run on this looper, never on the UI thread
+    private HandlerThread p2pThread;
+    private Handler p2pHandler;
+    private final MainThreadWatchdog mainThreadWatchdog = new MainThreadWatchdog();
+    private volatile int mainThreadCallbacks;
     private BroadcastReceiver receiver;
     private IntentFilter intentFilter;
 
     // Maintain list of discovered peers
     private WritableArray discoveredPeers = Arguments.createArray();
 
-    // Socket server for file transfers
-    private ServerSocket fileTransferServer;
-    private Thread serverThread;
-    private boolean isServerRunning = false;
+    // Every send and receive in flight, each with its own sockets, promise and progress
+    private final TransferSessionRegistry transferSessions = new TransferSessionRegistry();
+
+    // Where the last receiveFile asked files to go; used by senders that arrive outside it
+    private volatile String receiveDestination;
 
-    // Transfer tracking
-    private CountDownLatch transferComplete;
+    // Pre-warmed receive endpoint (optional, bound at init / foreground)
+    private ReceiveListener receiveListener;
+    private String prewarmDestination;
+    private volatile long lastReceiveReadyMs = -1;
+    private final AtomicBoolean receiverGroupForming = new AtomicBoolean();
 
-    // Receive tracking
-    private String receiveDestination;
-    private Promise receivePromise;
+    // Receive-path I/O counters, reported by getReceiverStats
+    private final AtomicLong totalReceiveBytes = new AtomicLong();
+    private final AtomicLong totalReceiveReads = new AtomicLong();
+    private final AtomicLong totalReceiveWriteSyscalls = new AtomicLong();
+
+    // Fast-pair (QR) session token of the code currently shown by this receiver, and when it was shown
+    private volatile String fastPairToken;
+    private volatile long fastPairShownAtMs;
 
     public WifiDirectModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.reactContext.addLifecycleEventListener(this);
     }
 
     @Override
@@ -80,6 +153,13 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
     @ReactMethod
     public void init(Promise promise) {
         Log.d(TAG, "init() called");
+        // JS may call init again (remounts, fast refresh); a second channel, broadcast receiver
+        // or listener bind would leak, so keep the ones we have until invalidate() releases them
+        if (channel != null && receiver != null) {
+            Log.d(TAG, "✅ Already initialized, reusing the P2P channel and receivers");
+            promise.resolve(null);
+            return;
+        }
         manager = (WifiP2pManager) reactContext.getSystemService(Context.WIFI_P2P_SERVICE);
         if (manager == null) {
             Log.e(TAG, "Cannot get WifiP2pManager service.");
@@ -87,13 +167,33 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
             return;
         }
 
-        channel = manager.initialize(reactContext, reactContext.getMainLooper(), null);
+        if (p2pThread == null) {
+            p2pThread = new HandlerThread("SpredWifiP2p", Process.THREAD_PRIORITY_BACKGROUND);
+            p2pThread.start();
+            p2pHandler = new Handler(p2pThread.getLooper());
+        }
+        mainThreadWatchdog.start();
+
+        channel = manager.initialize(reactContext, p2pThread.getLooper(), null);
         if (channel == null) {
             Log.e(TAG, "Cannot initialize WifiP2pManager channel.");
             promise.reject("INITIALIZATION_ERROR", "Failed to initialize Wi-Fi Direct.");
             return;
         }
 
+        retryScheduler = new RetryPolicy.Scheduler() {
+            @Override
+            public long nowMs() {
+                return SystemClock.uptimeMillis();
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                p2pHandler.postDelayed(task, delayMs);
+            }
+        };
+        groupManager = new GroupLifecycleManager(manager, channel, retryScheduler);
+
         receiver = new WifiDirectBroadcastReceiver(manager, channel, this);
         intentFilter = new IntentFilter();
         intentFilter.addAction(WifiP2pManager.WIFI_P2P_STATE_CHANGED_ACTION);
@@ -101,10 +201,82 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
         intentFilter.addAction(WifiP2pManager.WIFI_P2P_CONNECTION_CHANGED_ACTION);
         intentFilter.addAction(WifiP2pManager.WIFI_P2P_THIS_DEVICE_CHANGED_ACTION);
 
-        reactContext.registerReceiver(receiver, intentFilter);
+        reactContext.registerReceiver(receiver, intentFilter, null, p2pHandler);
+
+        ReceivedLibrary.get(reactContext).setStorageCapBytes(getPrefs().getLong(PREF_STORAGE_CAP_BYTES, 0));
+
+        // Bind the always-ready receive endpoint if the user opted in previously
+        String savedDestination = getPrefs().getString(PREF_PREWARM_DESTINATION, null);
+        if (savedDestination != null) {
+            Log.d(TAG, "🔥 Pre-warmed receiver enabled, binding listener at init...");
+            startPrewarmedReceiver(savedDestination);
+        }
+
         promise.resolve(null);
     }
 
+    @Override
+    public void onHostResume() {
+        // Re-bind the pre-warmed listener when the app comes back to the foreground
+        if (prewarmDestination != null && (receiveListener == null || !receiveListener.isReady())) {
+            Log.d(TAG, "🔥 App in foreground, re-binding pre-warmed receiver...");
+            startPrewarmedReceiver(prewarmDestination);
+        }
+    }
+
+    @Override
+    public void onHostPause() {
+        // Keep the listener bound; the accept loop is idle while nobody connects
+    }
+
+    @Override
+    public void onHostDestroy() {
+        stopPrewarmedReceiver();
+        ReceivedLibrary.get(reactContext).stopWatching();
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        mainThreadWatchdog.stop();
+        int abandoned = transferSessions.failAll("MODULE_INVALIDATED", "React context was torn down mid-transfer");
+        if (abandoned > 0) {
+            Log.w(TAG, "⚠️ Closed " + abandoned + " transfer(s) still running at teardown");
+        }
+        if (receiver != null) {
+            try {
+                reactContext.unregisterReceiver(receiver);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "⚠️ Receiver was not registered");
+            }
+            receiver = null;
+        }
+        if (p2pThread != null) {
+            p2pThread.quitSafely();
+            p2pThread = null;
+            p2pHandler = null;
+        }
+    }
+
+    /** Counts P2P callbacks that still land on the UI thread (should stay 0). */
+    private void checkOffMainThread(String callback) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mainThreadCallbacks++;
+            Log.w(TAG, "⚠️ " + callback + " ran on the main thread");
+        }
+    }
+
+    @ReactMethod
+    public void getThreadingStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putString("p2pLooperThread", p2pThread != null ? p2pThread.getName() : null);
+        stats.putDouble("mainThreadBlockedMs", mainThreadWatchdog.getBlockedMs());
+        stats.putDouble("mainThreadMaxStallMs", mainThreadWatchdog.getMaxStallMs());
+        stats.putInt("mainThreadStalls", mainThreadWatchdog.getStallCount());
+        stats.putInt("p2pCallbacksOnMainThread", mainThreadCallbacks);
+        promise.resolve(stats);
+    }
+
     @ReactMethod
     public void share(String filePath, Promise promise) {
         // TODO: Implement Wi-Fi Direct sharing logic
@@ -114,6 +286,7 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
     @Override
     public void onPeersAvailable(WifiP2pDeviceList peerList) {
         Log.d(TAG, "onPeersAvailable() called");
+        checkOffMainThread("onPeersAvailable");
         Log.d(TAG, "Peers available: " + peerList.getDeviceList().size());
         
         // Create a new array for storing discovered peers
@@ -223,6 +396,7 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
     @Override
     public void onConnectionInfoAvailable(WifiP2pInfo info) {
         Log.d(TAG, "Connection info available.");
+        checkOffMainThread("onConnectionInfoAvailable");
         if (info.groupFormed) {
             WritableMap connectionInfo = Arguments.createMap();
             connectionInfo.putBoolean("groupFormed", info.groupFormed);
@@ -237,6 +411,7 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
                 .emit("onConnectionInfoAvailable", connectionInfo);
         } else {
+            clearFastPairCode("group gone");
             reactContext
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
                 .emit("onConnectionRequest", null);
@@ -250,151 +425,64 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
             return;
         }
 
-        // CRITICAL FIX: Clean up any existing group before creating new one
-        // This prevents "WiFi Direct is busy" error
-        manager.removeGroup(channel, new WifiP2pManager.ActionListener() {
+        // Reuse the current group when it is healthy instead of tearing it down
+        groupManager.ensureGroup(new GroupLifecycleManager.Callback() {
             @Override
-            public void onSuccess() {
-                Log.d(TAG, "✅ Existing group cleared, waiting 2 seconds for system to stabilize...");
-                // Wait 2 seconds after cleanup to ensure system is stable
-                new Thread(() -> {
-                    try {
-                        Thread.sleep(2000);
-                        Log.d(TAG, "⏱️ Wait complete, now creating new group for accept connection...");
-                        createGroupForAccept(promise);
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Wait interrupted", e);
-                        createGroupForAccept(promise);
-                    }
-                }).start();
+            public void onGroupReady(String groupOwnerIP, boolean reused) {
+                Log.d(TAG, (reused ? "♻️ Reusing" : "✅ Created") + " group (connection accepted), GO IP: " + groupOwnerIP);
+                getConnectionInfoWithRetry(promise);
             }
 
             @Override
-            public void onFailure(int reason) {
-                Log.w(TAG, "⚠️ No existing group to clear or clear failed: " + reason + ", waiting 1.5 seconds...");
-                // Wait before trying to create group even if cleanup failed
-                new Thread(() -> {
-                    try {
-                        Thread.sleep(1500);
-                        Log.d(TAG, "⏱️ Wait complete after cleanup failure, attempting group creation...");
-                        createGroupForAccept(promise);
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Wait interrupted", e);
-                        createGroupForAccept(promise);
-                    }
-                }).start();
+            public void onGroupFailed(String code, String message) {
+                Log.e(TAG, "❌ Failed to prepare group (accept connection): " + message);
+                promise.reject("ACCEPT_FAILED", "Failed to accept connection.");
             }
         });
     }
 
-    private void createGroupForAccept(Promise promise) {
-        manager.createGroup(channel, new WifiP2pManager.ActionListener() {
-            @Override
-            public void onSuccess() {
-                Log.d(TAG, "✅ Group created (connection accepted).");
-
-                // After creating group, wait for IP address to be assigned, then get our IP address as group owner
-                new Thread(() -> {
-                    try {
-                        // Wait 3 seconds for IP assignment to complete
-                        Thread.sleep(3000);
-                        
-                        // Retry getting connection info multiple times with delay
-                        getConnectionInfoWithRetry(promise, 5); // Try 5 times
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Group creation wait interrupted", e);
-                        promise.reject("ACCEPT_FAILED", "Group creation interrupted");
-                    }
-                }).start();
-            }
+    private void getConnectionInfoWithRetry(Promise originalPromise) {
+        final String[] groupOwnerIP = new String[1];
+        RetryPolicy.GROUP_OWNER_ADDRESS.execute(retryScheduler, (attempt, result) ->
+            manager.requestConnectionInfo(channel, wifiP2pInfo -> {
+                String ip = wifiP2pInfo.groupOwnerAddress != null ? wifiP2pInfo.groupOwnerAddress.getHostAddress() : null;
+                Log.d(TAG, "getConnectionInfoWithRetry - Attempt " + attempt +
+                      " - groupFormed: " + wifiP2pInfo.groupFormed +
+                      ", isGroupOwner: " + wifiP2pInfo.isGroupOwner +
+                      ", groupOwnerAddress: " + ip);
+
+                if (!wifiP2pInfo.groupFormed || !wifiP2pInfo.isGroupOwner) {
+                    result.retry("Group not formed or not group owner");
+                } else if (RetryPolicy.isUnassignedAddress(ip)) {
+                    result.retry("Group owner IP is invalid (" + ip + ")");
+                } else {
+                    groupOwnerIP[0] = ip;
+                    result.success();
+                }
+            }), new RetryPolicy.Callback() {
+                @Override
+                public void onSuccess(int attempts) {
+                    Log.d(TAG, "✅ Valid group owner IP: " + groupOwnerIP[0]);
 
-            @Override
-            public void onFailure(int reason) {
-                Log.e(TAG, "❌ Failed to create group (accept connection) with reason: " + reason);
-                promise.reject("ACCEPT_FAILED", "Failed to accept connection.");
-            }
-        });
-    }
+                    // Emit group owner IP to sender
+                    WritableMap ipData = Arguments.createMap();
+                    ipData.putString("groupOwnerIP", groupOwnerIP[0]);
+                    ipData.putInt("serverPort", RECEIVE_PORT);
+                    ipData.putBoolean("isGroupOwner", true);
 
-    private void getConnectionInfoWithRetry(Promise originalPromise, int maxAttempts) {
-        getConnectionInfoWithRetry(originalPromise, maxAttempts, 0);
-    }
+                    reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                        .emit("onGroupOwnerIPAvailable", ipData);
 
-    private void getConnectionInfoWithRetry(Promise originalPromise, int maxAttempts, int currentAttempt) {
-        if (currentAttempt >= maxAttempts) {
-            Log.e(TAG, "❌ Failed to get connection info after " + maxAttempts + " attempts");
-            originalPromise.reject("CONNECTION_INFO_FAILED", "Failed to get connection info after retries");
-            return;
-        }
+                    Log.d(TAG, "📡 Emitted group owner IP to sender: " + groupOwnerIP[0]);
+                    originalPromise.resolve(null);
+                }
 
-        manager.requestConnectionInfo(channel, new WifiP2pManager.ConnectionInfoListener() {
-            @Override
-            public void onConnectionInfoAvailable(WifiP2pInfo wifiP2pInfo) {
-                Log.d(TAG, "getConnectionInfoWithRetry - Attempt " + (currentAttempt + 1) + 
-                      " - groupFormed: " + wifiP2pInfo.groupFormed + 
-                      ", isGroupOwner: " + wifiP2pInfo.isGroupOwner + 
-                      ", groupOwnerAddress: " + (wifiP2pInfo.groupOwnerAddress != null ? wifiP2pInfo.groupOwnerAddress.getHostAddress() : "null"));
-
-                if (wifiP2pInfo.groupFormed && wifiP2pInfo.isGroupOwner) {
-                    if (wifiP2pInfo.groupOwnerAddress != null) {
-                        String groupOwnerIP = wifiP2pInfo.groupOwnerAddress.getHostAddress();
-                        
-                        // Validate that group owner address is a valid IP (not 0.0.0.0)
-                        if (groupOwnerIP != null && !groupOwnerIP.equals("0.0.0.0") && !groupOwnerIP.isEmpty()) {
-                            Log.d(TAG, "✅ Valid group owner IP: " + groupOwnerIP);
-
-                            // Emit group owner IP to sender
-                            WritableMap ipData = Arguments.createMap();
-                            ipData.putString("groupOwnerIP", groupOwnerIP);
-                            ipData.putInt("serverPort", 8989);
-                            ipData.putBoolean("isGroupOwner", true);
-
-                            reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                                .emit("onGroupOwnerIPAvailable", ipData);
-
-                            Log.d(TAG, "📡 Emitted group owner IP to sender: " + groupOwnerIP);
-                            originalPromise.resolve(null);
-                        } else {
-                            Log.w(TAG, "⚠️ Group owner IP is invalid (" + groupOwnerIP + "), retrying...");
-                            // Wait 1.5 seconds before next attempt
-                            new Thread(() -> {
-                                try {
-                                    Thread.sleep(1500);
-                                    getConnectionInfoWithRetry(originalPromise, maxAttempts, currentAttempt + 1);
-                                } catch (InterruptedException e) {
-                                    Log.e(TAG, "Retry interrupted", e);
-                                    originalPromise.reject("CONNECTION_INFO_FAILED", "Connection info retrieval interrupted");
-                                }
-                            }).start();
-                        }
-                    } else {
-                        Log.w(TAG, "⚠️ Group owner address is null, retrying...");
-                        // Wait 1.5 seconds before next attempt
-                        new Thread(() -> {
-                            try {
-                                Thread.sleep(1500);
-                                getConnectionInfoWithRetry(originalPromise, maxAttempts, currentAttempt + 1);
-                            } catch (InterruptedException e) {
-                                Log.e(TAG, "Retry interrupted", e);
-                                originalPromise.reject("CONNECTION_INFO_FAILED", "Connection info retrieval interrupted");
-                            }
-                        }).start();
-                    }
-                } else {
-                    Log.w(TAG, "⚠️ Group not formed or not group owner, retrying...");
-                    // Wait 1.5 seconds before next attempt
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(1500);
-                            getConnectionInfoWithRetry(originalPromise, maxAttempts, currentAttempt + 1);
-                        } catch (InterruptedException e) {
-                            Log.e(TAG, "Retry interrupted", e);
-                            originalPromise.reject("CONNECTION_INFO_FAILED", "Connection info retrieval interrupted");
-                        }
-                    }).start();
+                @Override
+                public void onGiveUp(String reason, int attempts) {
+                    Log.e(TAG, "❌ Failed to get connection info after " + attempts + " attempts: " + reason);
+                    originalPromise.reject("CONNECTION_INFO_FAILED", "Failed to get connection info after retries");
                 }
-            }
-        });
+            });
     }
 
     @ReactMethod
@@ -563,6 +651,10 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
             @Override
             public void onSuccess() {
                 Log.d(TAG, "Disconnected from P2P group");
+                clearFastPairCode("group removed"); // The code's group credentials are gone
+                if (groupManager != null) {
+                    groupManager.onGroupRemoved();
+                }
                 promise.resolve(null);
             }
 
@@ -592,11 +684,12 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
                 return;
             }
 
-            Log.d(TAG, "Starting real file transfer: " + sourceFile.getName() + " to " + targetAddress);
+            TransferSession transfer = transferSessions.create(TransferSession.Direction.SEND, null, completionOf(promise));
+            Log.d(TAG, "Starting real file transfer " + transfer.id + ": " + sourceFile.getName() + " to " + targetAddress);
 
             // FIX: Don't create another group - connect to receiver's existing group and server
-            Log.d(TAG, "📡 Connecting to receiver's server at 192.168.49.1:8989...");
-            connectToReceiverAndTransfer(sourceFile, targetAddress, promise);
+            Log.d(TAG, "📡 Joining receiver's group, then connecting to its server on " + RECEIVE_PORT + "...");
+            connectToReceiverAndTransfer(sourceFile, targetAddress, transfer);
 
         } catch (Exception e) {
             Log.e(TAG, "File transfer setup failed", e);
@@ -604,7 +697,7 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
         }
     }
 
-    private void connectToReceiverAndTransfer(File sourceFile, String receiverAddress, Promise promise) {
+    private void connectToReceiverAndTransfer(File sourceFile, String receiverAddress, TransferSession transfer) {
         try {
             // Create WiFi Direct config to connect to receiver
             WifiP2pConfig config = new WifiP2pConfig();
@@ -616,73 +709,82 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
             manager.connect(channel, config, new WifiP2pManager.ActionListener() {
                 @Override
                 public void onSuccess() {
-                    Log.d(TAG, "✅ Connected to receiver's group!");
-
-                    // Wait for connection to establish, then connect to receiver's server
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(3000); // Wait for group formation
-
-                            // Get connection info
-                            manager.requestConnectionInfo(channel, new WifiP2pManager.ConnectionInfoListener() {
-                                @Override
-                                public void onConnectionInfoAvailable(WifiP2pInfo wifiP2pInfo) {
-                                    if (wifiP2pInfo.groupFormed) {
-                                        if (wifiP2pInfo.isGroupOwner) {
-                                            // We're the group owner (shouldn't happen in this flow)
-                                            Log.w(TAG, "⚠️ We became Group Owner, adjusting flow...");
-                                            startFileTransfer(sourceFile, receiverAddress, promise);
-                                        } else {
-                                            // We're the client - connect to receiver's server (192.168.49.1 is default GO IP)
-                                            String receiverIP = "192.168.49.1"; // Standard GO IP
-                                            Log.d(TAG, "✅ Connected as client, connecting to receiver's server at " + receiverIP + ":8989");
-                                            connectToReceiverServer(sourceFile, receiverIP, 8989, promise);
-                                        }
-                                    } else {
-                                        Log.e(TAG, "❌ Group not formed");
-                                        promise.reject("CONNECTION_FAILED", "Failed to form WiFi Direct group");
-                                    }
-                                }
-                            });
-                        } catch (InterruptedException e) {
-                            Log.e(TAG, "Connection wait interrupted", e);
-                            promise.reject("CONNECTION_FAILED", "Connection interrupted");
-                        }
-                    }).start();
+                    Log.d(TAG, "✅ Connect request accepted, waiting for the group to form...");
+                    awaitReceiverGroupAndSend(sourceFile, receiverAddress, transfer);
                 }
 
                 @Override
                 public void onFailure(int reason) {
                     Log.e(TAG, "❌ Failed to connect to receiver: " + reason);
-                    promise.reject("CONNECTION_FAILED", "Failed to connect to receiver: " + reason);
+                    transfer.fail("CONNECTION_FAILED", "Failed to connect to receiver: " + reason);
                 }
             });
 
         } catch (Exception e) {
             Log.e(TAG, "❌ Connect to receiver failed", e);
-            promise.reject("CONNECTION_FAILED", "Failed to connect to receiver: " + e.getMessage());
+            transfer.fail("CONNECTION_FAILED", "Failed to connect to receiver: " + e.getMessage());
         }
     }
 
-    private void connectToReceiverServer(File sourceFile, String receiverIP, int port, Promise promise) {
+    /**
+     * connect() only means the request was accepted. Poll the connection info
+     * with backoff until the group is formed and the receiver's GO address is
+     * assigned, then open the transfer socket to that address.
+     */
+    private void awaitReceiverGroupAndSend(File sourceFile, String receiverAddress, TransferSession transfer) {
+        final WifiP2pInfo[] formed = new WifiP2pInfo[1];
+        RetryPolicy.GROUP_OWNER_ADDRESS.execute(retryScheduler, (attempt, result) ->
+            manager.requestConnectionInfo(channel, wifiP2pInfo -> {
+                String ip = wifiP2pInfo != null && wifiP2pInfo.groupOwnerAddress != null
+                    ? wifiP2pInfo.groupOwnerAddress.getHostAddress() : null;
+                if (wifiP2pInfo == null || !wifiP2pInfo.groupFormed) {
+                    result.retry("Group not formed yet");
+                } else if (!wifiP2pInfo.isGroupOwner && RetryPolicy.isUnassignedAddress(ip)) {
+                    result.retry("Receiver address not assigned yet (" + ip + ")");
+                } else {
+                    formed[0] = wifiP2pInfo;
+                    result.success();
+                }
+            }), new RetryPolicy.Callback() {
+                @Override
+                public void onSuccess(int attempts) {
+                    if (formed[0].isGroupOwner) {
+                        // We're the group owner (shouldn't happen in this flow)
+                        Log.w(TAG, "⚠️ We became Group Owner, adjusting flow...");
+                        performRealFileTransfer(sourceFile, receiverAddress, transfer);
+                        return;
+                    }
+                    String receiverIP = formed[0].groupOwnerAddress.getHostAddress();
+                    Log.d(TAG, "✅ Connected as client after " + attempts + " check(s), connecting to receiver's server at "
+                        + receiverIP + ":" + RECEIVE_PORT);
+                    connectToReceiverServer(sourceFile, receiverIP, RECEIVE_PORT, transfer);
+                }
+
+                @Override
+                public void onGiveUp(String reason, int attempts) {
+                    Log.e(TAG, "❌ Group not formed after connect: " + reason);
+                    transfer.fail("CONNECTION_FAILED", "Failed to form WiFi Direct group: " + reason);
+                }
+            });
+    }
+
+    private void connectToReceiverServer(File sourceFile, String receiverIP, int port, TransferSession transfer) {
         new Thread(() -> {
             Socket socket = null;
             try {
                 Log.d(TAG, "📡 Connecting to receiver server: " + receiverIP + ":" + port);
 
-                // Create socket connection to receiver's server
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(receiverIP, port), 15000); // Increased timeout to 15 seconds
-                socket.setSoTimeout(30000); // 30 second read timeout
+                // Create socket connection to receiver's server (15s connect, 30s read timeout)
+                socket = transfer.attach(TransferSockets.connect(new InetSocketAddress(receiverIP, port)));
 
                 Log.d(TAG, "✅ Connected to receiver server");
 
                 // Send file
-                sendFileOverSocket(sourceFile, socket, promise);
+                sendFileOverSocket(sourceFile, socket, transfer);
 
             } catch (Exception e) {
                 Log.e(TAG, "❌ Failed to connect to receiver server", e);
-                promise.reject("CONNECTION_FAILED", "Failed to connect to receiver server: " + e.getMessage());
+                transfer.fail("CONNECTION_FAILED", "Failed to connect to receiver server: " + e.getMessage());
             } finally {
                 // Close the socket to prevent resource leaks
                 if (socket != null && !socket.isClosed()) {
@@ -696,85 +798,107 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
         }).start();
     }
 
-    private void sendFileOverSocket(File sourceFile, Socket socket, Promise promise) {
-        try {
-            String fileName = sourceFile.getName();
-            long fileSize = sourceFile.length();
-
-            // Get output stream to receiver
-            OutputStream outputStream = socket.getOutputStream();
-            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
-
-            // Send file metadata first
-            dataOutputStream.writeUTF(fileName);
-            dataOutputStream.writeLong(fileSize);
-            dataOutputStream.flush();
+    private void sendFileOverSocket(File sourceFile, Socket socket, TransferSession transfer) {
+        sendFileOverSocket(sourceFile, socket, buildTransferHeader(sourceFile, new HashMap<>()), transfer);
+    }
 
-            // Send file content
-            FileInputStream fileInputStream = new FileInputStream(sourceFile);
-            byte[] buffer = new byte[8192];
-            long totalBytesSent = 0;
-            int bytesRead;
+    // Separate maps for the event and the promise, like the regular completion path
+    private WritableMap alreadyReceivedResult(TransferSession transfer, File sourceFile, String fileName, long fileSize,
+                                              Socket socket, TransferReply reply) {
+        WritableMap result = Arguments.createMap();
+        result.putString("transferId", transfer.id);
+        result.putString("status", "already_received");
+        result.putString("filePath", sourceFile.getAbsolutePath());
+        result.putString("fileName", fileName);
+        result.putString("existingFileName", reply.get(TransferReply.PROP_EXISTING_NAME));
+        result.putDouble("fileSize", fileSize);
+        result.putString("targetAddress", socket.getInetAddress().getHostAddress());
+        result.putString("transferType", "wifi-direct");
+        return result;
+    }
 
-            Log.d(TAG, "📤 Starting file streaming: " + fileName + " (" + fileSize + " bytes)");
+    /**
+     * Extended header offering the file's sampled content hash (plus its full
+     * SHA-256 when the library has already computed it), so the receiver can
+     * answer "already have it" before any file bytes move, a
+     * CRC32 trailer the receiver can check before committing the file,
+     * receiver ACKs so progress and success reflect what actually landed,
+     * deflate when sampling says the file isn't already compressed, a chunk
+     * delta in case the receiver has an earlier cut of the same file, and a
+     * framed body so a paused send can keep the receiver's read alive.
+     */
+    private TransferHeader buildTransferHeader(File sourceFile, Map<String, String> properties) {
+        try {
+            properties.put(TransferHeader.PROP_CONTENT_HASH, ContentIndex.sampledHash(sourceFile));
+            // Only a hash that already exists: hashing here would delay the send by a full read of the file
+            String fullHash = ReceivedLibrary.get(reactContext).getContentIndex().knownFullHash(sourceFile);
+            if (fullHash != null) {
+                properties.put(TransferHeader.PROP_FULL_HASH, fullHash);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Could not hash " + sourceFile.getName() + ", sending without dedupe: " + e.getMessage());
+        }
+        properties.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        properties.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        properties.put(TransferHeader.PROP_ACKS, "1");
+        properties.put(TransferHeader.PROP_KEEPALIVE, "1");
+        properties.put(TransferHeader.PROP_DELTA, TransferHeader.DELTA_CDC_GEAR);
+        try {
+            if (TransferCompression.isWorthCompressing(sourceFile)) {
+                properties.put(TransferHeader.PROP_COMPRESSION, TransferHeader.COMPRESSION_DEFLATE);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Could not sample " + sourceFile.getName() + ", sending uncompressed: " + e.getMessage());
+        }
+        return new TransferHeader(sourceFile.getName(), sourceFile.length(), properties);
+    }
 
-            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                dataOutputStream.write(buffer, 0, bytesRead);
-                totalBytesSent += bytesRead;
+    private void sendFileOverSocket(File sourceFile, Socket socket, TransferHeader header, TransferSession transfer) {
+        try {
+            String fileName = header.fileName;
+            long fileSize = header.fileSize;
+            String targetAddress = socket.getInetAddress().getHostAddress();
 
-                // Calculate and emit progress
-                int progress = (int) ((totalBytesSent * 100) / fileSize);
+            Log.d(TAG, "📤 Starting file streaming " + transfer.id + ": " + fileName + " (" + fileSize + " bytes)");
+            transfer.begin(fileName, fileSize, targetAddress);
 
-                // Create separate maps for event emission and logging
-                WritableMap progressData = Arguments.createMap();
-                progressData.putString("fileName", fileName);
-                progressData.putInt("progress", progress);
-                progressData.putDouble("bytesTransferred", totalBytesSent);
-                progressData.putDouble("totalBytes", fileSize);
-                progressData.putString("targetAddress", socket.getInetAddress().getHostAddress());
-                progressData.putString("status", "sending");
+            TransferSender.Result sent;
+            try (FileInputStream fileInputStream = new FileInputStream(sourceFile)) {
+                sent = TransferSender.send(header, fileInputStream, socket.getInputStream(), socket.getOutputStream(),
+                    transfer, transfer.track(sendProgressListener(transfer, fileName, targetAddress)));
+            }
 
+            if (sent.outcome == TransferSender.Outcome.ALREADY_HAVE) {
+                Log.d(TAG, "✅ Receiver already has " + fileName + " (as " + sent.reply.get(TransferReply.PROP_EXISTING_NAME) +
+                      "), skipping " + fileSize + " bytes");
                 reactContext
                     .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit("onTransferProgress", progressData);
-
-                Log.d(TAG, "📤 Transfer progress: " + progress + "% (" + totalBytesSent + "/" + fileSize + " bytes)");
+                    .emit("onTransferComplete", alreadyReceivedResult(transfer, sourceFile, fileName, fileSize, socket, sent.reply));
+                transfer.complete(alreadyReceivedResult(transfer, sourceFile, fileName, fileSize, socket, sent.reply));
+                return;
+            }
+            if (sent.outcome == TransferSender.Outcome.REJECTED) {
+                String code = sent.reply.get(TransferReply.PROP_ERROR_CODE);
+                Log.e(TAG, "❌ Receiver rejected " + fileName + ": " + sent.reply.get(TransferReply.PROP_MESSAGE));
+                transfer.fail(code != null ? code : "TRANSFER_REJECTED", "Receiver rejected transfer: " +
+                    sent.reply.get(TransferReply.PROP_MESSAGE));
+                return;
             }
 
-            // Clean up
-            fileInputStream.close();
-            dataOutputStream.flush();
-            dataOutputStream.close();
-
-            Log.d(TAG, "✅ File transfer completed: " + fileName);
-
-            // Create result for promise resolution
-            WritableMap result = Arguments.createMap();
-            result.putString("status", "success");
-            result.putString("filePath", sourceFile.getAbsolutePath());
-            result.putString("fileName", fileName);
-            result.putDouble("fileSize", fileSize);
-            result.putString("targetAddress", socket.getInetAddress().getHostAddress());
-            result.putString("transferType", "wifi-direct");
-
-            // Create separate map for completion event
-            WritableMap completionData = Arguments.createMap();
-            completionData.putString("status", "success");
-            completionData.putString("filePath", sourceFile.getAbsolutePath());
-            completionData.putString("fileName", fileName);
-            completionData.putDouble("fileSize", fileSize);
-            completionData.putString("targetAddress", socket.getInetAddress().getHostAddress());
-            completionData.putString("transferType", "wifi-direct");
-
-            reactContext
-                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit("onTransferComplete", completionData);
-
-            promise.resolve(result);
+            Log.d(TAG, "✅ File transfer completed: " + fileName + " (" + sent.body.ioCalls + " writes, " +
+                  String.format(Locale.US, "%.1f", sent.body.getMbPerSecond()) + " MB/s, checksummed=" + sent.checksummed +
+                  ", acked=" + sent.acknowledged + " (" + sent.acksReceived + " ACKs, max " + sent.maxUnackedBytes + " bytes unacked)" +
+                  (sent.compressed ? ", compressed to " + sent.wireBytes + " bytes (" + sent.deflatedChunks + " chunks deflated)" : "") +
+                  (sent.delta ? ", delta sent " + sent.wireBytes + " bytes, receiver reused " + sent.reusedBytes : "") + ")");
+            resolveSendSuccess(transfer, sourceFile, fileName, fileSize, targetAddress);
 
         } catch (Exception e) {
-            Log.e(TAG, "❌ File transfer over socket failed", e);
-            promise.reject("SOCKET_TRANSFER_FAILED", "Socket transfer failed: " + e.getMessage());
+            if (transfer.getState() == TransferSession.State.CANCELLED) {
+                Log.d(TAG, "🛑 " + transfer.id + " cancelled after " + transfer.getBytesDone() + " bytes");
+            } else {
+                Log.e(TAG, "❌ File transfer over socket failed", e);
+                transfer.fail("SOCKET_TRANSFER_FAILED", "Socket transfer failed: " + e.getMessage());
+            }
         } finally {
             try {
                 socket.close();
@@ -784,223 +908,116 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
         }
     }
 
-    private void startFileTransfer(File sourceFile, String targetAddress, Promise promise) {
-        new Thread(() -> {
-            try {
-                // Wait 3 seconds for connection to fully stabilize
-                Log.d(TAG, "⏳ Waiting 3 seconds for connection to stabilize...");
-                Thread.sleep(3000);
+    // Progress events are throttled by TransferPipeline rather than sent per buffer
+    private TransferPipeline.TransferListener sendProgressListener(TransferSession transfer, String fileName, String targetAddress) {
+        return (bytesSent, totalBytes) -> {
+            int progress = totalBytes > 0 ? (int) ((bytesSent * 100) / totalBytes) : 100;
 
-                performRealFileTransfer(sourceFile, targetAddress, promise);
-            } catch (Exception e) {
-                Log.e(TAG, "File transfer thread failed", e);
-                promise.reject("TRANSFER_FAILED", "File transfer failed: " + e.getMessage());
-            }
-        }).start();
+            WritableMap progressData = Arguments.createMap();
+            progressData.putString("transferId", transfer.id);
+            progressData.putString("fileName", fileName);
+            progressData.putInt("progress", progress);
+            progressData.putDouble("bytesTransferred", bytesSent);
+            progressData.putDouble("totalBytes", totalBytes);
+            progressData.putString("targetAddress", targetAddress);
+            progressData.putString("status", "sending");
+
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("onTransferProgress", progressData);
+
+            Log.d(TAG, "📤 Transfer progress: " + progress + "% (" + bytesSent + "/" + totalBytes + " bytes)");
+        };
     }
 
-    private void createGroupAndTransfer(File sourceFile, String targetAddress, Promise promise) {
-        // Create a group first, then transfer the file
-        manager.createGroup(channel, new WifiP2pManager.ActionListener() {
-            @Override
-            public void onSuccess() {
-                Log.d(TAG, "✅ WiFi Direct group created, now waiting for IP assignment and starting transfer...");
+    private void resolveSendSuccess(TransferSession transfer, File sourceFile, String fileName, long fileSize, String targetAddress) {
+        // Create result for promise resolution
+        WritableMap result = Arguments.createMap();
+        result.putString("transferId", transfer.id);
+        result.putString("status", "success");
+        result.putString("filePath", sourceFile.getAbsolutePath());
+        result.putString("fileName", fileName);
+        result.putDouble("fileSize", fileSize);
+        result.putString("targetAddress", targetAddress);
+        result.putString("transferType", "wifi-direct");
+
+        // Create separate map for completion event
+        WritableMap completionData = Arguments.createMap();
+        completionData.putString("transferId", transfer.id);
+        completionData.putString("status", "success");
+        completionData.putString("filePath", sourceFile.getAbsolutePath());
+        completionData.putString("fileName", fileName);
+        completionData.putDouble("fileSize", fileSize);
+        completionData.putString("targetAddress", targetAddress);
+        completionData.putString("transferType", "wifi-direct");
 
-                // Wait for IP assignment before starting the transfer
-                new Thread(() -> {
-                    try {
-                        // Wait 4 seconds for IP assignment to complete
-                        Thread.sleep(4000);
-
-                        // Verify that we're in a group before transferring
-                        manager.requestConnectionInfo(channel, new WifiP2pManager.ConnectionInfoListener() {
-                            @Override
-                            public void onConnectionInfoAvailable(WifiP2pInfo wifiP2pInfo) {
-                                if (wifiP2pInfo.groupFormed && wifiP2pInfo.isGroupOwner) {
-                                    Log.d(TAG, "✅ Confirmed in WiFi Direct group as Group Owner, starting transfer...");
-                                    startFileTransfer(sourceFile, targetAddress, promise);
-                                } else {
-                                    Log.e(TAG, "❌ Not in proper WiFi Direct group after group creation");
-                                    promise.reject("GROUP_FORMATION_FAILED", "Failed to establish proper WiFi Direct group for file transfer");
-                                }
-                            }
-                        });
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Group creation wait interrupted", e);
-                        promise.reject("TRANSFER_SETUP_FAILED", "File transfer setup interrupted");
-                    }
-                }).start();
-            }
+        reactContext
+            .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+            .emit("onTransferComplete", completionData);
 
-            @Override
-            public void onFailure(int reason) {
-                Log.e(TAG, "❌ Failed to create WiFi Direct group for file transfer: " + reason);
-                String errorMessage = "Failed to create WiFi Direct group. ";
-                switch (reason) {
-                    case WifiP2pManager.P2P_UNSUPPORTED:
-                        errorMessage += "Wi-Fi Direct is not supported on this device.";
-                        break;
-                    case WifiP2pManager.BUSY:
-                        errorMessage += "Wi-Fi Direct is busy. Please try again in a few seconds.";
-                        break;
-                    case WifiP2pManager.ERROR:
-                        errorMessage += "Wi-Fi Direct internal error occurred. Ensure Wi-Fi and Location are enabled.";
-                        break;
-                    default:
-                        errorMessage += "Error code: " + reason;
-                        break;
-                }
-                promise.reject("GROUP_CREATION_FAILED", errorMessage);
-            }
-        });
+        transfer.complete(result);
     }
 
-    private void performRealFileTransfer(File sourceFile, String targetAddress, Promise promise) {
+    private void performRealFileTransfer(File sourceFile, String targetAddress, TransferSession transfer) {
         try {
             String fileName = sourceFile.getName();
             long fileSize = sourceFile.length();
 
             Log.d(TAG, "🚀 Starting REAL WiFi Direct file transfer: " + fileName + " (" + fileSize + " bytes) to " + targetAddress);
 
-            // First, try to clear any existing group
-            Log.d(TAG, "📡 Clearing any existing WiFi Direct group...");
-            manager.removeGroup(channel, new WifiP2pManager.ActionListener() {
+            groupManager.ensureGroup(new GroupLifecycleManager.Callback() {
                 @Override
-                public void onSuccess() {
-                    Log.d(TAG, "✅ Existing group cleared, now creating new group...");
-                    // Now create the group after clearing
-                    createGroupWithRetry(sourceFile, targetAddress, promise, 0);
+                public void onGroupReady(String groupOwnerIP, boolean reused) {
+                    Log.d(TAG, (reused ? "♻️ Reusing" : "✅ Created") + " WiFi Direct group, starting socket server and transfer");
+                    startSocketServerAndTransfer(sourceFile, targetAddress, transfer);
                 }
 
                 @Override
-                public void onFailure(int reason) {
-                    Log.w(TAG, "⚠️ No existing group to clear or clear failed: " + reason);
-                    // Continue anyway and try to create group
-                    createGroupWithRetry(sourceFile, targetAddress, promise, 0);
+                public void onGroupFailed(String code, String message) {
+                    Log.e(TAG, "❌ " + message);
+                    transfer.fail(code, message);
                 }
             });
 
         } catch (Exception e) {
             Log.e(TAG, "❌ WiFi Direct file transfer setup failed", e);
-            promise.reject("TRANSFER_SETUP_FAILED", "WiFi Direct transfer setup failed: " + e.getMessage());
-        }
-    }
-
-    private void createGroupWithRetry(File sourceFile, String targetAddress, Promise promise, int attemptCount) {
-        if (attemptCount >= 5) { // Increased from 3 to 5 attempts
-            Log.e(TAG, "❌ Failed to create WiFi Direct group after 5 attempts");
-            promise.reject("GROUP_CREATION_FAILED", "Failed to create WiFi Direct group after retries. Please try again.");
-            return;
+            transfer.fail("TRANSFER_SETUP_FAILED", "WiFi Direct transfer setup failed: " + e.getMessage());
         }
-
-        Log.d(TAG, "📡 Attempt " + (attemptCount + 1) + "/5 - Creating WiFi Direct group...");
-
-        // CRITICAL FIX: Clean up any existing group/connection before creating new one
-        // This prevents "WiFi Direct is busy" error
-        manager.removeGroup(channel, new WifiP2pManager.ActionListener() {
-            @Override
-            public void onSuccess() {
-                Log.d(TAG, "✅ Existing group cleared, waiting 2 seconds for system to stabilize...");
-                // Wait 2 seconds after cleanup to ensure system is stable
-                new Thread(() -> {
-                    try {
-                        Thread.sleep(2000);
-                        Log.d(TAG, "⏱️ Wait complete, now creating new group...");
-                        createGroupAfterCleanup(sourceFile, targetAddress, promise, attemptCount);
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Wait interrupted", e);
-                        createGroupAfterCleanup(sourceFile, targetAddress, promise, attemptCount);
-                    }
-                }).start();
-            }
-
-            @Override
-            public void onFailure(int reason) {
-                Log.w(TAG, "⚠️ No existing group to clear or clear failed: " + reason + ", waiting 1.5 seconds...");
-                // Wait before trying to create group even if cleanup failed
-                new Thread(() -> {
-                    try {
-                        Thread.sleep(1500);
-                        Log.d(TAG, "⏱️ Wait complete after cleanup failure, attempting group creation...");
-                        createGroupAfterCleanup(sourceFile, targetAddress, promise, attemptCount);
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Wait interrupted", e);
-                        createGroupAfterCleanup(sourceFile, targetAddress, promise, attemptCount);
-                    }
-                }).start();
-            }
-        });
     }
 
-    private void createGroupAfterCleanup(File sourceFile, String targetAddress, Promise promise, int attemptCount) {
-        manager.createGroup(channel, new WifiP2pManager.ActionListener() {
-            @Override
-            public void onSuccess() {
-                Log.d(TAG, "✅ WiFi Direct group created successfully on attempt " + (attemptCount + 1));
-                
-                // After creating the group, wait a bit for the group formation to fully complete
-                new Thread(() -> {
-                    try {
-                        // Wait 3 seconds for group formation to fully complete and IP address to be assigned
-                        Thread.sleep(3000);
-                        Log.d(TAG, "⏳ Group formation wait completed, now starting socket server and transfer");
-                        startSocketServerAndTransfer(sourceFile, targetAddress, promise);
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Group formation wait interrupted", e);
-                        promise.reject("GROUP_CREATION_FAILED", "WiFi Direct group formation interrupted");
-                    }
-                }).start();
-            }
-
-            @Override
-            public void onFailure(int reason) {
-                Log.e(TAG, "❌ Failed to create WiFi Direct group (attempt " + (attemptCount + 1) + "): " + reason);
-
-                if (reason == 2) { // ERROR code 2 - try again
-                    Log.d(TAG, "🔄 Retrying in 1.5 seconds...");
-                    try {
-                        Thread.sleep(1500);
-                        createGroupWithRetry(sourceFile, targetAddress, promise, attemptCount + 1);
-                    } catch (InterruptedException ie) {
-                        Log.e(TAG, "Retry interrupted", ie);
-                        promise.reject("GROUP_CREATION_FAILED", "WiFi Direct group creation interrupted");
-                    }
-                } else {
-                    promise.reject("GROUP_CREATION_FAILED", "Failed to create WiFi Direct group: " + reason);
-                }
-            }
-        });
-    }
-
-    private void startSocketServerAndTransfer(File sourceFile, String targetAddress, Promise promise) {
+    private void startSocketServerAndTransfer(File sourceFile, String targetAddress, TransferSession transfer) {
         try {
-            // Start socket server in background thread
-            serverThread = new Thread(() -> {
+            // Start socket server in background thread; the session owns (and closes) its sockets
+            new Thread(() -> {
                 ServerSocket localServerSocket = null;
                 try {
                     // Create server socket on a dynamically assigned port to avoid conflicts
-                    localServerSocket = new ServerSocket(0); // 0 means system will assign an available port
+                    localServerSocket = transfer.attach(new ServerSocket(0)); // 0 means system will assign an available port
                     int assignedPort = localServerSocket.getLocalPort();
-                    fileTransferServer = localServerSocket; // Store reference for cleanup
-                    isServerRunning = true;
-                    Log.d(TAG, "📡 File transfer server started on port " + assignedPort);
+                    Log.d(TAG, "📡 File transfer server for " + transfer.id + " started on port " + assignedPort);
 
                     // Send connection info to target device via WiFi Direct with the correct port
-                    sendConnectionRequestToTarget(targetAddress, sourceFile.getName(), sourceFile.length(), assignedPort, promise);
+                    sendConnectionRequestToTarget(targetAddress, sourceFile.getName(), sourceFile.length(), assignedPort, transfer);
 
                     // Set socket timeout for client connection acceptance
                     localServerSocket.setSoTimeout(30000); // 30 seconds timeout
                     
                     // Wait for client to connect
-                    Socket clientSocket = localServerSocket.accept();
+                    Socket clientSocket = transfer.attach(localServerSocket.accept());
                     Log.d(TAG, "✅ Client connected: " + clientSocket.getInetAddress().getHostAddress());
 
                     // Transfer file over socket
-                    transferFileOverSocket(sourceFile, clientSocket, promise);
+                    transferFileOverSocket(sourceFile, clientSocket, transfer);
 
                 } catch (Exception e) {
+                    if (transfer.getState() == TransferSession.State.CANCELLED) {
+                        Log.d(TAG, "🛑 " + transfer.id + " cancelled while waiting for the peer");
+                        return;
+                    }
                     Log.e(TAG, "❌ Socket server failed", e);
-                    promise.reject("SOCKET_SERVER_FAILED", "Socket server failed: " + e.getMessage());
+                    // Peer never reached us - don't trust this group for the next transfer
+                    groupManager.markBroken();
+                    transfer.fail("SOCKET_SERVER_FAILED", "Socket server failed: " + e.getMessage());
                 } finally {
                     // Close the local server socket
                     if (localServerSocket != null && !localServerSocket.isClosed()) {
@@ -1010,171 +1027,98 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
                             Log.e(TAG, "Error closing server socket in finally", ioEx);
                         }
                     }
-                    cleanupServer();
                 }
-            });
-            serverThread.start();
+            }).start();
 
         } catch (Exception e) {
             Log.e(TAG, "❌ Failed to start socket server", e);
-            promise.reject("SERVER_START_FAILED", "Failed to start socket server: " + e.getMessage());
+            transfer.fail("SERVER_START_FAILED", "Failed to start socket server: " + e.getMessage());
         }
     }
 
-    private void sendConnectionRequestToTarget(String targetAddress, String fileName, long fileSize, int port, Promise outerPromise) {
+    private void sendConnectionRequestToTarget(String targetAddress, String fileName, long fileSize, int port, TransferSession transfer) {
         try {
             // Get our own IP address (group owner) with retry mechanism using the assigned port
-            requestGroupOwnerAddressWithRetry(targetAddress, fileName, fileSize, port, outerPromise, 0);
+            requestGroupOwnerAddressWithRetry(targetAddress, fileName, fileSize, port, transfer);
         } catch (Exception e) {
             Log.e(TAG, "❌ Failed to send connection request", e);
         }
     }
 
-    private void requestGroupOwnerAddressWithRetry(String targetAddress, String fileName, long fileSize, int port, Promise outerPromise, int attemptCount) {
-        if (attemptCount >= 10) { // Increased from 5 to 10 attempts
-            Log.e(TAG, "❌ Failed to get group owner IP address after 10 attempts");
-            outerPromise.reject("INVALID_ADDRESS", "Failed to get group owner IP address after retries");
-            return;
-        }
-
-        manager.requestConnectionInfo(channel, new WifiP2pManager.ConnectionInfoListener() {
-            @Override
-            public void onConnectionInfoAvailable(WifiP2pInfo wifiP2pInfo) {
-                Log.d(TAG, "onConnectionInfoAvailable called - groupFormed: " + wifiP2pInfo.groupFormed + 
-                      ", isGroupOwner: " + wifiP2pInfo.isGroupOwner + 
-                      ", groupOwnerAddress: " + (wifiP2pInfo.groupOwnerAddress != null ? wifiP2pInfo.groupOwnerAddress.getHostAddress() : "null"));
-
-                if (wifiP2pInfo.groupFormed && wifiP2pInfo.isGroupOwner) {
-                    String groupOwnerAddress = null;
-
-                    if (wifiP2pInfo.groupOwnerAddress != null) {
-                        groupOwnerAddress = wifiP2pInfo.groupOwnerAddress.getHostAddress();
-                        
-                        // Validate that group owner address is a valid IP (not 0.0.0.0)
-                        if (groupOwnerAddress != null && !groupOwnerAddress.equals("0.0.0.0") && !groupOwnerAddress.isEmpty()) {
-                            Log.d(TAG, "✅ Valid group owner address retrieved: " + groupOwnerAddress);
-
-                            Log.d(TAG, "📡 Sending connection request to " + targetAddress + " - Connect to: " + groupOwnerAddress + ":" + port);
-
-                            // Send connection request via WiFi Direct
-                            WritableMap connectionData = Arguments.createMap();
-                            connectionData.putString("type", "FILE_TRANSFER_REQUEST");
-                            connectionData.putString("fileName", fileName);
-                            connectionData.putDouble("fileSize", fileSize);
-                            connectionData.putString("serverAddress", groupOwnerAddress);
-                            connectionData.putInt("serverPort", port);
-
-                            reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                                .emit("p2pConnectionRequest", connectionData);
-                        } else {
-                            // IP address is not valid yet (0.0.0.0 or empty), retry after delay
-                            Log.w(TAG, "⚠️ Group owner address is invalid (" + groupOwnerAddress + ") on attempt " + (attemptCount + 1) + ", retrying in 1.5 seconds...");
-                            try {
-                                Thread.sleep(1500); // Increased delay to 1.5 seconds
-                                requestGroupOwnerAddressWithRetry(targetAddress, fileName, fileSize, port, outerPromise, attemptCount + 1);
-                            } catch (InterruptedException e) {
-                                Log.e(TAG, "Retry interrupted", e);
-                                outerPromise.reject("INVALID_ADDRESS", "Failed to get group owner IP address");
-                            }
-                        }
-                    } else {
-                        // IP address not ready yet, retry after delay
-                        Log.w(TAG, "⚠️ Group owner address is null on attempt " + (attemptCount + 1) + ", retrying in 1.5 seconds...");
-                        try {
-                            Thread.sleep(1500); // Increased delay to 1.5 seconds
-                            requestGroupOwnerAddressWithRetry(targetAddress, fileName, fileSize, port, outerPromise, attemptCount + 1);
-                        } catch (InterruptedException e) {
-                            Log.e(TAG, "Retry interrupted", e);
-                            outerPromise.reject("INVALID_ADDRESS", "Failed to get group owner IP address");
-                        }
-                    }
+    private void requestGroupOwnerAddressWithRetry(String targetAddress, String fileName, long fileSize, int port, TransferSession transfer) {
+        final String[] groupOwnerAddress = new String[1];
+        RetryPolicy.GROUP_OWNER_ADDRESS.execute(retryScheduler, (attempt, result) ->
+            manager.requestConnectionInfo(channel, wifiP2pInfo -> {
+                String ip = wifiP2pInfo.groupOwnerAddress != null ? wifiP2pInfo.groupOwnerAddress.getHostAddress() : null;
+                Log.d(TAG, "onConnectionInfoAvailable called - groupFormed: " + wifiP2pInfo.groupFormed +
+                      ", isGroupOwner: " + wifiP2pInfo.isGroupOwner +
+                      ", groupOwnerAddress: " + ip);
+
+                if (!wifiP2pInfo.groupFormed || !wifiP2pInfo.isGroupOwner) {
+                    // Not retryable: the group we just created is gone or owned by the peer
+                    result.fail("Group not formed or not group owner");
+                } else if (RetryPolicy.isUnassignedAddress(ip)) {
+                    Log.w(TAG, "⚠️ Group owner address is invalid (" + ip + ") on attempt " + attempt + ", retrying...");
+                    result.retry("Group owner address is invalid (" + ip + ")");
                 } else {
-                    Log.e(TAG, "❌ Group not formed or not group owner");
-                    outerPromise.reject("INVALID_ADDRESS", "Group not formed or not group owner");
+                    groupOwnerAddress[0] = ip;
+                    result.success();
                 }
-            }
-        });
+            }), new RetryPolicy.Callback() {
+                @Override
+                public void onSuccess(int attempts) {
+                    Log.d(TAG, "✅ Valid group owner address retrieved: " + groupOwnerAddress[0]);
+                    Log.d(TAG, "📡 Sending connection request to " + targetAddress + " - Connect to: " + groupOwnerAddress[0] + ":" + port);
+
+                    // Send connection request via WiFi Direct
+                    WritableMap connectionData = Arguments.createMap();
+                    connectionData.putString("type", "FILE_TRANSFER_REQUEST");
+                    connectionData.putString("transferId", transfer.id);
+                    connectionData.putString("fileName", fileName);
+                    connectionData.putDouble("fileSize", fileSize);
+                    connectionData.putString("serverAddress", groupOwnerAddress[0]);
+                    connectionData.putInt("serverPort", port);
+
+                    reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                        .emit("p2pConnectionRequest", connectionData);
+                }
+
+                @Override
+                public void onGiveUp(String reason, int attempts) {
+                    Log.e(TAG, "❌ Failed to get group owner IP address: " + reason);
+                    transfer.fail("INVALID_ADDRESS", "Failed to get group owner IP address: " + reason);
+                }
+            });
     }
 
-    private void transferFileOverSocket(File sourceFile, Socket clientSocket, Promise promise) {
+    private void transferFileOverSocket(File sourceFile, Socket clientSocket, TransferSession transfer) {
         try {
             String fileName = sourceFile.getName();
             long fileSize = sourceFile.length();
+            String targetAddress = clientSocket.getInetAddress().getHostAddress();
 
-            // Get output stream to client
-            OutputStream outputStream = clientSocket.getOutputStream();
-            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
-
-            // Send file metadata first
-            dataOutputStream.writeUTF(fileName);
-            dataOutputStream.writeLong(fileSize);
-            dataOutputStream.flush();
-
-            // Send file content
-            FileInputStream fileInputStream = new FileInputStream(sourceFile);
-            byte[] buffer = new byte[8192];
-            long totalBytesSent = 0;
-            int bytesRead;
-
-            Log.d(TAG, "📤 Starting file streaming: " + fileName + " (" + fileSize + " bytes)");
-
-            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                dataOutputStream.write(buffer, 0, bytesRead);
-                totalBytesSent += bytesRead;
-
-                // Calculate and emit progress
-                int progress = (int) ((totalBytesSent * 100) / fileSize);
-
-                // Create separate maps for event emission and logging
-                WritableMap progressData = Arguments.createMap();
-                progressData.putString("fileName", fileName);
-                progressData.putInt("progress", progress);
-                progressData.putDouble("bytesTransferred", totalBytesSent);
-                progressData.putDouble("totalBytes", fileSize);
-                progressData.putString("targetAddress", clientSocket.getInetAddress().getHostAddress());
-                progressData.putString("status", "sending");
-
-                reactContext
-                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit("onTransferProgress", progressData);
+            Log.d(TAG, "📤 Starting file streaming " + transfer.id + ": " + fileName + " (" + fileSize + " bytes)");
+            transfer.begin(fileName, fileSize, targetAddress);
 
-                Log.d(TAG, "📤 Transfer progress: " + progress + "% (" + totalBytesSent + "/" + fileSize + " bytes)");
+            // Legacy header: the connecting receiver may be an older build that never replies
+            TransferSender.Result sent;
+            try (FileInputStream fileInputStream = new FileInputStream(sourceFile)) {
+                sent = TransferSender.send(new TransferHeader(fileName, fileSize), fileInputStream,
+                    clientSocket.getInputStream(), clientSocket.getOutputStream(),
+                    transfer, transfer.track(sendProgressListener(transfer, fileName, targetAddress)));
             }
 
-            // Clean up
-            fileInputStream.close();
-            dataOutputStream.flush();
-            dataOutputStream.close();
-
-            Log.d(TAG, "✅ File transfer completed: " + fileName);
-
-            // Create result for promise resolution (different object from progressData)
-            WritableMap result = Arguments.createMap();
-            result.putString("status", "success");
-            result.putString("filePath", sourceFile.getAbsolutePath()); // Source file was sent successfully
-            result.putString("fileName", fileName);
-            result.putDouble("fileSize", fileSize);
-            result.putString("targetAddress", clientSocket.getInetAddress().getHostAddress());
-            result.putString("transferType", "wifi-direct");
-
-            // Create separate map for completion event
-            WritableMap completionData = Arguments.createMap();
-            completionData.putString("status", "success");
-            completionData.putString("filePath", sourceFile.getAbsolutePath());
-            completionData.putString("fileName", fileName);
-            completionData.putDouble("fileSize", fileSize);
-            completionData.putString("targetAddress", clientSocket.getInetAddress().getHostAddress());
-            completionData.putString("transferType", "wifi-direct");
-
-            reactContext
-                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit("onTransferComplete", completionData);
-
-            promise.resolve(result);
+            Log.d(TAG, "✅ File transfer completed: " + fileName + " (" + sent.body.ioCalls + " writes, " +
+                  String.format(Locale.US, "%.1f", sent.body.getMbPerSecond()) + " MB/s)");
+            resolveSendSuccess(transfer, sourceFile, fileName, fileSize, targetAddress);
 
         } catch (Exception e) {
-            Log.e(TAG, "❌ File transfer over socket failed", e);
-            promise.reject("SOCKET_TRANSFER_FAILED", "Socket transfer failed: " + e.getMessage());
+            if (transfer.getState() == TransferSession.State.CANCELLED) {
+                Log.d(TAG, "🛑 " + transfer.id + " cancelled after " + transfer.getBytesDone() + " bytes");
+            } else {
+                Log.e(TAG, "❌ File transfer over socket failed", e);
+                transfer.fail("SOCKET_TRANSFER_FAILED", "Socket transfer failed: " + e.getMessage());
+            }
         } finally {
             try {
                 clientSocket.close();
@@ -1184,41 +1128,21 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
         }
     }
 
-    private void cleanupServer() {
-        try {
-            isServerRunning = false;
-            if (fileTransferServer != null && !fileTransferServer.isClosed()) {
-                fileTransferServer.close();
-                fileTransferServer = null;
-            }
-            Log.d(TAG, "📡 Socket server cleaned up");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to cleanup server", e);
-        }
-    }
-
-    private String getGroupOwnerIPAddress() {
-        try {
-            // Get the group owner's IP address
-            // For simplicity, return a default WiFi Direct IP
-            // In real implementation, this would get the actual group owner IP
-            return "192.168.49.1"; // Default WiFi Direct group owner IP
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to get group owner IP", e);
-            return "192.168.49.1"; // Fallback to default
-        }
-    }
-
-    @ReactMethod
-    public void handleP2PConnectionRequest(String serverAddress, int serverPort, String fileName, double fileSize, Promise promise) {
+    @ReactMethod
+    public void handleP2PConnectionRequest(String serverAddress, int serverPort, String fileName, double fileSize, Promise promise) {
         try {
             Log.d(TAG, "📨 handleP2PConnectionRequest called: " + fileName + " from " + serverAddress + ":" + serverPort);
 
             // Handle the connection request
-            handleConnectionRequest(serverAddress, serverPort, fileName, (long) fileSize);
+            TransferSession transfer = handleConnectionRequest(serverAddress, serverPort, fileName, (long) fileSize);
+            if (transfer == null) {
+                promise.reject("NO_RECEIVE_DESTINATION", "Call receiveFile before accepting a connection request");
+                return;
+            }
 
-            // Resolve promise immediately - the actual file transfer will resolve its own promise
+            // Resolve promise immediately - the transfer itself reports through events under this ID
             WritableMap result = Arguments.createMap();
+            result.putString("transferId", transfer.id);
             result.putString("status", "connection_request_handled");
             result.putString("serverAddress", serverAddress);
             result.putInt("serverPort", serverPort);
@@ -1234,6 +1158,25 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
     @ReactMethod
     public void receiveFile(String destination, Promise promise) {
         Log.d(TAG, "🔥🔥🔥 receiveFile() CALLED! Destination: " + destination);
+        long requestedAt = System.nanoTime();
+
+        // FAST PATH: listener is already bound, so receive mode is armed right now.
+        // onReceiverReady waits for the group callback, which carries the real GO address.
+        if (receiveListener != null && receiveListener.isReady()) {
+            File destDir = new File(destination);
+            if (!destDir.exists()) {
+                destDir.mkdirs();
+            }
+            receiveDestination = destination; // Transfers report through events once the promise is resolved
+
+            lastReceiveReadyMs = (System.nanoTime() - requestedAt) / 1_000_000L;
+            Log.d(TAG, "⚡ Pre-warmed receiver armed in " + lastReceiveReadyMs + " ms");
+            promise.resolve(destination);
+
+            formReceiverGroupInBackground(destination);
+            return;
+        }
+
         // Real file receiving implementation
         try {
             Log.d(TAG, "Starting real file receive to: " + destination);
@@ -1257,6 +1200,501 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
         }
     }
 
+    /**
+     * Enable the always-ready receive endpoint: bind the transfer port now and
+     * remember the choice so the listener is bound again at init and on resume.
+     */
+    @ReactMethod
+    public void enablePrewarmedReceiver(String destination, Promise promise) {
+        getPrefs().edit().putString(PREF_PREWARM_DESTINATION, destination).apply();
+        if (startPrewarmedReceiver(destination)) {
+            promise.resolve(getReceiverStatsMap());
+        } else {
+            promise.reject("PREWARM_FAILED", "Failed to bind receive listener on port " + RECEIVE_PORT);
+        }
+    }
+
+    @ReactMethod
+    public void disablePrewarmedReceiver(Promise promise) {
+        getPrefs().edit().remove(PREF_PREWARM_DESTINATION).apply();
+        stopPrewarmedReceiver();
+        promise.resolve(null);
+    }
+
+    @ReactMethod
+    public void getReceiverStats(Promise promise) {
+        promise.resolve(getReceiverStatsMap());
+    }
+
+    @ReactMethod
+    public void getGroupStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        if (groupManager != null) {
+            stats.putInt("reuses", groupManager.getReuses());
+            stats.putInt("creates", groupManager.getCreates());
+            stats.putInt("rebuilds", groupManager.getRebuilds());
+            stats.putInt("failures", groupManager.getFailures());
+        }
+        promise.resolve(stats);
+    }
+
+    /** Running and recently finished transfers, oldest first. */
+    @ReactMethod
+    public void getTransferSessions(Promise promise) {
+        WritableArray sessions = Arguments.createArray();
+        for (TransferSession transfer : transferSessions.getAll()) {
+            sessions.pushMap(toSessionMap(transfer));
+        }
+        promise.resolve(sessions);
+    }
+
+    @ReactMethod
+    public void getTransferSession(String transferId, Promise promise) {
+        TransferSession transfer = transferSessions.get(transferId);
+        if (transfer == null) {
+            promise.reject("SESSION_NOT_FOUND", "No transfer session " + transferId);
+            return;
+        }
+        promise.resolve(toSessionMap(transfer));
+    }
+
+    /**
+     * Hold a running transfer at its next chunk. The socket stays open and
+     * nothing is lost; the paused side pings its peer every
+     * TransferSockets.KEEPALIVE_INTERVAL_MS so the pause can outlast the
+     * peer's read timeout. A receiver on an older build can't take the
+     * framed body, so a send paused against one still fails after
+     * TransferSockets.READ_TIMEOUT_MS.
+     */
+    @ReactMethod
+    public void pauseTransfer(String transferId, Promise promise) {
+        TransferSession transfer = transferSessions.get(transferId);
+        if (transfer == null) {
+            promise.reject("SESSION_NOT_FOUND", "No transfer session " + transferId);
+            return;
+        }
+        if (!transfer.pause()) {
+            promise.reject("INVALID_STATE", "Cannot pause " + transferId + " while " + transfer.getState());
+            return;
+        }
+        Log.d(TAG, "⏸️ Paused " + transferId + " at " + transfer.getBytesDone() + " bytes");
+        promise.resolve(toSessionMap(transfer));
+    }
+
+    @ReactMethod
+    public void resumeTransfer(String transferId, Promise promise) {
+        TransferSession transfer = transferSessions.get(transferId);
+        if (transfer == null) {
+            promise.reject("SESSION_NOT_FOUND", "No transfer session " + transferId);
+            return;
+        }
+        if (!transfer.resume()) {
+            promise.reject("INVALID_STATE", "Cannot resume " + transferId + " while " + transfer.getState());
+            return;
+        }
+        Log.d(TAG, "▶️ Resumed " + transferId + " after " + transfer.getPausedMs() + " ms paused in total");
+        promise.resolve(toSessionMap(transfer));
+    }
+
+    /** Stop a transfer now; its promise rejects with TRANSFER_CANCELLED and a partial receive is deleted. */
+    @ReactMethod
+    public void cancelTransfer(String transferId, Promise promise) {
+        TransferSession transfer = transferSessions.get(transferId);
+        if (transfer == null) {
+            promise.reject("SESSION_NOT_FOUND", "No transfer session " + transferId);
+            return;
+        }
+        if (!transfer.cancel()) {
+            promise.reject("INVALID_STATE", "Cannot cancel " + transferId + " once " + transfer.getState());
+            return;
+        }
+        Log.d(TAG, "🛑 Cancelled " + transferId + " at " + transfer.getBytesDone() + " bytes");
+        promise.resolve(toSessionMap(transfer));
+    }
+
+    private WritableMap toSessionMap(TransferSession transfer) {
+        WritableMap map = Arguments.createMap();
+        map.putString("transferId", transfer.id);
+        map.putString("direction", transfer.direction.name().toLowerCase(Locale.US));
+        map.putString("state", transfer.getState().name().toLowerCase(Locale.US));
+        map.putString("fileName", transfer.getFileName());
+        map.putDouble("bytesTransferred", transfer.getBytesDone());
+        map.putDouble("totalBytes", transfer.getTotalBytes());
+        map.putString("peerAddress", transfer.getPeerAddress());
+        map.putString("destination", transfer.destination);
+        map.putDouble("createdAt", transfer.createdAtMs);
+        map.putDouble("elapsedMs", transfer.getElapsedMs());
+        map.putDouble("pausedMs", transfer.getPausedMs());
+        map.putDouble("mbPerSecond", transfer.getMbPerSecond());
+        map.putString("errorCode", transfer.getErrorCode());
+        map.putString("errorMessage", transfer.getErrorMessage());
+        return map;
+    }
+
+    // A session settles once, so the promise is never resolved and rejected by racing paths
+    private static TransferSession.Completion completionOf(Promise promise) {
+        return new TransferSession.Completion() {
+            @Override
+            public void resolve(Object result) {
+                promise.resolve(result);
+            }
+
+            @Override
+            public void reject(String code, String message) {
+                promise.reject(code, message);
+            }
+        };
+    }
+
+    private boolean startPrewarmedReceiver(String destination) {
+        prewarmDestination = destination;
+        boolean ready = ensureReceiveListener();
+        if (ready && manager != null && channel != null) {
+            formReceiverGroupInBackground(destination);
+        }
+        return ready;
+    }
+
+    private boolean ensureReceiveListener() {
+        if (receiveListener == null) {
+            receiveListener = new ReceiveListener(RECEIVE_PORT, socket -> {
+                String target = receiveDestination != null ? receiveDestination
+                    : prewarmDestination != null ? prewarmDestination : getDefaultReceiveDirectory();
+                File destDir = new File(target);
+                if (!destDir.exists()) {
+                    destDir.mkdirs();
+                }
+                // One session per accepted sender, so back-to-back senders don't share state
+                TransferSession transfer = transferSessions.create(TransferSession.Direction.RECEIVE, target, null);
+                receiveFileOverSocket(transfer.attach(socket), null, 0, transfer);
+            });
+        }
+        return receiveListener.start();
+    }
+
+    private String getDefaultReceiveDirectory() {
+        return ReceivedLibrary.get(reactContext).getDirectory().getAbsolutePath();
+    }
+
+    private void stopPrewarmedReceiver() {
+        prewarmDestination = null;
+        if (receiveListener != null) {
+            receiveListener.stop();
+            receiveListener = null;
+        }
+    }
+
+    /**
+     * Form (or reuse) the receiver group; startReceiveServer then announces
+     * onReceiverReady with the GO address from the framework. At most one runs
+     * at a time, and none while a receive is streaming over the current group,
+     * which only gets re-announced.
+     */
+    private void formReceiverGroupInBackground(String destination) {
+        if (manager == null || channel == null) {
+            Log.w(TAG, "⚠️ Cannot form receiver group in background: not initialized");
+            return;
+        }
+        if (hasActiveReceive()) {
+            Log.d(TAG, "⏭️ Receive in progress, announcing the current group instead of re-forming it");
+            manager.requestConnectionInfo(channel, info -> {
+                String groupOwnerIP = info != null && info.groupOwnerAddress != null
+                    ? info.groupOwnerAddress.getHostAddress() : null;
+                if (info != null && info.groupFormed && info.isGroupOwner && !RetryPolicy.isUnassignedAddress(groupOwnerIP)) {
+                    emitReceiverReady(groupOwnerIP, RECEIVE_PORT);
+                }
+            });
+            return;
+        }
+        if (!receiverGroupForming.compareAndSet(false, true)) {
+            Log.d(TAG, "⏭️ Receiver group already forming, it will announce when ready");
+            return;
+        }
+        // Nobody waits on this promise; outcomes are only logged
+        Promise backgroundPromise = new PromiseImpl(
+            args -> {
+                receiverGroupForming.set(false);
+                Log.d(TAG, "✅ Background receiver group ready");
+            },
+            args -> {
+                receiverGroupForming.set(false);
+                Log.w(TAG, "⚠️ Background receiver group setup failed: " + (args.length > 0 ? args[0] : "unknown"));
+            }
+        );
+        new Thread(() -> performRealFileReceive(destination, backgroundPromise)).start();
+    }
+
+    private boolean hasActiveReceive() {
+        for (TransferSession transfer : transferSessions.getActive()) {
+            if (transfer.direction == TransferSession.Direction.RECEIVE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private WritableMap getReceiverStatsMap() {
+        WritableMap stats = Arguments.createMap();
+        boolean ready = receiveListener != null && receiveListener.isReady();
+        stats.putBoolean("prewarmEnabled", prewarmDestination != null);
+        stats.putBoolean("listenerReady", ready);
+        stats.putInt("port", RECEIVE_PORT);
+        stats.putDouble("bindLatencyMs", receiveListener != null ? receiveListener.getStartToReadyMs() : -1);
+        stats.putDouble("readyForMs", receiveListener != null ? receiveListener.getReadyForMs() : -1);
+        stats.putDouble("receiveReadyLatencyMs", lastReceiveReadyMs);
+        stats.putInt("acceptedConnections", receiveListener != null ? receiveListener.getAcceptedConnections() : 0);
+        stats.putDouble("receivedBytes", totalReceiveBytes.get());
+        stats.putDouble("socketReads", totalReceiveReads.get());
+        stats.putDouble("writeSyscalls", totalReceiveWriteSyscalls.get());
+        return stats;
+    }
+
+    private void emitReceiverReady(String receiverIP, int port) {
+        WritableMap receiverData = Arguments.createMap();
+        receiverData.putString("type", "RECEIVER_READY");
+        receiverData.putString("receiverIP", receiverIP);
+        receiverData.putInt("receiverPort", port);
+        receiverData.putBoolean("isGroupOwner", true);
+
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+            .emit("onReceiverReady", receiverData);
+    }
+
+    private SharedPreferences getPrefs() {
+        return reactContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * FAST PAIR (receiver): make sure we own a group and the listener is bound,
+     * then return the group credentials as a QR payload plus a PNG of the code.
+     */
+    @ReactMethod
+    public void createFastPairCode(int qrSizePx, Promise promise) {
+        if (manager == null || channel == null) {
+            promise.reject("NOT_INITIALIZED", "Wi-Fi Direct has not been initialized.");
+            return;
+        }
+        if (!ensureReceiveListener()) {
+            promise.reject("PREWARM_FAILED", "Failed to bind receive listener on port " + RECEIVE_PORT);
+            return;
+        }
+
+        groupManager.ensureGroup(new GroupLifecycleManager.Callback() {
+            @Override
+            public void onGroupReady(String groupOwnerIP, boolean reused) {
+                // The group manager only reports ready once the framework has assigned the GO address
+                awaitGroupInfoForFastPair(groupOwnerIP, qrSizePx, promise);
+            }
+
+            @Override
+            public void onGroupFailed(String code, String message) {
+                Log.e(TAG, "❌ Failed to prepare group for fast pair: " + message);
+                promise.reject(code, message);
+            }
+        });
+    }
+
+    private void awaitGroupInfoForFastPair(String groupOwnerIP, int qrSizePx, Promise promise) {
+        final WifiP2pGroup[] ownedGroup = new WifiP2pGroup[1];
+        RetryPolicy.GROUP_INFO.execute(retryScheduler, (attempt, result) ->
+            manager.requestGroupInfo(channel, group -> {
+                if (group != null && group.isGroupOwner() && group.getPassphrase() != null) {
+                    ownedGroup[0] = group;
+                    result.success();
+                } else {
+                    result.retry("Group credentials not available yet");
+                }
+            }), new RetryPolicy.Callback() {
+                @Override
+                public void onSuccess(int attempts) {
+                    resolveFastPairCode(ownedGroup[0], groupOwnerIP, qrSizePx, promise);
+                }
+
+                @Override
+                public void onGiveUp(String reason, int attempts) {
+                    promise.reject("GROUP_INFO_FAILED", "Group credentials not available after retries");
+                }
+            });
+    }
+
+    private void resolveFastPairCode(WifiP2pGroup group, String groupOwnerIP, int qrSizePx, Promise promise) {
+        try {
+            String token = newSessionToken();
+            FastPairPayload payload = new FastPairPayload(
+                FastPairPayload.PROTOCOL_VERSION,
+                group.getNetworkName(),
+                group.getPassphrase(),
+                groupOwnerIP,
+                RECEIVE_PORT,
+                token
+            );
+            String encoded = payload.encode();
+            fastPairShownAtMs = System.currentTimeMillis();
+            fastPairToken = token;
+
+            WritableMap result = Arguments.createMap();
+            result.putString("payload", encoded);
+            result.putString("qrPngBase64", encodeQrPng(encoded, qrSizePx > 0 ? qrSizePx : 512));
+            result.putString("networkName", group.getNetworkName());
+            result.putString("groupOwnerIP", groupOwnerIP);
+            result.putInt("port", RECEIVE_PORT);
+            result.putDouble("expiresInMs", FastPairPayload.CODE_TTL_MS);
+            Log.d(TAG, "📷 Fast pair code ready for group " + group.getNetworkName());
+            promise.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to build fast pair code", e);
+            promise.reject("FAST_PAIR_FAILED", "Failed to build fast pair code: " + e.getMessage());
+        }
+    }
+
+    /** FAST PAIR (receiver): the code is no longer shown, so senders no longer need its token. */
+    @ReactMethod
+    public void dismissFastPairCode(Promise promise) {
+        clearFastPairCode("dismissed");
+        promise.resolve(null);
+    }
+
+    /** The token of the code on screen, or null when none is shown or it has lapsed. */
+    private String currentFastPairToken() {
+        String token = FastPairPayload.liveToken(fastPairToken, fastPairShownAtMs, System.currentTimeMillis());
+        if (token == null && fastPairToken != null) {
+            clearFastPairCode("expired");
+        }
+        return token;
+    }
+
+    private void clearFastPairCode(String reason) {
+        if (fastPairToken != null) {
+            Log.d(TAG, "📷 Fast pair code " + reason + ", token cleared");
+            fastPairToken = null;
+        }
+    }
+
+    private String encodeQrPng(String contents, int sizePx) throws Exception {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.MARGIN, 1);
+        BitMatrix matrix = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, sizePx, sizePx, hints);
+
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = matrix.get(x, y) ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+        bitmap.recycle();
+        return Base64.encodeToString(png.toByteArray(), Base64.NO_WRAP);
+    }
+
+    private static String newSessionToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * FAST PAIR (sender): join the receiver's group straight from the scanned
+     * credentials and stream the file - no discoverPeers, no PBC prompt.
+     */
+    @ReactMethod
+    public void fastJoinAndSend(String qrPayload, String filePath, Promise promise) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            promise.reject("UNSUPPORTED", "Fast pair requires Android 10 or newer.");
+            return;
+        }
+        if (manager == null || channel == null) {
+            promise.reject("NOT_INITIALIZED", "Wi-Fi Direct has not been initialized.");
+            return;
+        }
+        File sourceFile = new File(filePath);
+        if (!sourceFile.exists()) {
+            promise.reject("FILE_NOT_FOUND", "Source file not found: " + filePath);
+            return;
+        }
+
+        FastPairPayload payload;
+        try {
+            payload = FastPairPayload.decode(qrPayload);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "❌ Invalid fast pair code: " + e.getMessage());
+            promise.reject("INVALID_PAIR_CODE", e.getMessage());
+            return;
+        }
+
+        FastJoinSession session = new FastJoinSession(payload);
+        TransferSession transfer = transferSessions.create(TransferSession.Direction.SEND, null, completionOf(promise));
+        session.onJoinRequested(System.currentTimeMillis());
+        Log.d(TAG, "⚡ Fast joining group " + payload.networkName + " for " + transfer.id + "...");
+
+        WifiP2pConfig config = new WifiP2pConfig.Builder()
+            .setNetworkName(payload.networkName)
+            .setPassphrase(payload.passphrase)
+            .build();
+
+        manager.connect(channel, config, new WifiP2pManager.ActionListener() {
+            @Override
+            public void onSuccess() {
+                session.onGroupJoined(System.currentTimeMillis());
+                Log.d(TAG, "✅ Fast join accepted in " + session.getJoinLatencyMs() + " ms, opening socket...");
+                new Thread(() -> connectFastJoinSocket(session, sourceFile, transfer)).start();
+            }
+
+            @Override
+            public void onFailure(int reason) {
+                session.onJoinFailed("connect failed: " + reason);
+                Log.e(TAG, "❌ Fast join failed: " + reason);
+                transfer.fail("FAST_JOIN_FAILED", "Failed to join receiver group: " + reason);
+            }
+        });
+    }
+
+    private void connectFastJoinSocket(FastJoinSession session, File sourceFile, TransferSession transfer) {
+        FastPairPayload payload = session.payload;
+        while (true) {
+            session.onSocketAttempt(System.currentTimeMillis());
+            Socket socket = transfer.attach(new Socket());
+            try {
+                socket.connect(new InetSocketAddress(payload.groupOwnerIp, payload.port), 3000);
+                socket.setSoTimeout(30000);
+                session.onSocketConnected(System.currentTimeMillis());
+                Log.d(TAG, "✅ Fast pair socket open after " + session.getSocketAttempts() +
+                      " attempt(s), " + session.getTimeToConnectedMs() + " ms total");
+
+                Map<String, String> properties = new HashMap<>();
+                properties.put(TransferHeader.PROP_SESSION_TOKEN, payload.sessionToken);
+                sendFileOverSocket(sourceFile, socket, buildTransferHeader(sourceFile, properties), transfer);
+                return;
+            } catch (IOException e) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+                if (!session.onSocketFailed(System.currentTimeMillis(), e.getMessage())) {
+                    Log.e(TAG, "❌ " + session.getFailureReason());
+                    transfer.fail("FAST_JOIN_FAILED", session.getFailureReason());
+                    return;
+                }
+                try {
+                    Thread.sleep(FastJoinSession.SOCKET_RETRY_INTERVAL_MS);
+                } catch (InterruptedException ie) {
+                    transfer.fail("FAST_JOIN_FAILED", "Fast join interrupted");
+                    return;
+                }
+            }
+        }
+    }
+
     private void performRealFileReceive(String destination, Promise promise) {
         try {
             Log.d(TAG, "📡 Starting REAL WiFi Direct file receive mode...");
@@ -1270,171 +1708,93 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
                 Log.d(TAG, "📁 Created directory: " + destination);
             }
 
-            // CRITICAL FIX: Clean up any existing group before creating new one
-            // This prevents "WiFi Direct is busy" error
-            Log.d(TAG, "🔧 Cleaning up any existing groups before creating receiver group...");
-
             if (manager == null || channel == null) {
                 Log.e(TAG, "❌ Manager or Channel is NULL! Cannot proceed with receive setup.");
                 promise.reject("INITIALIZATION_ERROR", "WiFi Direct manager or channel not initialized");
                 return;
             }
 
-            try {
-                manager.removeGroup(channel, new WifiP2pManager.ActionListener() {
-                    @Override
-                    public void onSuccess() {
-                        Log.d(TAG, "✅ Existing group cleared, now creating new group for receiver...");
-                        createGroupForReceive(destination, promise);
-                    }
+            // Become (or stay) Group Owner - a healthy group is reused as-is
+            groupManager.ensureGroup(new GroupLifecycleManager.Callback() {
+                @Override
+                public void onGroupReady(String groupOwnerIP, boolean reused) {
+                    Log.d(TAG, (reused ? "♻️ Reusing" : "✅ Created") + " receiver group, GO IP: " + groupOwnerIP);
+                    startReceiveServer(groupOwnerIP, RECEIVE_PORT, destination, promise);
+                }
 
-                    @Override
-                    public void onFailure(int reason) {
-                        Log.w(TAG, "⚠️ No existing group to clear or clear failed: " + reason + ", proceeding to create group...");
-                        createGroupForReceive(destination, promise);
-                    }
-                });
-            } catch (Exception e) {
-                Log.w(TAG, "⚠️ Exception in removeGroup (no existing group?), proceeding anyway: " + e.getMessage());
-                // No group to remove - this is fine, proceed
-                createGroupForReceive(destination, promise);
-            }
+                @Override
+                public void onGroupFailed(String code, String message) {
+                    Log.e(TAG, "❌ Failed to setup receiver group: " + message);
+                    promise.reject("RECEIVE_SETUP_FAILED", "Failed to setup receiver mode: " + message);
+                }
+            });
         } catch (Exception e) {
             Log.e(TAG, "❌ WiFi Direct file receive setup failed", e);
             promise.reject("RECEIVE_SETUP_FAILED", "WiFi Direct receive setup failed: " + e.getMessage());
         }
     }
 
-    private void createGroupForReceive(String destination, Promise promise) {
-        // FIXED: Create a WiFi Direct group to become Group Owner and run server
-        Log.d(TAG, "🔧 Creating WiFi Direct group to become Group Owner (receiver)...");
-        manager.createGroup(channel, new WifiP2pManager.ActionListener() {
-            @Override
-            public void onSuccess() {
-                Log.d(TAG, "✅ Group created successfully! Device is now Group Owner (receiver)");
-
-                // Wait for IP address assignment, then start server
-                new Thread(() -> {
-                    try {
-                        // Wait 3 seconds for IP assignment
-                        Thread.sleep(3000);
-
-                        // Get connection info to confirm we're Group Owner
-                        manager.requestConnectionInfo(channel, new WifiP2pManager.ConnectionInfoListener() {
-                            @Override
-                            public void onConnectionInfoAvailable(WifiP2pInfo wifiP2pInfo) {
-                                if (wifiP2pInfo.groupFormed && wifiP2pInfo.isGroupOwner) {
-                                    if (wifiP2pInfo.groupOwnerAddress != null) {
-                                        String receiverIP = wifiP2pInfo.groupOwnerAddress.getHostAddress();
-                                        Log.d(TAG, "✅ Receiver Group Owner IP: " + receiverIP);
-
-                                        // Start file receive server
-                                        startReceiveServer(receiverIP, 8989, destination, promise);
-                                    } else {
-                                        Log.e(TAG, "❌ Group owner address is null");
-                                        promise.reject("RECEIVE_SETUP_FAILED", "Failed to get receiver IP address");
-                                    }
-                                } else {
-                                    Log.e(TAG, "❌ Failed to become Group Owner");
-                                    promise.reject("RECEIVE_SETUP_FAILED", "Failed to establish Group Owner mode");
-                                }
-                            }
-                        });
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Group creation wait interrupted", e);
-                        promise.reject("RECEIVE_SETUP_FAILED", "Receiver setup interrupted");
-                    }
-                }).start();
-            }
-
-            @Override
-            public void onFailure(int reason) {
-                Log.e(TAG, "❌ Failed to create group for receiving: " + reason);
-                promise.reject("RECEIVE_SETUP_FAILED", "Failed to setup receiver mode: " + reason);
-            }
-        });
-    }
-
     private void startReceiveServer(String receiverIP, int port, String destination, Promise promise) {
+        // Pre-warmed listener already owns the port - just announce the real GO IP
+        if (receiveListener != null && receiveListener.isReady() && receiveListener.getPort() == port) {
+            Log.d(TAG, "⚡ Receive listener already bound on " + port + ", skipping server start");
+            receiveDestination = destination;
+            emitReceiverReady(receiverIP, port);
+            promise.resolve(destination);
+            return;
+        }
+
+        // The promise only covers getting ready; the transfer reports through events under its ID
+        receiveDestination = destination;
+        TransferSession transfer = transferSessions.create(TransferSession.Direction.RECEIVE, destination, null);
         new Thread(() -> {
             try {
-                Log.d(TAG, "📡 Starting file receive server on " + receiverIP + ":" + port);
-
-                // Store destination and promise for when file arrives
-                receiveDestination = destination;
-                receivePromise = promise;
+                Log.d(TAG, "📡 Starting file receive server for " + transfer.id + " on " + receiverIP + ":" + port);
 
-                // Create server socket
-                ServerSocket serverSocket = new ServerSocket(port);
+                // Create server socket (reuseAddress so a reused group can bind the port again)
+                ServerSocket serverSocket = transfer.attach(TransferSockets.bindReceiveServer(port));
                 Log.d(TAG, "✅ File receive server started, waiting for connections...");
 
                 // Emit event to JavaScript with receiver info
-                WritableMap receiverData = Arguments.createMap();
-                receiverData.putString("type", "RECEIVER_READY");
-                receiverData.putString("receiverIP", receiverIP);
-                receiverData.putInt("receiverPort", port);
-                receiverData.putBoolean("isGroupOwner", true);
-
-                reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit("onReceiverReady", receiverData);
+                emitReceiverReady(receiverIP, port);
 
                 // CRITICAL FIX: Resolve promise immediately after server starts
                 Log.d(TAG, "✅ Receiver mode ready - resolving promise");
                 promise.resolve(destination);
 
-                // Now wait for sender to connect (separate from Promise resolution)
-                Socket clientSocket = serverSocket.accept();
+                // Now wait for sender to connect (separate from Promise resolution).
+                // One sender per receiveFile call - the port is released for the next one
+                Socket clientSocket = transfer.attach(TransferSockets.acceptOnce(serverSocket));
                 Log.d(TAG, "✅ Sender connected: " + clientSocket.getInetAddress().getHostAddress());
 
-                // Receive file (use a separate promise for this specific transfer)
-                receiveFileOverSocket(clientSocket, null, 0, destination, promise);
+                receiveFileOverSocket(clientSocket, null, 0, transfer);
 
             } catch (Exception e) {
                 Log.e(TAG, "❌ File receive server failed", e);
-                if (receivePromise != null) {
-                    receivePromise.reject("RECEIVE_SERVER_FAILED", "Receive server failed: " + e.getMessage());
-                }
+                transfer.fail("RECEIVE_SERVER_FAILED", "Receive server failed: " + e.getMessage());
+                // No-op once the server was up and the promise already resolved
+                promise.reject("RECEIVE_SERVER_FAILED", "Receive server failed: " + e.getMessage());
             }
         }).start();
     }
 
-    private void startConnectionListener(String destination, Promise promise) {
-        try {
-            // This method will be called when we receive a connection request via event
-            Log.d(TAG, "📡 Connection listener started - waiting for p2pConnectionRequest events...");
-
-            // Store the destination and promise for when connection request comes in
-            this.receiveDestination = destination;
-            this.receivePromise = promise;
+    // New method to handle incoming connection requests; null if no receiveFile has set a destination
+    private TransferSession handleConnectionRequest(String serverAddress, int serverPort, String fileName, long fileSize) {
+        Log.d(TAG, "📨 Handling connection request: " + fileName + " from " + serverAddress + ":" + serverPort);
 
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to start connection listener", e);
-            promise.reject("LISTENER_FAILED", "Failed to start connection listener: " + e.getMessage());
+        String destination = receiveDestination;
+        if (destination == null) {
+            Log.e(TAG, "❌ No active receive destination");
+            return null;
         }
-    }
 
-    // New method to handle incoming connection requests
-    private void handleConnectionRequest(String serverAddress, int serverPort, String fileName, long fileSize) {
-        try {
-            Log.d(TAG, "📨 Handling connection request: " + fileName + " from " + serverAddress + ":" + serverPort);
-
-            if (receivePromise == null) {
-                Log.e(TAG, "❌ No active receive promise");
-                return;
-            }
-
-            // Connect to server as socket client
-            connectToServerAndReceive(serverAddress, serverPort, fileName, fileSize, receiveDestination, receivePromise);
-
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to handle connection request", e);
-            if (receivePromise != null) {
-                receivePromise.reject("CONNECTION_REQUEST_FAILED", "Failed to handle connection request: " + e.getMessage());
-            }
-        }
+        // Connect to server as socket client
+        TransferSession transfer = transferSessions.create(TransferSession.Direction.RECEIVE, destination, null);
+        connectToServerAndReceive(serverAddress, serverPort, fileName, fileSize, transfer);
+        return transfer;
     }
 
-    private void connectToServerAndReceive(String serverAddress, int serverPort, String fileName, long fileSize, String destination, Promise promise) {
+    private void connectToServerAndReceive(String serverAddress, int serverPort, String fileName, long fileSize, TransferSession transfer) {
         try {
             // Start socket client in background thread
             new Thread(() -> {
@@ -1442,19 +1802,17 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
                 try {
                     Log.d(TAG, "📡 Connecting to server: " + serverAddress + ":" + serverPort);
 
-                    // Create socket connection to server
-                    socket = new Socket();
-                    socket.connect(new InetSocketAddress(serverAddress, serverPort), 15000); // Increased timeout to 15 seconds
-                    socket.setSoTimeout(30000); // 30 second read timeout
+                    // Create socket connection to server (15s connect, 30s read timeout)
+                    socket = transfer.attach(TransferSockets.connect(new InetSocketAddress(serverAddress, serverPort)));
 
                     Log.d(TAG, "✅ Connected to server: " + serverAddress);
 
                     // Receive file over socket
-                    receiveFileOverSocket(socket, fileName, fileSize, destination, promise);
+                    receiveFileOverSocket(socket, fileName, fileSize, transfer);
 
                 } catch (Exception e) {
                     Log.e(TAG, "❌ Failed to connect to server", e);
-                    promise.reject("SERVER_CONNECTION_FAILED", "Failed to connect to server: " + e.getMessage());
+                    transfer.fail("SERVER_CONNECTION_FAILED", "Failed to connect to server: " + e.getMessage());
                 } finally {
                     // Close the socket in finally block to prevent resource leaks
                     if (socket != null && !socket.isClosed()) {
@@ -1469,38 +1827,97 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
 
         } catch (Exception e) {
             Log.e(TAG, "❌ Failed to start client connection", e);
-            promise.reject("CLIENT_CONNECTION_FAILED", "Failed to start client connection: " + e.getMessage());
+            transfer.fail("CLIENT_CONNECTION_FAILED", "Failed to start client connection: " + e.getMessage());
         }
     }
 
-    private void receiveFileOverSocket(Socket socket, String expectedFileName, long expectedFileSize, String destination, Promise promise) {
+    private void receiveFileOverSocket(Socket socket, String expectedFileName, long expectedFileSize, TransferSession transfer) {
         try {
-            // Get input stream from server
-            InputStream inputStream = socket.getInputStream();
-            DataInputStream dataInputStream = new DataInputStream(inputStream);
+            String destination = transfer.destination;
+            TransferReceiver receiver = new TransferReceiver(socket.getInputStream(), socket.getOutputStream());
+            String serverAddress = socket.getInetAddress().getHostAddress();
+
+            // Read file metadata (legacy or extended header)
+            TransferHeader header = receiver.readHeader();
+            String receivedFileName = header.fileName;
+            long receivedFileSize = header.fileSize;
+            transfer.begin(receivedFileName, receivedFileSize, serverAddress);
+
+            // While a QR code is shown, every sender must present its token
+            String senderToken = header.get(TransferHeader.PROP_SESSION_TOKEN);
+            if (!FastPairPayload.acceptsSender(currentFastPairToken(), senderToken)) {
+                Log.e(TAG, "🔒 Security: Rejected sender with " + (senderToken == null ? "no" : "unknown")
+                    + " fast-pair session token");
+                String message = senderToken == null
+                    ? "Sender presented no fast-pair session token" : "Sender presented an invalid fast-pair session token";
+                // Tell a reply-aware sender why before hanging up, so it doesn't just see a reset
+                receiver.reply(TransferReply.rejected("SESSION_TOKEN_MISMATCH", message));
+                socket.close();
+                transfer.fail("SESSION_TOKEN_MISMATCH", message);
+                return;
+            }
 
-            // Read file metadata
-            String receivedFileName = dataInputStream.readUTF();
-            long receivedFileSize = dataInputStream.readLong();
+            if (header.expectsReply()) {
+                ContentIndex.Record existing = findExistingContent(header);
+                if (existing != null) {
+                    String existingName = new File(existing.path).getName();
+                    Log.d(TAG, "✅ Already have " + receivedFileName + " as " + existingName + ", telling sender to skip");
+                    receiver.reply(TransferReply.alreadyHave(existingName));
+                    socket.close();
+
+                    WritableMap result = Arguments.createMap();
+                    result.putString("transferId", transfer.id);
+                    result.putString("status", "already_received");
+                    result.putString("receivedPath", existing.path);
+                    result.putString("fileName", receivedFileName);
+                    result.putDouble("fileSize", receivedFileSize);
+                    result.putString("transferType", "wifi-direct");
+                    reactContext
+                        .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                        .emit("onReceiveComplete", result);
+                    transfer.complete(existing.path);
+                    return;
+                }
+            }
 
-            Log.d(TAG, "📥 Receiving file: " + receivedFileName + " (" + receivedFileSize + " bytes)");
+            // A resend of something we already hold an earlier cut of only needs the chunks that changed
+            File deltaBase = header.get(TransferHeader.PROP_DELTA) != null
+                ? TransferDelta.findBase(new File(destination), receivedFileName) : null;
+
+            // Make sure the file fits (cap + free-space reserve) before any bytes flow; the delta base is the
+            // oldest cut and so the first eviction candidate, but the receive is about to read from it
+            ReceivedLibrary.Preflight preflight = ReceivedLibrary.get(reactContext)
+                .preflight(new File(destination), receivedFileSize, deltaBase);
+            if (!preflight.allowed) {
+                Log.e(TAG, "❌ Storage preflight rejected " + receivedFileName + ": " + preflight.message);
+                receiver.reply(TransferReply.rejected(preflight.code, preflight.message));
+                socket.close();
+                transfer.fail(preflight.code, preflight.message);
+                return;
+            }
+            if (preflight.evicted > 0) {
+                Log.d(TAG, "🗑️ Evicted " + preflight.evicted + " old video(s), " + preflight.freedBytes + " bytes, to fit " + receivedFileName);
+            }
+            receiver.accept(deltaBase);
+            if (receiver.isDelta()) {
+                Log.d(TAG, "🧩 Offered " + deltaBase.getName() + " as delta base for " + receivedFileName);
+            } else if (deltaBase != null) {
+                Log.w(TAG, "⚠️ " + deltaBase.getName() + " too large to chunk before the sender times out; receiving " + receivedFileName + " whole");
+            }
 
-            // Create destination file
-            String receivedPath = destination + "/" + receivedFileName;
-            File receivedFile = new File(receivedPath);
+            Log.d(TAG, "📥 Receiving file: " + receivedFileName + " (" + receivedFileSize + " bytes)");
 
-            // Receive file content
-            FileOutputStream fileOutputStream = new FileOutputStream(receivedFile);
-            byte[] buffer = new byte[8192];
-            long totalBytesReceived = 0;
-            int bytesRead;
+            // Hidden, preallocated temp file; renamed into place once every byte has arrived
+            ReceiveFile receiveFile = ReceiveFile.open(new File(destination), receivedFileName, receivedFileSize,
+                getFsyncPolicy(), getFsyncIntervalBytes(), FALLOCATE);
 
             // Emit receive start event
             WritableMap startData = Arguments.createMap();
+            startData.putString("transferId", transfer.id);
             startData.putString("fileName", receivedFileName);
             startData.putDouble("totalBytes", receivedFileSize);
             startData.putString("status", "receiving");
-            startData.putString("serverAddress", socket.getInetAddress().getHostAddress());
+            startData.putString("serverAddress", serverAddress);
 
             reactContext
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
@@ -1508,54 +1925,97 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
 
             Log.d(TAG, "📥 Starting file download: " + receivedFileName + " (" + receivedFileSize + " bytes)");
 
-            while ((bytesRead = dataInputStream.read(buffer)) != -1) {
-                fileOutputStream.write(buffer, 0, bytesRead);
-                totalBytesReceived += bytesRead;
-
-                // Calculate and emit progress
-                int progress = (int) ((totalBytesReceived * 100) / receivedFileSize);
-
-                WritableMap progressData = Arguments.createMap();
-                progressData.putString("fileName", receivedFileName);
-                progressData.putInt("progress", progress);
-                progressData.putDouble("bytesReceived", totalBytesReceived);
-                progressData.putDouble("totalBytes", receivedFileSize);
-                progressData.putString("status", "receiving");
-                progressData.putString("serverAddress", socket.getInetAddress().getHostAddress());
-
-                reactContext
-                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit("onReceiveProgress", progressData);
-
-                Log.d(TAG, "📥 Receive progress: " + progress + "% (" + totalBytesReceived + "/" + receivedFileSize + " bytes)");
+            // 64 KB socket reads; the file's sink turns them into 512 KB aligned writes
+            TransferPipeline.Result body;
+            try {
+                body = receiver.receive(receiveFile, transfer, transfer.track((bytesReceived, totalBytes) -> {
+                    int progress = totalBytes > 0 ? (int) ((bytesReceived * 100) / totalBytes) : 100;
+
+                    WritableMap progressData = Arguments.createMap();
+                    progressData.putString("transferId", transfer.id);
+                    progressData.putString("fileName", receivedFileName);
+                    progressData.putInt("progress", progress);
+                    progressData.putDouble("bytesReceived", bytesReceived);
+                    progressData.putDouble("totalBytes", totalBytes);
+                    progressData.putString("status", "receiving");
+                    progressData.putString("serverAddress", serverAddress);
+
+                    reactContext
+                        .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                        .emit("onReceiveProgress", progressData);
+
+                    Log.d(TAG, "📥 Receive progress: " + progress + "% (" + bytesReceived + "/" + totalBytes + " bytes)");
+                }));
+            } catch (IOException | RuntimeException e) {
+                // Cancelled, failed or corrupted: the partial temp file never outlives the transfer
+                receiveFile.abort();
+                socket.close();
+                if (transfer.getState() == TransferSession.State.CANCELLED) {
+                    Log.d(TAG, "🛑 " + transfer.id + " cancelled, discarded " + receiveFile.getWritten() + " partial bytes");
+                    return;
+                }
+                if (e instanceof TransferReceiver.ChecksumMismatchException) {
+                    Log.e(TAG, "❌ " + receivedFileName + " arrived corrupted: " + e.getMessage());
+                    transfer.fail("CHECKSUM_MISMATCH", e.getMessage());
+                    return;
+                }
+                throw e;
             }
 
-            // Clean up
-            fileOutputStream.close();
-            dataInputStream.close();
-            socket.close();
-
-            Log.d(TAG, "✅ File receive completed: " + receivedFileName);
+            // Verify the size, sync per policy and rename into place
+            File receivedFile;
+            try {
+                receivedFile = receiveFile.commit();
+                // The sender resolves its promise on this, not when its last byte left
+                try {
+                    receiver.confirm();
+                } catch (IOException e) {
+                    Log.w(TAG, "⚠️ Could not confirm " + receivedFileName + " to the sender: " + e.getMessage());
+                }
+            } finally {
+                socket.close();
+            }
+            String receivedPath = receivedFile.getAbsolutePath();
+
+            Log.d(TAG, "✅ File receive completed: " + receivedFileName + " -> " + receivedFile.getName() +
+                  " (preallocated=" + receiveFile.isPreallocated() + ", fsyncs=" + receiveFile.getSyncCount() +
+                  ", reads=" + body.ioCalls + ", writeSyscalls=" + receiveFile.getWriteSyscalls() +
+                  ", checksummed=" + receiver.isChecksummed() + ", acks=" + receiver.getAcksSent() +
+                  (receiver.isCompressed() || receiver.isDelta() ? ", wireBytes=" + receiver.getWireBytes() : "") +
+                  (receiver.isDelta() ? ", reusedBytes=" + receiver.getReusedBytes() : "") + ")");
+            totalReceiveReads.addAndGet(body.ioCalls);
+            totalReceiveWriteSyscalls.addAndGet(receiveFile.getWriteSyscalls());
+            totalReceiveBytes.addAndGet(body.bytes);
 
             // Emit completion event
             WritableMap result = Arguments.createMap();
+            result.putString("transferId", transfer.id);
             result.putString("status", "success");
             result.putString("receivedPath", receivedPath);
             result.putString("fileName", receivedFileName);
             result.putDouble("fileSize", receivedFileSize);
-            result.putString("serverAddress", socket.getInetAddress().getHostAddress());
+            result.putString("serverAddress", serverAddress);
             result.putString("transferType", "wifi-direct");
+            result.putDouble("reusedBytes", receiver.getReusedBytes());
 
             reactContext
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
                 .emit("onReceiveComplete", result);
 
             Log.d(TAG, "✅ File receive completed: " + receivedFileName + " (" + receivedFileSize + " bytes)");
-            promise.resolve(receivedPath);
+            if (groupManager != null) {
+                groupManager.markUsed();
+            }
+            ReceivedLibrary.get(reactContext).onFileArrived(receivedFile);
+            transfer.complete(receivedPath);
 
         } catch (Exception e) {
+            if (transfer.getState() == TransferSession.State.CANCELLED) {
+                Log.d(TAG, "🛑 " + transfer.id + " cancelled");
+                return;
+            }
             Log.e(TAG, "❌ File receive over socket failed", e);
-            promise.reject("SOCKET_RECEIVE_FAILED", "Socket receive failed: " + e.getMessage());
+            transfer.fail("SOCKET_RECEIVE_FAILED", "Socket receive failed: " + e.getMessage());
         }
     }
 
@@ -1599,45 +2059,18 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
 
     @ReactMethod
     public void getSpredReceivedVideos(Promise promise) {
-        // Return list of received P2P videos by scanning the file system
+        // Return list of received P2P videos from the library index
         WritableArray videos = Arguments.createArray();
 
         try {
             // P2P videos are stored in a separate folder: ExternalFilesDir/SpredP2PReceived/
-            String p2pReceivedPath = reactContext.getExternalFilesDir(null).getAbsolutePath() + "/SpredP2PReceived/";
-            Log.d(TAG, "Scanning for P2P received videos in: " + p2pReceivedPath);
-
-            java.io.File p2pFolder = new java.io.File(p2pReceivedPath);
-            if (p2pFolder.exists() && p2pFolder.isDirectory()) {
-                java.io.File[] files = p2pFolder.listFiles();
-                if (files != null) {
-                    for (java.io.File file : files) {
-                        if (file.isFile() && (file.getName().endsWith(".mp4") ||
-                                            file.getName().endsWith(".mov") ||
-                                            file.getName().endsWith(".avi") ||
-                                            file.getName().endsWith(".mkv"))) {
-
-                            // All files in the SpredP2PReceived folder are P2P received videos
-                            String fileName = file.getName();
-                            WritableMap video = Arguments.createMap();
-                            video.putString("name", fileName.replaceAll("\\.[^.]+$", "")); // Remove extension
-                            video.putString("fileName", fileName);
-                            video.putString("filePath", file.getAbsolutePath());
-                            video.putDouble("fileSize", file.length());
-                            video.putString("receivedPath", file.getAbsolutePath());
-                            video.putString("transferId", "p2p_" + file.lastModified());
-                            video.putString("folderSource", "P2P Received");
-
-                            videos.pushMap(video);
-                            Log.d(TAG, "Found P2P video: " + fileName + " (" + file.length() + " bytes)");
-                        }
-                    }
-                }
-            } else {
-                Log.d(TAG, "P2P received folder does not exist: " + p2pReceivedPath);
+            // The index is kept current by the library watcher when it runs, otherwise rescanned here
+            ReceivedLibrary library = ReceivedLibrary.get(reactContext);
+            for (LibraryIndex.Entry entry : library.getIndex().snapshot()) {
+                videos.pushMap(toVideoMap(entry));
             }
 
-            Log.d(TAG, "Total P2P videos found: " + videos.size());
+            Log.d(TAG, "Total P2P videos found: " + videos.size() + (library.isWatching() ? " (live index)" : " (rescanned)"));
             promise.resolve(videos);
 
         } catch (Exception e) {
@@ -1650,53 +2083,368 @@ public class WifiDirectModule extends ReactContextBaseJavaModule implements Wifi
     public void getReceivedVideosCount(Promise promise) {
         // Return count of received videos
         try {
-            String p2pReceivedPath = reactContext.getExternalFilesDir(null).getAbsolutePath() + "/SpredP2PReceived/";
-            java.io.File p2pFolder = new java.io.File(p2pReceivedPath);
-
-            if (p2pFolder.exists() && p2pFolder.isDirectory()) {
-                java.io.File[] files = p2pFolder.listFiles();
-                int count = 0;
-                if (files != null) {
-                    for (java.io.File file : files) {
-                        if (file.isFile() && (file.getName().endsWith(".mp4") ||
-                                            file.getName().endsWith(".mov") ||
-                                            file.getName().endsWith(".avi") ||
-                                            file.getName().endsWith(".mkv"))) {
-
-                            // All files in the SpredP2PReceived folder are P2P files
-                            count++;
-                        }
-                    }
-                }
-                Log.d(TAG, "P2P received videos count: " + count);
-                promise.resolve(count);
-            } else {
-                Log.d(TAG, "P2P received folder does not exist, count = 0");
-                promise.resolve(0);
-            }
+            int count = ReceivedLibrary.get(reactContext).getIndex().size();
+            Log.d(TAG, "P2P received videos count: " + count);
+            promise.resolve(count);
         } catch (Exception e) {
             Log.e(TAG, "Error getting P2P videos count", e);
             promise.resolve(0);
         }
     }
 
+    /**
+     * Start pushing onLibraryChanged deltas for SpredP2PReceived so JS can stop
+     * polling getSpredReceivedVideos / getReceivedVideosCount.
+     */
+    @ReactMethod
+    public void startLibraryWatch(Promise promise) {
+        try {
+            ReceivedLibrary.get(reactContext).startWatching((delta, total) -> {
+                WritableArray added = Arguments.createArray();
+                for (LibraryIndex.Entry entry : delta.added) {
+                    added.pushMap(toVideoMap(entry));
+                }
+                WritableArray updated = Arguments.createArray();
+                for (LibraryIndex.Entry entry : delta.updated) {
+                    updated.pushMap(toVideoMap(entry));
+                }
+                WritableArray removed = Arguments.createArray();
+                for (String fileName : delta.removed) {
+                    removed.pushString(fileName);
+                }
+
+                WritableMap change = Arguments.createMap();
+                change.putArray("added", added);
+                change.putArray("updated", updated);
+                change.putArray("removed", removed);
+                change.putInt("total", total);
+
+                Log.d(TAG, "📚 Library changed: +" + delta.added.size() + " ~" + delta.updated.size() + " -" + delta.removed.size());
+                reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit("onLibraryChanged", change);
+            });
+            promise.resolve(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to start library watch", e);
+            promise.reject("LIBRARY_WATCH_FAILED", "Failed to watch P2P library: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void stopLibraryWatch(Promise promise) {
+        ReceivedLibrary.get(reactContext).stopWatching();
+        promise.resolve(null);
+    }
+
+    /**
+     * Open a sorted ("receivedTime" | "size" | "name"), optionally filtered
+     * cursor over the received library so the Library screen can page through
+     * it instead of pulling every entry at once.
+     */
+    @ReactMethod
+    public void openLibraryCursor(String sort, String filter, Promise promise) {
+        try {
+            LibraryCursor cursor = ReceivedLibrary.get(reactContext).openCursor(LibraryCursor.Sort.fromKey(sort), filter);
+            WritableMap result = Arguments.createMap();
+            result.putString("cursorId", cursor.getId());
+            result.putInt("total", cursor.getTotal());
+            promise.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open library cursor", e);
+            promise.reject("CURSOR_FAILED", "Failed to open library cursor: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void nextPage(String cursorId, int count, Promise promise) {
+        LibraryCursor cursor = ReceivedLibrary.get(reactContext).getCursor(cursorId);
+        if (cursor == null) {
+            promise.reject("CURSOR_NOT_FOUND", "Library cursor is closed or expired: " + cursorId);
+            return;
+        }
+        WritableArray items = Arguments.createArray();
+        for (LibraryIndex.Entry entry : cursor.nextPage(count)) {
+            items.pushMap(toVideoMap(entry));
+        }
+        WritableMap page = Arguments.createMap();
+        page.putArray("items", items);
+        page.putInt("position", cursor.getPosition());
+        page.putInt("total", cursor.getTotal());
+        page.putBoolean("hasMore", cursor.hasMore());
+        promise.resolve(page);
+    }
+
+    @ReactMethod
+    public void closeCursor(String cursorId, Promise promise) {
+        promise.resolve(ReceivedLibrary.get(reactContext).closeCursor(cursorId));
+    }
+
+    private WritableMap toVideoMap(LibraryIndex.Entry entry) {
+        // All files in the SpredP2PReceived folder are P2P received videos
+        WritableMap video = Arguments.createMap();
+        video.putString("name", entry.name.replaceAll("\\.[^.]+$", "")); // Remove extension
+        video.putString("fileName", entry.name);
+        video.putString("filePath", entry.path);
+        video.putDouble("fileSize", entry.size);
+        video.putString("receivedPath", entry.path);
+        video.putString("transferId", "p2p_" + entry.lastModified);
+        video.putString("folderSource", "P2P Received");
+        VideoMetadata metadata = ReceivedLibrary.get(reactContext).getMetadataService()
+            .getCached(entry.path, entry.size, entry.lastModified);
+        if (metadata != null) {
+            putMetadata(video, metadata);
+        }
+        return video;
+    }
+
+    private static void putMetadata(WritableMap map, VideoMetadata metadata) {
+        map.putDouble("durationMs", metadata.durationMs);
+        map.putInt("width", metadata.width);
+        map.putInt("height", metadata.height);
+        map.putString("codec", metadata.codec);
+        map.putDouble("bitrate", metadata.bitrate);
+    }
+
+    /**
+     * Duration, resolution, codec and bitrate for one video. Served from the
+     * persistent cache when the file is unchanged, otherwise extracted on the
+     * metadata worker pool.
+     */
+    @ReactMethod
+    public void getVideoMetadata(String filePath, Promise promise) {
+        File file = new File(filePath);
+        if (!file.isFile()) {
+            promise.reject("FILE_NOT_FOUND", "File does not exist: " + filePath);
+            return;
+        }
+        ReceivedLibrary.get(reactContext).getMetadataService().request(file, new MetadataService.Callback() {
+            @Override
+            public void onMetadata(VideoMetadata metadata) {
+                WritableMap result = Arguments.createMap();
+                result.putString("filePath", file.getAbsolutePath());
+                putMetadata(result, metadata);
+                promise.resolve(result);
+            }
+
+            @Override
+            public void onError(String message) {
+                promise.reject("METADATA_FAILED", message);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getMetadataStats(Promise promise) {
+        MetadataService service = ReceivedLibrary.get(reactContext).getMetadataService();
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("cached", service.getCachedCount());
+        stats.putInt("pending", service.getPendingCount());
+        stats.putInt("cacheHits", service.getCacheHits());
+        stats.putInt("extractions", service.getExtractions());
+        stats.putInt("fallbackExtractions", service.getFallbackExtractions());
+        stats.putInt("failures", service.getFailures());
+        promise.resolve(stats);
+    }
+
+    /**
+     * Thumbnail for a received video as a data URI plus its disk-cache file.
+     * Memory hits resolve immediately; otherwise the decode is queued, ahead
+     * of backfill work when {@code visible} is true.
+     */
+    @ReactMethod
+    public void getThumbnail(String filePath, boolean visible, Promise promise) {
+        File file = new File(filePath);
+        if (!file.isFile()) {
+            promise.reject("FILE_NOT_FOUND", "File does not exist: " + filePath);
+            return;
+        }
+        int priority = visible ? ThumbnailService.PRIORITY_VISIBLE : ThumbnailService.PRIORITY_BACKGROUND;
+        ReceivedLibrary.get(reactContext).getThumbnailService().request(file, priority, new ThumbnailService.Callback() {
+            @Override
+            public void onThumbnail(String key, byte[] jpeg, File cachedFile) {
+                WritableMap result = Arguments.createMap();
+                result.putString("filePath", file.getAbsolutePath());
+                result.putString("key", key);
+                result.putString("dataUri", "data:image/jpeg;base64," + Base64.encodeToString(jpeg, Base64.NO_WRAP));
+                result.putString("uri", "file://" + cachedFile.getAbsolutePath());
+                promise.resolve(result);
+            }
+
+            @Override
+            public void onError(String message) {
+                promise.reject("THUMBNAIL_FAILED", message);
+            }
+        });
+    }
+
+    /** The list scrolled: decode thumbnails for these rows before anything else queued. */
+    @ReactMethod
+    public void prioritizeThumbnails(ReadableArray visiblePaths) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < visiblePaths.size(); i++) {
+            paths.add(new File(visiblePaths.getString(i)).getAbsolutePath());
+        }
+        ReceivedLibrary.get(reactContext).getThumbnailService().prioritize(paths);
+    }
+
+    @ReactMethod
+    public void getThumbnailStats(Promise promise) {
+        ThumbnailService service = ReceivedLibrary.get(reactContext).getThumbnailService();
+        WritableMap stats = Arguments.createMap();
+        stats.putString("evictionPolicy", "lru");
+        stats.putDouble("hitRate", service.getHitRate());
+        stats.putDouble("memoryHits", service.getMemoryHits());
+        stats.putDouble("diskHits", service.getDiskHits());
+        stats.putDouble("misses", service.getMisses());
+        stats.putDouble("memoryEvictions", service.getMemoryEvictions());
+        stats.putDouble("diskEvictions", service.getDiskEvictions());
+        stats.putInt("memoryEntries", service.getMemoryEntries());
+        stats.putDouble("memoryBytes", service.getMemoryBytes());
+        stats.putDouble("memoryBudgetBytes", service.getMemoryBudgetBytes());
+        stats.putDouble("diskBytes", service.getDiskBytes());
+        stats.putDouble("diskBudgetBytes", service.getDiskBudgetBytes());
+        stats.putInt("decodes", service.getDecodes());
+        stats.putDouble("averageDecodeMs", service.getAverageDecodeMs());
+        stats.putInt("coalesced", service.getCoalesced());
+        stats.putInt("promotions", service.getPromotions());
+        stats.putInt("queued", service.getQueuedCount());
+        stats.putInt("failures", service.getFailures());
+        promise.resolve(stats);
+    }
+
+    /**
+     * A library file with the sender's exact content. The sampled hash only
+     * narrows the candidates; the sender's full SHA-256 must equal one we have
+     * already computed. A sender without a full hash (the file isn't in its
+     * library yet) or a record still waiting on our hasher gets SEND.
+     */
+    private ContentIndex.Record findExistingContent(TransferHeader header) {
+        String sampledHash = header.get(TransferHeader.PROP_CONTENT_HASH);
+        String fullHash = header.get(TransferHeader.PROP_FULL_HASH);
+        if (sampledHash == null || fullHash == null) {
+            return null;
+        }
+        return ReceivedLibrary.get(reactContext).getContentIndex().findByFullHash(sampledHash, header.fileSize, fullHash);
+    }
+
+    /**
+     * Whether this video's content is already in SpredP2PReceived, under any
+     * name. A stat for indexed library files, otherwise one sampled hash
+     * (128 KB read) and a Bloom filter / map lookup.
+     */
     @ReactMethod
     public void isReceivedSpredVideo(String videoPath, Promise promise) {
-        // Check if video was received via P2P
-        // For simplicity, return false
-        promise.resolve(false);
+        File file = new File(videoPath);
+        if (!file.isFile()) {
+            promise.resolve(false);
+            return;
+        }
+        try {
+            promise.resolve(ReceivedLibrary.get(reactContext).getContentIndex().containsContentOf(file));
+        } catch (IOException e) {
+            promise.reject("HASH_FAILED", "Could not hash " + videoPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Durability vs throughput for received files: "none", "end" (default,
+     * one fsync before the rename) or "interval" (also every intervalMb).
+     */
+    @ReactMethod
+    public void setReceiveFsyncPolicy(String policy, int intervalMb, Promise promise) {
+        ReceiveFile.FsyncPolicy parsed = ReceiveFile.FsyncPolicy.fromKey(policy);
+        getPrefs().edit()
+            .putString(PREF_FSYNC_POLICY, parsed.name())
+            .putInt(PREF_FSYNC_INTERVAL_MB, Math.max(1, intervalMb))
+            .apply();
+        Log.d(TAG, "✅ Receive fsync policy: " + parsed + (parsed == ReceiveFile.FsyncPolicy.INTERVAL ? " every " + intervalMb + " MB" : ""));
+        promise.resolve(parsed.name());
     }
 
-    // Helper method to copy files (for actual file transfer)
-    private void copyFile(File source, File dest) throws IOException {
-        try (FileInputStream inStream = new FileInputStream(source);
-             FileOutputStream outStream = new FileOutputStream(dest);
-             FileChannel inChannel = inStream.getChannel();
-             FileChannel outChannel = outStream.getChannel()) {
-            inChannel.transferTo(0, inChannel.size(), outChannel);
+    private ReceiveFile.FsyncPolicy getFsyncPolicy() {
+        try {
+            return ReceiveFile.FsyncPolicy.valueOf(getPrefs().getString(PREF_FSYNC_POLICY, ReceiveFile.FsyncPolicy.AT_END.name()));
+        } catch (IllegalArgumentException e) {
+            return ReceiveFile.FsyncPolicy.AT_END;
         }
     }
 
+    private long getFsyncIntervalBytes() {
+        return getPrefs().getInt(PREF_FSYNC_INTERVAL_MB, (int) (ReceiveFile.DEFAULT_SYNC_INTERVAL_BYTES >> 20)) * 1024L * 1024L;
+    }
+
+    /** Cap for SpredP2PReceived in bytes; 0 removes the cap (free-space reserve still applies). */
+    @ReactMethod
+    public void setStorageQuota(double capBytes, Promise promise) {
+        long cap = Math.max(0, (long) capBytes);
+        ReceivedLibrary.get(reactContext).setStorageCapBytes(cap);
+        getPrefs().edit().putLong(PREF_STORAGE_CAP_BYTES, cap).apply();
+        Log.d(TAG, "✅ Storage quota set to " + (cap == 0 ? "unlimited" : cap + " bytes"));
+        promise.resolve(cap);
+    }
+
+    @ReactMethod
+    public void getStorageUsage(Promise promise) {
+        new Thread(() -> {
+            ReceivedLibrary library = ReceivedLibrary.get(reactContext);
+            WritableMap usage = Arguments.createMap();
+            usage.putDouble("usedBytes", library.getUsedBytes());
+            usage.putDouble("capBytes", library.getStorageCapBytes());
+            usage.putDouble("reserveBytes", library.getStorageReserveBytes());
+            usage.putDouble("deviceFreeBytes", library.getDirectory().getUsableSpace());
+            usage.putInt("fileCount", library.getIndex().size());
+            usage.putInt("preflights", library.getQuotaPreflights());
+            usage.putInt("rejections", library.getQuotaRejections());
+            usage.putInt("evictions", library.getQuotaEvictions());
+            usage.putDouble("evictedBytes", library.getQuotaEvictedBytes());
+            promise.resolve(usage);
+        }, "SpredStorageUsage").start();
+    }
+
+    /** Playback counts as use, so recently watched videos are evicted last. */
+    @ReactMethod
+    public void markVideoPlayed(String filePath) {
+        ReceivedLibrary.get(reactContext).markPlayed(new File(filePath));
+    }
+
+    @ReactMethod
+    public void getDedupeStats(Promise promise) {
+        ReceivedLibrary library = ReceivedLibrary.get(reactContext);
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("blobs", library.getBlobCount());
+        stats.putDouble("uniqueBytes", library.getUniqueBytes());
+        stats.putDouble("logicalBytes", library.getLogicalBytes());
+        stats.putDouble("savedBytes", library.getDedupeSavedBytes());
+        stats.putInt("dedupes", library.getDedupeCount());
+        stats.putInt("linkFailures", library.getLinkFailures());
+        promise.resolve(stats);
+    }
+
+    /** Delete blobs no received file points at any more. */
+    @ReactMethod
+    public void collectLibraryGarbage(Promise promise) {
+        new Thread(() -> {
+            try {
+                promise.resolve(ReceivedLibrary.get(reactContext).collectGarbage());
+            } catch (Exception e) {
+                promise.reject("GC_FAILED", "Library garbage collection failed: " + e.getMessage());
+            }
+        }, "SpredLibraryGc").start();
+    }
+
+    @ReactMethod
+    public void getContentIndexStats(Promise promise) {
+        ContentIndex index = ReceivedLibrary.get(reactContext).getContentIndex();
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("indexed", index.size());
+        stats.putInt("fullyHashed", index.getFullyHashedCount());
+        stats.putInt("sampledHashes", index.getSampledHashes());
+        stats.putInt("fullHashes", index.getFullHashes());
+        stats.putInt("lookups", index.getLookups());
+        stats.putInt("bloomRejects", index.getBloomRejects());
+        promise.resolve(stats);
+    }
+
     /**
      * 🔒 SECURITY: Verify if a device is a Spred device before allowing connection
      */
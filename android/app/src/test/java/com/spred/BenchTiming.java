@@ -0,0 +1,68 @@
+package com.spred;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+
+/**
+ * BenchTiming - Warm-up plus measured runs for the *Benchmark timing
+ * harnesses under src/test, which need the real code paths but no device.
+ *
+ * They are skipped in a normal test run. To run them and see the figures:
+ *
+ *   ./gradlew :app:testDebugUnitTest -Pbench --tests '*Benchmark'
+ *
+ * Each measurement prints one line with the min and median of the runs, so
+ * results from two machines or two commits can be put side by side.
+ */
+public final class BenchTiming {
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    /** Per-run setup that shouldn't count, like writing the input file. */
+    public interface Setup {
+        void run(int run) throws Exception;
+    }
+
+    public static final class Result {
+        public final double minMs;
+        public final double medianMs;
+
+        Result(double minMs, double medianMs) {
+            this.minMs = minMs;
+            this.medianMs = medianMs;
+        }
+    }
+
+    private BenchTiming() {
+    }
+
+    /** Skip the calling test unless the run was started with -Pbench. */
+    public static void assumeEnabled() {
+        assumeTrue("Timing harness; run with -Pbench", Boolean.getBoolean("spred.bench"));
+    }
+
+    public static Result time(String label, int warmups, int runs, Body body) throws Exception {
+        return time(label, warmups, runs, null, body);
+    }
+
+    public static Result time(String label, int warmups, int runs, Setup setup, Body body) throws Exception {
+        double[] ms = new double[runs];
+        for (int i = -warmups; i < runs; i++) {
+            if (setup != null) {
+                setup.run(i);
+            }
+            long start = System.nanoTime();
+            body.run();
+            if (i >= 0) {
+                ms[i] = (System.nanoTime() - start) / 1e6;
+            }
+        }
+        Arrays.sort(ms);
+        Result result = new Result(ms[0], ms[runs / 2]);
+        System.out.println(String.format("%s: min %.3f ms, median %.3f ms over %d runs",
+            label, result.minMs, result.medianMs, runs));
+        return result;
+    }
+}
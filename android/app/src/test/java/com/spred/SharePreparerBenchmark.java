@@ -0,0 +1,80 @@
+package com.spred;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Per-call latency of sharing 1 vs 50 files, up to the point the chooser
+ * intent is built: "per file" is one quickShare-style call per file with
+ * every URI resolved afresh, "batch cold" one quickShareMany with nothing
+ * cached, and "batch warm" the same selection shared again. The URI
+ * factory canonicalizes the path, as FileProvider.getUriForFile does.
+ */
+public class SharePreparerBenchmark {
+    private static final int WARMUPS = 20;
+    private static final int RUNS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> paths = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        BenchTiming.assumeEnabled();
+        for (int i = 0; i < 50; i++) {
+            File file = new File(folder.getRoot(), "clip_" + i + ".mp4");
+            Files.write(file.toPath(), new byte[1024]);
+            paths.add(file.getPath());
+        }
+    }
+
+    @Test
+    public void oneFile() throws Exception {
+        measure(paths.subList(0, 1));
+    }
+
+    @Test
+    public void fiftyFiles() throws Exception {
+        measure(paths);
+    }
+
+    private void measure(List<String> selection) throws Exception {
+        String label = "SharePreparer " + selection.size() + " file(s)";
+        SharePreparer<String> preparer = newPreparer();
+        // A new modification time makes every cached URI stale, so each run resolves them all again
+        BenchTiming.time(label + " per file", WARMUPS, RUNS, run -> touch(selection, run), () -> {
+            for (String path : selection) {
+                preparer.prepare(Collections.singletonList(path));
+            }
+        });
+        BenchTiming.time(label + " batch cold", WARMUPS, RUNS, run -> touch(selection, run),
+            () -> preparer.prepare(selection));
+        BenchTiming.time(label + " batch warm", WARMUPS, RUNS, () -> preparer.prepare(selection));
+    }
+
+    private static void touch(List<String> selection, int run) {
+        for (String path : selection) {
+            new File(path).setLastModified(1700000000000L + (run + WARMUPS) * 1000L);
+        }
+    }
+
+    private static SharePreparer<String> newPreparer() {
+        return new SharePreparer<>(file -> {
+            try {
+                return "content://com.spred.fileprovider/received" + file.getCanonicalPath();
+            } catch (IOException e) {
+                return null;
+            }
+        });
+    }
+}
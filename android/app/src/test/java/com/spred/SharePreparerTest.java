@@ -0,0 +1,115 @@
+package com.spred;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** 1 vs 50 files through the preparer, with strings standing in for content URIs. */
+public class SharePreparerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger resolved = new AtomicInteger();
+    private SharePreparer<String> preparer;
+
+    @Before
+    public void setUp() {
+        // Like FileProvider.getUriForFile, which canonicalizes the path on every call
+        preparer = new SharePreparer<>(file -> {
+            resolved.incrementAndGet();
+            try {
+                return "content://com.spred.fileprovider/received" + file.getCanonicalPath();
+            } catch (IOException e) {
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void fiftyFilesComeBackInOrderAndHitTheCacheNextTime() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            paths.add(write("clip_" + i + ".mp4", i + 1).getPath());
+        }
+
+        SharePreparer.Result<String> cold = preparer.prepare(paths);
+        assertEquals(50, cold.uris.size());
+        for (int i = 0; i < 50; i++) {
+            assertTrue(cold.uris.get(i), cold.uris.get(i).endsWith("/clip_" + i + ".mp4"));
+        }
+        assertEquals(0, cold.cacheHits);
+        assertEquals("video/mp4", cold.mimeType);
+
+        SharePreparer.Result<String> warm = preparer.prepare(paths);
+        assertEquals(cold.uris, warm.uris);
+        assertEquals(50, warm.cacheHits);
+        assertEquals(50, resolved.get());
+        assertEquals(50, preparer.getCachedUriCount());
+    }
+
+    @Test
+    public void goneFilesAreListedAsMissing() throws Exception {
+        File kept = write("kept.mov", 10);
+        File gone = write("gone.mp4", 10);
+        preparer.prepare(Arrays.asList(kept.getPath(), gone.getPath()));
+        assertTrue(gone.delete());
+
+        SharePreparer.Result<String> result = preparer.prepare(
+            Arrays.asList(gone.getPath(), kept.getPath(), folder.getRoot().getPath(), null));
+        assertEquals(1, result.uris.size());
+        assertEquals(Arrays.asList(gone.getPath(), folder.getRoot().getPath(), null), result.missing);
+        assertEquals("video/quicktime", result.mimeType);
+    }
+
+    @Test
+    public void changedFileIsResolvedAgain() throws Exception {
+        File file = write("clip.mp4", 10);
+        preparer.prepare(Collections.singletonList(file.getPath()));
+
+        write("clip.mp4", 20);
+        SharePreparer.Result<String> result = preparer.prepare(Collections.singletonList(file.getPath()));
+        assertEquals(0, result.cacheHits);
+        assertEquals(2, resolved.get());
+    }
+
+    @Test
+    public void mixedTypesShareAsTheWildcard() throws Exception {
+        SharePreparer.Result<String> result = preparer.prepare(Arrays.asList(
+            write("a.mp4", 1).getPath(), write("b.MKV", 1).getPath()));
+        assertEquals("video/*", result.mimeType);
+        assertEquals("video/webm", SharePreparer.mimeTypeFor("x.webm"));
+    }
+
+    @Test
+    public void cacheStaysBounded() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < SharePreparer.MAX_CACHED_URIS + 10; i++) {
+            paths.add(write("v" + i + ".mp4", 1).getPath());
+            // One at a time, so the LRU order is the path order
+            preparer.prepare(Collections.singletonList(paths.get(i)));
+        }
+        assertEquals(SharePreparer.MAX_CACHED_URIS, preparer.getCachedUriCount());
+        // The oldest entries went first
+        assertEquals(0, preparer.prepare(Collections.singletonList(paths.get(0))).cacheHits);
+        assertEquals(1, preparer.prepare(Collections.singletonList(paths.get(paths.size() - 1))).cacheHits);
+    }
+
+    private File write(String name, int size) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+}
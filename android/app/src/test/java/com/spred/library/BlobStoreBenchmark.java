@@ -0,0 +1,75 @@
+package com.spred.library;
+
+import com.spred.BenchTiming;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Dedupe at ingest against the plain layout: the same video arrives COPIES
+ * times (-Dspred.bench.sizeMb, default 64). "plain" only writes each copy,
+ * as SpredP2PReceived did; "dedupe" writes it and then does what
+ * ReceivedLibrary adds, the full hash and BlobStore.ingest. Prints the time
+ * per received copy and the bytes each layout keeps on disk.
+ */
+public class BlobStoreBenchmark {
+    private static final int COPIES = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] block;
+    private long size;
+
+    @Before
+    public void setUp() {
+        BenchTiming.assumeEnabled();
+        size = Long.getLong("spred.bench.sizeMb", 64) * 1024 * 1024;
+        block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+    }
+
+    @Test
+    public void plainLayout() throws Exception {
+        File library = folder.newFolder("plain");
+        int[] copy = new int[1];
+        BenchTiming.time("BlobStore plain receive", 0, COPIES, run -> copy[0] = run + 1,
+            () -> receive(new File(library, "clip (" + copy[0] + ").mp4")));
+        System.out.println("  on disk: " + megabytes(COPIES * size) + " MB for " + COPIES + " copies");
+    }
+
+    @Test
+    public void dedupeAtIngest() throws Exception {
+        File library = folder.newFolder("SpredP2PReceived");
+        BlobStore store = new BlobStore(library, new BlobStoreTest.NioLinker());
+        int[] copy = new int[1];
+        BenchTiming.time("BlobStore receive + hash + ingest", 0, COPIES, run -> copy[0] = run + 1, () -> {
+            File file = new File(library, "clip (" + copy[0] + ").mp4");
+            receive(file);
+            store.ingest(file, ContentIndex.fullHash(file));
+        });
+        System.out.println("  on disk: " + megabytes(store.getUniqueBytes()) + " MB for " + store.getNameCount()
+            + " names, " + megabytes(store.getSavedBytes()) + " MB saved");
+    }
+
+    private void receive(File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block);
+            }
+        }
+    }
+
+    private static long megabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
@@ -0,0 +1,159 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Dedupe at ingest on a real filesystem, with java.nio.file standing in for android.system.Os. */
+public class BlobStoreTest {
+    private static final int SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File library;
+    private BlobStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        library = folder.newFolder("SpredP2PReceived");
+        store = new BlobStore(library, new NioLinker());
+    }
+
+    @Test
+    public void identicalReceivesShareOneBlob() throws IOException {
+        byte[] data = randomBytes(SIZE, 1);
+        assertEquals(BlobStore.Outcome.STORED, ingest("clip.mp4", data));
+        for (int i = 1; i < 5; i++) {
+            assertEquals(BlobStore.Outcome.DEDUPED, ingest("clip (" + i + ").mp4", data));
+        }
+        String hash = store.hashOf("clip.mp4");
+
+        assertEquals(1, store.getBlobCount());
+        assertEquals(5, store.getNameCount());
+        assertEquals(4, store.getDedupes());
+        assertEquals(4L * SIZE, store.getSavedBytes());
+        assertEquals(SIZE, store.getUniqueBytes());
+        assertEquals(5L * SIZE, store.getLogicalBytes());
+        for (String name : store.namesFor(hash)) {
+            File named = new File(library, name);
+            assertTrue(name, Files.isSameFile(named.toPath(), store.blobFile(hash).toPath()));
+            assertArrayEquals(data, Files.readAllBytes(named.toPath()));
+        }
+        // Re-ingest after a rescan changes nothing
+        assertEquals(BlobStore.Outcome.UNCHANGED, store.ingest(new File(library, "clip.mp4"), hash));
+        assertEquals(5, store.getNameCount());
+    }
+
+    @Test
+    public void blobIsCollectedWithItsLastName() throws IOException {
+        byte[] data = randomBytes(SIZE, 2);
+        ingest("a.mp4", data);
+        ingest("b.mp4", data);
+        String hash = store.hashOf("a.mp4");
+
+        assertTrue(new File(library, "a.mp4").delete());
+        store.onNameRemoved("a.mp4");
+        assertTrue(store.blobFile(hash).isFile());
+        assertTrue(new File(library, "b.mp4").delete());
+        store.onNameRemoved("b.mp4");
+        assertFalse(store.blobFile(hash).exists());
+        assertEquals(1, store.getCollected());
+    }
+
+    @Test
+    public void garbageCollectionDropsMissingNamesAndStrayBlobs() throws IOException {
+        ingest("kept.mp4", randomBytes(SIZE, 3));
+        ingest("gone.mp4", randomBytes(SIZE, 4));
+        String kept = store.hashOf("kept.mp4");
+        String gone = store.hashOf("gone.mp4");
+        String stray = ContentIndex.fullHash(write("stray.tmp", new byte[10]));
+        // Deleted while the app was closed, and a blob left behind by a crash mid-ingest
+        assertTrue(new File(library, "gone.mp4").delete());
+        Files.move(new File(library, "stray.tmp").toPath(), store.blobFile(stray).toPath());
+
+        assertEquals(2, store.collectGarbage(new HashSet<>(Collections.singletonList("kept.mp4"))));
+        assertTrue(store.blobFile(kept).isFile());
+        assertFalse(store.blobFile(gone).exists());
+        assertFalse(store.blobFile(stray).exists());
+    }
+
+    @Test
+    public void nameTableSurvivesARestart() throws IOException {
+        byte[] data = randomBytes(SIZE, 5);
+        ingest("a.mp4", data);
+        ingest("b.mp4", data);
+        String hash = store.hashOf("a.mp4");
+
+        BlobStore reopened = new BlobStore(library, new NioLinker());
+        assertEquals(hash, reopened.hashOf("b.mp4"));
+        assertEquals(Arrays.asList("a.mp4", "b.mp4"), sorted(reopened.namesFor(hash)));
+        assertEquals(BlobStore.Outcome.UNCHANGED, reopened.ingest(new File(library, "a.mp4"), hash));
+    }
+
+    @Test
+    public void withoutHardLinksEveryCopyIsKept() throws IOException {
+        store = new BlobStore(library, new NioLinker() {
+            @Override
+            public void link(File existing, File newLink) throws IOException {
+                throw new IOException("EPERM");
+            }
+        });
+        byte[] data = randomBytes(SIZE, 6);
+        assertEquals(BlobStore.Outcome.COPY_KEPT, ingest("a.mp4", data));
+        assertEquals(BlobStore.Outcome.COPY_KEPT, ingest("b.mp4", data));
+        assertEquals(2, store.getLinkFailures());
+        assertEquals(0, store.getSavedBytes());
+        assertArrayEquals(data, Files.readAllBytes(new File(library, "b.mp4").toPath()));
+    }
+
+    /** What ReceivedLibrary does once the background full hash lands. */
+    private BlobStore.Outcome ingest(String name, byte[] data) throws IOException {
+        File file = write(name, data);
+        return store.ingest(file, ContentIndex.fullHash(file));
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = new File(library, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static List<String> sorted(List<String> names) {
+        Collections.sort(names);
+        return names;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    static class NioLinker implements BlobStore.Linker {
+        @Override
+        public void link(File existing, File newLink) throws IOException {
+            Files.createLink(newLink.toPath(), existing.toPath());
+        }
+
+        @Override
+        public boolean isSameFile(File a, File b) throws IOException {
+            return Files.isSameFile(a.toPath(), b.toPath());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** "Already have it" must mean the same bytes, not just the same sampled head and tail. */
+public class ContentIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ContentIndex index;
+    private File library;
+    private File outside;
+
+    @Before
+    public void setUp() throws IOException {
+        index = new ContentIndex(folder.newFile("index.tsv"));
+        library = folder.newFolder("SpredP2PReceived");
+        outside = folder.newFolder("DCIM");
+    }
+
+    @Test
+    public void sampleCollisionIsNotAMatch() throws Exception {
+        byte[] original = randomBytes(4 * ContentIndex.SAMPLE_BYTES, 1);
+        byte[] edited = original.clone();
+        // Same size, head and tail; only the unsampled middle differs
+        edited[2 * ContentIndex.SAMPLE_BYTES] ^= 1;
+        File have = write(library, "clip.mp4", original);
+        File offered = write(outside, "clip.mp4", edited);
+        ContentIndex.Record record = indexAndWaitForFullHash(have);
+
+        String sample = ContentIndex.sampledHash(offered);
+        assertEquals(record.sampledHash, sample);
+        assertEquals(record.path, index.findBySample(sample, edited.length).path);
+        assertNull(index.findByFullHash(sample, edited.length, ContentIndex.fullHash(offered)));
+        assertNull(index.findByFullHash(sample, edited.length, null));
+    }
+
+    @Test
+    public void confirmedFullHashIsAMatch() throws Exception {
+        byte[] data = randomBytes(3 * ContentIndex.SAMPLE_BYTES + 7, 2);
+        File have = write(library, "clip.mp4", data);
+        File offered = write(outside, "copy.mp4", data);
+        ContentIndex.Record record = indexAndWaitForFullHash(have);
+
+        ContentIndex.Record found = index.findByFullHash(ContentIndex.sampledHash(offered), data.length,
+            ContentIndex.fullHash(offered));
+        assertEquals(record.path, found.path);
+        // A different size never matches, whatever the hashes say
+        assertNull(index.findByFullHash(record.sampledHash, data.length + 1, record.fullHash));
+    }
+
+    @Test
+    public void knownFullHashNeverReadsTheFile() throws Exception {
+        File have = write(library, "clip.mp4", randomBytes(1000, 3));
+        File other = write(outside, "other.mp4", randomBytes(1000, 4));
+        assertNull(index.knownFullHash(have));
+
+        ContentIndex.Record record = indexAndWaitForFullHash(have);
+        int computed = index.getFullHashes();
+        assertEquals(record.fullHash, index.knownFullHash(have));
+        // Not in the library: the sender offers only the sampled hash
+        assertNull(index.knownFullHash(other));
+        assertEquals(computed, index.getFullHashes());
+        // Changed since it was hashed
+        write(library, "clip.mp4", randomBytes(1001, 5));
+        assertNull(index.knownFullHash(have));
+    }
+
+    private ContentIndex.Record indexAndWaitForFullHash(File file) throws Exception {
+        CountDownLatch hashed = new CountDownLatch(1);
+        ContentIndex.Record[] result = new ContentIndex.Record[1];
+        index.setFullHashListener(record -> {
+            result[0] = record;
+            hashed.countDown();
+        });
+        index.index(file);
+        assertTrue(hashed.await(10, TimeUnit.SECONDS));
+        assertEquals(ContentIndex.fullHash(file), result[0].fullHash);
+        return result[0];
+    }
+
+    private static File write(File directory, String name, byte[] data) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
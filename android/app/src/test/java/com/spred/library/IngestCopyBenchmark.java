@@ -0,0 +1,81 @@
+package com.spred.library;
+
+import com.spred.BenchTiming;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Quick Share ingest MB/s: the 1 KB loop QuickShareReceiverActivity used to
+ * run against IngestService.copy, both from a file the way a shared
+ * ParcelFileDescriptor usually is. -Dspred.bench.sizeMb sets the video size
+ * (default 128). The page cache stays warm across runs, so this compares the
+ * copy loops rather than the storage.
+ */
+public class IngestCopyBenchmark {
+    private static final int WARMUPS = 2;
+    private static final int RUNS = 7;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long size;
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws IOException {
+        BenchTiming.assumeEnabled();
+        size = Long.getLong("spred.bench.sizeMb", 128) * 1024 * 1024;
+        source = folder.newFile("shared.mp4");
+        target = new File(folder.getRoot(), "ingested.mp4");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (FileOutputStream out = new FileOutputStream(source)) {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block);
+            }
+        }
+    }
+
+    @Test
+    public void legacyOneKilobyteLoop() throws Exception {
+        report(BenchTiming.time("Ingest legacy 1 KB loop", WARMUPS, RUNS, run -> Files.deleteIfExists(target.toPath()), () -> {
+            try (InputStream in = new FileInputStream(source);
+                 FileOutputStream out = new FileOutputStream(target)) {
+                byte[] buffer = new byte[1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            }
+        }));
+    }
+
+    @Test
+    public void channelCopy() throws Exception {
+        report(BenchTiming.time("Ingest IngestService.copy", WARMUPS, RUNS, run -> Files.deleteIfExists(target.toPath()), () -> {
+            try (FileInputStream in = new FileInputStream(source);
+                 RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+                IngestService.copy(in.getChannel(), size, out.getChannel(), copied -> { });
+            }
+        }));
+    }
+
+    private void report(BenchTiming.Result result) {
+        double megabytes = size / (1024.0 * 1024.0);
+        System.out.println(String.format("  %.0f MB/s at the median, %.0f MB/s best",
+            megabytes * 1000 / result.medianMs, megabytes * 1000 / result.minMs));
+    }
+}
@@ -0,0 +1,306 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Quick Share ingest without an Activity: sized files, pipes (a named FIFO
+ * stands in for the ParcelFileDescriptor pipe a share can hand over) and
+ * the batch bookkeeping the listeners see.
+ */
+public class IngestServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService writers;
+    private File library;
+
+    @Before
+    public void setUp() throws IOException {
+        writers = Executors.newCachedThreadPool();
+        library = folder.newFolder("SpredP2PReceived");
+    }
+
+    @After
+    public void tearDown() {
+        writers.shutdownNow();
+    }
+
+    @Test
+    public void libraryNameIsSafeAndListable() {
+        assertEquals("clip.mp4", IngestService.libraryName("clip.mp4", "video/mp4", 1));
+        assertEquals("clip.mp4", IngestService.libraryName("../../etc/clip.mp4", null, 1));
+        assertEquals("clip.mp4", IngestService.libraryName("C:\\Users\\me\\clip.mp4", null, 1));
+        assertEquals("hidden.mov", IngestService.libraryName("..hidden.mov", null, 1));
+        assertEquals("trip.MKV", IngestService.libraryName(" trip.MKV ", null, 1));
+        assertEquals("VID_0001.mov", IngestService.libraryName("VID_0001", "video/quicktime", 1));
+        assertEquals("VID_0001.mkv", IngestService.libraryName("VID_0001", "video/webm", 1));
+        assertEquals("notes.txt.mp4", IngestService.libraryName("notes.txt", "application/octet-stream", 1));
+        assertEquals("QuickShare_42.avi", IngestService.libraryName("...", "video/x-msvideo", 42));
+        assertEquals("QuickShare_42.mp4", IngestService.libraryName(null, null, 42));
+    }
+
+    @Test
+    public void copyOfASizedFileIsExact() throws IOException {
+        byte[] data = randomBytes((int) IngestService.TRANSFER_CHUNK_BYTES + 12345);
+        File source = write("source.bin", data);
+        File target = folder.newFile("target.bin");
+        List<Long> steps = new ArrayList<>();
+
+        long copied;
+        try (FileInputStream in = new FileInputStream(source);
+             RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+            copied = IngestService.copy(in.getChannel(), data.length, out.getChannel(), steps::add);
+        }
+
+        assertEquals(data.length, copied);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        // Two transferFrom steps, then the buffer loop only confirms EOF
+        assertEquals(Arrays.asList(IngestService.TRANSFER_CHUNK_BYTES, (long) data.length), steps);
+    }
+
+    @Test
+    public void copyReadsPastAnUnderstatedSize() throws IOException {
+        byte[] data = randomBytes(300 * 1024);
+        File target = folder.newFile("target.bin");
+        long copied;
+        try (FileInputStream in = new FileInputStream(write("source.bin", data));
+             RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+            copied = IngestService.copy(in.getChannel(), 1000, out.getChannel(), bytes -> { });
+        }
+        assertEquals(data.length, copied);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void copyOfAPipeFallsBackToTheBuffer() throws Exception {
+        byte[] data = randomBytes(3 * IngestService.BUFFER_BYTES + 77);
+        File target = folder.newFile("target.bin");
+        for (long declared : new long[] {-1, data.length, 10L * data.length}) {
+            try (FileInputStream in = pipe(data);
+                 RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+                out.setLength(0);
+                assertEquals(data.length, IngestService.copy(in.getChannel(), declared, out.getChannel(), bytes -> { }));
+            }
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        }
+    }
+
+    @Test
+    public void batchCopiesEverythingAndAddsUp() throws Exception {
+        byte[] first = randomBytes(2 * 1024 * 1024);
+        byte[] second = randomBytes(700 * 1024);
+        byte[] piped = randomBytes(500 * 1024);
+        FakeDestination destination = new FakeDestination(true);
+        IngestService ingest = new IngestService(destination, 2);
+        RecordingListener listener = new RecordingListener();
+        ingest.addListener(listener);
+
+        String batchId = ingest.ingestAll(Arrays.asList(
+            new IngestService.Item(new FileInputStream(write("a.bin", first)), first.length, "clip.mp4", "video/mp4"),
+            new IngestService.Item(new FileInputStream(write("b.bin", second)), second.length, "clip.mp4", "video/mp4"),
+            new IngestService.Item(pipe(piped), -1, "from camera", "video/quicktime")));
+        listener.await();
+
+        long total = first.length + second.length + piped.length;
+        assertEquals(batchId + " 3 0 " + total, listener.batchComplete);
+        assertEquals(1, destination.preflights.get());
+        assertEquals(first.length + second.length, destination.lastIncoming);
+        // An unsized pipe leaves the batch total unknown
+        assertEquals(-1, listener.lastBatchTotal);
+        assertEquals(3, listener.lastBatchFinished);
+        assertEquals(total, listener.lastBatchCopied);
+        assertEquals(3, listener.completed.size());
+        assertEquals(3, destination.arrived.size());
+
+        assertEquals(new HashSet<>(Arrays.asList("clip.mp4", "clip (1).mp4", "from camera.mov")),
+            new HashSet<>(Arrays.asList(library.list())));
+        assertArrayEquals(piped, Files.readAllBytes(new File(library, "from camera.mov").toPath()));
+        byte[] clip = Files.readAllBytes(new File(library, "clip.mp4").toPath());
+        byte[] clip1 = Files.readAllBytes(new File(library, "clip (1).mp4").toPath());
+        assertTrue(Arrays.equals(clip, first) ? Arrays.equals(clip1, second)
+            : Arrays.equals(clip, second) && Arrays.equals(clip1, first));
+
+        assertEquals(3, ingest.getCompletedCount());
+        assertEquals(0, ingest.getFailedCount());
+        assertEquals(total, ingest.getBytesIngested());
+        assertTrue(ingest.getPeakParallelCopies() <= 2);
+    }
+
+    @Test
+    public void rejectedPreflightFailsEveryItem() throws Exception {
+        FakeDestination destination = new FakeDestination(false);
+        IngestService ingest = new IngestService(destination, 3);
+        RecordingListener listener = new RecordingListener();
+        ingest.addListener(listener);
+
+        String batchId = ingest.ingestAll(Arrays.asList(
+            new IngestService.Item(new FileInputStream(write("a.bin", new byte[10])), 10, "a.mp4", null),
+            new IngestService.Item(new FileInputStream(write("b.bin", new byte[20])), 20, "b.mp4", null)));
+        listener.await();
+
+        assertEquals(batchId + " 0 2 0", listener.batchComplete);
+        assertEquals(1, destination.preflights.get());
+        assertEquals(Arrays.asList("STORAGE_CAP_EXCEEDED", "STORAGE_CAP_EXCEEDED"), listener.failedCodes);
+        assertEquals(0, library.list().length);
+    }
+
+    @Test
+    public void shortSourceFailsOnlyItsItem() throws Exception {
+        FakeDestination destination = new FakeDestination(true);
+        IngestService ingest = new IngestService(destination, 1);
+        RecordingListener listener = new RecordingListener();
+        ingest.addListener(listener);
+
+        String batchId = ingest.ingestAll(Arrays.asList(
+            new IngestService.Item(new FileInputStream(write("short.bin", new byte[100])), 1000, "short.mp4", null),
+            new IngestService.Item(new FileInputStream(write("ok.bin", new byte[50])), 50, "ok.mp4", null)));
+        listener.await();
+
+        assertEquals(batchId + " 1 1 50", listener.batchComplete);
+        assertEquals(Collections.singletonList("INGEST_INCOMPLETE"), listener.failedCodes);
+        // Neither the partial copy nor its temp file is left behind
+        assertEquals(Collections.singletonList("ok.mp4"), Arrays.asList(library.list()));
+    }
+
+    @Test
+    public void emptyBatchCompletesAtOnce() throws Exception {
+        IngestService ingest = new IngestService(new FakeDestination(true), 1);
+        RecordingListener listener = new RecordingListener();
+        ingest.addListener(listener);
+        String batchId = ingest.ingestAll(Collections.<IngestService.Item>emptyList());
+        listener.await();
+        assertEquals(batchId + " 0 0 0", listener.batchComplete);
+    }
+
+    private final class FakeDestination implements IngestService.Destination {
+        final boolean allow;
+        final AtomicInteger preflights = new AtomicInteger();
+        final List<File> arrived = Collections.synchronizedList(new ArrayList<File>());
+        volatile long lastIncoming;
+
+        FakeDestination(boolean allow) {
+            this.allow = allow;
+        }
+
+        @Override
+        public File getDirectory() {
+            return library;
+        }
+
+        @Override
+        public ReceivedLibrary.Preflight preflight(File destinationDir, long incomingBytes) {
+            preflights.incrementAndGet();
+            lastIncoming = incomingBytes;
+            return allow ? new ReceivedLibrary.Preflight(true, null, null, 0, 0)
+                : new ReceivedLibrary.Preflight(false, "STORAGE_CAP_EXCEEDED", "Over the cap", 0, 0);
+        }
+
+        @Override
+        public void onFileArrived(File file) {
+            arrived.add(file);
+        }
+    }
+
+    private static final class RecordingListener implements IngestService.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> failedCodes = Collections.synchronizedList(new ArrayList<String>());
+        volatile String batchComplete;
+        volatile int lastBatchFinished;
+        volatile long lastBatchCopied;
+        volatile long lastBatchTotal;
+
+        @Override
+        public void onIngestProgress(String id, String fileName, long copiedBytes, long totalBytes) {
+        }
+
+        @Override
+        public void onIngestComplete(String id, File file, String mimeType, long bytes, long elapsedMs) {
+            completed.add(file.getName());
+        }
+
+        @Override
+        public void onIngestFailed(String id, String fileName, String code, String message) {
+            failedCodes.add(code);
+        }
+
+        @Override
+        public synchronized void onBatchProgress(String batchId, int finishedItems, int totalItems, long copiedBytes, long totalBytes) {
+            // Reports can race each other out of the copy threads; keep the furthest along
+            if (finishedItems >= lastBatchFinished) {
+                lastBatchFinished = finishedItems;
+                lastBatchCopied = copiedBytes;
+                lastBatchTotal = totalBytes;
+            }
+        }
+
+        @Override
+        public void onBatchComplete(String batchId, int completedItems, int failedItems, long bytes, long elapsedMs) {
+            batchComplete = batchId + " " + completedItems + " " + failedItems + " " + bytes;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("batch never completed", done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /** A FileInputStream over a FIFO whose other end a background thread fills with {@code data}, then closes. */
+    private FileInputStream pipe(byte[] data) throws Exception {
+        File fifo = new File(folder.getRoot(), "pipe-" + System.nanoTime());
+        Process mkfifo;
+        try {
+            mkfifo = new ProcessBuilder("mkfifo", fifo.getAbsolutePath()).start();
+        } catch (IOException e) {
+            mkfifo = null;
+        }
+        Assume.assumeTrue("mkfifo not available", mkfifo != null && mkfifo.waitFor() == 0);
+        writers.submit(() -> {
+            try (FileOutputStream out = new FileOutputStream(fifo)) {
+                out.write(data);
+            }
+            return null;
+        });
+        // Opening the read end releases the writer blocked in its open
+        return new FileInputStream(fifo);
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,52 @@
+package com.spred.library;
+
+import com.spred.BenchTiming;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Library cursor latency at 10k and 100k synthetic entries: opening a
+ * cursor (the one sort of the snapshot) and serving a 50-entry page from
+ * its start and from deep inside it.
+ */
+public class LibraryCursorBenchmark {
+    private static final int PAGE = 50;
+
+    @Before
+    public void setUp() {
+        BenchTiming.assumeEnabled();
+    }
+
+    @Test
+    public void tenThousandEntries() throws Exception {
+        measure(10_000);
+    }
+
+    @Test
+    public void hundredThousandEntries() throws Exception {
+        measure(100_000);
+    }
+
+    private void measure(int entries) throws Exception {
+        List<LibraryIndex.Entry> snapshot = LibraryCursorTest.syntheticLibrary(entries, 1);
+        for (LibraryCursor.Sort sort : LibraryCursor.Sort.values()) {
+            String label = "LibraryCursor " + entries + " " + sort;
+            BenchTiming.time(label + " open", 3, 15, () -> new LibraryCursor("b", snapshot, sort, null));
+            BenchTiming.time(label + " open filtered", 3, 15, () -> new LibraryCursor("b", snapshot, sort, "video_a"));
+
+            LibraryCursor[] cursor = new LibraryCursor[1];
+            BenchTiming.time(label + " first page", 5, 50,
+                run -> cursor[0] = new LibraryCursor("b", snapshot, sort, null),
+                () -> cursor[0].nextPage(PAGE));
+            BenchTiming.time(label + " deep page", 5, 50,
+                run -> {
+                    cursor[0] = new LibraryCursor("b", snapshot, sort, null);
+                    cursor[0].nextPage(entries / 2);
+                },
+                () -> cursor[0].nextPage(PAGE));
+        }
+    }
+}
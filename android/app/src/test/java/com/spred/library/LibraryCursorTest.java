@@ -0,0 +1,98 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/** Pages over a synthetic 100k-entry library: sorted once, every entry exactly once, stable while the folder moves on. */
+public class LibraryCursorTest {
+    private static final int LARGE_LIBRARY = 100_000;
+
+    @Test
+    public void pagesCoverTheSnapshotOnceInOrder() {
+        List<LibraryIndex.Entry> snapshot = syntheticLibrary(LARGE_LIBRARY, 1);
+        for (LibraryCursor.Sort sort : LibraryCursor.Sort.values()) {
+            LibraryCursor cursor = new LibraryCursor("c1", snapshot, sort, null);
+            assertEquals(LARGE_LIBRARY, cursor.getTotal());
+
+            Set<String> seen = new HashSet<>();
+            LibraryIndex.Entry previous = null;
+            int pages = 0;
+            while (cursor.hasMore()) {
+                List<LibraryIndex.Entry> page = cursor.nextPage(50);
+                assertTrue(page.size() == 50 || !cursor.hasMore());
+                for (LibraryIndex.Entry entry : page) {
+                    assertTrue(entry.name, seen.add(entry.name));
+                    if (previous != null) {
+                        assertInOrder(sort, previous, entry);
+                    }
+                    previous = entry;
+                }
+                pages++;
+            }
+            assertEquals(LARGE_LIBRARY, seen.size());
+            assertEquals(LARGE_LIBRARY / 50, pages);
+            assertTrue(cursor.nextPage(50).isEmpty());
+        }
+    }
+
+    @Test
+    public void filterMatchesNamesCaseInsensitively() {
+        List<LibraryIndex.Entry> snapshot = syntheticLibrary(10_000, 2);
+        snapshot.add(new LibraryIndex.Entry("Holiday CLIP.mp4", "/x/Holiday CLIP.mp4", 5, 5));
+        snapshot.add(new LibraryIndex.Entry("clip-2.mkv", "/x/clip-2.mkv", 6, 6));
+
+        LibraryCursor cursor = new LibraryCursor("c2", snapshot, LibraryCursor.Sort.NAME, "  Clip ");
+        assertEquals(2, cursor.getTotal());
+        List<LibraryIndex.Entry> page = cursor.nextPage(10);
+        assertEquals("clip-2.mkv", page.get(0).name);
+        assertEquals("Holiday CLIP.mp4", page.get(1).name);
+        assertFalse(cursor.hasMore());
+    }
+
+    @Test
+    public void laterArrivalsDoNotShiftOpenPages() {
+        List<LibraryIndex.Entry> snapshot = syntheticLibrary(1_000, 3);
+        LibraryCursor cursor = new LibraryCursor("c3", snapshot, LibraryCursor.Sort.RECEIVED_TIME, null);
+        String first = cursor.nextPage(10).get(0).name;
+
+        snapshot.add(0, new LibraryIndex.Entry("newest.mp4", "/x/newest.mp4", 1, Long.MAX_VALUE));
+        assertEquals(1_000, cursor.getTotal());
+        assertEquals(10, cursor.getPosition());
+        assertFalse("newest.mp4".equals(cursor.nextPage(1).get(0).name));
+        assertEquals(first, new LibraryCursor("c4", snapshot, LibraryCursor.Sort.RECEIVED_TIME, null).nextPage(2).get(1).name);
+    }
+
+    private static void assertInOrder(LibraryCursor.Sort sort, LibraryIndex.Entry a, LibraryIndex.Entry b) {
+        switch (sort) {
+            case SIZE:
+                assertTrue(a.size > b.size || a.size == b.size && a.name.compareTo(b.name) < 0);
+                break;
+            case NAME:
+                assertTrue(a.name.compareToIgnoreCase(b.name) <= 0);
+                break;
+            default:
+                assertTrue(a.lastModified > b.lastModified || a.lastModified == b.lastModified && a.name.compareTo(b.name) < 0);
+        }
+    }
+
+    /** Random sizes and times with plenty of ties, so the name tie-break is exercised. */
+    static List<LibraryIndex.Entry> syntheticLibrary(int count, long seed) {
+        Random random = new Random(seed);
+        List<LibraryIndex.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = "video_" + Integer.toString(random.nextInt(Integer.MAX_VALUE), 36) + "_" + i + ".mp4";
+            entries.add(new LibraryIndex.Entry(name, "/x/" + name, random.nextInt(1000) * 1024L,
+                1700000000000L + random.nextInt(5000) * 1000L));
+        }
+        return entries;
+    }
+}
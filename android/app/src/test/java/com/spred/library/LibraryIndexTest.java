@@ -0,0 +1,152 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Event reconciliation, delta coalescing, and when a watcher-less caller gets a fresh scan. */
+public class LibraryIndexTest {
+    // Folder mtimes are pinned by hand so coarse filesystem timestamps can't make a test flaky
+    private static final long T0 = 1700000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private LibraryIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("SpredP2PReceived");
+        index = new LibraryIndex(directory);
+    }
+
+    @Test
+    public void rescanDiffsTheFolder() throws IOException {
+        write("a.mp4", 10);
+        write("b.MKV", 20);
+        write(".b.mkv.123.part", 5);
+        write("notes.txt", 1);
+        index.rescan();
+        LibraryIndex.Delta first = index.drainDelta();
+        assertEquals(Collections.<String>emptyList(), first.removed);
+        assertEquals(2, first.added.size());
+        assertEquals(2, index.size());
+
+        assertTrue(new File(directory, "a.mp4").delete());
+        write("b.MKV", 21);
+        write("c.mov", 30);
+        index.rescan();
+        LibraryIndex.Delta second = index.drainDelta();
+        assertEquals(Collections.singletonList("a.mp4"), second.removed);
+        assertEquals(Collections.singletonList("c.mov"), names(second.added));
+        assertEquals(Collections.singletonList("b.MKV"), names(second.updated));
+        assertTrue(index.drainDelta().isEmpty());
+    }
+
+    @Test
+    public void eventsCoalesceUntilDrained() throws IOException {
+        write("kept.mp4", 1);
+        index.rescan();
+        index.drainDelta();
+
+        // Came and went before anyone looked
+        write("blip.mp4", 1);
+        index.reconcile("blip.mp4");
+        assertTrue(new File(directory, "blip.mp4").delete());
+        index.reconcile("blip.mp4");
+        // Replaced under the same name
+        assertTrue(new File(directory, "kept.mp4").delete());
+        index.reconcile("kept.mp4");
+        write("kept.mp4", 2);
+        index.reconcile("kept.mp4");
+        // Temp files never enter the index
+        write(".kept.mp4.9.part", 1);
+        index.reconcile(".kept.mp4.9.part");
+
+        LibraryIndex.Delta delta = index.drainDelta();
+        assertTrue(delta.added.isEmpty());
+        assertTrue(delta.removed.isEmpty());
+        assertEquals(Collections.singletonList("kept.mp4"), names(delta.updated));
+        assertEquals(2, delta.updated.get(0).size);
+        assertFalse(index.hasPendingChanges());
+    }
+
+    @Test
+    public void freshScanIsReusedWhileTheFolderIsUnchanged() throws IOException {
+        write("a.mp4", 1);
+        pinFolderMtime(T0);
+        assertTrue(index.rescanIfStale(T0));
+        assertFalse(index.rescanIfStale(T0 + 1));
+        assertFalse(index.rescanIfStale(T0 + LibraryIndex.SCAN_TTL_MS - 1));
+        assertEquals(1, index.getRescanCount());
+    }
+
+    @Test
+    public void changedFolderMtimeForcesAScan() throws IOException {
+        pinFolderMtime(T0);
+        index.rescanIfStale(T0);
+        index.drainDelta();
+
+        write("b.mp4", 1);
+        pinFolderMtime(T0 + 1000);
+        assertTrue(index.rescanIfStale(T0 + 1));
+        assertEquals(Collections.singletonList("b.mp4"), names(index.drainDelta().added));
+    }
+
+    @Test
+    public void oldScanIsRedoneAfterTheTtl() throws IOException {
+        write("a.mp4", 1);
+        pinFolderMtime(T0);
+        index.rescanIfStale(T0);
+        index.drainDelta();
+
+        // Rewritten in place: same folder mtime, so only the TTL catches it
+        write("a.mp4", 2);
+        pinFolderMtime(T0);
+        assertFalse(index.rescanIfStale(T0 + 100));
+        assertTrue(index.rescanIfStale(T0 + 100 + LibraryIndex.SCAN_TTL_MS));
+        assertEquals(Collections.singletonList("a.mp4"), names(index.drainDelta().updated));
+        // A clock that went backwards doesn't pin the old scan either
+        assertTrue(index.rescanIfStale(T0));
+    }
+
+    @Test
+    public void invalidateForcesTheNextScan() {
+        pinFolderMtime(T0);
+        index.rescanIfStale(T0);
+        index.invalidate();
+        assertTrue(index.rescanIfStale(T0 + 1));
+        assertFalse(index.rescanIfStale(T0 + 2));
+        assertEquals(2, index.getRescanCount());
+    }
+
+    private void write(String name, int size) throws IOException {
+        Files.write(new File(directory, name).toPath(), new byte[size]);
+    }
+
+    private void pinFolderMtime(long millis) {
+        assertTrue(directory.setLastModified(millis));
+    }
+
+    private static List<String> names(List<LibraryIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (LibraryIndex.Entry entry : entries) {
+            names.add(entry.name);
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,158 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Header parser first, the device extractor only for what the parser can't handle. */
+public class MetadataServiceTest {
+    private static final VideoMetadata FROM_RETRIEVER = new VideoMetadata(1234, 320, 240, "mpeg4", 99);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger fallbackCalls = new AtomicInteger();
+    private volatile boolean fallbackFails;
+    private volatile CountDownLatch fallbackGate;
+    private MetadataService service;
+
+    @Before
+    public void setUp() throws IOException {
+        service = new MetadataService(folder.newFile("spred_metadata.tsv"), file -> {
+            fallbackCalls.incrementAndGet();
+            CountDownLatch gate = fallbackGate;
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (fallbackFails) {
+                throw new IOException("retriever: no tracks");
+            }
+            return FROM_RETRIEVER;
+        }, 1);
+    }
+
+    @Test
+    public void parsableFileNeverReachesTheFallback() throws Exception {
+        File file = VideoFixtures.copy("faststart_h264_1080p.mp4", folder.getRoot());
+        VideoMetadata metadata = request(file).metadata;
+
+        assertEquals("h264", metadata.codec);
+        assertEquals(0, fallbackCalls.get());
+        assertEquals(1, service.getExtractions());
+        assertEquals(0, service.getFallbackExtractions());
+        // Served from the cache from now on
+        assertSame(metadata, request(file).metadata);
+        assertEquals(1, service.getCacheHits());
+    }
+
+    @Test
+    public void unsupportedContainerFallsBack() throws Exception {
+        File file = write("clip.avi", "RIFF\0\0\0\0AVI LIST".getBytes("US-ASCII"));
+        assertSame(FROM_RETRIEVER, request(file).metadata);
+        assertEquals(1, service.getFallbackExtractions());
+    }
+
+    @Test
+    public void parserRuntimeExceptionFallsBack() throws Exception {
+        // The parser runs out of buffer mid-id: a BufferUnderflowException, not an IOException
+        File file = write("cut.mkv", VideoFixtures.truncatedMatroskaInfo());
+        Result result = request(file);
+
+        assertSame(FROM_RETRIEVER, result.metadata);
+        assertEquals(1, fallbackCalls.get());
+        assertEquals(0, service.getFailures());
+    }
+
+    @Test
+    public void bothFailingReportsAnError() throws Exception {
+        fallbackFails = true;
+        File file = write("clip.avi", new byte[64]);
+        Result result = request(file);
+
+        assertNull(result.metadata);
+        assertEquals("Metadata extraction failed: retriever: no tracks", result.error);
+        assertEquals(1, service.getFailures());
+        assertNull(service.getCached(file));
+    }
+
+    @Test
+    public void concurrentRequestsShareOneExtraction() throws Exception {
+        File file = write("clip.avi", new byte[64]);
+        // Hold the one extraction open until all three requests are in
+        fallbackGate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        List<VideoMetadata> answers = Collections.synchronizedList(new ArrayList<VideoMetadata>());
+        for (int i = 0; i < 3; i++) {
+            service.request(file, new MetadataService.Callback() {
+                @Override
+                public void onMetadata(VideoMetadata metadata) {
+                    answers.add(metadata);
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(String message) {
+                    done.countDown();
+                }
+            });
+        }
+        fallbackGate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, answers.size());
+        assertEquals(1, fallbackCalls.get());
+        assertEquals(1, service.getExtractions());
+        assertNotNull(service.getCached(file));
+    }
+
+    private static final class Result {
+        VideoMetadata metadata;
+        String error;
+    }
+
+    private Result request(File file) throws InterruptedException {
+        Result result = new Result();
+        CountDownLatch done = new CountDownLatch(1);
+        service.request(file, new MetadataService.Callback() {
+            @Override
+            public void onMetadata(VideoMetadata metadata) {
+                result.metadata = metadata;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                result.error = message;
+                done.countDown();
+            }
+        });
+        assertTrue("no answer", done.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private File write(String name, byte[] bytes) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+}
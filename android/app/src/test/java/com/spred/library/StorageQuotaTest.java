@@ -0,0 +1,169 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** The eviction planner, plus the playback log that feeds it last-used times. */
+public class StorageQuotaTest {
+    private static final long MB = 1024 * 1024;
+    private static final long PLENTY = 64L * 1024 * MB;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fileLargerThanTheCapIsRejectedOutright() {
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 600 * MB, PLENTY, 500 * MB, 0);
+        assertFalse(plan.allowed);
+        assertEquals("FILE_EXCEEDS_QUOTA", plan.rejectCode);
+        assertEquals(100 * MB, plan.bytesToFree);
+        assertTrue(plan.victims.isEmpty());
+    }
+
+    @Test
+    public void roomUnderTheCapEvictsNothing() {
+        // 300 MB used of a 500 MB cap
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 200 * MB, PLENTY, 500 * MB, 0);
+        assertTrue(plan.allowed);
+        assertTrue(plan.victims.isEmpty());
+        assertEquals(0, plan.bytesToFree);
+    }
+
+    @Test
+    public void capEvictsLeastRecentlyUsedFirst() {
+        // Needs 150 MB: the oldest (b, 100 MB) isn't enough, the next oldest (c) makes it
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 350 * MB, PLENTY, 500 * MB, 0);
+        assertTrue(plan.allowed);
+        assertEquals(Arrays.asList("b.mp4", "c.mp4"), names(plan.victims));
+        assertEquals(150 * MB, plan.bytesToFree);
+        assertEquals(200 * MB, plan.bytesFreed);
+    }
+
+    @Test
+    public void reserveEvictsEvenWithoutACap() {
+        // 250 MB free, 200 MB must stay free: a 100 MB file needs 50 MB back
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 100 * MB, 250 * MB, StorageQuota.UNLIMITED,
+            StorageQuota.DEFAULT_RESERVE_BYTES);
+        assertTrue(plan.allowed);
+        assertEquals(Collections.singletonList("b.mp4"), names(plan.victims));
+        assertEquals(50 * MB, plan.bytesToFree);
+    }
+
+    @Test
+    public void largerOfCapAndReserveShortfallWins() {
+        // The cap wants 50 MB, the reserve 250 MB
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 250 * MB, 200 * MB, 500 * MB,
+            StorageQuota.DEFAULT_RESERVE_BYTES);
+        assertTrue(plan.allowed);
+        assertEquals(250 * MB, plan.bytesToFree);
+        assertEquals(Arrays.asList("b.mp4", "c.mp4", "a.mp4"), names(plan.victims));
+    }
+
+    @Test
+    public void keptDeltaBaseIsSkippedByEviction() {
+        // b is the oldest, but the receive is about to read from it, so c and a go instead
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 350 * MB, PLENTY, 500 * MB, 0,
+            Collections.singleton("b.mp4"));
+        assertTrue(plan.allowed);
+        assertEquals(Arrays.asList("c.mp4", "a.mp4"), names(plan.victims));
+
+        // Without b there is only 200 MB to free
+        plan = StorageQuota.plan(library(), 450 * MB, PLENTY, 500 * MB, 0, Collections.singleton("b.mp4"));
+        assertFalse(plan.allowed);
+    }
+
+    @Test
+    public void notEnoughToFreeIsRejected() {
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 400 * MB, 100 * MB, StorageQuota.UNLIMITED,
+            StorageQuota.DEFAULT_RESERVE_BYTES);
+        assertFalse(plan.allowed);
+        assertEquals("INSUFFICIENT_STORAGE", plan.rejectCode);
+        assertEquals(500 * MB, plan.bytesToFree);
+        assertTrue(plan.victims.isEmpty());
+    }
+
+    @Test
+    public void sharedBlobFreesSpaceOnlyWithItsLastName() {
+        List<StorageQuota.Item> items = new ArrayList<>();
+        // Two names for one 200 MB blob; the copy was played recently
+        items.add(new StorageQuota.Item("trip.mp4", 200 * MB, 1000, "blob:1"));
+        items.add(new StorageQuota.Item("trip (1).mp4", 200 * MB, 5000, "blob:1"));
+        items.add(new StorageQuota.Item("other.mp4", 100 * MB, 3000, "blob:2"));
+
+        // Shared content counts once: 300 MB used
+        StorageQuota.Plan roomy = StorageQuota.plan(items, 200 * MB, PLENTY, 500 * MB, 0);
+        assertTrue(roomy.allowed);
+        assertTrue(roomy.victims.isEmpty());
+
+        // Need 50 MB: deleting trip.mp4 alone frees nothing, so other.mp4 goes too
+        StorageQuota.Plan plan = StorageQuota.plan(items, 250 * MB, PLENTY, 500 * MB, 0);
+        assertTrue(plan.allowed);
+        assertEquals(Arrays.asList("trip.mp4", "other.mp4"), names(plan.victims));
+        assertEquals(100 * MB, plan.bytesFreed);
+
+        // Need 250 MB: only the blob's last name releases its 200 MB
+        plan = StorageQuota.plan(items, 450 * MB, PLENTY, 500 * MB, 0);
+        assertTrue(plan.allowed);
+        assertEquals(Arrays.asList("trip.mp4", "other.mp4", "trip (1).mp4"), names(plan.victims));
+        assertEquals(300 * MB, plan.bytesFreed);
+    }
+
+    @Test
+    public void playbackMakesAFileRecentAndSurvivesARestart() throws IOException {
+        File log = new File(folder.getRoot(), "spred_playback.tsv");
+        StorageQuota quota = new StorageQuota(log);
+        assertEquals(1000, quota.lastUsedAt("a.mp4", 1000));
+        quota.markPlayed("a.mp4", 9000);
+        quota.markPlayed("b.mp4", 500);
+        assertEquals(9000, quota.lastUsedAt("a.mp4", 1000));
+        // A file replaced after it was last played counts from its new mtime
+        assertEquals(2000, quota.lastUsedAt("b.mp4", 2000));
+
+        StorageQuota restarted = new StorageQuota(log);
+        assertEquals(9000, restarted.lastUsedAt("a.mp4", 1000));
+        restarted.forget("a.mp4");
+        assertEquals(1000, new StorageQuota(log).lastUsedAt("a.mp4", 1000));
+    }
+
+    @Test
+    public void counters() {
+        StorageQuota quota = new StorageQuota(new File(folder.getRoot(), "spred_playback.tsv"));
+        StorageQuota.Plan plan = StorageQuota.plan(library(), 350 * MB, PLENTY, 500 * MB, 0);
+        quota.recordPreflight(plan, plan.victims, plan.bytesFreed);
+        quota.recordPreflight(StorageQuota.plan(library(), 600 * MB, PLENTY, 500 * MB, 0),
+            Collections.<StorageQuota.Item>emptyList(), 0);
+        assertEquals(2, quota.getPreflights());
+        assertEquals(1, quota.getRejections());
+        assertEquals(2, quota.getEvictions());
+        assertEquals(200 * MB, quota.getEvictedBytes());
+    }
+
+    /** 300 MB in three files; b was used longest ago, then c, then a. */
+    private static List<StorageQuota.Item> library() {
+        List<StorageQuota.Item> items = new ArrayList<>();
+        items.add(new StorageQuota.Item("a.mp4", 100 * MB, 3000, "path:a"));
+        items.add(new StorageQuota.Item("b.mp4", 100 * MB, 1000, "path:b"));
+        items.add(new StorageQuota.Item("c.mp4", 100 * MB, 2000, "path:c"));
+        return items;
+    }
+
+    private static List<String> names(List<StorageQuota.Item> items) {
+        List<String> names = new ArrayList<>();
+        for (StorageQuota.Item item : items) {
+            names.add(item.name);
+        }
+        return names;
+    }
+}
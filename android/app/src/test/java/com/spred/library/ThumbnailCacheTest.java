@@ -0,0 +1,122 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Both tiers of the thumbnail cache: byte-bounded memory LRU, and the disk tier trimmed oldest-access-first. */
+public class ThumbnailCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File disk;
+
+    @Before
+    public void setUp() throws IOException {
+        disk = folder.newFolder("spred_thumbnails");
+    }
+
+    @Test
+    public void memoryTierEvictsTheLeastRecentlyUsed() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(disk, 300, 1 << 20);
+        cache.put("a", jpeg(100, 1));
+        cache.put("b", jpeg(100, 2));
+        cache.put("c", jpeg(100, 3));
+        assertNotNull(cache.getFromMemory("a"));
+        cache.put("d", jpeg(100, 4));
+
+        assertNull(cache.getFromMemory("b"));
+        assertNotNull(cache.getFromMemory("a"));
+        assertNotNull(cache.getFromMemory("c"));
+        assertNotNull(cache.getFromMemory("d"));
+        assertEquals(1, cache.getMemoryEvictions());
+        assertEquals(300, cache.getMemoryBytes());
+        assertEquals(3, cache.getMemoryEntries());
+        // Still on disk, so a full get() brings it back
+        assertArrayEquals(jpeg(100, 2), cache.get("b"));
+        assertEquals(1, cache.getDiskHits());
+    }
+
+    @Test
+    public void oversizedThumbnailSkipsMemoryButIsKeptOnDisk() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(disk, 100, 1 << 20);
+        cache.put("big", jpeg(101, 1));
+        assertNull(cache.getFromMemory("big"));
+        assertEquals(0, cache.getMemoryBytes());
+        assertEquals(101, cache.getDiskBytes());
+        assertArrayEquals(jpeg(101, 1), cache.get("big"));
+    }
+
+    @Test
+    public void diskHitSurvivesARestartAndIsPromoted() throws IOException {
+        new ThumbnailCache(disk, 1 << 20, 1 << 20).put("k", jpeg(64, 9));
+
+        ThumbnailCache restarted = new ThumbnailCache(disk, 1 << 20, 1 << 20);
+        assertNull(restarted.getFromMemory("k"));
+        assertArrayEquals(jpeg(64, 9), restarted.get("k"));
+        assertArrayEquals(jpeg(64, 9), restarted.get("k"));
+        assertNull(restarted.get("missing"));
+
+        assertEquals(1, restarted.getDiskHits());
+        assertEquals(1, restarted.getMemoryHits());
+        assertEquals(1, restarted.getMisses());
+        assertEquals(2.0 / 3, restarted.getHitRate(), 1e-9);
+        assertEquals(64, restarted.getDiskBytes());
+    }
+
+    @Test
+    public void diskTierDropsTheOldestAccessedToNinetyPercent() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(disk, 1 << 20, 1000);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            cache.put("k" + i, jpeg(250, i));
+            assertTrue(cache.fileFor("k" + i).setLastModified(now - (10 - i) * 60000L));
+        }
+        assertEquals(1000, cache.getDiskBytes());
+        assertEquals(0, cache.getDiskEvictions());
+
+        // A disk hit on the oldest bumps it, so the next two oldest go instead
+        ThumbnailCache reader = new ThumbnailCache(disk, 1 << 20, 1000);
+        assertNotNull(reader.get("k0"));
+        reader.put("k4", jpeg(250, 4));
+
+        assertTrue(reader.fileFor("k0").isFile());
+        assertFalse(reader.fileFor("k1").exists());
+        assertFalse(reader.fileFor("k2").exists());
+        assertTrue(reader.fileFor("k3").isFile());
+        assertTrue(reader.fileFor("k4").isFile());
+        assertEquals(2, reader.getDiskEvictions());
+        assertEquals(750, reader.getDiskBytes());
+    }
+
+    @Test
+    public void replacingAKeyDoesNotDoubleCount() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(disk, 1000, 1000);
+        cache.put("k", jpeg(200, 1));
+        cache.put("k", jpeg(300, 2));
+        assertEquals(300, cache.getMemoryBytes());
+        assertEquals(300, cache.getDiskBytes());
+        assertArrayEquals(jpeg(300, 2), cache.get("k"));
+        assertEquals(1, disk.list().length);
+    }
+
+    private static byte[] jpeg(int size, int fill) {
+        byte[] bytes = new byte[size];
+        bytes[0] = (byte) 0xFF;
+        for (int i = 1; i < size; i++) {
+            bytes[i] = (byte) fill;
+        }
+        return bytes;
+    }
+}
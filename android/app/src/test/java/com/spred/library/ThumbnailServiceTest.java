@@ -0,0 +1,201 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Decode scheduling with a fake decoder on a single thread: the first
+ * video holds the thread, so everything after it is still queued when the
+ * test re-ranks or repeats requests.
+ */
+public class ThumbnailServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeDecoder decoder;
+    private ThumbnailService service;
+    private File blocker;
+
+    @Before
+    public void setUp() throws Exception {
+        decoder = new FakeDecoder();
+        service = new ThumbnailService(new ThumbnailCache(folder.newFolder("thumbs"), 1 << 20, 1 << 20), decoder, 1);
+        blocker = video("blocker.mp4");
+        service.request(blocker, ThumbnailService.PRIORITY_BACKGROUND, null);
+        assertTrue(decoder.blocking.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        decoder.release.countDown();
+    }
+
+    @Test
+    public void requestsForTheSameVideoShareOneDecode() throws Exception {
+        File clip = video("clip.mp4");
+        Waiter waiter = new Waiter(3);
+        service.request(clip, ThumbnailService.PRIORITY_BACKGROUND, waiter);
+        service.request(clip, ThumbnailService.PRIORITY_BACKGROUND, waiter);
+        service.request(clip, ThumbnailService.PRIORITY_VISIBLE, waiter);
+        decoder.release.countDown();
+        waiter.await();
+
+        assertEquals(Arrays.asList("blocker.mp4", "clip.mp4"), decoder.decoded());
+        assertEquals(3, waiter.thumbnails.size());
+        assertEquals(2, service.getCoalesced());
+        for (byte[] jpeg : waiter.thumbnails) {
+            assertArrayEquals(FakeDecoder.jpegFor(clip), jpeg);
+        }
+
+        // Decoded once; from now on a memory hit answers inline
+        Waiter again = new Waiter(1);
+        service.request(clip, ThumbnailService.PRIORITY_VISIBLE, again);
+        assertEquals(1, again.thumbnails.size());
+        assertEquals(2, decoder.decoded().size());
+    }
+
+    @Test
+    public void visibleRequestJumpsTheBackfillQueue() throws Exception {
+        List<File> backfill = Arrays.asList(video("a.mp4"), video("b.mp4"), video("c.mp4"));
+        Waiter waiter = new Waiter(3);
+        for (File video : backfill) {
+            service.request(video, ThumbnailService.PRIORITY_BACKGROUND, waiter);
+        }
+        // Scrolled to c: the repeat request promotes the queued decode instead of adding one
+        service.request(backfill.get(2), ThumbnailService.PRIORITY_VISIBLE, null);
+        decoder.release.countDown();
+        waiter.await();
+
+        assertEquals(Arrays.asList("blocker.mp4", "c.mp4", "a.mp4", "b.mp4"), decoder.decoded());
+        assertEquals(1, service.getPromotions());
+    }
+
+    @Test
+    public void prioritizeReranksQueuedWork() throws Exception {
+        List<File> backfill = Arrays.asList(video("a.mp4"), video("b.mp4"), video("c.mp4"), video("d.mp4"));
+        Waiter waiter = new Waiter(4);
+        for (File video : backfill) {
+            service.request(video, ThumbnailService.PRIORITY_BACKGROUND, waiter);
+        }
+        service.prioritize(Arrays.asList(backfill.get(3).getAbsolutePath(), backfill.get(1).getAbsolutePath(),
+            blocker.getAbsolutePath(), "/not/queued.mp4"));
+        decoder.release.countDown();
+        waiter.await();
+
+        // Promoted ones keep their original order among themselves
+        assertEquals(Arrays.asList("blocker.mp4", "b.mp4", "d.mp4", "a.mp4", "c.mp4"), decoder.decoded());
+        assertEquals(2, service.getPromotions());
+    }
+
+    @Test
+    public void failedDecodeReachesEveryWaiter() throws Exception {
+        File broken = video("broken.mp4");
+        Waiter waiter = new Waiter(2);
+        service.request(broken, ThumbnailService.PRIORITY_BACKGROUND, waiter);
+        service.request(broken, ThumbnailService.PRIORITY_BACKGROUND, waiter);
+        decoder.release.countDown();
+        waiter.await();
+
+        assertEquals(Arrays.asList("Thumbnail decode failed: no frames", "Thumbnail decode failed: no frames"),
+            waiter.errors);
+        assertEquals(1, service.getFailures());
+        assertNull(service.getCache().getFromMemory(ThumbnailService.keyFor(broken)));
+    }
+
+    @Test
+    public void keyFollowsTheFileNotItsFolder() throws Exception {
+        File clip = video("clip.mp4");
+        File moved = new File(folder.newFolder("moved"), "clip.mp4");
+        Files.copy(clip.toPath(), moved.toPath());
+        assertTrue(moved.setLastModified(clip.lastModified()));
+        assertEquals(ThumbnailService.keyFor(clip), ThumbnailService.keyFor(moved));
+
+        Files.write(moved.toPath(), "re-encoded".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(ThumbnailService.keyFor(clip), ThumbnailService.keyFor(moved));
+    }
+
+    private File video(String name) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), name.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static final class FakeDecoder implements ThumbnailService.FrameDecoder {
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> decoded = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public byte[] decodeThumbnail(File video, int maxSizePx) throws IOException {
+            decoded.add(video.getName());
+            if (video.getName().equals("blocker.mp4")) {
+                blocking.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (video.getName().startsWith("broken")) {
+                throw new IOException("no frames");
+            }
+            return jpegFor(video);
+        }
+
+        List<String> decoded() {
+            synchronized (decoded) {
+                return new ArrayList<>(decoded);
+            }
+        }
+
+        static byte[] jpegFor(File video) {
+            return ("jpeg:" + video.getName()).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Waiter implements ThumbnailService.Callback {
+        final List<byte[]> thumbnails = Collections.synchronizedList(new ArrayList<byte[]>());
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch done;
+
+        Waiter(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onThumbnail(String key, byte[] jpeg, File cachedFile) {
+            thumbnails.add(jpeg);
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String message) {
+            errors.add(message);
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("callbacks never arrived", done.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
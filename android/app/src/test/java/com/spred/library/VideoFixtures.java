@@ -0,0 +1,52 @@
+package com.spred.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The container fixtures in src/test/resources/video. Each is a minimal,
+ * well-formed file holding only what the header parsers read:
+ *
+ * - faststart_h264_1080p.mp4: ftyp, moov (mvhd v0 12.5 s, one avc1 track
+ *   1920x1080), then mdat.
+ * - camera_hevc_4k_moov_last.mp4: ftyp, a 64-bit-size mdat, then moov
+ *   with v1 mvhd/tkhd (61 s at 90 kHz), a sound track first and an hvc1
+ *   track whose tkhd size is 0, so 3840x2160 comes from stsd.
+ * - webm_vp9_720p.webm: EBML, Segment with Info (1 ms scale, float
+ *   Duration 8000), Tracks (Opus, then VP9 1280x720), a Cluster.
+ * - recorder_h264_unknown_size.mkv: unknown-size Segment, Tracks (AVC
+ *   640x480) before Info (0.1 ms scale, double Duration 245000).
+ */
+final class VideoFixtures {
+
+    private VideoFixtures() {
+    }
+
+    /** Copy fixture {@code name} into {@code directory}; the parsers want a real File. */
+    static File copy(String name, File directory) throws IOException {
+        File file = new File(directory, name);
+        try (InputStream in = VideoFixtures.class.getResourceAsStream("/video/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + name);
+            }
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /** EBML header, then a Segment whose Info holds only the first byte of a three-byte id. */
+    static byte[] truncatedMatroskaInfo() {
+        return bytes(0x1A, 0x45, 0xDF, 0xA3, 0x80, 0x18, 0x53, 0x80, 0x67, 0x84, 0x15, 0x49, 0xA9, 0x66, 0x81, 0x2A);
+    }
+}
@@ -0,0 +1,146 @@
+package com.spred.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Container parsing against the VideoFixtures, plus truncated and bit-flipped copies of them. */
+public class VideoHeaderParserTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fastStartMp4() throws IOException {
+        File file = fixture("faststart_h264_1080p.mp4");
+        assertMetadata(VideoHeaderParser.parse(file), 12500, 1920, 1080, "h264", file.length());
+    }
+
+    @Test
+    public void mp4WithMoovAfterA64BitMdat() throws IOException {
+        // Version-1 mvhd/tkhd, a sound track ahead of the video one, and a tkhd that leaves the size to stsd
+        File file = fixture("camera_hevc_4k_moov_last.mp4");
+        assertMetadata(VideoHeaderParser.parse(file), 61000, 3840, 2160, "hevc", file.length());
+    }
+
+    @Test
+    public void webm() throws IOException {
+        File file = fixture("webm_vp9_720p.webm");
+        assertMetadata(VideoHeaderParser.parse(file), 8000, 1280, 720, "vp9", file.length());
+    }
+
+    @Test
+    public void matroskaWithUnknownSegmentSizeAndTracksFirst() throws IOException {
+        File file = fixture("recorder_h264_unknown_size.mkv");
+        assertMetadata(VideoHeaderParser.parse(file), 24500, 640, 480, "h264", file.length());
+    }
+
+    @Test
+    public void unknownContainerIsAnIOException() throws IOException {
+        expectIOException(write("clip.avi", "RIFF\0\0\0\0AVI LIST".getBytes("US-ASCII")));
+        expectIOException(write("empty.mp4", new byte[0]));
+    }
+
+    @Test
+    public void mp4WithoutAVideoTrackIsRejected() throws IOException {
+        byte[] bytes = read("camera_hevc_4k_moov_last.mp4");
+        // Rename the video track's handler so only 'soun' tracks remain
+        int vide = indexOf(bytes, "vide".getBytes("US-ASCII"));
+        bytes[vide] = 't';
+        bytes[vide + 1] = 'e';
+        bytes[vide + 2] = 'x';
+        bytes[vide + 3] = 't';
+        expectIOException(write("audio.mp4", bytes));
+    }
+
+    @Test
+    public void truncatedMatroskaInfoCanThrowARuntimeException() throws IOException {
+        // Info whose only child is the first byte of a three-byte id: the buffer runs out mid-id
+        File file = write("cut.mkv", VideoFixtures.truncatedMatroskaInfo());
+        try {
+            VideoHeaderParser.parse(file);
+            fail("Expected a failure");
+        } catch (RuntimeException expected) {
+            // MetadataService has to treat this like an IOException and fall back
+        }
+    }
+
+    @Test
+    public void damagedFixturesFailCleanly() throws IOException {
+        String[] names = {"faststart_h264_1080p.mp4", "camera_hevc_4k_moov_last.mp4", "webm_vp9_720p.webm",
+            "recorder_h264_unknown_size.mkv"};
+        Random random = new Random(7);
+        for (String name : names) {
+            byte[] original = read(name);
+            for (int length = 0; length < original.length; length++) {
+                parseOrFail(write("cut-" + length + "-" + name, Arrays.copyOf(original, length)));
+            }
+            for (int i = 0; i < 300; i++) {
+                byte[] damaged = original.clone();
+                damaged[random.nextInt(damaged.length)] ^= (byte) (1 << random.nextInt(8));
+                parseOrFail(write("flip-" + i + "-" + name, damaged));
+            }
+        }
+    }
+
+    /** Any answer, IOException or RuntimeException is fine; an Error (OOM, stack overflow) is not. */
+    private static void parseOrFail(File file) {
+        try {
+            VideoHeaderParser.parse(file);
+        } catch (IOException | RuntimeException expected) {
+            // What MetadataService catches
+        }
+        assertTrue(file.delete());
+    }
+
+    private static void expectIOException(File file) {
+        try {
+            VideoHeaderParser.parse(file);
+            fail("Expected IOException for " + file.getName());
+        } catch (IOException expected) {
+            // Unsupported or unusable container
+        }
+    }
+
+    private static void assertMetadata(VideoMetadata metadata, long durationMs, int width, int height, String codec,
+                                       long fileSize) {
+        assertEquals(durationMs, metadata.durationMs);
+        assertEquals(width, metadata.width);
+        assertEquals(height, metadata.height);
+        assertEquals(codec, metadata.codec);
+        assertEquals(VideoMetadata.averageBitrate(fileSize, durationMs), metadata.bitrate);
+    }
+
+    private File fixture(String name) throws IOException {
+        return VideoFixtures.copy(name, folder.getRoot());
+    }
+
+    private byte[] read(String name) throws IOException {
+        return Files.readAllBytes(fixture(name).toPath());
+    }
+
+    private File write(String name, byte[] bytes) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        int found = -1;
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(haystack, i, i + needle.length), needle)) {
+                found = i;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,76 @@
+package com.spred.wifidirect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/** The QR codec round-trips, rejects anything WifiP2pConfig.Builder would, and gates senders on the token. */
+public class FastPairPayloadTest {
+    private static final String TOKEN = "q8Zr3vN0tL2xYw5a";
+
+    @Test
+    public void roundTripsThroughTheUri() {
+        FastPairPayload payload = new FastPairPayload(1, "DIRECT-ab-Spred Pixel", "pass&word=1%", "192.168.49.1", 8989, TOKEN);
+        String encoded = payload.encode();
+        assertTrue(encoded.startsWith(FastPairPayload.SCHEME_PREFIX));
+
+        FastPairPayload decoded = FastPairPayload.decode(encoded);
+        assertEquals(1, decoded.protocolVersion);
+        assertEquals("DIRECT-ab-Spred Pixel", decoded.networkName);
+        assertEquals("pass&word=1%", decoded.passphrase);
+        assertEquals("192.168.49.1", decoded.groupOwnerIp);
+        assertEquals(8989, decoded.port);
+        assertEquals(TOKEN, decoded.sessionToken);
+    }
+
+    @Test
+    public void rejectsMalformedCodes() {
+        String valid = "n=DIRECT-ab&p=passphrase&ip=192.168.49.1&port=8989&t=" + TOKEN;
+        assertRejected(null);
+        assertRejected("https://example.com/?v=1&" + valid);
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=2&" + valid);
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=x&" + valid);
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=1&" + valid + "&junk");
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=1&" + valid.replace("DIRECT-ab", "MyWifi"));
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=1&" + valid.replace("passphrase", "short"));
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=1&" + valid.replace("192.168.49.1", "0.0.0.0"));
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=1&" + valid.replace("8989", "70000"));
+        assertRejected(FastPairPayload.SCHEME_PREFIX + "v=1&" + valid.replace("&t=" + TOKEN, ""));
+    }
+
+    @Test
+    public void showingACodeRequiresItsToken() {
+        assertTrue(FastPairPayload.acceptsSender(TOKEN, TOKEN));
+        assertFalse(FastPairPayload.acceptsSender(TOKEN, null));
+        assertFalse(FastPairPayload.acceptsSender(TOKEN, ""));
+        assertFalse(FastPairPayload.acceptsSender(TOKEN, TOKEN + "x"));
+        assertFalse(FastPairPayload.acceptsSender(TOKEN, "Q8Zr3vN0tL2xYw5a"));
+    }
+
+    @Test
+    public void withoutACodeOnlyTokenlessSendersGetIn() {
+        assertTrue(FastPairPayload.acceptsSender(null, null));
+        assertFalse(FastPairPayload.acceptsSender(null, TOKEN));
+    }
+
+    @Test
+    public void shownCodeLapsesAfterItsLifetime() {
+        long shownAt = 1700000000000L;
+        assertEquals(TOKEN, FastPairPayload.liveToken(TOKEN, shownAt, shownAt));
+        assertEquals(TOKEN, FastPairPayload.liveToken(TOKEN, shownAt, shownAt + FastPairPayload.CODE_TTL_MS - 1));
+        assertEquals(null, FastPairPayload.liveToken(TOKEN, shownAt, shownAt + FastPairPayload.CODE_TTL_MS));
+        assertEquals(null, FastPairPayload.liveToken(null, shownAt, shownAt));
+    }
+
+    private static void assertRejected(String text) {
+        try {
+            FastPairPayload.decode(text);
+            fail("Accepted " + text);
+        } catch (IllegalArgumentException expected) {
+            // Scanning shows the message and keeps the camera open
+        }
+    }
+}
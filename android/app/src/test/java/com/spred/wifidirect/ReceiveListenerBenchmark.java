@@ -0,0 +1,91 @@
+package com.spred.wifidirect;
+
+import static org.junit.Assert.assertTrue;
+
+import com.spred.BenchTiming;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Start-to-ready of the receive endpoint over loopback: from the moment the
+ * receiver is asked to receive until a sender's connect has been handed to
+ * the session handler.
+ *
+ * "cold" binds the listener on request, as receiveFile used to once its
+ * group was up; "prewarmed" finds it already bound at init. The radio steps
+ * the old path waited on first (removeGroup, createGroup and a fixed 3 s
+ * sleep) can't run on the JVM; on a device, getReceiverStats reports
+ * receiveReadyLatencyMs for the whole tap-to-ready path.
+ */
+public class ReceiveListenerBenchmark {
+    private static final int WARMUPS = 20;
+    private static final int RUNS = 200;
+
+    private final Semaphore handed = new Semaphore(0);
+    private int port;
+    private ReceiveListener listener;
+
+    @Before
+    public void setUp() throws IOException {
+        BenchTiming.assumeEnabled();
+        newListener();
+    }
+
+    @After
+    public void tearDown() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    public void coldBindThenFirstSender() throws Exception {
+        BenchTiming.time("ReceiveListener cold start-to-first-sender", WARMUPS, RUNS,
+            run -> {
+                // A fresh port each run: a just-closed listener can hold its port until the accept thread exits
+                listener.stop();
+                newListener();
+            }, () -> {
+                assertTrue(listener.start());
+                connectAndAwaitHandOff();
+            });
+    }
+
+    @Test
+    public void prewarmedFirstSender() throws Exception {
+        assertTrue(listener.start());
+        BenchTiming.time("ReceiveListener prewarmed start-to-first-sender", WARMUPS, RUNS, () -> {
+            assertTrue(listener.start());
+            connectAndAwaitHandOff();
+        });
+    }
+
+    private void newListener() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        listener = new ReceiveListener(port, socket -> {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Only the hand-off is timed
+            }
+            handed.release();
+        });
+    }
+
+    private void connectAndAwaitHandOff() throws Exception {
+        try (Socket sender = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            assertTrue(handed.tryAcquire(5, TimeUnit.SECONDS));
+        }
+    }
+}
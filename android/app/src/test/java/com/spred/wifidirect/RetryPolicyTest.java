@@ -0,0 +1,236 @@
+package com.spred.wifidirect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** The real policies run against a virtual clock: no sleeps, every delay and give-up checked to the millisecond. */
+public class RetryPolicyTest {
+
+    @Test
+    public void groupCreationBacksOffExponentiallyUpToTheCap() {
+        RetryPolicy policy = RetryPolicy.GROUP_CREATION;
+        assertEquals(500, policy.delayBeforeAttempt(2, 0));
+        assertEquals(1000, policy.delayBeforeAttempt(3, 0));
+        assertEquals(2000, policy.delayBeforeAttempt(4, 0));
+        assertEquals(4000, policy.delayBeforeAttempt(5, 0));
+        assertEquals(4000, policy.delayBeforeAttempt(6, 0));
+        // Jitter only ever shortens the wait, by at most half
+        assertEquals(250, policy.delayBeforeAttempt(2, 0.999999));
+        assertEquals(3000, policy.delayBeforeAttempt(6, 0.5));
+    }
+
+    @Test
+    public void groupOwnerAddressPollsQuicklyAtFirst() {
+        RetryPolicy policy = RetryPolicy.GROUP_OWNER_ADDRESS;
+        assertEquals(150, policy.delayBeforeAttempt(2, 0));
+        assertEquals(225, policy.delayBeforeAttempt(3, 0));
+        assertEquals(338, policy.delayBeforeAttempt(4, 0));
+        assertEquals(1500, policy.delayBeforeAttempt(12, 0));
+        assertEquals(105, policy.delayBeforeAttempt(2, 0.999999));
+    }
+
+    @Test
+    public void reasonsAndAddressesAreClassified() {
+        assertTrue(RetryPolicy.isRetryableReason(RetryPolicy.REASON_BUSY));
+        assertTrue(RetryPolicy.isRetryableReason(RetryPolicy.REASON_ERROR));
+        assertFalse(RetryPolicy.isRetryableReason(RetryPolicy.REASON_P2P_UNSUPPORTED));
+        assertTrue(RetryPolicy.isUnassignedAddress(null));
+        assertTrue(RetryPolicy.isUnassignedAddress(""));
+        assertTrue(RetryPolicy.isUnassignedAddress("0.0.0.0"));
+        assertFalse(RetryPolicy.isUnassignedAddress("192.168.49.1"));
+    }
+
+    @Test
+    public void busyGroupCreationSucceedsOnceTheFrameworkFreesUp() {
+        VirtualClock clock = new VirtualClock();
+        Outcome outcome = new Outcome();
+        List<Long> attemptsAt = new ArrayList<>();
+
+        // createGroup answers BUSY three times, then onSuccess, each 20 ms after the call
+        RetryPolicy.GROUP_CREATION.execute(clock, new FixedRandom(0), (attempt, result) -> {
+            attemptsAt.add(clock.nowMs());
+            clock.schedule(() -> {
+                if (attempt <= 3) {
+                    fail(result, RetryPolicy.REASON_BUSY);
+                } else {
+                    result.success();
+                }
+            }, 20);
+        }, outcome);
+        clock.runUntilIdle();
+
+        assertEquals("success after 4", outcome.summary);
+        assertEquals(Arrays.asList(0L, 520L, 1540L, 3560L), attemptsAt);
+    }
+
+    @Test
+    public void groupCreationGivesUpAfterMaxAttempts() {
+        VirtualClock clock = new VirtualClock();
+        Outcome outcome = new Outcome();
+        RetryPolicy.GROUP_CREATION.execute(clock, new FixedRandom(0),
+            (attempt, result) -> fail(result, RetryPolicy.REASON_BUSY), outcome);
+        clock.runUntilIdle();
+
+        assertEquals("gave up after 6: BUSY (after 6 attempts)", outcome.summary);
+        assertEquals(500 + 1000 + 2000 + 4000 + 4000, clock.nowMs());
+    }
+
+    @Test
+    public void unsupportedGivesUpWithoutRetrying() {
+        VirtualClock clock = new VirtualClock();
+        Outcome outcome = new Outcome();
+        RetryPolicy.GROUP_CREATION.execute(clock, new FixedRandom(0),
+            (attempt, result) -> fail(result, RetryPolicy.REASON_P2P_UNSUPPORTED), outcome);
+        clock.runUntilIdle();
+
+        assertEquals("gave up after 1: P2P_UNSUPPORTED", outcome.summary);
+        assertEquals(0, clock.nowMs());
+    }
+
+    @Test
+    public void groupOwnerAddressStopsAtTheDeadline() {
+        VirtualClock clock = new VirtualClock();
+        Outcome outcome = new Outcome();
+        // requestConnectionInfo takes a second to answer and the address never gets assigned
+        RetryPolicy.GROUP_OWNER_ADDRESS.execute(clock, new FixedRandom(0), (attempt, result) ->
+            clock.schedule(() -> result.retry("GO address not assigned"), 1000), outcome);
+        clock.runUntilIdle();
+
+        // Attempt 8 starts at 11617 (seven 1 s answers plus 150..1500 of backoff) and answers at 12617; another 1500 would overrun
+        assertEquals("gave up after 8: GO address not assigned (deadline 12000 ms exceeded)", outcome.summary);
+        assertEquals(12617, clock.nowMs());
+    }
+
+    @Test
+    public void groupOwnerAddressArrivesOnALaterPoll() {
+        VirtualClock clock = new VirtualClock();
+        Outcome outcome = new Outcome();
+        String[] addresses = {null, "0.0.0.0", "0.0.0.0", "192.168.49.1"};
+        RetryPolicy.GROUP_OWNER_ADDRESS.execute(clock, new FixedRandom(0), (attempt, result) -> {
+            if (RetryPolicy.isUnassignedAddress(addresses[attempt - 1])) {
+                result.retry("GO address not assigned");
+            } else {
+                result.success();
+            }
+        }, outcome);
+        clock.runUntilIdle();
+
+        assertEquals("success after 4", outcome.summary);
+        assertEquals(150 + 225 + 338, clock.nowMs());
+    }
+
+    @Test
+    public void onlyTheFirstReportOfAnAttemptCounts() {
+        VirtualClock clock = new VirtualClock();
+        Outcome outcome = new Outcome();
+        RetryPolicy.GROUP_INFO.execute(clock, new FixedRandom(0), (attempt, result) -> {
+            result.success();
+            result.retry("late failure callback");
+            result.fail("late failure callback");
+        }, outcome);
+        clock.runUntilIdle();
+
+        assertEquals("success after 1", outcome.summary);
+        assertEquals(1, outcome.calls);
+    }
+
+    @Test
+    public void attemptThatThrowsGivesUp() {
+        VirtualClock clock = new VirtualClock();
+        Outcome outcome = new Outcome();
+        RetryPolicy.GROUP_INFO.execute(clock, new FixedRandom(0), (attempt, result) -> {
+            if (attempt == 2) {
+                throw new IllegalStateException("channel closed");
+            }
+            result.retry("no passphrase yet");
+        }, outcome);
+        clock.runUntilIdle();
+
+        assertEquals("gave up after 2: Attempt threw: channel closed", outcome.summary);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPolicyIsRejected() {
+        new RetryPolicy(0, 100, 2.0, 1000, 0.5, 5000);
+    }
+
+    /** What WifiDirectModule does with a WifiP2pManager failure reason. */
+    private static void fail(RetryPolicy.Result result, int reason) {
+        String name = reason == RetryPolicy.REASON_BUSY ? "BUSY"
+            : reason == RetryPolicy.REASON_P2P_UNSUPPORTED ? "P2P_UNSUPPORTED" : "ERROR";
+        if (RetryPolicy.isRetryableReason(reason)) {
+            result.retry(name);
+        } else {
+            result.fail(name);
+        }
+    }
+
+    private static final class Outcome implements RetryPolicy.Callback {
+        String summary;
+        int calls;
+
+        @Override
+        public void onSuccess(int attempts) {
+            calls++;
+            summary = "success after " + attempts;
+        }
+
+        @Override
+        public void onGiveUp(String reason, int attempts) {
+            calls++;
+            summary = "gave up after " + attempts + ": " + reason;
+        }
+    }
+
+    /** Tasks run in due order on the test thread; time only moves when the next one is due. */
+    private static final class VirtualClock implements RetryPolicy.Scheduler {
+        private final PriorityQueue<long[]> due = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]) != 0
+            ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now;
+
+        @Override
+        public long nowMs() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            assertTrue("negative delay " + delayMs, delayMs >= 0);
+            tasks.add(task);
+            due.add(new long[] {now + delayMs, tasks.size() - 1});
+        }
+
+        void runUntilIdle() {
+            for (int steps = 0; !due.isEmpty(); steps++) {
+                assertTrue("runaway retry loop", steps < 1000);
+                long[] next = due.poll();
+                now = next[0];
+                tasks.get((int) next[1]).run();
+            }
+        }
+    }
+
+    /** Pins the jitter draw so delays are exact. */
+    private static final class FixedRandom extends Random {
+        private final double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+}
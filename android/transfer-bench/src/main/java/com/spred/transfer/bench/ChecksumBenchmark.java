@@ -0,0 +1,74 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.TransferPipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ChecksumBenchmark - What a checksum adds to TransferPipeline.send, in
+ * memory so the checksum is the only variable.
+ *
+ * crc32 is the trailer the protocol negotiates today. adler32 is the
+ * usual "cheaper" alternative; on JVMs with a CRC32 intrinsic it isn't,
+ * so check both on the device class in question before switching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({"none", "crc32", "adler32"})
+    public String checksum;
+
+    @Param({"64"})
+    public int sizeMb;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = new byte[sizeMb * 1024 * 1024];
+        new Random(42).nextBytes(data);
+    }
+
+    @Benchmark
+    public long send() throws IOException {
+        Checksum sum = checksumFor(checksum);
+        TransferPipeline.send(new ByteArrayInputStream(data), data.length, new ProgressBenchmark.DiscardSink(), sum, null);
+        return sum != null ? sum.getValue() : 0;
+    }
+
+    static Checksum checksumFor(String name) {
+        switch (name) {
+            case "none":
+                return null;
+            case "crc32":
+                return new CRC32();
+            case "adler32":
+                return new Adler32();
+            default:
+                throw new IllegalArgumentException("Unknown checksum " + name);
+        }
+    }
+}
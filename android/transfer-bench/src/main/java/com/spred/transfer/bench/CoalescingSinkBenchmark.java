@@ -0,0 +1,163 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.CoalescingSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CoalescingSinkBenchmark - Socket reads to file writes over loopback,
+ * counting the write syscalls each receive path makes.
+ *
+ * The sender writes sendBytes at a time with TCP_NODELAY, so the receiver
+ * reads whatever has arrived, as on Wi-Fi Direct. "direct" is the old
+ * path: one positional write per 8 KB socket read. "coalescing" reads
+ * 64 KB at a time into a CoalescingSink. Besides ms/op, the counters
+ * report socketReads, writeCalls and megabytes for the iteration, so
+ * syscalls per GB is writeCalls * 1024 / megabytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoalescingSinkBenchmark {
+
+    @Param({"direct", "coalescing"})
+    public String sink;
+
+    @Param({"1460", "65536"})
+    public int sendBytes;
+
+    @Param({"64"})
+    public int sizeMb;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Syscalls {
+        public long socketReads;
+        public long writeCalls;
+        public long megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            socketReads = 0;
+            writeCalls = 0;
+            megabytes = 0;
+        }
+    }
+
+    private long size;
+    private byte[] data;
+    private ServerSocket serverSocket;
+    private Socket sender;
+    private Socket receiver;
+    private ExecutorService executor;
+    private File target;
+    private RandomAccessFile file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        size = sizeMb * 1024L * 1024L;
+        data = new byte[sendBytes];
+        new Random(42).nextBytes(data);
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        sender = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        sender.setTcpNoDelay(true);
+        receiver = serverSocket.accept();
+        executor = Executors.newSingleThreadExecutor();
+        target = File.createTempFile("spred-bench-sink-", ".bin");
+        target.deleteOnExit();
+        file = new RandomAccessFile(target, "rw");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        sender.close();
+        receiver.close();
+        serverSocket.close();
+        file.close();
+        target.delete();
+    }
+
+    @Benchmark
+    public long receive(Syscalls syscalls) throws IOException, InterruptedException, ExecutionException {
+        Future<?> sending = executor.submit(() -> {
+            OutputStream out = sender.getOutputStream();
+            for (long sent = 0; sent < size; sent += sendBytes) {
+                out.write(data, 0, (int) Math.min(sendBytes, size - sent));
+            }
+            out.flush();
+            return null;
+        });
+        InputStream in = receiver.getInputStream();
+        FileChannel channel = file.getChannel();
+        long received;
+        if ("coalescing".equals(sink)) {
+            CoalescingSink coalescing = new CoalescingSink(channel, 0);
+            byte[] buffer = new byte[64 * 1024];
+            received = 0;
+            while (received < size) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, size - received));
+                if (n < 0) {
+                    throw new IOException("Sender closed early");
+                }
+                syscalls.socketReads++;
+                coalescing.write(buffer, 0, n);
+                received += n;
+            }
+            coalescing.flush();
+            syscalls.writeCalls += coalescing.getWriteCalls();
+        } else {
+            byte[] buffer = new byte[8192];
+            received = 0;
+            while (received < size) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, size - received));
+                if (n < 0) {
+                    throw new IOException("Sender closed early");
+                }
+                syscalls.socketReads++;
+                ByteBuffer read = ByteBuffer.wrap(buffer, 0, n);
+                while (read.hasRemaining()) {
+                    syscalls.writeCalls++;
+                    channel.write(read, received + read.position());
+                }
+                received += n;
+            }
+        }
+        sending.get();
+        syscalls.megabytes += sizeMb;
+        return received;
+    }
+}
@@ -0,0 +1,174 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.TransferCompression;
+import com.spred.transfer.TransferPipeline;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CompressionBenchmark - Adaptive compression against a plain body, per
+ * kind of payload.
+ *
+ * "video" is incompressible, like the MP4s that make up most transfers:
+ * adaptive must cost no more than the sampling, since nothing should be
+ * deflated. "subtitles" is SRT-style text (about 27% of its size once
+ * deflated) and "rawVideo" is flat-shaded uncompressed frames with sensor
+ * noise (about 45%); both should come out ahead wherever the link, not
+ * deflate, is the limit. Time per op is one whole file, including the
+ * entropy sampling, acked by the receiver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"video", "subtitles", "rawVideo"})
+    public String payload;
+
+    @Param({"plain", "adaptive"})
+    public String mode;
+
+    @Param({"loopback", "wifiDirect", "busyWifiDirect"})
+    public String link;
+
+    @Param({"32"})
+    public int sizeMb;
+
+    private File source;
+    private long size;
+    private boolean compress;
+    private LoopbackReceiver receiver;
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        size = sizeMb * 1024L * 1024L;
+        source = writePayload(payload, size);
+        // The receiver has to know up front; the benchmark still samples on every op, as the sender does
+        compress = "adaptive".equals(mode) && TransferCompression.isWorthCompressing(source);
+        receiver = new LoopbackReceiver(compress ? LoopbackReceiver.COMPRESSED : LoopbackReceiver.PIPELINE, link);
+        socket = new Socket(receiver.getAddress().getAddress(), receiver.getAddress().getPort());
+        out = socket.getOutputStream();
+        in = socket.getInputStream();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        socket.close();
+        receiver.close();
+        source.delete();
+    }
+
+    @Benchmark
+    public void transferFile() throws IOException {
+        if ("adaptive".equals(mode) && TransferCompression.isWorthCompressing(source) != compress) {
+            throw new IllegalStateException("Sampling changed its mind about " + payload);
+        }
+        if (!compress) {
+            LoopbackReceiver.transfer(out, in, size, () -> {
+                try (FileInputStream fileInputStream = new FileInputStream(source)) {
+                    TransferPipeline.send(fileInputStream, size, out, null, null);
+                }
+            });
+            return;
+        }
+        try (TransferCompression.Encoder encoder = new TransferCompression.Encoder(out)) {
+            LoopbackReceiver.transfer(out, in, size, () -> {
+                try (FileInputStream fileInputStream = new FileInputStream(source)) {
+                    TransferPipeline.send(fileInputStream, size, encoder, null, null);
+                }
+            });
+        }
+    }
+
+    static File writePayload(String payload, long size) throws IOException {
+        if ("video".equals(payload)) {
+            return TransferLoopBenchmark.writeSource(size);
+        }
+        byte[] chunk;
+        if ("subtitles".equals(payload)) {
+            chunk = subtitles(1024 * 1024);
+        } else if ("rawVideo".equals(payload)) {
+            chunk = rawFrames(1024 * 1024);
+        } else {
+            throw new IllegalArgumentException("Unknown payload " + payload);
+        }
+        File file = File.createTempFile("spred-bench-" + payload + "-", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile target = new RandomAccessFile(file, "rw")) {
+            for (long written = 0; written < size; written += chunk.length) {
+                target.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    /** Numbered, timestamped cues with words from a small vocabulary. */
+    private static byte[] subtitles(int size) {
+        String[] words = {"the", "camera", "pans", "across", "a", "crowded", "market", "while", "music", "plays",
+            "she", "turns", "and", "smiles", "[laughter]", "we", "never", "left", "this", "town"};
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(size + 256);
+        for (int cue = 1; text.length() < size; cue++) {
+            int seconds = cue * 3;
+            text.append(cue).append('\n')
+                .append(String.format(Locale.US, "%02d:%02d:%02d,000 --> %02d:%02d:%02d,500\n",
+                    seconds / 3600, seconds / 60 % 60, seconds % 60,
+                    (seconds + 2) / 3600, (seconds + 2) / 60 % 60, (seconds + 2) % 60));
+            for (int i = 5 + random.nextInt(8); i > 0; i--) {
+                text.append(words[random.nextInt(words.length)]).append(i > 1 ? ' ' : '\n');
+            }
+            text.append('\n');
+        }
+        byte[] bytes = new byte[size];
+        System.arraycopy(text.toString().getBytes(StandardCharsets.US_ASCII), 0, bytes, 0, size);
+        return bytes;
+    }
+
+    /** 8-bit luma: flat 16x16 regions in a handful of shades, plus +-1 of noise. */
+    private static byte[] rawFrames(int size) {
+        int width = 640;
+        Random random = new Random(42);
+        int[] shades = new int[64];
+        for (int i = 0; i < shades.length; i++) {
+            shades[i] = 16 + 12 * random.nextInt(18);
+        }
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int x = i % width;
+            int y = i / width;
+            int region = (x / 16 * 7 + y / 16 * 13) % shades.length;
+            bytes[i] = (byte) (shades[region] + random.nextInt(3) - 1);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,36 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.testing.ShapingProxy;
+
+/**
+ * Links - Named link profiles for the {@code link} benchmark parameter.
+ *
+ * "loopback" connects straight to the receiver. The named Wi-Fi Direct
+ * profiles match what two phones in the same room and across a busy
+ * floor measure. Anything else is read as "rttMs:mbps", e.g.
+ * {@code -p link=25:120}.
+ */
+final class Links {
+    static final String LOOPBACK = "loopback";
+
+    private Links() {
+    }
+
+    /** Null for a direct connection. */
+    static ShapingProxy.LinkShape shapeFor(String link) {
+        if (LOOPBACK.equals(link)) {
+            return null;
+        }
+        if ("wifiDirect".equals(link)) {
+            return ShapingProxy.LinkShape.of(8, 300);
+        }
+        if ("busyWifiDirect".equals(link)) {
+            return ShapingProxy.LinkShape.of(30, 60);
+        }
+        int colon = link.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Unknown link \"" + link + "\"; use loopback, wifiDirect, busyWifiDirect or rttMs:mbps");
+        }
+        return ShapingProxy.LinkShape.of(Long.parseLong(link.substring(0, colon)), Double.parseDouble(link.substring(colon + 1)));
+    }
+}
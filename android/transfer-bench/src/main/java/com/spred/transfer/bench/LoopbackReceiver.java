@@ -0,0 +1,193 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.CoalescingSink;
+import com.spred.transfer.TransferCompression;
+import com.spred.transfer.TransferPipeline;
+import com.spred.transfer.testing.ShapingProxy;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LoopbackReceiver - The far end of every socket benchmark.
+ *
+ * Each connection carries any number of transfers framed as an 8-byte
+ * length followed by the body. The receiver writes each body to its own
+ * temp file with the chosen receive loop, then acks with one byte so the
+ * sender's timing covers the whole trip. Connections stay open across
+ * benchmark invocations, so handshakes aren't measured.
+ */
+final class LoopbackReceiver implements Closeable {
+    /** The 8 KB read/write loop the receive path used before the engine. */
+    static final String LEGACY_8K = "legacy8k";
+    /** TransferPipeline.receive into a CoalescingSink, as WifiDirectModule receives now. */
+    static final String PIPELINE = "pipeline";
+    /** PIPELINE behind a TransferCompression.Decoder: the body arrives as compression frames. */
+    static final String COMPRESSED = "compressed";
+
+    private final String receiveLoop;
+    private final ServerSocket serverSocket;
+    private final ShapingProxy proxy;
+    private final List<Closeable> open = new ArrayList<>();
+    private volatile boolean closed;
+
+    LoopbackReceiver(String receiveLoop, String link) throws IOException {
+        if (!LEGACY_8K.equals(receiveLoop) && !PIPELINE.equals(receiveLoop) && !COMPRESSED.equals(receiveLoop)) {
+            throw new IllegalArgumentException("Unknown receive loop " + receiveLoop);
+        }
+        this.receiveLoop = receiveLoop;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ShapingProxy.LinkShape shape = Links.shapeFor(link);
+        InetSocketAddress direct = new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        this.proxy = shape != null ? new ShapingProxy(direct, shape) : null;
+        Thread acceptor = new Thread(this::acceptLoop, "LoopbackReceiver-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Where senders connect: the proxy when the link is shaped. */
+    InetSocketAddress getAddress() {
+        return proxy != null
+            ? proxy.getAddress()
+            : new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    /** Send the frame header, run {@code body}, then wait for the receiver's ack. */
+    static void transfer(OutputStream out, InputStream in, long size, Body body) throws IOException {
+        byte[] header = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            header[i] = (byte) (size >>> (56 - 8 * i));
+        }
+        out.write(header);
+        body.send();
+        out.flush();
+        if (in.read() != 1) {
+            throw new EOFException("Receiver closed before acking");
+        }
+    }
+
+    interface Body {
+        void send() throws IOException;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (proxy != null) {
+            proxy.close();
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Best effort
+        }
+        synchronized (open) {
+            for (Closeable closeable : open) {
+                try {
+                    closeable.close();
+                } catch (IOException ignored) {
+                    // Best effort
+                }
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                synchronized (open) {
+                    open.add(socket);
+                }
+                Thread thread = new Thread(() -> serve(socket), "LoopbackReceiver-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("LoopbackReceiver: accept failed: " + e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        File file = null;
+        try {
+            file = File.createTempFile("spred-bench-", ".bin");
+            file.deleteOnExit();
+            // Unbuffered, like the app: each loop's reads go straight to the socket
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream ack = socket.getOutputStream();
+            try (RandomAccessFile target = new RandomAccessFile(file, "rw")) {
+                while (true) {
+                    long size;
+                    try {
+                        size = in.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (LEGACY_8K.equals(receiveLoop)) {
+                        receiveLegacy(in, size, file);
+                    } else if (COMPRESSED.equals(receiveLoop)) {
+                        try (TransferCompression.Decoder decoder = new TransferCompression.Decoder(in)) {
+                            receivePipeline(decoder, size, target.getChannel());
+                        }
+                    } else {
+                        receivePipeline(in, size, target.getChannel());
+                    }
+                    ack.write(1);
+                    ack.flush();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("LoopbackReceiver: " + e);
+            }
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Best effort
+            }
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /** The old loop, with exact sizing added so the connection can carry more than one transfer. */
+    private static void receiveLegacy(InputStream in, long size, File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            byte[] buffer = new byte[8192];
+            long received = 0;
+            while (received < size) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, size - received));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                out.write(buffer, 0, n);
+                received += n;
+            }
+        }
+    }
+
+    private static void receivePipeline(InputStream in, long size, FileChannel channel) throws IOException {
+        CoalescingSink sink = new CoalescingSink(channel, 0);
+        TransferPipeline.receive(in, size, sink, null, null);
+        sink.flush();
+    }
+}
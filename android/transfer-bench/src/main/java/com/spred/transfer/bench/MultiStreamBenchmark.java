@@ -0,0 +1,112 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.TransferPipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MultiStreamBenchmark - One file split across N parallel connections.
+ *
+ * Each stream sends its own byte range with TransferPipeline and the op
+ * ends when every range is acked. On a shaped link the streams share the
+ * proxy's bandwidth cap, as they would share one radio, so extra streams
+ * only help when a single stream can't keep the link full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiStreamBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int streams;
+
+    @Param({"loopback", "wifiDirect", "busyWifiDirect"})
+    public String link;
+
+    @Param({"32"})
+    public int sizeMb;
+
+    private File source;
+    private long size;
+    private LoopbackReceiver receiver;
+    private final List<Socket> sockets = new ArrayList<>();
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        size = sizeMb * 1024L * 1024L;
+        source = TransferLoopBenchmark.writeSource(size);
+        receiver = new LoopbackReceiver(LoopbackReceiver.PIPELINE, link);
+        for (int i = 0; i < streams; i++) {
+            sockets.add(new Socket(receiver.getAddress().getAddress(), receiver.getAddress().getPort()));
+        }
+        executor = Executors.newFixedThreadPool(streams);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        sockets.clear();
+        receiver.close();
+        source.delete();
+    }
+
+    @Benchmark
+    public void transferFile() throws InterruptedException, ExecutionException {
+        long rangeSize = (size + streams - 1) / streams;
+        List<Future<?>> ranges = new ArrayList<>(streams);
+        for (int i = 0; i < streams; i++) {
+            Socket socket = sockets.get(i);
+            long start = i * rangeSize;
+            long length = Math.min(rangeSize, size - start);
+            ranges.add(executor.submit(() -> {
+                sendRange(socket, start, length);
+                return null;
+            }));
+        }
+        for (Future<?> range : ranges) {
+            range.get();
+        }
+    }
+
+    private void sendRange(Socket socket, long start, long length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+            file.seek(start);
+            InputStream range = Channels.newInputStream(file.getChannel());
+            LoopbackReceiver.transfer(socket.getOutputStream(), socket.getInputStream(), length,
+                () -> TransferPipeline.send(range, length, socket.getOutputStream(), null, null));
+        }
+    }
+}
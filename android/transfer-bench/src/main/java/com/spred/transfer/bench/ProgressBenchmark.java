@@ -0,0 +1,124 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.TransferPipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ProgressBenchmark - What progress reporting costs per transfer, in memory.
+ *
+ * "everyRead" rebuilds the event the original loops emitted after each
+ * read: a six-field map plus the log line. "throttled" is the
+ * TransferPipeline listener. The React Native bridge isn't on the JVM, so
+ * serialization and the JS side aren't counted. Treat "everyRead" as a
+ * lower bound on the real cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressBenchmark {
+
+    @Param({"none", "everyRead", "throttled"})
+    public String progress;
+
+    @Param({"64"})
+    public int sizeMb;
+
+    @Benchmark
+    public long copy(Blackhole blackhole) throws IOException {
+        long size = sizeMb * 1024L * 1024L;
+        InputStream source = new ZeroSource(size);
+        OutputStream sink = new DiscardSink();
+        switch (progress) {
+            case "none":
+                return TransferPipeline.send(source, size, sink, null, null).bytes;
+            case "throttled":
+                return TransferPipeline.send(source, size, sink, null,
+                    (done, total) -> blackhole.consume(progressEvent("clip.mp4", done, total))).bytes;
+            case "everyRead":
+                // The original loop: 8 KB reads, one event and one log line per read
+                byte[] buffer = new byte[8192];
+                long sent = 0;
+                int bytesRead;
+                while ((bytesRead = source.read(buffer)) != -1) {
+                    sink.write(buffer, 0, bytesRead);
+                    sent += bytesRead;
+                    Map<String, Object> event = progressEvent("clip.mp4", sent, size);
+                    blackhole.consume(event);
+                    blackhole.consume("📤 Send progress: " + event.get("progress") + "% (" + sent + "/" + size + " bytes)");
+                }
+                return sent;
+            default:
+                throw new IllegalArgumentException("Unknown progress mode " + progress);
+        }
+    }
+
+    private static Map<String, Object> progressEvent(String fileName, long done, long total) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("fileName", fileName);
+        event.put("progress", (int) (done * 100 / total));
+        event.put("bytesTransferred", (double) done);
+        event.put("totalBytes", (double) total);
+        event.put("targetAddress", "192.168.49.1");
+        event.put("status", "sending");
+        return event;
+    }
+
+    /** {@code size} zero bytes without touching memory beyond the caller's buffer. */
+    static final class ZeroSource extends InputStream {
+        private long remaining;
+
+        ZeroSource(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            remaining--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, remaining);
+            remaining -= n;
+            return n;
+        }
+    }
+
+    static final class DiscardSink extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.ReceiveFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReceiveFileBenchmark - Landing received bytes on disk, and reading them
+ * back, with the old writer and with ReceiveFile under each FsyncPolicy.
+ *
+ * Bytes come from memory in 8 KB writes, the size the socket reads used
+ * to be, so the file path is the only variable. With streams > 1 that many
+ * receives are interleaved write by write, as concurrent senders do, which
+ * is what fragments a file that grows as it goes. "legacy8k" is the old
+ * FileOutputStream on the final name, synced like the policy says.
+ *
+ * readBack reads the files the trial wrote. The JVM can't drop the page
+ * cache, so unless you drop it by hand between forks (as root:
+ * echo 3 > /proc/sys/vm/drop_caches) this measures cached reads. Nor can
+ * it call posix_fallocate, so ReceiveFile runs without a Preallocator
+ * here; layout differences show on the device, or with filefrag on the
+ * files of a run started with -Dspred.bench.keep=true.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiveFileBenchmark {
+
+    @Param({"legacy8k", "receiveFile"})
+    public String writer;
+
+    @Param({"none", "end", "interval"})
+    public String fsync;
+
+    @Param({"1", "2"})
+    public int streams;
+
+    @Param({"64"})
+    public int sizeMb;
+
+    private static final int WRITE_BYTES = 8192;
+
+    private byte[] chunk;
+    private long size;
+    private File directory;
+    private final List<File> written = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        size = sizeMb * 1024L * 1024L;
+        chunk = new byte[WRITE_BYTES];
+        new Random(42).nextBytes(chunk);
+        directory = Files.createTempDirectory("spred-bench-receive-").toFile();
+        written.addAll(receive());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (Boolean.getBoolean("spred.bench.keep")) {
+            System.out.println("ReceiveFileBenchmark: kept " + directory);
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public List<File> write() throws IOException {
+        List<File> files = receive();
+        for (File file : files) {
+            file.delete();
+        }
+        return files;
+    }
+
+    @Benchmark
+    public long readBack() throws IOException {
+        byte[] buffer = new byte[1024 * 1024];
+        long total = 0;
+        for (File file : written) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    total += n;
+                }
+            }
+        }
+        return total;
+    }
+
+    /** One file per stream, written round-robin one chunk at a time. */
+    private List<File> receive() throws IOException {
+        Target[] targets = new Target[streams];
+        for (int i = 0; i < streams; i++) {
+            targets[i] = "receiveFile".equals(writer) ? new ReceiveFileTarget("clip.mp4") : new LegacyTarget("clip.mp4");
+        }
+        List<File> files = new ArrayList<>(streams);
+        try {
+            for (long done = 0; done < size; done += WRITE_BYTES) {
+                int length = (int) Math.min(WRITE_BYTES, size - done);
+                for (Target target : targets) {
+                    target.write(chunk, length);
+                }
+            }
+            for (Target target : targets) {
+                files.add(target.commit());
+            }
+        } finally {
+            for (Target target : targets) {
+                target.abort();
+            }
+        }
+        return files;
+    }
+
+    private interface Target {
+        void write(byte[] bytes, int length) throws IOException;
+
+        File commit() throws IOException;
+
+        void abort();
+    }
+
+    private final class ReceiveFileTarget implements Target {
+        private final ReceiveFile file;
+        private boolean committed;
+
+        ReceiveFileTarget(String name) throws IOException {
+            file = ReceiveFile.open(directory, name, size, ReceiveFile.FsyncPolicy.fromKey(fsync),
+                ReceiveFile.DEFAULT_SYNC_INTERVAL_BYTES, null);
+        }
+
+        @Override
+        public void write(byte[] bytes, int length) throws IOException {
+            file.write(bytes, 0, length);
+        }
+
+        @Override
+        public File commit() throws IOException {
+            committed = true;
+            return file.commit();
+        }
+
+        @Override
+        public void abort() {
+            if (!committed) {
+                file.abort();
+            }
+        }
+    }
+
+    /** The old receive path: straight onto the final name, no temp file, no preallocation. */
+    private final class LegacyTarget implements Target {
+        private final File file;
+        private final FileOutputStream out;
+        private long sinceSync;
+
+        LegacyTarget(String name) throws IOException {
+            file = ReceiveFile.uniqueTarget(directory, name);
+            out = new FileOutputStream(file);
+        }
+
+        @Override
+        public void write(byte[] bytes, int length) throws IOException {
+            out.write(bytes, 0, length);
+            sinceSync += length;
+            if ("interval".equals(fsync) && sinceSync >= ReceiveFile.DEFAULT_SYNC_INTERVAL_BYTES) {
+                out.getFD().sync();
+                sinceSync = 0;
+            }
+        }
+
+        @Override
+        public File commit() throws IOException {
+            if (!"none".equals(fsync)) {
+                out.getFD().sync();
+            }
+            out.close();
+            return file;
+        }
+
+        @Override
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Already closed by commit
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.spred.transfer.bench;
+
+import com.spred.transfer.TransferPipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TransferLoopBenchmark - One file, one connection, sender to receiver's disk.
+ *
+ * Compares the send loops the app has used: the original 8 KB
+ * read/write loop, the same loop behind buffered streams,
+ * TransferPipeline.send, and FileChannel.transferTo straight into the
+ * socket. Each is paired with the old and the current receive loop. Time
+ * per op is one whole file, acked by the receiver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferLoopBenchmark {
+
+    @Param({"legacy8k", "buffered8k", "pipeline", "transferTo"})
+    public String sendLoop;
+
+    @Param({"legacy8k", "pipeline"})
+    public String receiveLoop;
+
+    @Param({"loopback", "wifiDirect"})
+    public String link;
+
+    @Param({"32"})
+    public int sizeMb;
+
+    private File source;
+    private long size;
+    private LoopbackReceiver receiver;
+    private Socket socket;
+    private SocketChannel channel;
+    private OutputStream out;
+    private InputStream in;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        size = sizeMb * 1024L * 1024L;
+        source = writeSource(size);
+        receiver = new LoopbackReceiver(receiveLoop, link);
+        if ("transferTo".equals(sendLoop)) {
+            // transferTo needs a channel-backed socket
+            channel = SocketChannel.open(receiver.getAddress());
+            socket = channel.socket();
+        } else {
+            socket = new Socket(receiver.getAddress().getAddress(), receiver.getAddress().getPort());
+        }
+        out = socket.getOutputStream();
+        in = socket.getInputStream();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        socket.close();
+        receiver.close();
+        source.delete();
+    }
+
+    @Benchmark
+    public void transferFile() throws IOException {
+        switch (sendLoop) {
+            case "legacy8k":
+                LoopbackReceiver.transfer(out, in, size, this::sendLegacy);
+                break;
+            case "buffered8k":
+                BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+                LoopbackReceiver.transfer(buffered, in, size, () -> sendBuffered(buffered));
+                break;
+            case "pipeline":
+                LoopbackReceiver.transfer(out, in, size, this::sendPipeline);
+                break;
+            case "transferTo":
+                LoopbackReceiver.transfer(out, in, size, this::sendTransferTo);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown send loop " + sendLoop);
+        }
+    }
+
+    /** WifiDirectModule's original loop, less the per-read event (see ProgressBenchmark). */
+    private void sendLegacy() throws IOException {
+        try (FileInputStream fileInputStream = new FileInputStream(source)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    private void sendBuffered(OutputStream buffered) throws IOException {
+        try (InputStream fileInputStream = new BufferedInputStream(new FileInputStream(source), 64 * 1024)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
+                buffered.write(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    private void sendPipeline() throws IOException {
+        try (FileInputStream fileInputStream = new FileInputStream(source)) {
+            TransferPipeline.send(fileInputStream, size, out, null, null);
+        }
+    }
+
+    private void sendTransferTo() throws IOException {
+        try (FileInputStream fileInputStream = new FileInputStream(source)) {
+            FileChannel file = fileInputStream.getChannel();
+            long position = 0;
+            while (position < size) {
+                position += file.transferTo(position, size - position, channel);
+            }
+        }
+    }
+
+    static File writeSource(long size) throws IOException {
+        File file = File.createTempFile("spred-bench-source-", ".bin");
+        file.deleteOnExit();
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            for (long written = 0; written < size; written += chunk.length) {
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        return file;
+    }
+}
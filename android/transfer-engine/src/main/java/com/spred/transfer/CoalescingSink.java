@@ -0,0 +1,127 @@
+package com.spred.transfer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * CoalescingSink - Turns small socket reads into large, aligned file writes.
+ *
+ * Socket reads return whatever has arrived (often a few hundred bytes to a
+ * few KB); writing each one straight through costs a syscall apiece. The
+ * sink copies them into a block-sized buffer and issues one positional
+ * write per full block, at a block-aligned file offset.
+ *
+ * If a block has been pending longer than maxDelayMs it is written early
+ * (checked on each write) but kept in the buffer, so when it fills it is
+ * rewritten whole from the same aligned offset. Every write stays aligned
+ * and partially-received data still reaches the page cache promptly.
+ */
+public final class CoalescingSink implements TransferPipeline.Sink {
+    public static final int DEFAULT_BLOCK_BYTES = 512 * 1024;
+    public static final int ALIGNMENT = 4096;
+    public static final long DEFAULT_MAX_DELAY_MS = 500;
+
+    private final FileChannel channel;
+    private final ByteBuffer block;
+    private final long maxDelayMs;
+    private final long startPosition;
+
+    private long blockStart;
+    private int flushedInBlock;
+    private long firstPendingAt = -1;
+
+    // Counters
+    private long writeCalls;
+    private long bytesAccepted;
+    private long earlyFlushes;
+
+    public CoalescingSink(FileChannel channel, long startPosition) {
+        this(channel, startPosition, DEFAULT_BLOCK_BYTES, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public CoalescingSink(FileChannel channel, long startPosition, int blockBytes, long maxDelayMs) {
+        if (startPosition % ALIGNMENT != 0) {
+            throw new IllegalArgumentException("Start position must be " + ALIGNMENT + "-byte aligned");
+        }
+        int aligned = Math.max(ALIGNMENT, (blockBytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+        this.channel = channel;
+        this.block = ByteBuffer.allocateDirect(aligned);
+        this.maxDelayMs = maxDelayMs;
+        this.blockStart = startPosition;
+        this.startPosition = startPosition;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        bytesAccepted += length;
+        while (length > 0) {
+            int chunk = Math.min(length, block.remaining());
+            block.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            if (!block.hasRemaining()) {
+                writeBlock();
+            }
+        }
+        if (block.position() > flushedInBlock) {
+            long now = System.currentTimeMillis();
+            if (firstPendingAt < 0) {
+                firstPendingAt = now;
+            } else if (now - firstPendingAt >= maxDelayMs) {
+                earlyFlushes++;
+                flush();
+            }
+        }
+    }
+
+    /** Write whatever is buffered (at the block's aligned offset) without dropping it. */
+    public void flush() throws IOException {
+        if (block.position() == flushedInBlock) {
+            return;
+        }
+        ByteBuffer pending = block.duplicate();
+        pending.flip();
+        long position = blockStart;
+        while (pending.hasRemaining()) {
+            writeCalls++;
+            position += channel.write(pending, position);
+        }
+        flushedInBlock = block.position();
+        firstPendingAt = -1;
+    }
+
+    private void writeBlock() throws IOException {
+        block.flip();
+        long position = blockStart;
+        while (block.hasRemaining()) {
+            writeCalls++;
+            position += channel.write(block, position);
+        }
+        blockStart = position;
+        block.clear();
+        flushedInBlock = 0;
+        firstPendingAt = -1;
+    }
+
+    public long getWriteCalls() {
+        return writeCalls;
+    }
+
+    public long getBytesAccepted() {
+        return bytesAccepted;
+    }
+
+    /** Bytes that have reached the file channel; the rest of getBytesAccepted() is still in the block. */
+    public long getBytesWritten() {
+        return blockStart - startPosition + flushedInBlock;
+    }
+
+    public long getEarlyFlushes() {
+        return earlyFlushes;
+    }
+
+    public int getBlockBytes() {
+        return block.capacity();
+    }
+}
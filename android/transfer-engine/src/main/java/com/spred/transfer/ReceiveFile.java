@@ -0,0 +1,254 @@
+package com.spred.transfer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * ReceiveFile - Destination for one incoming file.
+ *
+ * Bytes go to a hidden ".<name>.<random>.part" file next to the destination
+ * (the library scanner ignores dot files), unique per receive so two
+ * sessions for the same name never share one. It is preallocated to the
+ * declared size up front, so flash gets one contiguous extent instead of
+ * growing 8 KB at a time. commit() checks that exactly the declared size
+ * arrived, syncs per the FsyncPolicy and renames the temp file into place
+ * under a name that never clobbers an existing file or one another writer
+ * has reserved. abort() just deletes the temp file. Writes are batched into
+ * large aligned blocks by a CoalescingSink.
+ */
+public final class ReceiveFile implements Closeable, TransferPipeline.DurableSink {
+
+    public enum FsyncPolicy {
+        /** Leave it to the kernel; fastest, a crash can lose the tail of the file. */
+        NONE,
+        /** One fsync before the rename, so a committed name always has all its bytes. */
+        AT_END,
+        /** fsync every syncIntervalBytes as well, bounding dirty page build-up on big files. */
+        INTERVAL;
+
+        public static FsyncPolicy fromKey(String key) {
+            if ("none".equals(key)) {
+                return NONE;
+            }
+            if ("interval".equals(key)) {
+                return INTERVAL;
+            }
+            return AT_END;
+        }
+    }
+
+    /** Reserve disk blocks for the file; the device uses Os.posix_fallocate. */
+    public interface Preallocator {
+        void preallocate(FileDescriptor fd, long length) throws IOException;
+    }
+
+    public static final long DEFAULT_SYNC_INTERVAL_BYTES = 64L * 1024 * 1024;
+
+    // Final paths handed out by reserveTarget but not yet renamed into place, across all writers in the process
+    private static final Set<String> RESERVED_TARGETS = new HashSet<>();
+
+    private final File directory;
+    private final String fileName;
+    private final long declaredSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long syncIntervalBytes;
+    private final File tempFile;
+    private final RandomAccessFile raf;
+    private final CoalescingSink sink;
+
+    private long written;
+    private long sinceSync;
+    private int syncs;
+    private boolean preallocated;
+    private boolean closed;
+
+    private ReceiveFile(File directory, String fileName, long declaredSize, FsyncPolicy fsyncPolicy,
+                        long syncIntervalBytes, File tempFile, RandomAccessFile raf) {
+        this.directory = directory;
+        this.fileName = fileName;
+        this.declaredSize = declaredSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.syncIntervalBytes = syncIntervalBytes;
+        this.tempFile = tempFile;
+        this.raf = raf;
+        this.sink = new CoalescingSink(raf.getChannel(), 0);
+    }
+
+    /**
+     * Open the temp file for {@code fileName} in {@code directory}. A failed
+     * preallocation (e.g. EOPNOTSUPP on FUSE) is not fatal; the file just
+     * grows as it is written.
+     */
+    public static ReceiveFile open(File directory, String fileName, long declaredSize, FsyncPolicy fsyncPolicy,
+                            long syncIntervalBytes, Preallocator preallocator) throws IOException {
+        String safeName = sanitizeName(fileName);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File temp = File.createTempFile("." + safeName + ".", ".part", directory);
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        ReceiveFile file = new ReceiveFile(directory, safeName, declaredSize, fsyncPolicy,
+            syncIntervalBytes > 0 ? syncIntervalBytes : DEFAULT_SYNC_INTERVAL_BYTES, temp, raf);
+        if (preallocator != null && declaredSize > 0) {
+            try {
+                preallocator.preallocate(raf.getFD(), declaredSize);
+                file.preallocated = true;
+            } catch (IOException e) {
+                file.preallocated = false;
+            }
+        }
+        return file;
+    }
+
+    /** The sender picks the name; never let it escape the destination directory. */
+    public static String sanitizeName(String fileName) {
+        String name = fileName == null ? "" : new File(fileName.replace('\\', '/')).getName();
+        while (name.startsWith(".")) {
+            name = name.substring(1);
+        }
+        return name.isEmpty() ? "received_" + System.currentTimeMillis() : name;
+    }
+
+    /** {@code name}, or "base (n).ext" for the first n that doesn't exist yet. */
+    public static File uniqueTarget(File directory, String name) {
+        File target = new File(directory, name);
+        if (!target.exists()) {
+            return target;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        for (int n = 1; ; n++) {
+            target = new File(directory, base + " (" + n + ")" + ext);
+            if (!target.exists()) {
+                return target;
+            }
+        }
+    }
+
+    /**
+     * Like uniqueTarget, but also skips names reserved and not yet released,
+     * and reserves the one it returns. Anything that renames into the
+     * library directory goes through this, so two writers finishing at once
+     * can't both pick the same free name. Pair with releaseTarget once the
+     * rename is done or abandoned.
+     */
+    public static File reserveTarget(File directory, String name) {
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        synchronized (RESERVED_TARGETS) {
+            File target = new File(directory, name);
+            for (int n = 1; target.exists() || RESERVED_TARGETS.contains(target.getAbsolutePath()); n++) {
+                target = new File(directory, base + " (" + n + ")" + ext);
+            }
+            RESERVED_TARGETS.add(target.getAbsolutePath());
+            return target;
+        }
+    }
+
+    public static void releaseTarget(File target) {
+        synchronized (RESERVED_TARGETS) {
+            RESERVED_TARGETS.remove(target.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if (written + length > declaredSize) {
+            throw new IOException("Sender exceeded declared size " + declaredSize);
+        }
+        sink.write(buffer, offset, length);
+        written += length;
+        sinceSync += length;
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && sinceSync >= syncIntervalBytes) {
+            sync();
+        }
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    /** Bytes in the temp file itself (page cache or disk); the coalescing block holds the rest. */
+    @Override
+    public long getDurableBytes() {
+        return sink.getBytesWritten();
+    }
+
+    public long getRemaining() {
+        return declaredSize - written;
+    }
+
+    public boolean isPreallocated() {
+        return preallocated;
+    }
+
+    public int getSyncCount() {
+        return syncs;
+    }
+
+    /** write(2) calls issued so far; compare with the number of write() calls made on this object. */
+    public long getWriteSyscalls() {
+        return sink.getWriteCalls();
+    }
+
+    private void sync() throws IOException {
+        sink.flush();
+        raf.getFD().sync();
+        syncs++;
+        sinceSync = 0;
+    }
+
+    /**
+     * Verify, sync and rename into place. Returns the final file, which may
+     * carry a " (n)" suffix if the name was taken.
+     */
+    public File commit() throws IOException {
+        if (written != declaredSize) {
+            abort();
+            throw new IOException("Incomplete transfer: received " + written + " of " + declaredSize + " bytes");
+        }
+        sink.flush();
+        // posix_fallocate may have reserved past the real end on a size mismatch; trim to what arrived
+        raf.setLength(written);
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            sync();
+        }
+        raf.close();
+        closed = true;
+
+        File target = reserveTarget(directory, fileName);
+        try {
+            if (!tempFile.renameTo(target)) {
+                tempFile.delete();
+                throw new IOException("Could not move " + tempFile.getName() + " to " + target.getName());
+            }
+        } finally {
+            releaseTarget(target);
+        }
+        return target;
+    }
+
+    public void abort() {
+        close();
+        tempFile.delete();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
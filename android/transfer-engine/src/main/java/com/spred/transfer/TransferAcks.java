@@ -0,0 +1,185 @@
+package com.spred.transfer;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * TransferAcks - Receiver acknowledgements and the sender's in-flight window.
+ *
+ * When the header offers PROP_ACKS and the SEND reply names an interval,
+ * the receiver writes a frame back on the socket every time another
+ * interval of the body has left its buffers for the file, and a COMMITTED
+ * frame once the file is renamed into place. Frames are cumulative (type
+ * byte, then the total byte count as a long), so the latest one is all the
+ * sender needs.
+ *
+ * The sender reports progress from those counts rather than from bytes
+ * handed to its own kernel, never lets more than WINDOW_BYTES go
+ * unacknowledged, and only calls the transfer sent once COMMITTED
+ * arrives. A receiver that dies mid-body now fails the send instead of
+ * leaving it "complete" with megabytes still in socket buffers, and the
+ * last ACK is where a retry could pick up. A paused receiver repeats its
+ * last ACK every keep-alive interval, so the waiting sender's read doesn't
+ * time out.
+ */
+public final class TransferAcks {
+    public static final long DEFAULT_INTERVAL_BYTES = 1024 * 1024;
+    /**
+     * Must comfortably exceed the ACK interval plus what the receiver
+     * buffers before the file (a CoalescingSink block) and what the sender
+     * holds back (a TransferDelta chunk), or the sender would wait on an
+     * ACK that can't be sent.
+     */
+    public static final long WINDOW_BYTES = 8L * 1024 * 1024;
+
+    static final int FRAME_PROGRESS = 1;
+    static final int FRAME_COMMITTED = 2;
+    static final int FRAME_BYTES = 9;
+
+    private TransferAcks() {
+    }
+
+    static void writeFrame(OutputStream out, byte[] frame, int type, long bytes) throws IOException {
+        frame[0] = (byte) type;
+        for (int i = 0; i < 8; i++) {
+            frame[1 + i] = (byte) (bytes >>> (56 - 8 * i));
+        }
+        out.write(frame, 0, FRAME_BYTES);
+        out.flush();
+    }
+
+    /** Receiving side: passes writes through and ACKs what has reached the file. */
+    static final class AckingSink implements TransferPipeline.Sink {
+        private final TransferPipeline.Sink sink;
+        private final OutputStream out;
+        private final long intervalBytes;
+        private final byte[] frame = new byte[FRAME_BYTES];
+        private long accepted;
+        private long lastAcked;
+        private int acksSent;
+
+        AckingSink(TransferPipeline.Sink sink, OutputStream out, long intervalBytes) {
+            this.sink = sink;
+            this.out = out;
+            this.intervalBytes = intervalBytes;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            sink.write(bytes, offset, length);
+            accepted += length;
+            long durable = sink instanceof TransferPipeline.DurableSink
+                ? ((TransferPipeline.DurableSink) sink).getDurableBytes() : accepted;
+            if (durable - lastAcked >= intervalBytes) {
+                writeFrame(out, frame, FRAME_PROGRESS, durable);
+                lastAcked = durable;
+                acksSent++;
+            }
+        }
+
+        /** Repeat the last ACK; senders treat an unchanged count as a no-op but it resets their read timeout. */
+        void keepAlive() throws IOException {
+            writeFrame(out, frame, FRAME_PROGRESS, lastAcked);
+            acksSent++;
+        }
+
+        void commit(long size) throws IOException {
+            writeFrame(out, frame, FRAME_COMMITTED, size);
+            acksSent++;
+        }
+
+        int getAcksSent() {
+            return acksSent;
+        }
+    }
+
+    /**
+     * Sending side: a Gate that drains ACKs between chunks, blocks while the
+     * window is full, and turns ACKs into progress reports.
+     */
+    static final class Window implements TransferPipeline.Gate {
+        private final DataInputStream in;
+        private final Flushable out;
+        private final long total;
+        private final long windowBytes;
+        private final TransferPipeline.Throttle throttle;
+        private long acked;
+        private long maxUnacked;
+        private int acksReceived;
+        private boolean committed;
+
+        Window(InputStream socketIn, Flushable out, long total, long windowBytes,
+               TransferPipeline.TransferListener listener) {
+            this.in = new DataInputStream(socketIn);
+            this.out = out;
+            this.total = total;
+            this.windowBytes = windowBytes;
+            this.throttle = new TransferPipeline.Throttle(total, listener);
+        }
+
+        @Override
+        public void checkpoint(long sent) throws IOException {
+            while (in.available() > 0) {
+                readFrame();
+            }
+            if (sent - acked >= windowBytes) {
+                // Anything still in our buffer counts as sent; push it out before waiting on it
+                out.flush();
+                while (sent - acked >= windowBytes) {
+                    readFrame();
+                }
+            }
+            maxUnacked = Math.max(maxUnacked, sent - acked);
+        }
+
+        /** Block until the receiver says the file is in place. */
+        void awaitCommitted() throws IOException {
+            while (!committed) {
+                readFrame();
+            }
+            throttle.finish(acked);
+        }
+
+        private void readFrame() throws IOException {
+            int type;
+            long bytes;
+            try {
+                type = in.readUnsignedByte();
+                bytes = in.readLong();
+            } catch (EOFException e) {
+                throw new EOFException("Receiver closed after acknowledging " + acked + " of " + total + " bytes");
+            }
+            if (bytes < acked || bytes > total) {
+                throw new IOException("Bad ACK " + bytes + " after " + acked + " of " + total + " bytes");
+            }
+            acked = bytes;
+            acksReceived++;
+            if (type == FRAME_COMMITTED) {
+                if (bytes != total) {
+                    throw new IOException("Receiver committed " + bytes + " of " + total + " bytes");
+                }
+                committed = true;
+            } else if (type != FRAME_PROGRESS) {
+                throw new IOException("Unknown ACK frame " + type);
+            }
+            throttle.onProgress(acked);
+        }
+
+        long getAcked() {
+            return acked;
+        }
+
+        /** Most bytes left unacknowledged when a chunk was let through. */
+        long getMaxUnacked() {
+            return maxUnacked;
+        }
+
+        int getAcksReceived() {
+            return acksReceived;
+        }
+    }
+}
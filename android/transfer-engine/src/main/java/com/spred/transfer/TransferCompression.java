@@ -0,0 +1,309 @@
+package com.spred.transfer;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * TransferCompression - Optional per-chunk deflate for the transfer body.
+ *
+ * Most of what Spred moves is already-compressed video, where a codec only
+ * burns CPU, so nothing is compressed unless the file looks like it would
+ * pay. Before offering PROP_COMPRESSION the sender reads a few blocks spread
+ * across the file and estimates their byte entropy; the receiver echoes the
+ * codec on its SEND reply. Even then each chunk is judged on its own: the
+ * Encoder only deflates a chunk whose entropy is low enough to be worth
+ * trying, and only keeps the result when it is clearly smaller. A mostly
+ * compressed file with text or raw stretches costs little more than
+ * sending it plain.
+ *
+ * On the wire each chunk becomes a frame: a kind byte, the raw length and
+ * the payload length (ints), then the payload. Checksums, progress and
+ * ACKs all count raw bytes, so the rest of the protocol can't tell whether
+ * compression is on.
+ */
+public final class TransferCompression {
+    /** Blocks read across the file to decide whether to offer compression. */
+    public static final int SAMPLE_BLOCKS = 8;
+    public static final int SAMPLE_BLOCK_BYTES = 32 * 1024;
+    /**
+     * Bits of entropy per byte above which deflate isn't tried. Compressed
+     * video and images sit just under 8; text and sidecars well below 6.
+     */
+    public static final double MAX_ENTROPY_BITS = 7.5;
+    /** Largest frame a Decoder accepts; the sender's chunks are SEND_BUFFER_BYTES. */
+    public static final int MAX_FRAME_BYTES = 4 * TransferPipeline.SEND_BUFFER_BYTES;
+
+    static final int FRAME_STORED = 0;
+    static final int FRAME_DEFLATED = 1;
+    static final int FRAME_HEADER_BYTES = 9;
+    /** Chunks smaller than this go stored; deflate's setup isn't worth it. */
+    static final int MIN_DEFLATE_BYTES = 4 * 1024;
+
+    private TransferCompression() {
+    }
+
+    /** Byte entropy, in bits per byte, of SAMPLE_BLOCKS blocks spread evenly across {@code file}. */
+    public static double sampleEntropy(File file) throws IOException {
+        int[] histogram = new int[256];
+        long counted = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long size = raf.length();
+            byte[] block = new byte[(int) Math.min(SAMPLE_BLOCK_BYTES, size)];
+            int blocks = size <= (long) SAMPLE_BLOCKS * SAMPLE_BLOCK_BYTES
+                ? (int) ((size + SAMPLE_BLOCK_BYTES - 1) / SAMPLE_BLOCK_BYTES) : SAMPLE_BLOCKS;
+            for (int i = 0; i < blocks; i++) {
+                long offset = blocks > 1 ? (size - block.length) * i / (blocks - 1) : 0;
+                int length = (int) Math.min(block.length, size - offset);
+                raf.seek(offset);
+                raf.readFully(block, 0, length);
+                for (int j = 0; j < length; j++) {
+                    histogram[block[j] & 0xFF]++;
+                }
+                counted += length;
+            }
+        }
+        return entropy(histogram, counted);
+    }
+
+    /** Whether a sender should offer compression for {@code file} at all. */
+    public static boolean isWorthCompressing(File file) throws IOException {
+        return file.length() >= MIN_DEFLATE_BYTES && sampleEntropy(file) <= MAX_ENTROPY_BITS;
+    }
+
+    static double entropy(int[] histogram, long count) {
+        if (count == 0) {
+            return 0;
+        }
+        double bits = 0;
+        for (int n : histogram) {
+            if (n > 0) {
+                double p = (double) n / count;
+                bits -= p * Math.log(p);
+            }
+        }
+        return bits / Math.log(2);
+    }
+
+    static void writeFrameHeader(byte[] frame, int kind, int rawLength, int payloadLength) {
+        frame[0] = (byte) kind;
+        for (int i = 0; i < 4; i++) {
+            frame[1 + i] = (byte) (rawLength >>> (24 - 8 * i));
+            frame[5 + i] = (byte) (payloadLength >>> (24 - 8 * i));
+        }
+    }
+
+    /**
+     * Sending side: every write() becomes one frame on {@code out}, so the
+     * chunks TransferPipeline.send hands it are the unit that is judged.
+     * Nothing is buffered; close() frees the deflater but leaves the socket
+     * stream open.
+     */
+    public static final class Encoder extends OutputStream {
+        private final OutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final int[] histogram = new int[256];
+        private byte[] frame = new byte[0];
+        private long rawBytes;
+        private long wireBytes;
+        private int deflatedFrames;
+        private int storedFrames;
+
+        public Encoder(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            if (frame.length < FRAME_HEADER_BYTES + length) {
+                frame = new byte[FRAME_HEADER_BYTES + length];
+            }
+            int payload = length >= MIN_DEFLATE_BYTES && chunkEntropy(bytes, offset, length) <= MAX_ENTROPY_BITS
+                ? deflate(bytes, offset, length) : -1;
+            if (payload > 0) {
+                writeFrameHeader(frame, FRAME_DEFLATED, length, payload);
+                deflatedFrames++;
+            } else {
+                // One write per frame: the header goes in front of a copy of the chunk
+                payload = length;
+                System.arraycopy(bytes, offset, frame, FRAME_HEADER_BYTES, length);
+                writeFrameHeader(frame, FRAME_STORED, length, payload);
+                storedFrames++;
+            }
+            out.write(frame, 0, FRAME_HEADER_BYTES + payload);
+            rawBytes += length;
+            wireBytes += FRAME_HEADER_BYTES + payload;
+        }
+
+        private double chunkEntropy(byte[] bytes, int offset, int length) {
+            Arrays.fill(histogram, 0);
+            for (int i = offset; i < offset + length; i++) {
+                histogram[bytes[i] & 0xFF]++;
+            }
+            return entropy(histogram, length);
+        }
+
+        /** Deflated length, or -1 if it wouldn't save at least 1/16 of the chunk. */
+        private int deflate(byte[] bytes, int offset, int length) {
+            deflater.reset();
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+            int limit = length - length / 16;
+            int produced = 0;
+            while (!deflater.finished()) {
+                if (produced >= limit) {
+                    return -1;
+                }
+                produced += deflater.deflate(frame, FRAME_HEADER_BYTES + produced, limit - produced);
+            }
+            return produced;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+
+        public long getRawBytes() {
+            return rawBytes;
+        }
+
+        /** Frame headers and payloads; what actually crossed the socket. */
+        public long getWireBytes() {
+            return wireBytes;
+        }
+
+        public int getDeflatedFrames() {
+            return deflatedFrames;
+        }
+
+        public int getStoredFrames() {
+            return storedFrames;
+        }
+    }
+
+    /**
+     * Receiving side: reads frames from {@code in} and hands back the raw
+     * bytes. Reads whole frames only, so a trailer after the last one stays
+     * in the stream. close() frees the inflater but leaves the socket open.
+     */
+    public static final class Decoder extends InputStream {
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+        private byte[] payload = new byte[0];
+        private byte[] raw = new byte[0];
+        private int position;
+        private int limit;
+        private long wireBytes;
+        private int deflatedFrames;
+
+        public Decoder(InputStream in) {
+            this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == limit && !readFrame()) {
+                return -1;
+            }
+            int n = Math.min(length, limit - position);
+            System.arraycopy(raw, position, bytes, offset, n);
+            position += n;
+            return n;
+        }
+
+        private boolean readFrame() throws IOException {
+            int kind;
+            try {
+                kind = in.readUnsignedByte();
+            } catch (EOFException e) {
+                return false;
+            }
+            int rawLength = in.readInt();
+            int payloadLength = in.readInt();
+            boolean valid = rawLength > 0 && rawLength <= MAX_FRAME_BYTES
+                && (kind == FRAME_STORED ? payloadLength == rawLength
+                    : kind == FRAME_DEFLATED && payloadLength > 0 && payloadLength < rawLength);
+            if (!valid) {
+                throw new IOException("Bad compressed frame: kind " + kind + ", " + payloadLength + " -> " + rawLength + " bytes");
+            }
+            if (raw.length < rawLength) {
+                raw = new byte[rawLength];
+            }
+            if (kind == FRAME_STORED) {
+                in.readFully(raw, 0, rawLength);
+            } else {
+                if (payload.length < payloadLength) {
+                    payload = new byte[payloadLength];
+                }
+                in.readFully(payload, 0, payloadLength);
+                inflate(payloadLength, rawLength);
+                deflatedFrames++;
+            }
+            wireBytes += FRAME_HEADER_BYTES + payloadLength;
+            position = 0;
+            limit = rawLength;
+            return true;
+        }
+
+        private void inflate(int payloadLength, int rawLength) throws IOException {
+            inflater.reset();
+            inflater.setInput(payload, 0, payloadLength);
+            int produced = 0;
+            try {
+                while (produced < rawLength) {
+                    int n = inflater.inflate(raw, produced, rawLength - produced);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Compressed frame ended after " + produced + " of " + rawLength + " bytes");
+                    }
+                    produced += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed frame: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+
+        public long getWireBytes() {
+            return wireBytes;
+        }
+
+        public int getDeflatedFrames() {
+            return deflatedFrames;
+        }
+    }
+}
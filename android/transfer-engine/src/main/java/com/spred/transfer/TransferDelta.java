@@ -0,0 +1,413 @@
+package com.spred.transfer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * TransferDelta - Send only the parts of a file the receiver doesn't have.
+ *
+ * Creators resend re-edited cuts of the same video (trimmed intro, new end
+ * card) to the same peers. Both sides split files with the same
+ * content-defined chunker: a gear rolling hash over the last 64 bytes picks
+ * the cut points, so an edit only moves the chunk boundaries next to it
+ * and everything after resynchronizes. When the header offers PROP_DELTA
+ * and the receiver has an earlier copy (findBase), it echoes the chunker
+ * on its SEND reply and follows the reply with the hashes of that copy's
+ * chunks. The sender then streams the body as instructions: COPY a chunk
+ * the receiver already has, or DATA for one it doesn't. The receiver's
+ * Reader rebuilds the file from the two.
+ *
+ * As with TransferCompression, checksums, progress and ACKs count the
+ * rebuilt file's bytes, so the CRC32 trailer also catches a base file that
+ * changed under the receiver. The two are not combined: a delta body goes
+ * uncompressed, since the video it carries wouldn't shrink anyway.
+ */
+public final class TransferDelta {
+    public static final int MIN_CHUNK_BYTES = 16 * 1024;
+    /** Cut points are 1 in 2^16 bytes past the minimum, so chunks average about 80 KB. */
+    public static final int MAX_CHUNK_BYTES = 256 * 1024;
+    public static final int HASH_BYTES = 16;
+    /** Most chunk hashes a receiver may report; about 80 GB of base file. */
+    public static final int MAX_CHUNKS = 1 << 20;
+    /** How long a receiver may spend chunking its base before the reply: half the sender's read timeout. */
+    public static final long CHUNKING_BUDGET_MS = TransferSockets.READ_TIMEOUT_MS / 2;
+
+    static final int OP_COPY = 1;
+    static final int OP_DATA = 2;
+    static final int OP_HEADER_BYTES = 5;
+    private static final long CUT_MASK = 0xFFFFL << 48;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: both ends must cut at the same places
+        Random random = new Random(0x5370726564L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** One chunk of a base file, as the receiver hashed it. */
+    public static final class Chunk {
+        public final long offset;
+        public final int length;
+        final ByteBuffer hash;
+
+        Chunk(long offset, int length, ByteBuffer hash) {
+            this.offset = offset;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private TransferDelta() {
+    }
+
+    /**
+     * The copy of {@code fileName} a delta would build on: the file of that
+     * name in {@code directory}, or its newest "name (n).ext" sibling from
+     * ReceiveFile.uniqueTarget. Null if there is none.
+     */
+    public static File findBase(File directory, String fileName) {
+        String name = ReceiveFile.sanitizeName(fileName);
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        File[] files = directory.listFiles();
+        File base = null;
+        if (files == null) {
+            return null;
+        }
+        for (File file : files) {
+            String candidate = file.getName();
+            boolean sibling = candidate.startsWith(stem + " (") && candidate.endsWith(")" + ext)
+                && candidate.length() > stem.length() + ext.length() + 3
+                && isDigits(candidate.substring(stem.length() + 2, candidate.length() - ext.length() - 1));
+            if (file.isFile() && (candidate.equals(name) || sibling)
+                    && (base == null || file.lastModified() > base.lastModified())) {
+                base = file;
+            }
+        }
+        return base;
+    }
+
+    private static boolean isDigits(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return !s.isEmpty();
+    }
+
+    /** Chunk and hash all of {@code file}. */
+    public static List<Chunk> chunk(File file) throws IOException {
+        return chunk(file, Long.MAX_VALUE);
+    }
+
+    /**
+     * As chunk(), but give up and return null once {@code budgetMs} has
+     * passed. The sender waits on the reply while the receiver chunks, so a
+     * base too large to hash inside its read timeout must not be offered.
+     */
+    public static List<Chunk> chunk(File file, long budgetMs) throws IOException {
+        long deadline = budgetMs == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + budgetMs;
+        List<Chunk> chunks = new ArrayList<>();
+        Chunker chunker = new Chunker();
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[TransferPipeline.SEND_BUFFER_BYTES];
+        long offset = 0;
+        long chunkStart = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    return null;
+                }
+                int position = 0;
+                while (position < n) {
+                    int scanned = chunker.scan(buffer, position, n - position);
+                    digest.update(buffer, position, scanned);
+                    position += scanned;
+                    offset += scanned;
+                    if (chunker.isCut()) {
+                        chunks.add(new Chunk(chunkStart, (int) (offset - chunkStart), hashOf(digest)));
+                        chunkStart = offset;
+                    }
+                }
+            }
+        }
+        if (offset > chunkStart) {
+            chunks.add(new Chunk(chunkStart, (int) (offset - chunkStart), hashOf(digest)));
+        }
+        return chunks;
+    }
+
+    static void writeHashes(DataOutputStream out, List<Chunk> chunks) throws IOException {
+        out.writeInt(chunks.size());
+        for (Chunk chunk : chunks) {
+            out.write(chunk.hash.array(), 0, HASH_BYTES);
+        }
+        out.flush();
+    }
+
+    /** Hash to the index the receiver will resolve a COPY against. */
+    static Map<ByteBuffer, Integer> readHashes(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_CHUNKS) {
+            throw new IOException("Invalid delta chunk count: " + count);
+        }
+        Map<ByteBuffer, Integer> hashes = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte[] hash = new byte[HASH_BYTES];
+            in.readFully(hash);
+            hashes.put(ByteBuffer.wrap(hash), i);
+        }
+        return hashes;
+    }
+
+    private static ByteBuffer hashOf(MessageDigest digest) {
+        byte[] full = digest.digest();
+        byte[] hash = new byte[HASH_BYTES];
+        System.arraycopy(full, 0, hash, 0, HASH_BYTES);
+        return ByteBuffer.wrap(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Content-defined cut points: a gear hash, cut where its top 16 bits are zero. */
+    static final class Chunker {
+        private long hash;
+        private int length;
+        private boolean cut;
+
+        /** Consume bytes up to and including the next cut point, or all of them; returns how many. */
+        int scan(byte[] bytes, int offset, int count) {
+            for (int i = 0; i < count; i++) {
+                hash = (hash << 1) + GEAR[bytes[offset + i] & 0xFF];
+                length++;
+                if (length >= MAX_CHUNK_BYTES || (length >= MIN_CHUNK_BYTES && (hash & CUT_MASK) == 0)) {
+                    hash = 0;
+                    length = 0;
+                    cut = true;
+                    return i + 1;
+                }
+            }
+            cut = false;
+            return count;
+        }
+
+        /** Whether the last scan() ended on a cut. */
+        boolean isCut() {
+            return cut;
+        }
+    }
+
+    /**
+     * Sending side: chunks what TransferPipeline.send writes and turns each
+     * chunk into a COPY or a DATA instruction on {@code out}. Holds back at
+     * most one chunk, so finish() must be called after the last write.
+     */
+    public static final class Writer extends OutputStream {
+        private final OutputStream out;
+        private final Map<ByteBuffer, Integer> receiverChunks;
+        private final Chunker chunker = new Chunker();
+        private final MessageDigest digest = sha256();
+        private final byte[] chunk = new byte[OP_HEADER_BYTES + MAX_CHUNK_BYTES];
+        private int chunkLength;
+        private long reusedBytes;
+        private long wireBytes;
+        private int copiedChunks;
+        private int sentChunks;
+
+        public Writer(OutputStream out, Map<ByteBuffer, Integer> receiverChunks) {
+            this.out = out;
+            this.receiverChunks = receiverChunks;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int scanned = chunker.scan(bytes, offset, length);
+                System.arraycopy(bytes, offset, chunk, OP_HEADER_BYTES + chunkLength, scanned);
+                chunkLength += scanned;
+                offset += scanned;
+                length -= scanned;
+                if (chunker.isCut()) {
+                    emit();
+                }
+            }
+        }
+
+        /** Send the last, partial chunk. */
+        public void finish() throws IOException {
+            if (chunkLength > 0) {
+                emit();
+            }
+        }
+
+        private void emit() throws IOException {
+            digest.update(chunk, OP_HEADER_BYTES, chunkLength);
+            Integer index = receiverChunks.get(hashOf(digest));
+            if (index != null) {
+                writeOp(OP_COPY, index);
+                out.write(chunk, 0, OP_HEADER_BYTES);
+                wireBytes += OP_HEADER_BYTES;
+                reusedBytes += chunkLength;
+                copiedChunks++;
+            } else {
+                // Header in front of the chunk, so a DATA instruction is one write
+                writeOp(OP_DATA, chunkLength);
+                out.write(chunk, 0, OP_HEADER_BYTES + chunkLength);
+                wireBytes += OP_HEADER_BYTES + chunkLength;
+                sentChunks++;
+            }
+            chunkLength = 0;
+        }
+
+        private void writeOp(int op, int value) {
+            chunk[0] = (byte) op;
+            for (int i = 0; i < 4; i++) {
+                chunk[1 + i] = (byte) (value >>> (24 - 8 * i));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /** File bytes the receiver copied from its own earlier version. */
+        public long getReusedBytes() {
+            return reusedBytes;
+        }
+
+        public long getWireBytes() {
+            return wireBytes;
+        }
+
+        public int getCopiedChunks() {
+            return copiedChunks;
+        }
+
+        public int getSentChunks() {
+            return sentChunks;
+        }
+    }
+
+    /**
+     * Receiving side: reads instructions from {@code in} and hands back the
+     * rebuilt file, copying COPY chunks out of {@code base}. Reads whole
+     * instructions only, so the trailer stays in the stream.
+     */
+    public static final class Reader extends InputStream {
+        private final DataInputStream in;
+        private final RandomAccessFile base;
+        private final List<Chunk> baseChunks;
+        private long copyPosition;
+        private boolean copying;
+        private int remaining;
+        private long reusedBytes;
+        private long wireBytes;
+
+        public Reader(InputStream in, RandomAccessFile base, List<Chunk> baseChunks) {
+            this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+            this.base = base;
+            this.baseChunks = baseChunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (remaining == 0 && !next()) {
+                return -1;
+            }
+            int n;
+            if (copying) {
+                base.seek(copyPosition);
+                n = base.read(bytes, offset, Math.min(length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Delta base ended at " + copyPosition + " bytes");
+                }
+                copyPosition += n;
+            } else {
+                n = in.read(bytes, offset, Math.min(length, remaining));
+                if (n < 0) {
+                    return -1;
+                }
+                wireBytes += n;
+            }
+            remaining -= n;
+            return n;
+        }
+
+        private boolean next() throws IOException {
+            int op = in.read();
+            if (op < 0) {
+                return false;
+            }
+            int value = in.readInt();
+            wireBytes += OP_HEADER_BYTES;
+            if (op == OP_COPY) {
+                if (value < 0 || value >= baseChunks.size()) {
+                    throw new IOException("Delta COPY of chunk " + value + " of " + baseChunks.size());
+                }
+                Chunk chunk = baseChunks.get(value);
+                copyPosition = chunk.offset;
+                remaining = chunk.length;
+                copying = true;
+                reusedBytes += chunk.length;
+            } else if (op == OP_DATA) {
+                if (value <= 0 || value > MAX_CHUNK_BYTES) {
+                    throw new IOException("Delta DATA of " + value + " bytes");
+                }
+                remaining = value;
+                copying = false;
+            } else {
+                throw new IOException("Unknown delta instruction " + op);
+            }
+            return true;
+        }
+
+        public long getReusedBytes() {
+            return reusedBytes;
+        }
+
+        public long getWireBytes() {
+            return wireBytes;
+        }
+    }
+}
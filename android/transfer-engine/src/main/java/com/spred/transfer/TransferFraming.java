@@ -0,0 +1,133 @@
+package com.spred.transfer;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * TransferFraming - Length-prefixed body frames, so a paused sender can
+ * still talk.
+ *
+ * A plain body is just the file's bytes, so a sender parked by
+ * TransferSession.pause() goes silent and the receiver's read times out
+ * after TransferSockets.READ_TIMEOUT_MS. When the header offers
+ * PROP_KEEPALIVE and the SEND reply echoes it, everything after the reply
+ * (body and trailer, whatever codec the body uses) goes out as frames: an
+ * int length, then that many bytes. A zero-length frame carries nothing
+ * and only exists to reset the receiver's read timeout; the parked sender
+ * writes one every keep-alive interval.
+ */
+public final class TransferFraming {
+    /** Largest frame a Reader accepts; Writer splits longer writes. */
+    public static final int MAX_FRAME_BYTES = 4 * TransferPipeline.SEND_BUFFER_BYTES;
+
+    private TransferFraming() {
+    }
+
+    /** Sending side: one frame per write() call. */
+    static final class Writer extends OutputStream {
+        private final OutputStream out;
+        private final byte[] length = new byte[4];
+        private int keepAlives;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                int frame = Math.min(count, MAX_FRAME_BYTES);
+                writeLength(frame);
+                out.write(bytes, offset, frame);
+                offset += frame;
+                count -= frame;
+            }
+        }
+
+        /** An empty frame, flushed straight away. */
+        void keepAlive() throws IOException {
+            writeLength(0);
+            out.flush();
+            keepAlives++;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void writeLength(int value) throws IOException {
+            length[0] = (byte) (value >>> 24);
+            length[1] = (byte) (value >>> 16);
+            length[2] = (byte) (value >>> 8);
+            length[3] = (byte) value;
+            out.write(length, 0, 4);
+        }
+
+        int getKeepAlives() {
+            return keepAlives;
+        }
+    }
+
+    /** Receiving side: the bytes of the frames, with empty frames skipped. */
+    static final class Reader extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private int keepAlives;
+
+        Reader(InputStream in) {
+            this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            while (remaining == 0) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return -1;
+                }
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (length == 0) {
+                    keepAlives++;
+                }
+                remaining = length;
+            }
+            int n = in.read(bytes, offset, Math.min(count, remaining));
+            if (n < 0) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(remaining, in.available());
+        }
+
+        int getKeepAlives() {
+            return keepAlives;
+        }
+    }
+}
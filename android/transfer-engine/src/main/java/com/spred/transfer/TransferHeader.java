@@ -0,0 +1,134 @@
+package com.spred.transfer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TransferHeader - File metadata sent before the file bytes.
+ *
+ * Legacy senders write writeUTF(fileName) + writeLong(fileSize). Extended
+ * headers start with 0xFFFF where the UTF length would be (no real file name
+ * is 65535 bytes long), followed by a version byte, the same name/size pair
+ * and a string property map. Receivers accept both forms, so old and new
+ * builds keep talking to each other.
+ */
+public final class TransferHeader {
+    public static final int EXTENDED_MARKER = 0xFFFF;
+    public static final int VERSION = 1;
+
+    public static final String PROP_SESSION_TOKEN = "token";
+    /** Sampled content hash (the app's ContentIndex.sampledHash) so the receiver can spot content it already has. */
+    public static final String PROP_CONTENT_HASH = "sampleHash";
+    /** Whole-file SHA-256 (the app's ContentIndex.fullHash); a sampled match alone never skips the transfer. */
+    public static final String PROP_FULL_HASH = "sha256";
+    /** "1" when the sender waits for a TransferReply before streaming. */
+    public static final String PROP_EXPECT_REPLY = "reply";
+    /** Checksum trailers the sender can append ("crc32"); the SEND reply says whether to. */
+    public static final String PROP_CHECKSUM = "checksum";
+    public static final String CHECKSUM_CRC32 = "crc32";
+    /** "1" when the sender can take TransferAcks frames; the SEND reply names the ACK interval. */
+    public static final String PROP_ACKS = "acks";
+    /** Body codec the sender offers ("deflate") when TransferCompression thinks the file will shrink. */
+    public static final String PROP_COMPRESSION = "compress";
+    public static final String COMPRESSION_DEFLATE = "deflate";
+    /** Chunker the sender can build a TransferDelta body with ("cdc-gear"), if the receiver has an earlier copy. */
+    public static final String PROP_DELTA = "delta";
+    public static final String DELTA_CDC_GEAR = "cdc-gear";
+    /** "1" when the sender can frame the body (TransferFraming) and keep the link alive while paused. */
+    public static final String PROP_KEEPALIVE = "keepalive";
+
+    public final String fileName;
+    public final long fileSize;
+    public final int version;
+    private final Map<String, String> properties;
+
+    public TransferHeader(String fileName, long fileSize) {
+        this(fileName, fileSize, 0, Collections.<String, String>emptyMap());
+    }
+
+    public TransferHeader(String fileName, long fileSize, Map<String, String> properties) {
+        this(fileName, fileSize, VERSION, properties);
+    }
+
+    private TransferHeader(String fileName, long fileSize, int version, Map<String, String> properties) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.version = version;
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<>(properties));
+    }
+
+    public boolean isExtended() {
+        return version > 0;
+    }
+
+    public String get(String key) {
+        return properties.get(key);
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public boolean expectsReply() {
+        return "1".equals(properties.get(PROP_EXPECT_REPLY));
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        if (!isExtended()) {
+            out.writeUTF(fileName);
+            out.writeLong(fileSize);
+            return;
+        }
+        out.writeShort(EXTENDED_MARKER);
+        out.writeByte(version);
+        out.writeUTF(fileName);
+        out.writeLong(fileSize);
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            out.writeUTF(property.getKey());
+            out.writeUTF(property.getValue());
+        }
+    }
+
+    public static TransferHeader read(DataInputStream in) throws IOException {
+        int lengthOrMarker = in.readUnsignedShort();
+        if (lengthOrMarker != EXTENDED_MARKER) {
+            // Legacy header: we already consumed the UTF length, rebuild it for readUTF
+            byte[] utf = new byte[lengthOrMarker + 2];
+            utf[0] = (byte) (lengthOrMarker >>> 8);
+            utf[1] = (byte) lengthOrMarker;
+            in.readFully(utf, 2, lengthOrMarker);
+            String fileName = new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+            return new TransferHeader(fileName, in.readLong());
+        }
+
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported transfer header version: " + version);
+        }
+        String fileName = in.readUTF();
+        long fileSize = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > 256) {
+            throw new IOException("Invalid header property count: " + count);
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            properties.put(in.readUTF(), in.readUTF());
+        }
+        return new TransferHeader(fileName, fileSize, version, properties);
+    }
+
+    /** Serialized size, handy for tests and for accounting header overhead. */
+    public int encodedLength() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(new DataOutputStream(bytes));
+        return bytes.size();
+    }
+}
@@ -0,0 +1,186 @@
+package com.spred.transfer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Checksum;
+
+/**
+ * TransferPipeline - The byte-moving loops shared by every transfer stack.
+ *
+ * send() streams a known number of bytes from a source to the socket with a
+ * large buffer; receive() reads exactly the declared size from the socket
+ * into a Sink (ReceiveFile, or a bare CoalescingSink). Both can feed a
+ * Checksum as the bytes pass and report progress through a
+ * TransferListener, throttled so a fast link doesn't flood the JS bridge
+ * with an event per read. An optional Gate is checked before every chunk,
+ * which is how a transfer is paused in place or stopped.
+ */
+public final class TransferPipeline {
+    public static final int SEND_BUFFER_BYTES = 256 * 1024;
+    public static final int RECEIVE_BUFFER_BYTES = 64 * 1024;
+    public static final long PROGRESS_INTERVAL_MS = 100;
+
+    /** Where received bytes go. */
+    public interface Sink {
+        void write(byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    /** A Sink that buffers, and can say how much of what it was given has left its buffer. */
+    public interface DurableSink extends Sink {
+        long getDurableBytes();
+    }
+
+    public interface TransferListener {
+        /** First chunk, then at most every PROGRESS_INTERVAL_MS, and always once at the end. */
+        void onProgress(long bytesDone, long totalBytes);
+    }
+
+    /**
+     * Checked before each chunk with the bytes moved so far: returns at once
+     * normally, blocks while paused or while the ACK window is full, throws
+     * to stop.
+     */
+    public interface Gate {
+        void checkpoint(long bytesDone) throws IOException;
+    }
+
+    /** Something the peer can read, so a held connection doesn't hit its read timeout. */
+    public interface KeepAlive {
+        void keepAlive() throws IOException;
+    }
+
+    /**
+     * A Gate that can hold the loop for longer than the peer's read timeout
+     * (a pause). The protocol layer hands it a KeepAlive, which it calls on
+     * the transfer thread every so often while the loop is held.
+     */
+    public interface KeepAliveGate extends Gate {
+        /** Null to stop; set for the body only. */
+        void setKeepAlive(KeepAlive keepAlive);
+    }
+
+    public static final class Result {
+        public final long bytes;
+        /** read() calls on the receive side, write() calls on the send side. */
+        public final int ioCalls;
+        public final long elapsedMs;
+
+        Result(long bytes, int ioCalls, long elapsedMs) {
+            this.bytes = bytes;
+            this.ioCalls = ioCalls;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public double getMbPerSecond() {
+            return elapsedMs > 0 ? bytes / (1024.0 * 1024.0) / (elapsedMs / 1000.0) : 0;
+        }
+    }
+
+    private TransferPipeline() {
+    }
+
+    /**
+     * Copy exactly {@code size} bytes from {@code source} to {@code out}.
+     * Fails if the source ends early; does not flush or close {@code out}.
+     */
+    public static Result send(InputStream source, long size, OutputStream out, Checksum checksum,
+                              TransferListener listener) throws IOException {
+        return send(source, size, out, checksum, null, listener);
+    }
+
+    public static Result send(InputStream source, long size, OutputStream out, Checksum checksum, Gate gate,
+                              TransferListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        byte[] buffer = new byte[SEND_BUFFER_BYTES];
+        Throttle throttle = new Throttle(size, listener);
+        long sent = 0;
+        int writes = 0;
+        while (sent < size) {
+            if (gate != null) {
+                gate.checkpoint(sent);
+            }
+            int n = source.read(buffer, 0, (int) Math.min(buffer.length, size - sent));
+            if (n < 0) {
+                throw new EOFException("Source ended after " + sent + " of " + size + " bytes");
+            }
+            out.write(buffer, 0, n);
+            writes++;
+            if (checksum != null) {
+                checksum.update(buffer, 0, n);
+            }
+            sent += n;
+            throttle.onProgress(sent);
+        }
+        throttle.finish(sent);
+        return new Result(sent, writes, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Read exactly {@code size} bytes from {@code in} into {@code sink}.
+     * Fails if the connection closes early; never reads past {@code size},
+     * so a trailer or the next message stays in the stream.
+     */
+    public static Result receive(InputStream in, long size, Sink sink, Checksum checksum,
+                                 TransferListener listener) throws IOException {
+        return receive(in, size, sink, checksum, null, listener);
+    }
+
+    public static Result receive(InputStream in, long size, Sink sink, Checksum checksum, Gate gate,
+                                 TransferListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        byte[] buffer = new byte[RECEIVE_BUFFER_BYTES];
+        Throttle throttle = new Throttle(size, listener);
+        long received = 0;
+        int reads = 0;
+        while (received < size) {
+            if (gate != null) {
+                gate.checkpoint(received);
+            }
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, size - received));
+            if (n < 0) {
+                throw new EOFException("Connection closed after " + received + " of " + size + " bytes");
+            }
+            reads++;
+            sink.write(buffer, 0, n);
+            if (checksum != null) {
+                checksum.update(buffer, 0, n);
+            }
+            received += n;
+            throttle.onProgress(received);
+        }
+        throttle.finish(received);
+        return new Result(received, reads, System.currentTimeMillis() - start);
+    }
+
+    static final class Throttle {
+        private final long total;
+        private final TransferListener listener;
+        private long lastAt = -1;
+        private long lastDone = -1;
+
+        Throttle(long total, TransferListener listener) {
+            this.total = total;
+            this.listener = listener;
+        }
+
+        void onProgress(long done) {
+            if (listener == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (lastAt < 0 || now - lastAt >= PROGRESS_INTERVAL_MS || done >= total) {
+                lastAt = now;
+                lastDone = done;
+                listener.onProgress(done, total);
+            }
+        }
+
+        void finish(long done) {
+            if (listener != null && lastDone != done) {
+                listener.onProgress(done, total);
+            }
+        }
+    }
+}
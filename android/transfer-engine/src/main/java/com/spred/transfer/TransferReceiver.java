@@ -0,0 +1,230 @@
+package com.spred.transfer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * TransferReceiver - Receiving side of the Spred transfer protocol.
+ *
+ * The caller reads the header, decides (token, dedupe, storage) and then
+ * either reply()s with a skip/reject or accept()s and receive()s the body.
+ * accept() takes up a CRC32 trailer whenever the header offers one, and
+ * receive() checks it before returning, so a corrupted body never reaches
+ * ReceiveFile.commit(). accept() also takes up TransferAcks when offered:
+ * receive() then ACKs the body as it reaches the file, and confirm(),
+ * called once the file is committed, tells the sender it is done. An
+ * offered deflate codec is always taken up; receive() decodes the frames
+ * before the sink, checksum or ACKs see the bytes. Given a base file,
+ * accept() takes up an offered TransferDelta instead and receive() rebuilds
+ * the file from the base and what the sender could not skip. An offered
+ * PROP_KEEPALIVE is always taken up too: the rest of the stream is read
+ * through TransferFraming, and while a pausing gate holds the body, the
+ * receiver repeats its last ACK so the sender's wait doesn't time out.
+ */
+public final class TransferReceiver {
+
+    /** The body arrived complete but its CRC32 doesn't match the sender's trailer. */
+    public static final class ChecksumMismatchException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ChecksumMismatchException(long expected, long actual) {
+            super("Checksum mismatch: sender " + Long.toHexString(expected) + ", received " + Long.toHexString(actual));
+        }
+    }
+
+    private DataInputStream in;
+    private final OutputStream socketOut;
+    private TransferHeader header;
+    private boolean checksummed;
+    private boolean acknowledging;
+    private boolean compressed;
+    private TransferFraming.Reader framing;
+    private TransferAcks.AckingSink acks;
+    private TransferCompression.Decoder decoder;
+    private File deltaBase;
+    private List<TransferDelta.Chunk> baseChunks;
+    private TransferDelta.Reader deltaReader;
+    private long chunkingBudgetMs = TransferDelta.CHUNKING_BUDGET_MS;
+
+    public TransferReceiver(InputStream socketIn, OutputStream socketOut) {
+        this.in = new DataInputStream(socketIn);
+        this.socketOut = socketOut;
+    }
+
+    public TransferHeader readHeader() throws IOException {
+        header = TransferHeader.read(in);
+        return header;
+    }
+
+    /** Send a skip or reject; headers that didn't ask for a reply get nothing. */
+    public void reply(TransferReply reply) throws IOException {
+        if (header.expectsReply()) {
+            reply.write(new DataOutputStream(socketOut));
+        }
+    }
+
+    /** Ask for the body, taking up the checksum trailer if the header offered one. */
+    public void accept() throws IOException {
+        accept(null);
+    }
+
+    /**
+     * As accept(), and if the header offered a delta and {@code base} (an
+     * earlier copy, see TransferDelta.findBase) is not null, chunk the base
+     * and send its hashes so only the missing chunks come over. A base that
+     * can't be chunked within the budget is dropped and the whole file is
+     * asked for instead, before the waiting sender's read times out.
+     */
+    public void accept(File base) throws IOException {
+        if (base != null && header.expectsReply()
+                && TransferHeader.DELTA_CDC_GEAR.equals(header.get(TransferHeader.PROP_DELTA))) {
+            baseChunks = TransferDelta.chunk(base, chunkingBudgetMs);
+            deltaBase = baseChunks != null ? base : null;
+        }
+        checksummed = header.expectsReply()
+            && TransferHeader.CHECKSUM_CRC32.equals(header.get(TransferHeader.PROP_CHECKSUM));
+        acknowledging = header.expectsReply() && "1".equals(header.get(TransferHeader.PROP_ACKS));
+        compressed = header.expectsReply() && deltaBase == null
+            && TransferHeader.COMPRESSION_DEFLATE.equals(header.get(TransferHeader.PROP_COMPRESSION));
+        boolean framed = header.expectsReply() && "1".equals(header.get(TransferHeader.PROP_KEEPALIVE));
+        if (header.expectsReply()) {
+            Map<String, String> properties = new HashMap<>();
+            if (checksummed) {
+                properties.put(TransferReply.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+            }
+            if (acknowledging) {
+                properties.put(TransferReply.PROP_ACKS, String.valueOf(TransferAcks.DEFAULT_INTERVAL_BYTES));
+            }
+            if (compressed) {
+                properties.put(TransferReply.PROP_COMPRESSION, TransferHeader.COMPRESSION_DEFLATE);
+            }
+            if (deltaBase != null) {
+                properties.put(TransferReply.PROP_DELTA, TransferHeader.DELTA_CDC_GEAR);
+            }
+            if (framed) {
+                properties.put(TransferReply.PROP_KEEPALIVE, "1");
+            }
+            DataOutputStream out = new DataOutputStream(socketOut);
+            new TransferReply(TransferReply.STATUS_SEND, properties).write(out);
+            if (deltaBase != null) {
+                TransferDelta.writeHashes(out, baseChunks);
+            }
+        }
+        if (framed) {
+            framing = new TransferFraming.Reader(in);
+            in = new DataInputStream(framing);
+        }
+    }
+
+    /** Read the body (and trailer) into {@code sink}; call after accept(). */
+    public TransferPipeline.Result receive(TransferPipeline.Sink sink, TransferPipeline.TransferListener listener) throws IOException {
+        return receive(sink, null, listener);
+    }
+
+    public TransferPipeline.Result receive(TransferPipeline.Sink sink, TransferPipeline.Gate gate,
+                                           TransferPipeline.TransferListener listener) throws IOException {
+        CRC32 crc = checksummed ? new CRC32() : null;
+        if (acknowledging) {
+            sink = acks = new TransferAcks.AckingSink(sink, socketOut, TransferAcks.DEFAULT_INTERVAL_BYTES);
+            if (gate instanceof TransferPipeline.KeepAliveGate) {
+                ((TransferPipeline.KeepAliveGate) gate).setKeepAlive(acks::keepAlive);
+            }
+        }
+        try {
+            return receiveBody(sink, crc, gate, listener);
+        } finally {
+            if (acks != null && gate instanceof TransferPipeline.KeepAliveGate) {
+                ((TransferPipeline.KeepAliveGate) gate).setKeepAlive(null);
+            }
+        }
+    }
+
+    private TransferPipeline.Result receiveBody(TransferPipeline.Sink sink, CRC32 crc, TransferPipeline.Gate gate,
+                                                TransferPipeline.TransferListener listener) throws IOException {
+        TransferPipeline.Result body;
+        if (compressed) {
+            decoder = new TransferCompression.Decoder(in);
+            try {
+                body = TransferPipeline.receive(decoder, header.fileSize, sink, crc, gate, listener);
+            } finally {
+                decoder.close();
+            }
+        } else if (deltaBase != null) {
+            try (RandomAccessFile base = new RandomAccessFile(deltaBase, "r")) {
+                deltaReader = new TransferDelta.Reader(in, base, baseChunks);
+                body = TransferPipeline.receive(deltaReader, header.fileSize, sink, crc, gate, listener);
+            }
+        } else {
+            body = TransferPipeline.receive(in, header.fileSize, sink, crc, gate, listener);
+        }
+        if (crc != null) {
+            long expected = in.readLong();
+            if (expected != crc.getValue()) {
+                throw new ChecksumMismatchException(expected, crc.getValue());
+            }
+        }
+        return body;
+    }
+
+    /** Tell an ACKing sender the file is committed; a no-op for senders that didn't ask. */
+    public void confirm() throws IOException {
+        if (acks != null) {
+            acks.commit(header.fileSize);
+        }
+    }
+
+    /** Tests spend the budget up front to see the fallback to a whole-file receive. */
+    void setChunkingBudgetMs(long budgetMs) {
+        this.chunkingBudgetMs = budgetMs;
+    }
+
+    public boolean isChecksummed() {
+        return checksummed;
+    }
+
+    public boolean isAcknowledging() {
+        return acknowledging;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public boolean isDelta() {
+        return deltaBase != null;
+    }
+
+    public boolean isFramed() {
+        return framing != null;
+    }
+
+    /** Empty frames a paused sender wrote to keep this receive alive. */
+    public int getKeepAlivesReceived() {
+        return framing != null ? framing.getKeepAlives() : 0;
+    }
+
+    /** Bytes copied from the delta base rather than received; 0 without a delta. */
+    public long getReusedBytes() {
+        return deltaReader != null ? deltaReader.getReusedBytes() : 0;
+    }
+
+    /** Body bytes that crossed the socket; the file size unless compressed or sent as a delta. */
+    public long getWireBytes() {
+        return decoder != null ? decoder.getWireBytes()
+            : deltaReader != null ? deltaReader.getWireBytes()
+            : header.fileSize;
+    }
+
+    public int getAcksSent() {
+        return acks != null ? acks.getAcksSent() : 0;
+    }
+}
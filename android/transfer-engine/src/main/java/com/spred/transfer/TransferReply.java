@@ -0,0 +1,89 @@
+package com.spred.transfer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TransferReply - Receiver's answer to an extended TransferHeader.
+ *
+ * Only sent when the header carries PROP_EXPECT_REPLY, so legacy senders
+ * (which never read from the socket) see exactly the old byte stream. The
+ * receiver either asks for the bytes, says it already has the content, or
+ * rejects the transfer with a code the sender can surface to JS.
+ */
+public final class TransferReply {
+    public static final int STATUS_SEND = 0;
+    public static final int STATUS_ALREADY_HAVE = 1;
+    public static final int STATUS_REJECTED = 2;
+
+    public static final String PROP_EXISTING_NAME = "existing";
+    public static final String PROP_ERROR_CODE = "code";
+    public static final String PROP_MESSAGE = "message";
+    /** On a SEND reply: the checksum trailer the receiver wants (one the header offered). */
+    public static final String PROP_CHECKSUM = TransferHeader.PROP_CHECKSUM;
+    /** On a SEND reply: bytes between the receiver's progress ACKs, if the header offered them. */
+    public static final String PROP_ACKS = TransferHeader.PROP_ACKS;
+    /** On a SEND reply: the body codec the receiver will decode (the one the header offered). */
+    public static final String PROP_COMPRESSION = TransferHeader.PROP_COMPRESSION;
+    /** On a SEND reply: the receiver has a base to build on; its chunk hashes follow the reply. */
+    public static final String PROP_DELTA = TransferHeader.PROP_DELTA;
+    /** On a SEND reply: everything after the reply comes as TransferFraming frames. */
+    public static final String PROP_KEEPALIVE = TransferHeader.PROP_KEEPALIVE;
+
+    public final int status;
+    private final Map<String, String> properties;
+
+    public TransferReply(int status) {
+        this(status, Collections.<String, String>emptyMap());
+    }
+
+    public TransferReply(int status, Map<String, String> properties) {
+        this.status = status;
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<>(properties));
+    }
+
+    public static TransferReply alreadyHave(String existingName) {
+        return new TransferReply(STATUS_ALREADY_HAVE, Collections.singletonMap(PROP_EXISTING_NAME, existingName));
+    }
+
+    public static TransferReply rejected(String code, String message) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(PROP_ERROR_CODE, code);
+        properties.put(PROP_MESSAGE, message);
+        return new TransferReply(STATUS_REJECTED, properties);
+    }
+
+    public String get(String key) {
+        return properties.get(key);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(status);
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            out.writeUTF(property.getKey());
+            out.writeUTF(property.getValue());
+        }
+        out.flush();
+    }
+
+    public static TransferReply read(DataInputStream in) throws IOException {
+        int status = in.readUnsignedByte();
+        if (status > STATUS_REJECTED) {
+            throw new IOException("Unknown transfer reply status: " + status);
+        }
+        int count = in.readInt();
+        if (count < 0 || count > 256) {
+            throw new IOException("Invalid reply property count: " + count);
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            properties.put(in.readUTF(), in.readUTF());
+        }
+        return new TransferReply(status, properties);
+    }
+}
@@ -0,0 +1,189 @@
+package com.spred.transfer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * TransferSender - Sending side of the Spred transfer protocol.
+ *
+ * Writes the TransferHeader, waits for the TransferReply when the header
+ * asks for one, then streams the body through TransferPipeline. If the
+ * header offered a CRC32 trailer and the SEND reply took it up, the
+ * checksum of the body follows as one long. If it offered TransferAcks and
+ * the reply named an interval, progress comes from the receiver's ACKs,
+ * in-flight bytes are capped by the ACK window, and send() returns only
+ * once the receiver has committed the file. If it offered compression and
+ * the reply echoed the codec, the body goes out as TransferCompression
+ * frames. If it offered TransferDelta and the receiver has an earlier copy,
+ * the body is COPY and DATA instructions against that copy's chunks instead.
+ * If it offered PROP_KEEPALIVE and the reply echoed it, everything after the
+ * reply goes out as TransferFraming frames, and a gate that pauses the body
+ * writes empty ones so the receiver's read doesn't time out.
+ */
+public final class TransferSender {
+
+    public enum Outcome {
+        SENT,
+        ALREADY_HAVE,
+        REJECTED
+    }
+
+    public static final class Result {
+        public final Outcome outcome;
+        /** Null for headers that don't ask for a reply. */
+        public final TransferReply reply;
+        /** Null unless the body was sent. */
+        public final TransferPipeline.Result body;
+        public final boolean checksummed;
+        /** True when the receiver ACKed the body and confirmed the commit. */
+        public final boolean acknowledged;
+        /** Most bytes unacknowledged at once; 0 without ACKs. */
+        public final long maxUnackedBytes;
+        public final int acksReceived;
+        /** True when the body went out as compression frames (some may still be stored). */
+        public final boolean compressed;
+        /** Body bytes that crossed the socket; the file size unless compressed or sent as a delta. */
+        public final long wireBytes;
+        public final int deflatedChunks;
+        /** True when the body went out as a TransferDelta against the receiver's copy. */
+        public final boolean delta;
+        /** File bytes the receiver copied from its own copy instead of receiving. */
+        public final long reusedBytes;
+        /** True when the body was framed, so pauses could keep the link alive. */
+        public final boolean framed;
+        /** Empty frames written while the body was paused. */
+        public final int keepAlives;
+
+        Result(Outcome outcome, TransferReply reply, TransferPipeline.Result body, boolean checksummed) {
+            this(outcome, reply, body, checksummed, null, null, null, null);
+        }
+
+        Result(Outcome outcome, TransferReply reply, TransferPipeline.Result body, boolean checksummed,
+               TransferAcks.Window window, TransferCompression.Encoder encoder, TransferDelta.Writer deltaWriter,
+               TransferFraming.Writer framing) {
+            this.outcome = outcome;
+            this.reply = reply;
+            this.body = body;
+            this.checksummed = checksummed;
+            this.acknowledged = window != null;
+            this.maxUnackedBytes = window != null ? window.getMaxUnacked() : 0;
+            this.acksReceived = window != null ? window.getAcksReceived() : 0;
+            this.compressed = encoder != null;
+            this.wireBytes = encoder != null ? encoder.getWireBytes()
+                : deltaWriter != null ? deltaWriter.getWireBytes()
+                : body != null ? body.bytes : 0;
+            this.deflatedChunks = encoder != null ? encoder.getDeflatedFrames() : 0;
+            this.delta = deltaWriter != null;
+            this.reusedBytes = deltaWriter != null ? deltaWriter.getReusedBytes() : 0;
+            this.framed = framing != null;
+            this.keepAlives = framing != null ? framing.getKeepAlives() : 0;
+        }
+    }
+
+    private TransferSender() {
+    }
+
+    /**
+     * Send {@code header} and then {@code header.fileSize} bytes of
+     * {@code source}. Flushes but does not close the socket streams.
+     */
+    public static Result send(TransferHeader header, InputStream source, InputStream socketIn, OutputStream socketOut,
+                              TransferPipeline.TransferListener listener) throws IOException {
+        return send(header, source, socketIn, socketOut, null, listener);
+    }
+
+    public static Result send(TransferHeader header, InputStream source, InputStream socketIn, OutputStream socketOut,
+                              TransferPipeline.Gate gate, TransferPipeline.TransferListener listener) throws IOException {
+        // Small header fields go out in one segment; body writes are larger than the buffer and bypass it
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socketOut));
+        header.write(out);
+        out.flush();
+
+        TransferReply reply = null;
+        boolean checksummed = false;
+        boolean acknowledged = false;
+        boolean compressed = false;
+        boolean framed = false;
+        Map<ByteBuffer, Integer> receiverChunks = null;
+        if (header.expectsReply()) {
+            reply = TransferReply.read(new DataInputStream(socketIn));
+            if (reply.status == TransferReply.STATUS_ALREADY_HAVE) {
+                return new Result(Outcome.ALREADY_HAVE, reply, null, false);
+            }
+            if (reply.status == TransferReply.STATUS_REJECTED) {
+                return new Result(Outcome.REJECTED, reply, null, false);
+            }
+            checksummed = TransferHeader.CHECKSUM_CRC32.equals(header.get(TransferHeader.PROP_CHECKSUM))
+                && TransferHeader.CHECKSUM_CRC32.equals(reply.get(TransferReply.PROP_CHECKSUM));
+            acknowledged = "1".equals(header.get(TransferHeader.PROP_ACKS)) && reply.get(TransferReply.PROP_ACKS) != null;
+            if (TransferHeader.DELTA_CDC_GEAR.equals(header.get(TransferHeader.PROP_DELTA))
+                    && TransferHeader.DELTA_CDC_GEAR.equals(reply.get(TransferReply.PROP_DELTA))) {
+                receiverChunks = TransferDelta.readHashes(new DataInputStream(socketIn));
+            }
+            // A delta body is never compressed as well
+            compressed = receiverChunks == null
+                && TransferHeader.COMPRESSION_DEFLATE.equals(header.get(TransferHeader.PROP_COMPRESSION))
+                && TransferHeader.COMPRESSION_DEFLATE.equals(reply.get(TransferReply.PROP_COMPRESSION));
+            framed = "1".equals(header.get(TransferHeader.PROP_KEEPALIVE)) && "1".equals(reply.get(TransferReply.PROP_KEEPALIVE));
+        }
+
+        // Framing sits under the buffer, so each buffer flush or large body write is one frame
+        TransferFraming.Writer framing = framed ? new TransferFraming.Writer(socketOut) : null;
+        if (framing != null) {
+            out = new DataOutputStream(new BufferedOutputStream(framing));
+        }
+        DataOutputStream bodyOut = out;
+
+        // With ACKs the window reports progress, from what the receiver has actually written
+        TransferAcks.Window window = acknowledged
+            ? new TransferAcks.Window(socketIn, out, header.fileSize, TransferAcks.WINDOW_BYTES, listener) : null;
+        TransferPipeline.Gate bodyGate = window == null ? gate
+            : gate == null ? window
+            : sent -> {
+                gate.checkpoint(sent);
+                window.checkpoint(sent);
+            };
+        CRC32 crc = checksummed ? new CRC32() : null;
+        // Checksum, gate and progress all see raw bytes; only the encoder knows about frames
+        TransferCompression.Encoder encoder = compressed ? new TransferCompression.Encoder(out) : null;
+        TransferDelta.Writer deltaWriter = receiverChunks != null ? new TransferDelta.Writer(out, receiverChunks) : null;
+        if (framing != null && gate instanceof TransferPipeline.KeepAliveGate) {
+            ((TransferPipeline.KeepAliveGate) gate).setKeepAlive(() -> {
+                // Whatever the receiver is owed goes first, then the empty frame
+                bodyOut.flush();
+                framing.keepAlive();
+            });
+        }
+        TransferPipeline.Result body;
+        try {
+            body = TransferPipeline.send(source, header.fileSize,
+                encoder != null ? encoder : deltaWriter != null ? deltaWriter : out, crc, bodyGate,
+                window != null ? null : listener);
+            if (deltaWriter != null) {
+                deltaWriter.finish();
+            }
+        } finally {
+            if (encoder != null) {
+                encoder.close();
+            }
+            if (framing != null && gate instanceof TransferPipeline.KeepAliveGate) {
+                ((TransferPipeline.KeepAliveGate) gate).setKeepAlive(null);
+            }
+        }
+        if (crc != null) {
+            out.writeLong(crc.getValue());
+        }
+        out.flush();
+        if (window != null) {
+            window.awaitCommitted();
+        }
+        return new Result(Outcome.SENT, reply, body, checksummed, window, encoder, deltaWriter, framing);
+    }
+}
@@ -0,0 +1,349 @@
+package com.spred.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * TransferSession - One send or receive, from the first socket to the result.
+ *
+ * Identity (id, direction, destination) is fixed when the registry creates
+ * the session. Everything that changes while bytes move - state, progress,
+ * the peer - is atomic or volatile, so the transfer thread can update it
+ * while the JS thread reads a snapshot. The sockets a transfer opens are
+ * attach()ed to it and closed when it finishes, and its outcome settles
+ * exactly once: the first complete(), fail() or cancel() wins, later calls
+ * from another path (a timeout racing a success, say) are ignored.
+ *
+ * The session is also the Gate its TransferPipeline loop checks before each
+ * chunk. While it runs that check is one volatile read. pause() parks the
+ * loop in place - buffer, file position and checksum intact, socket left
+ * open - until resume(). While parked, the loop wakes every keep-alive
+ * interval to run the KeepAlive its protocol layer set, so the peer's read
+ * timeout doesn't end a long pause. cancel() settles the session and closes its
+ * sockets, so a loop blocked in read() or write() fails straight away
+ * rather than at its next checkpoint, and the caller's cleanup (deleting a
+ * partial ReceiveFile) runs on the way out.
+ */
+public final class TransferSession implements TransferPipeline.KeepAliveGate {
+
+    public enum Direction {
+        SEND,
+        RECEIVE
+    }
+
+    public enum State {
+        /** Created; no peer connected yet. */
+        PENDING,
+        /** Header read or sent, body moving. */
+        ACTIVE,
+        /** Loop parked at its next checkpoint until resume(). */
+        PAUSED,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    /** Thrown at a checkpoint once the session was cancelled (or failed) from another thread. */
+    public static final class CancelledException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CancelledException(String id, State state) {
+            super("Transfer " + id + " stopped: " + state.name().toLowerCase(Locale.US));
+        }
+    }
+
+    /** How the outcome reaches the caller; WifiDirectModule wraps a React Native Promise. */
+    public interface Completion {
+        void resolve(Object result);
+
+        void reject(String code, String message);
+    }
+
+    public final String id;
+    public final Direction direction;
+    /** Directory a receive lands in; null for sends. */
+    public final String destination;
+    public final long createdAtMs;
+
+    final int sequence;
+    private final Completion completion;
+    private final TransferSessionRegistry registry;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final List<Closeable> resources = new ArrayList<>();
+    private final Object pauseLock = new Object();
+    /** True while paused or finished, so the running checkpoint is a single volatile read. */
+    private volatile boolean held;
+    private volatile long totalBytes = -1;
+    private volatile String fileName;
+    private volatile String peerAddress;
+    private volatile long startedAtMs;
+    private volatile long finishedAtMs;
+    private volatile long pausedAtMs;
+    private volatile long pausedTotalMs;
+    private volatile long parkedAtNanos;
+    private volatile TransferPipeline.KeepAlive keepAlive;
+    private volatile long keepAliveIntervalMs = TransferSockets.KEEPALIVE_INTERVAL_MS;
+    private volatile String errorCode;
+    private volatile String errorMessage;
+
+    TransferSession(TransferSessionRegistry registry, int sequence, Direction direction, String destination,
+                    Completion completion) {
+        this.registry = registry;
+        this.sequence = sequence;
+        this.id = "transfer_" + sequence;
+        this.direction = direction;
+        this.destination = destination;
+        this.completion = completion;
+        this.createdAtMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Close {@code resource} when this session finishes. A session that has
+     * already finished closes it straight away, so a socket accepted just as
+     * the transfer failed isn't leaked.
+     */
+    public <T extends Closeable> T attach(T resource) {
+        synchronized (resources) {
+            if (!isFinished()) {
+                resources.add(resource);
+                return resource;
+            }
+        }
+        closeQuietly(resource);
+        return resource;
+    }
+
+    /** The header is known; the body is about to move. */
+    public void begin(String fileName, long totalBytes, String peerAddress) {
+        this.fileName = fileName;
+        this.totalBytes = totalBytes;
+        this.peerAddress = peerAddress;
+        this.startedAtMs = System.currentTimeMillis();
+        state.compareAndSet(State.PENDING, State.ACTIVE);
+    }
+
+    /** Park the body loop at its next chunk. False if the session is not running. */
+    public boolean pause() {
+        synchronized (pauseLock) {
+            if (!state.compareAndSet(State.ACTIVE, State.PAUSED) && !state.compareAndSet(State.PENDING, State.PAUSED)) {
+                return false;
+            }
+            pausedAtMs = System.currentTimeMillis();
+            held = true;
+            return true;
+        }
+    }
+
+    public boolean resume() {
+        synchronized (pauseLock) {
+            if (!state.compareAndSet(State.PAUSED, startedAtMs != 0 ? State.ACTIVE : State.PENDING)) {
+                return false;
+            }
+            pausedTotalMs += System.currentTimeMillis() - pausedAtMs;
+            held = false;
+            pauseLock.notifyAll();
+            return true;
+        }
+    }
+
+    /** Stop the transfer now: settle with TRANSFER_CANCELLED and close its sockets. */
+    public boolean cancel() {
+        if (!finish(State.CANCELLED)) {
+            return false;
+        }
+        errorCode = "TRANSFER_CANCELLED";
+        errorMessage = "Transfer " + id + " was cancelled";
+        if (completion != null) {
+            completion.reject(errorCode, errorMessage);
+        }
+        return true;
+    }
+
+    @Override
+    public void checkpoint(long bytesDone) throws IOException {
+        if (!held) {
+            return;
+        }
+        while (true) {
+            TransferPipeline.KeepAlive due;
+            synchronized (pauseLock) {
+                if (state.get() != State.PAUSED) {
+                    break;
+                }
+                parkedAtNanos = System.nanoTime();
+                due = keepAlive;
+                try {
+                    pauseLock.wait(due != null ? keepAliveIntervalMs : 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while paused");
+                }
+                if (state.get() != State.PAUSED) {
+                    break;
+                }
+            }
+            // Outside the lock: a write stuck on a dead link mustn't block cancel()
+            if (due != null) {
+                due.keepAlive();
+            }
+        }
+        if (isFinished()) {
+            throw new CancelledException(id, state.get());
+        }
+    }
+
+    @Override
+    public void setKeepAlive(TransferPipeline.KeepAlive keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /** Tests shorten this along with the sockets' read timeout. */
+    void setKeepAliveIntervalMs(long intervalMs) {
+        this.keepAliveIntervalMs = intervalMs;
+    }
+
+    /** Wrap {@code listener} (may be null) so every progress report also updates this session. */
+    public TransferPipeline.TransferListener track(TransferPipeline.TransferListener listener) {
+        return (done, total) -> {
+            bytesDone.set(done);
+            if (listener != null) {
+                listener.onProgress(done, total);
+            }
+        };
+    }
+
+    /** Returns false if the session had already finished; the result is then dropped. */
+    public boolean complete(Object result) {
+        if (!finish(State.COMPLETED)) {
+            return false;
+        }
+        if (completion != null) {
+            completion.resolve(result);
+        }
+        return true;
+    }
+
+    public boolean fail(String code, String message) {
+        if (!finish(State.FAILED)) {
+            return false;
+        }
+        errorCode = code;
+        errorMessage = message;
+        if (completion != null) {
+            completion.reject(code, message);
+        }
+        return true;
+    }
+
+    private boolean finish(State outcome) {
+        synchronized (pauseLock) {
+            State current;
+            do {
+                current = state.get();
+                if (isFinished(current)) {
+                    return false;
+                }
+            } while (!state.compareAndSet(current, outcome));
+            finishedAtMs = System.currentTimeMillis();
+            if (current == State.PAUSED) {
+                pausedTotalMs += finishedAtMs - pausedAtMs;
+            }
+            held = true;
+            pauseLock.notifyAll();
+        }
+
+        List<Closeable> toClose;
+        synchronized (resources) {
+            toClose = new ArrayList<>(resources);
+            resources.clear();
+        }
+        for (Closeable resource : toClose) {
+            closeQuietly(resource);
+        }
+        registry.onFinished(this);
+        return true;
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isFinished() {
+        return isFinished(state.get());
+    }
+
+    private static boolean isFinished(State state) {
+        return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    /** System.nanoTime() when the loop last parked at a checkpoint; 0 if it never has. */
+    public long getParkedAtNanos() {
+        return parkedAtNanos;
+    }
+
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    /** -1 until the header is known. */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getPeerAddress() {
+        return peerAddress;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /** Time since begin() less time spent paused, frozen once the session finishes; 0 before the body starts. */
+    public long getElapsedMs() {
+        long started = startedAtMs;
+        if (started == 0) {
+            return 0;
+        }
+        long finished = finishedAtMs;
+        long end = finished != 0 ? finished : System.currentTimeMillis();
+        long paused = pausedTotalMs;
+        if (finished == 0 && state.get() == State.PAUSED) {
+            paused += end - pausedAtMs;
+        }
+        // A session paused before its body began counts that wait from begin() on only
+        return Math.max(0, end - started - paused);
+    }
+
+    public long getPausedMs() {
+        long paused = pausedTotalMs;
+        return state.get() == State.PAUSED ? paused + System.currentTimeMillis() - pausedAtMs : paused;
+    }
+
+    public double getMbPerSecond() {
+        long elapsedMs = getElapsedMs();
+        return elapsedMs > 0 ? bytesDone.get() / (1024.0 * 1024.0) / (elapsedMs / 1000.0) : 0;
+    }
+}
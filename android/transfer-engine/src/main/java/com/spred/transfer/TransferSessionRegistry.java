@@ -0,0 +1,110 @@
+package com.spred.transfer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TransferSessionRegistry - Every transfer this process is running, by ID.
+ *
+ * Sessions are created here and stay in the map while they run, so any
+ * thread can look one up by the "transfer_N" ID the JS side was given.
+ * Finished sessions are kept for a while (the last FINISHED_HISTORY of
+ * them) so a caller that asks just after the end still sees the outcome.
+ */
+public final class TransferSessionRegistry {
+    public static final int FINISHED_HISTORY = 20;
+
+    private final ConcurrentHashMap<String, TransferSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSequence = new AtomicInteger(1);
+    private final ArrayDeque<String> finishedIds = new ArrayDeque<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+
+    /** {@code completion} may be null for transfers that only report through events. */
+    public TransferSession create(TransferSession.Direction direction, String destination,
+                                  TransferSession.Completion completion) {
+        TransferSession session = new TransferSession(this, nextSequence.getAndIncrement(), direction, destination, completion);
+        sessions.put(session.id, session);
+        return session;
+    }
+
+    /** Null if the ID is unknown or has dropped out of the finished history. */
+    public TransferSession get(String id) {
+        return id != null ? sessions.get(id) : null;
+    }
+
+    /** Running and recently finished sessions, oldest first. */
+    public List<TransferSession> getAll() {
+        List<TransferSession> all = new ArrayList<>(sessions.values());
+        Collections.sort(all, (a, b) -> Integer.compare(a.sequence, b.sequence));
+        return all;
+    }
+
+    public List<TransferSession> getActive() {
+        List<TransferSession> active = new ArrayList<>();
+        for (TransferSession session : getAll()) {
+            if (!session.isFinished()) {
+                active.add(session);
+            }
+        }
+        return active;
+    }
+
+    public int getActiveCount() {
+        int count = 0;
+        for (TransferSession session : sessions.values()) {
+            if (!session.isFinished()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    public int getCancelledCount() {
+        return cancelled.get();
+    }
+
+    /** Fail everything still running (closing its sockets), e.g. when the module is torn down. */
+    public int failAll(String code, String message) {
+        int failedNow = 0;
+        for (TransferSession session : getActive()) {
+            if (session.fail(code, message)) {
+                failedNow++;
+            }
+        }
+        return failedNow;
+    }
+
+    void onFinished(TransferSession session) {
+        switch (session.getState()) {
+            case COMPLETED:
+                completed.incrementAndGet();
+                break;
+            case CANCELLED:
+                cancelled.incrementAndGet();
+                break;
+            default:
+                failed.incrementAndGet();
+                break;
+        }
+        synchronized (finishedIds) {
+            finishedIds.addLast(session.id);
+            while (finishedIds.size() > FINISHED_HISTORY) {
+                sessions.remove(finishedIds.removeFirst());
+            }
+        }
+    }
+}
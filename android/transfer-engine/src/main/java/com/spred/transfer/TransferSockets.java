@@ -0,0 +1,64 @@
+package com.spred.transfer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * TransferSockets - How transfer connections are opened and accepted.
+ *
+ * One place for the timeouts and bind options WifiDirectModule uses, so
+ * tests can run the same connect/accept path through an impaired link and
+ * see exactly when a stall turns into a failure.
+ */
+public final class TransferSockets {
+    /** Group formation can leave the peer's IP unreachable for several seconds. */
+    public static final int CONNECT_TIMEOUT_MS = 15000;
+    /** A Wi-Fi Direct stall longer than this fails the transfer. */
+    public static final int READ_TIMEOUT_MS = 30000;
+    /** How often a paused transfer pings its peer; well inside the peer's read timeout. */
+    public static final int KEEPALIVE_INTERVAL_MS = READ_TIMEOUT_MS / 3;
+
+    private TransferSockets() {
+    }
+
+    public static Socket connect(InetSocketAddress address) throws IOException {
+        return connect(address, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+    }
+
+    /** A connected socket with the read timeout set; nothing is left open on failure. */
+    public static Socket connect(InetSocketAddress address, int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, connectTimeoutMs);
+            socket.setSoTimeout(readTimeoutMs);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /** Listen on {@code port} (0 for any), reusing the address so a reformed group can bind it again. */
+    public static ServerSocket bindReceiveServer(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        try {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(port));
+            return serverSocket;
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    /** Accept one sender, then close the server so the port is free for the next receive. */
+    public static Socket acceptOnce(ServerSocket serverSocket) throws IOException {
+        try {
+            return serverSocket.accept();
+        } finally {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.spred.transfer.testing.Impairment;
+import com.spred.transfer.testing.ImpairmentScript;
+import com.spred.transfer.testing.ShapingProxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Receiver ACKs over a shaped link: sender progress must never run ahead of
+ * what the receiver has written, and a receiver that goes away must fail
+ * the send.
+ */
+public class AckedTransferTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocket receiveServer;
+    private ShapingProxy proxy;
+    private ExecutorService executor;
+    /** Bytes in the receiver's file, as ACKs would report them. */
+    private final AtomicLong receiverDurable = new AtomicLong();
+
+    @Before
+    public void setUp() throws IOException {
+        receiveServer = TransferSockets.bindReceiveServer(0);
+        proxy = new ShapingProxy(new InetSocketAddress(InetAddress.getLoopbackAddress(), receiveServer.getLocalPort()),
+            new Impairment(), new Impairment());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        proxy.close();
+        receiveServer.close();
+    }
+
+    @Test
+    public void progressFollowsTheReceiversFileWithinTheWindow() throws Exception {
+        proxy.getUpstream().setDelayMs(20).setBytesPerSecond(16 * 1024 * 1024);
+        proxy.getDownstream().setDelayMs(20);
+        byte[] data = randomBytes(24 * 1024 * 1024);
+        File directory = folder.newFolder("received");
+        AtomicLong ahead = new AtomicLong();
+        AtomicLong reports = new AtomicLong();
+
+        Future<File> receiver = receiveToFile(directory);
+        TransferSender.Result result = send(data, true, (done, total) -> {
+            reports.incrementAndGet();
+            ahead.set(Math.max(ahead.get(), done - receiverDurable.get()));
+        });
+        File received = receiver.get(10, TimeUnit.SECONDS);
+
+        assertTrue(result.acknowledged);
+        assertEquals("progress ahead of the receiver's file by " + ahead.get() + " bytes", 0, ahead.get());
+        assertTrue("unacked " + result.maxUnackedBytes, result.maxUnackedBytes < TransferAcks.WINDOW_BYTES);
+        assertTrue("acks " + result.acksReceived, result.acksReceived >= 16);
+        assertTrue(reports.get() > 1);
+        assertArrayEquals(data, Files.readAllBytes(received.toPath()));
+    }
+
+    @Test
+    public void withoutAcksTheSenderFinishesWhileBytesAreStillInFlight() throws Exception {
+        proxy.getUpstream().setDelayMs(20).setBytesPerSecond(8 * 1024 * 1024);
+        byte[] data = randomBytes(16 * 1024 * 1024);
+
+        Future<File> receiver = receiveToFile(folder.newFolder("received"));
+        TransferSender.Result result = send(data, false, null);
+        long landedWhenSenderReturned = receiverDurable.get();
+        receiver.get(10, TimeUnit.SECONDS);
+
+        // The gap this protocol closes: "sent" while the proxy and socket buffers still hold megabytes
+        assertFalse(result.acknowledged);
+        assertTrue("receiver had " + landedWhenSenderReturned, data.length - landedWhenSenderReturned > 1024 * 1024);
+    }
+
+    @Test
+    public void severedLinkFailsTheSender() throws Exception {
+        proxy.getUpstream().setBytesPerSecond(1024 * 1024);
+        byte[] data = randomBytes(2 * 1024 * 1024);
+        new ImpairmentScript().at(200, proxy::severConnections).start();
+
+        Future<File> receiver = receiveToFile(folder.newFolder("received"));
+        try {
+            send(data, true, null);
+            fail("Send should fail once the link is reset");
+        } catch (IOException expected) {
+            // Unlike ImpairedLinkTest's unacked send, the body fitting in buffers no longer counts as sent
+        }
+        try {
+            receiver.get(10, TimeUnit.SECONDS);
+            fail("Receive should fail too");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void receiverClosingBeforeCommitFailsTheSender() throws Exception {
+        byte[] data = randomBytes(4 * 1024 * 1024);
+        Future<?> receiver = executor.submit((Callable<Void>) () -> {
+            try (Socket socket = TransferSockets.acceptOnce(receiveServer)) {
+                TransferReceiver protocol = new TransferReceiver(socket.getInputStream(), socket.getOutputStream());
+                protocol.readHeader();
+                protocol.accept();
+                protocol.receive(new ByteArrayOutputStream()::write, null);
+                // Commit fails (disk full, say): close without confirm()
+            }
+            return null;
+        });
+
+        try {
+            send(data, true, null);
+            fail("Send should not succeed without the receiver's commit");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Receiver closed after acknowledging"));
+        }
+        receiver.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void receiverWithoutAckSupportStillGetsTheFile() throws Exception {
+        byte[] data = randomBytes(1024 * 1024);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        // An older build: replies SEND with the checksum it knows and nothing else
+        Future<?> receiver = executor.submit((Callable<Void>) () -> {
+            try (Socket socket = TransferSockets.acceptOnce(receiveServer)) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                TransferHeader header = TransferHeader.read(in);
+                new TransferReply(TransferReply.STATUS_SEND,
+                    Collections.singletonMap(TransferReply.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32))
+                    .write(new DataOutputStream(socket.getOutputStream()));
+                byte[] body = new byte[(int) header.fileSize];
+                in.readFully(body);
+                in.readLong();
+                received.write(body);
+            }
+            return null;
+        });
+
+        TransferSender.Result result = send(data, true, null);
+        receiver.get(10, TimeUnit.SECONDS);
+
+        assertFalse(result.acknowledged);
+        assertEquals(TransferSender.Outcome.SENT, result.outcome);
+        assertArrayEquals(data, received.toByteArray());
+    }
+
+    private TransferSender.Result send(byte[] data, boolean acks, TransferPipeline.TransferListener listener)
+            throws IOException {
+        Map<String, String> props = new HashMap<>();
+        props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        if (acks) {
+            props.put(TransferHeader.PROP_ACKS, "1");
+        }
+        try (Socket socket = TransferSockets.connect(proxy.getAddress(), TransferSockets.CONNECT_TIMEOUT_MS, 5000)) {
+            return TransferSender.send(new TransferHeader("clip.mp4", data.length, props),
+                new ByteArrayInputStream(data), socket.getInputStream(), socket.getOutputStream(), listener);
+        }
+    }
+
+    /** receiveFileOverSocket's side: ReceiveFile, commit, then confirm. */
+    private Future<File> receiveToFile(File directory) {
+        return executor.submit(() -> {
+            try (Socket socket = TransferSockets.acceptOnce(receiveServer)) {
+                socket.setSoTimeout(5000);
+                TransferReceiver protocol = new TransferReceiver(socket.getInputStream(), socket.getOutputStream());
+                TransferHeader header = protocol.readHeader();
+                protocol.accept();
+                ReceiveFile file = ReceiveFile.open(directory, header.fileName, header.fileSize,
+                    ReceiveFile.FsyncPolicy.NONE, 0, null);
+                try {
+                    protocol.receive(new TransferPipeline.DurableSink() {
+                        @Override
+                        public void write(byte[] bytes, int offset, int length) throws IOException {
+                            file.write(bytes, offset, length);
+                            receiverDurable.set(file.getDurableBytes());
+                        }
+
+                        @Override
+                        public long getDurableBytes() {
+                            return file.getDurableBytes();
+                        }
+                    }, null);
+                    File committed = file.commit();
+                    receiverDurable.set(header.fileSize);
+                    protocol.confirm();
+                    return committed;
+                } catch (IOException e) {
+                    file.abort();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,210 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.spred.transfer.testing.Impairment;
+import com.spred.transfer.testing.ImpairmentScript;
+import com.spred.transfer.testing.ShapingProxy;
+import com.spred.transfer.testing.UdpShapingProxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The receive-server and connect paths WifiDirectModule uses, run through
+ * ShapingProxy so stalls, slow links and drops happen on cue.
+ */
+public class ImpairedLinkTest {
+    private static final int SHORT_READ_TIMEOUT_MS = 400;
+
+    private ServerSocket receiveServer;
+    private ShapingProxy proxy;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        receiveServer = TransferSockets.bindReceiveServer(0);
+        proxy = new ShapingProxy(new InetSocketAddress(InetAddress.getLoopbackAddress(), receiveServer.getLocalPort()),
+            new Impairment(), new Impairment());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        proxy.close();
+        receiveServer.close();
+    }
+
+    @Test
+    public void delayAndBandwidthCapSlowTheTransfer() throws Exception {
+        proxy.getUpstream().setDelayMs(40).setBytesPerSecond(4 * 1024 * 1024);
+        byte[] data = randomBytes(1024 * 1024);
+
+        long start = System.nanoTime();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<?> receiver = receive(received, TransferSockets.READ_TIMEOUT_MS);
+        send(data, TransferSockets.READ_TIMEOUT_MS);
+        receiver.get(10, TimeUnit.SECONDS);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertArrayEquals(data, received.toByteArray());
+        // 1 MB at 4 MB/s is 250 ms on the wire, plus the one-way delay
+        assertTrue("took " + elapsedMs + " ms", elapsedMs >= 250 + 40);
+    }
+
+    @Test
+    public void stallShorterThanReadTimeoutIsRiddenOut() throws Exception {
+        proxy.getUpstream().setBytesPerSecond(2 * 1024 * 1024);
+        byte[] data = randomBytes(1024 * 1024);
+        ImpairmentScript script = new ImpairmentScript()
+            .at(100, () -> proxy.freeze(SHORT_READ_TIMEOUT_MS / 2))
+            .start();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<?> receiver = receive(received, SHORT_READ_TIMEOUT_MS);
+        send(data, SHORT_READ_TIMEOUT_MS);
+        receiver.get(10, TimeUnit.SECONDS);
+
+        assertTrue(script.await(1000));
+        assertArrayEquals(data, received.toByteArray());
+        assertEquals(2, proxy.getUpstream().getFreezeCount() + proxy.getDownstream().getFreezeCount());
+    }
+
+    @Test
+    public void stallLongerThanReadTimeoutFailsTheReceiver() throws Exception {
+        proxy.getUpstream().setBytesPerSecond(2 * 1024 * 1024);
+        byte[] data = randomBytes(1024 * 1024);
+        ImpairmentScript script = new ImpairmentScript()
+            .at(100, () -> proxy.freeze())
+            .start();
+
+        Future<?> receiver = receive(new ByteArrayOutputStream(), SHORT_READ_TIMEOUT_MS);
+        Future<?> sender = executor.submit((Callable<Void>) () -> {
+            send(data, TransferSockets.READ_TIMEOUT_MS);
+            return null;
+        });
+        try {
+            receiver.get(10, TimeUnit.SECONDS);
+            fail("Receive should time out during the stall");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SocketTimeoutException);
+        }
+        assertTrue(script.await(1000));
+        proxy.thaw();
+        sender.cancel(true);
+    }
+
+    @Test
+    public void severedLinkFailsTheReceiver() throws Exception {
+        proxy.getUpstream().setBytesPerSecond(1024 * 1024);
+        byte[] data = randomBytes(2 * 1024 * 1024);
+        new ImpairmentScript().at(200, proxy::severConnections).start();
+
+        Future<?> receiver = receive(new ByteArrayOutputStream(), TransferSockets.READ_TIMEOUT_MS);
+        try {
+            send(data, TransferSockets.READ_TIMEOUT_MS);
+        } catch (IOException e) {
+            // Reset or broken pipe if the sender was still writing. If the body already fit in the
+            // socket and link buffers, the send "succeeds": nothing acks the body end to end
+        }
+        try {
+            receiver.get(10, TimeUnit.SECONDS);
+            fail("Receive should fail once the link is reset");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void udpLossIsSeededAndBursty() throws Exception {
+        try (DatagramSocket echo = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket client = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            Impairment upstream = new Impairment(7).setLossRate(0.05).setBurstLoss(0.02, 0.25).setJitterMs(5);
+            try (UdpShapingProxy udp = new UdpShapingProxy(
+                    new InetSocketAddress(echo.getLocalAddress(), echo.getLocalPort()), upstream, new Impairment())) {
+                int sent = 2000;
+                echo.setSoTimeout(500);
+                Future<Integer> drained = executor.submit(() -> {
+                    int count = 0;
+                    try {
+                        while (true) {
+                            echo.receive(new DatagramPacket(new byte[16], 16));
+                            count++;
+                        }
+                    } catch (SocketTimeoutException done) {
+                        return count;
+                    }
+                });
+                for (int i = 0; i < sent; i++) {
+                    byte[] payload = {(byte) (i >> 8), (byte) i};
+                    client.send(new DatagramPacket(payload, payload.length, udp.getAddress()));
+                    if (i % 10 == 9) {
+                        Thread.sleep(1); // Stay inside the kernel's socket buffers so only the model drops
+                    }
+                }
+                int received = drained.get(10, TimeUnit.SECONDS);
+
+                assertEquals(sent, received + upstream.getDroppedCount());
+                // 5% base loss plus ~7% of datagrams inside bursts
+                assertTrue("received " + received, received > sent * 0.75 && received < sent * 0.97);
+            }
+        }
+    }
+
+    /** connectToReceiverServer's side: connect, send header and body. */
+    private void send(byte[] data, int readTimeoutMs) throws IOException {
+        Map<String, String> props = new HashMap<>();
+        props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        try (Socket socket = TransferSockets.connect(proxy.getAddress(), TransferSockets.CONNECT_TIMEOUT_MS, readTimeoutMs)) {
+            TransferSender.Result result = TransferSender.send(new TransferHeader("clip.mp4", data.length, props),
+                new ByteArrayInputStream(data), socket.getInputStream(), socket.getOutputStream(), null);
+            assertEquals(TransferSender.Outcome.SENT, result.outcome);
+        }
+    }
+
+    /** startReceiveServer's side: accept once, read header, accept, receive. */
+    private Future<?> receive(ByteArrayOutputStream into, int readTimeoutMs) {
+        return executor.submit((Callable<Void>) () -> {
+            try (Socket socket = TransferSockets.acceptOnce(receiveServer)) {
+                socket.setSoTimeout(readTimeoutMs);
+                TransferReceiver receiver = new TransferReceiver(socket.getInputStream(), socket.getOutputStream());
+                receiver.readHeader();
+                receiver.accept();
+                receiver.receive(into::write, null);
+            }
+            return null;
+        });
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
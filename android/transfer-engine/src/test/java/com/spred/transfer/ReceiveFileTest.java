@@ -0,0 +1,162 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Receives landing in the same directory at the same time, under the same name. */
+public class ReceiveFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        executor = Executors.newFixedThreadPool(4);
+        directory = folder.newFolder("received");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        serverSocket.close();
+    }
+
+    @Test
+    public void twoSameNameSessionsKeepTheirOwnBytes() throws Exception {
+        byte[] first = randomBytes(3 * 1024 * 1024, 1);
+        byte[] second = randomBytes(2 * 1024 * 1024 + 5, 2);
+        // Neither receiver writes a byte until both have opened their temp file
+        CountDownLatch opened = new CountDownLatch(2);
+        Future<File> receiverA = receive(opened);
+        Future<File> receiverB = receive(opened);
+        Future<?> senderA = executor.submit((Callable<Void>) () -> send(first));
+        Future<?> senderB = executor.submit((Callable<Void>) () -> send(second));
+        senderA.get(10, TimeUnit.SECONDS);
+        senderB.get(10, TimeUnit.SECONDS);
+        File a = receiverA.get(10, TimeUnit.SECONDS);
+        File b = receiverB.get(10, TimeUnit.SECONDS);
+
+        assertNotEquals(a, b);
+        assertEquals(new HashSet<>(Arrays.asList("clip.mp4", "clip (1).mp4")),
+            new HashSet<>(Arrays.asList(directory.list())));
+        // Which one got the plain name is a race; what each holds is not
+        byte[] bytesA = Files.readAllBytes(a.toPath());
+        byte[] bytesB = Files.readAllBytes(b.toPath());
+        assertTrue(Arrays.equals(bytesA, first) ? Arrays.equals(bytesB, second)
+            : Arrays.equals(bytesA, second) && Arrays.equals(bytesB, first));
+    }
+
+    @Test
+    public void interleavedWritesUseSeparateTempFiles() throws IOException {
+        ReceiveFile a = ReceiveFile.open(directory, "clip.mp4", 4, ReceiveFile.FsyncPolicy.NONE, 0, null);
+        ReceiveFile b = ReceiveFile.open(directory, "clip.mp4", 4, ReceiveFile.FsyncPolicy.NONE, 0, null);
+        assertEquals(2, directory.list().length);
+        a.write(new byte[] {1, 1}, 0, 2);
+        b.write(new byte[] {2, 2, 2, 2}, 0, 4);
+        a.write(new byte[] {1, 1}, 0, 2);
+
+        File committedB = b.commit();
+        File committedA = a.commit();
+
+        assertEquals("clip.mp4", committedB.getName());
+        assertEquals("clip (1).mp4", committedA.getName());
+        assertArrayEquals(new byte[] {2, 2, 2, 2}, Files.readAllBytes(committedB.toPath()));
+        assertArrayEquals(new byte[] {1, 1, 1, 1}, Files.readAllBytes(committedA.toPath()));
+    }
+
+    @Test
+    public void commitSkipsNamesAnotherWriterReserved() throws IOException {
+        File reserved = ReceiveFile.reserveTarget(directory, "clip.mp4");
+        try {
+            ReceiveFile file = ReceiveFile.open(directory, "clip.mp4", 1, ReceiveFile.FsyncPolicy.NONE, 0, null);
+            file.write(new byte[1], 0, 1);
+            assertEquals("clip (1).mp4", file.commit().getName());
+        } finally {
+            ReceiveFile.releaseTarget(reserved);
+        }
+        assertEquals(reserved, ReceiveFile.reserveTarget(directory, "clip.mp4"));
+        ReceiveFile.releaseTarget(reserved);
+    }
+
+    @Test
+    public void abortLeavesOtherSessionsAlone() throws IOException {
+        ReceiveFile a = ReceiveFile.open(directory, "clip.mp4", 2, ReceiveFile.FsyncPolicy.NONE, 0, null);
+        ReceiveFile b = ReceiveFile.open(directory, "clip.mp4", 2, ReceiveFile.FsyncPolicy.NONE, 0, null);
+        b.write(new byte[] {7, 7}, 0, 2);
+        a.abort();
+
+        assertArrayEquals(new byte[] {7, 7}, Files.readAllBytes(b.commit().toPath()));
+        assertEquals(1, directory.list().length);
+    }
+
+    private Future<File> receive(CountDownLatch opened) {
+        return executor.submit(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                TransferReceiver receiver = new TransferReceiver(socket.getInputStream(), socket.getOutputStream());
+                TransferHeader header = receiver.readHeader();
+                receiver.accept();
+                ReceiveFile file = ReceiveFile.open(directory, header.fileName, header.fileSize,
+                    ReceiveFile.FsyncPolicy.AT_END, 0, null);
+                try {
+                    opened.countDown();
+                    assertTrue(opened.await(5, TimeUnit.SECONDS));
+                    receiver.receive(file, null);
+                    receiver.confirm();
+                    return file.commit();
+                } catch (IOException e) {
+                    file.abort();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private Void send(byte[] data) throws IOException {
+        Map<String, String> props = new HashMap<>();
+        props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        try (Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort())) {
+            TransferSender.Result result = TransferSender.send(new TransferHeader("clip.mp4", data.length, props),
+                new ByteArrayInputStream(data), socket.getInputStream(), socket.getOutputStream(), null);
+            assertTrue(result.checksummed);
+        }
+        return null;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,277 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Entropy sampling, and compressed bodies between a real sender and receiver. */
+public class TransferCompressionTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        serverSocket.close();
+    }
+
+    @Test
+    public void samplingTellsVideoFromText() throws IOException {
+        File video = folder.newFile("clip.mp4");
+        Files.write(video.toPath(), randomBytes(8 * 1024 * 1024));
+        File subtitles = folder.newFile("clip.srt");
+        Files.write(subtitles.toPath(), subtitles(2 * 1024 * 1024));
+
+        assertTrue(TransferCompression.sampleEntropy(video) > 7.9);
+        assertTrue(TransferCompression.sampleEntropy(subtitles) < 6);
+        assertFalse(TransferCompression.isWorthCompressing(video));
+        assertTrue(TransferCompression.isWorthCompressing(subtitles));
+        assertFalse(TransferCompression.isWorthCompressing(folder.newFile("empty.json")));
+    }
+
+    @Test
+    public void compressibleBodyShrinksOnTheWire() throws Exception {
+        byte[] data = subtitles(3 * 1024 * 1024 + 17);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<Long> server = serve(receiver -> {
+            receiver.readHeader();
+            receiver.accept();
+            receiver.receive(received::write, null);
+            receiver.confirm();
+            assertTrue(receiver.isCompressed());
+            return receiver.getWireBytes();
+        });
+
+        TransferSender.Result result = send(data, true, true);
+
+        assertTrue(result.compressed);
+        assertTrue(result.acknowledged);
+        assertTrue(result.checksummed);
+        assertEquals(data.length, result.body.bytes);
+        assertTrue("wire " + result.wireBytes, result.wireBytes < data.length / 3);
+        assertEquals(result.wireBytes, (long) server.get());
+        assertArrayEquals(data, received.toByteArray());
+    }
+
+    @Test
+    public void incompressibleChunksGoStored() throws Exception {
+        // A video with a text track glued on: only the text chunks should deflate
+        byte[] video = randomBytes(2 * 1024 * 1024);
+        byte[] text = subtitles(1024 * 1024);
+        byte[] data = new byte[video.length + text.length];
+        System.arraycopy(video, 0, data, 0, video.length);
+        System.arraycopy(text, 0, data, video.length, text.length);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<Long> server = serve(receiver -> {
+            receiver.readHeader();
+            receiver.accept();
+            receiver.receive(received::write, null);
+            return receiver.getWireBytes();
+        });
+
+        TransferSender.Result result = send(data, true, false);
+        server.get();
+
+        int chunks = data.length / TransferPipeline.SEND_BUFFER_BYTES;
+        assertEquals(text.length / TransferPipeline.SEND_BUFFER_BYTES, result.deflatedChunks);
+        // The stored video costs only its frame headers
+        long videoWire = video.length + (long) (chunks - result.deflatedChunks) * TransferCompression.FRAME_HEADER_BYTES;
+        assertTrue(result.wireBytes > videoWire);
+        assertTrue(result.wireBytes < videoWire + text.length / 3);
+        assertArrayEquals(data, received.toByteArray());
+    }
+
+    @Test
+    public void receiverWithoutCompressionGetsAPlainBody() throws Exception {
+        byte[] data = subtitles(512 * 1024);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<Long> server = serve(receiver -> {
+            receiver.readHeader();
+            // An older receiver: echoes the checksum, knows nothing of compression
+            Map<String, String> props = new HashMap<>();
+            props.put(TransferReply.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+            receiver.reply(new TransferReply(TransferReply.STATUS_SEND, props));
+            return 0L;
+        }, socket -> {
+            TransferPipeline.receive(socket.getInputStream(), data.length, received::write, null, null);
+            new DataInputStream(socket.getInputStream()).readLong();
+        });
+
+        TransferSender.Result result = send(data, true, false);
+        server.get();
+
+        assertFalse(result.compressed);
+        assertEquals(data.length, result.wireBytes);
+        assertArrayEquals(data, received.toByteArray());
+    }
+
+    @Test
+    public void corruptedFrameFailsTheReceive() throws Exception {
+        byte[] data = subtitles(1024 * 1024);
+        Future<Long> server = serve(receiver -> {
+            receiver.readHeader();
+            receiver.accept();
+            receiver.receive(new ByteArrayOutputStream()::write, null);
+            return 0L;
+        });
+
+        Map<String, String> props = headerProps(true, false);
+        TransferHeader header = new TransferHeader("clip.srt", data.length, props);
+        try (Socket socket = connect()) {
+            // Flip a bit inside the first deflated payload
+            long target = header.encodedLength() + TransferCompression.FRAME_HEADER_BYTES + 100;
+            OutputStream corrupting = new FilterOutputStream(socket.getOutputStream()) {
+                private long written;
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (target >= written && target < written + len) {
+                        b = b.clone();
+                        b[off + (int) (target - written)] ^= 1;
+                    }
+                    written += len;
+                    out.write(b, off, len);
+                }
+            };
+            TransferSender.send(header, new ByteArrayInputStream(data), socket.getInputStream(), corrupting, null);
+        } catch (IOException e) {
+            // The receiver may give up and close before the sender has finished writing
+        }
+        try {
+            server.get();
+            fail("A corrupted frame must not reach the sink intact");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void decoderRejectsOversizedFrames() throws IOException {
+        byte[] frame = new byte[TransferCompression.FRAME_HEADER_BYTES];
+        TransferCompression.writeFrameHeader(frame, TransferCompression.FRAME_STORED,
+            TransferCompression.MAX_FRAME_BYTES + 1, TransferCompression.MAX_FRAME_BYTES + 1);
+        TransferCompression.Decoder decoder = new TransferCompression.Decoder(new ByteArrayInputStream(frame));
+        try {
+            decoder.read(new byte[16], 0, 16);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // A hostile length must not turn into a huge allocation
+        } finally {
+            decoder.close();
+        }
+    }
+
+    private interface Server {
+        Long handle(TransferReceiver receiver) throws Exception;
+    }
+
+    private interface Body {
+        void receive(Socket socket) throws Exception;
+    }
+
+    private Future<Long> serve(Server handler) {
+        return serve(handler, null);
+    }
+
+    private Future<Long> serve(Server handler, Body body) {
+        return executor.submit((Callable<Long>) () -> {
+            try (Socket socket = serverSocket.accept()) {
+                Long result = handler.handle(new TransferReceiver(socket.getInputStream(), socket.getOutputStream()));
+                if (body != null) {
+                    body.receive(socket);
+                }
+                return result;
+            }
+        });
+    }
+
+    private TransferSender.Result send(byte[] data, boolean compress, boolean acks) throws IOException {
+        try (Socket socket = connect()) {
+            return TransferSender.send(new TransferHeader("clip.srt", data.length, headerProps(compress, acks)),
+                new ByteArrayInputStream(data), socket.getInputStream(), socket.getOutputStream(), null);
+        }
+    }
+
+    private static Map<String, String> headerProps(boolean compress, boolean acks) {
+        Map<String, String> props = new HashMap<>();
+        props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        if (compress) {
+            props.put(TransferHeader.PROP_COMPRESSION, TransferHeader.COMPRESSION_DEFLATE);
+        }
+        if (acks) {
+            props.put(TransferHeader.PROP_ACKS, "1");
+        }
+        return props;
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    /** SRT-style cues: numbered, timestamped, words from a small vocabulary. */
+    static byte[] subtitles(int size) {
+        String[] words = {"the", "camera", "pans", "across", "a", "crowded", "market", "while", "music", "plays",
+            "she", "turns", "and", "smiles", "[laughter]", "we", "never", "left", "this", "town"};
+        Random random = new Random(size);
+        StringBuilder text = new StringBuilder(size + 256);
+        for (int cue = 1; text.length() < size; cue++) {
+            int ms = cue * 2400;
+            text.append(cue).append('\n').append(String.format(Locale.US, "%02d:%02d:%02d,%03d --> %02d:%02d:%02d,%03d\n",
+                ms / 3600000, ms / 60000 % 60, ms / 1000 % 60, ms % 1000,
+                (ms + 2000) / 3600000, (ms + 2000) / 60000 % 60, (ms + 2000) / 1000 % 60, (ms + 2000) % 1000));
+            for (int i = 5 + random.nextInt(8); i > 0; i--) {
+                text.append(words[random.nextInt(words.length)]).append(i > 1 ? ' ' : '\n');
+            }
+            text.append('\n');
+        }
+        byte[] bytes = new byte[size];
+        System.arraycopy(text.toString().getBytes(StandardCharsets.US_ASCII), 0, bytes, 0, size);
+        return bytes;
+    }
+}
@@ -0,0 +1,479 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * pause / resume / cancel against real loopback transfers, timing how long
+ * each call takes to actually stop the loop it controls.
+ */
+public class TransferControlTest {
+    /** From pause() to the loop parking: at most the chunk already in flight. */
+    private static final long MAX_PARK_LATENCY_MS = 100;
+    /** From cancel() to the transfer thread giving up, even when blocked in socket I/O. */
+    private static final long MAX_CANCEL_LATENCY_MS = 200;
+    /** Stands in for TransferSockets.READ_TIMEOUT_MS so a pause can outlast it quickly. */
+    private static final int SHORT_READ_TIMEOUT_MS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransferSessionRegistry registry;
+    private ExecutorService executor;
+    private ServerSocket server;
+    private Socket senderSocket;
+    private Socket receiverSocket;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new TransferSessionRegistry();
+        executor = Executors.newFixedThreadPool(2);
+        server = TransferSockets.bindReceiveServer(0);
+        Future<Socket> accepted = executor.submit(() -> TransferSockets.acceptOnce(server));
+        senderSocket = TransferSockets.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+        receiverSocket = accepted.get(5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        senderSocket.close();
+        receiverSocket.close();
+        server.close();
+    }
+
+    @Test
+    public void pauseParksTheSenderAndResumeFinishesIntact() throws Exception {
+        byte[] data = randomBytes(8 * 1024 * 1024);
+        PacedSource source = new PacedSource(data, 32 * 1024, 2);
+        TransferSession send = session(TransferSession.Direction.SEND, senderSocket);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<?> receiver = receive(null, received);
+        Future<?> sender = send(send, source, data.length);
+
+        Thread.sleep(100);
+        long pausedAt = System.nanoTime();
+        assertTrue(send.pause());
+        awaitParked(send);
+        long parkLatencyMs = (send.getParkedAtNanos() - pausedAt) / 1000000;
+        long readsAtPark = source.reads.get();
+        Thread.sleep(300);
+
+        assertTrue("parked after " + parkLatencyMs + " ms", parkLatencyMs <= MAX_PARK_LATENCY_MS);
+        assertEquals("no reads while paused", readsAtPark, source.reads.get());
+        assertEquals(TransferSession.State.PAUSED, send.getState());
+
+        assertTrue(send.resume());
+        sender.get(10, TimeUnit.SECONDS);
+        receiver.get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(data, received.toByteArray());
+        assertEquals(TransferSession.State.COMPLETED, send.getState());
+        assertTrue("paused " + send.getPausedMs() + " ms", send.getPausedMs() >= 300);
+    }
+
+    @Test
+    public void pauseParksTheReceiverAndResumeFinishesIntact() throws Exception {
+        byte[] data = randomBytes(8 * 1024 * 1024);
+        TransferSession receive = session(TransferSession.Direction.RECEIVE, receiverSocket);
+        AtomicLong writes = new AtomicLong();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<?> receiver = receive(receive, (bytes, offset, length) -> {
+            writes.incrementAndGet();
+            received.write(bytes, offset, length);
+            sleepQuietly(1); // A slow disk keeps the receive mid-flight
+        });
+        Future<?> sender = send(null, new ByteArrayInputStream(data), data.length);
+
+        Thread.sleep(100);
+        long pausedAt = System.nanoTime();
+        assertTrue(receive.pause());
+        awaitParked(receive);
+        long parkLatencyMs = (receive.getParkedAtNanos() - pausedAt) / 1000000;
+        long writesAtPark = writes.get();
+        Thread.sleep(300);
+
+        assertTrue("parked after " + parkLatencyMs + " ms", parkLatencyMs <= MAX_PARK_LATENCY_MS);
+        assertEquals("no writes while paused", writesAtPark, writes.get());
+
+        assertTrue(receive.resume());
+        receiver.get(20, TimeUnit.SECONDS);
+        sender.get(20, TimeUnit.SECONDS);
+        assertArrayEquals(data, received.toByteArray());
+    }
+
+    @Test
+    public void pausedSenderOutlastsTheReceiversReadTimeout() throws Exception {
+        byte[] data = randomBytes(8 * 1024 * 1024);
+        shortenReadTimeouts();
+        TransferSession send = session(TransferSession.Direction.SEND, senderSocket);
+        send.setKeepAliveIntervalMs(SHORT_READ_TIMEOUT_MS / 3);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<TransferReceiver> receiver = receiveFramed(null, received);
+        Future<TransferSender.Result> sender = sendFramed(send, new PacedSource(data, 32 * 1024, 2), data);
+
+        Thread.sleep(100);
+        assertTrue(send.pause());
+        awaitParked(send);
+        // Three read timeouts' worth of silence, but for the keep-alives
+        Thread.sleep(3 * SHORT_READ_TIMEOUT_MS);
+        assertFalse(receiver.isDone());
+        assertTrue(send.resume());
+
+        TransferSender.Result result = sender.get(10, TimeUnit.SECONDS);
+        TransferReceiver protocol = receiver.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(data, received.toByteArray());
+        assertTrue(result.framed);
+        assertTrue(result.acknowledged);
+        assertTrue("keep-alives " + result.keepAlives, result.keepAlives >= 5);
+        assertEquals(result.keepAlives, protocol.getKeepAlivesReceived());
+        assertEquals(TransferSession.State.COMPLETED, send.getState());
+    }
+
+    @Test
+    public void pausedReceiverOutlastsTheSendersReadTimeout() throws Exception {
+        byte[] data = randomBytes(16 * 1024 * 1024);
+        shortenReadTimeouts();
+        TransferSession receive = session(TransferSession.Direction.RECEIVE, receiverSocket);
+        receive.setKeepAliveIntervalMs(SHORT_READ_TIMEOUT_MS / 3);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<TransferReceiver> receiver = receiveFramed(receive, received);
+        // Paused before the body, the sender fills its ACK window and then waits on an ACK
+        assertTrue(receive.pause());
+        Future<TransferSender.Result> sender = sendFramed(null, new ByteArrayInputStream(data), data);
+        awaitParked(receive);
+        Thread.sleep(3 * SHORT_READ_TIMEOUT_MS);
+        assertFalse(sender.isDone());
+        assertTrue(receive.resume());
+
+        TransferSender.Result result = sender.get(10, TimeUnit.SECONDS);
+        TransferReceiver protocol = receiver.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(data, received.toByteArray());
+        // Repeated ACKs carry no progress but each one reset the sender's read timeout
+        assertTrue("acks " + result.acksReceived, result.acksReceived >= data.length / TransferAcks.DEFAULT_INTERVAL_BYTES + 5);
+        assertEquals(protocol.getAcksSent(), result.acksReceived);
+    }
+
+    @Test
+    public void withoutKeepAlivesAPauseTimesTheReceiverOut() throws Exception {
+        byte[] data = randomBytes(8 * 1024 * 1024);
+        shortenReadTimeouts();
+        TransferSession send = session(TransferSession.Direction.SEND, senderSocket);
+        send.setKeepAliveIntervalMs(SHORT_READ_TIMEOUT_MS / 3);
+        Future<?> receiver = receive(null, new ByteArrayOutputStream());
+        // Plain body: nothing the parked sender could write in between
+        send(send, new PacedSource(data, 32 * 1024, 2), data.length);
+
+        Thread.sleep(100);
+        assertTrue(send.pause());
+        try {
+            receiver.get(5, TimeUnit.SECONDS);
+            fail("Receive outlived a silent pause");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SocketTimeoutException);
+        }
+        send.cancel();
+    }
+
+    @Test
+    public void cancelUnblocksASenderStuckInWrite() throws Exception {
+        byte[] data = randomBytes(32 * 1024 * 1024);
+        CountingCompletion completion = new CountingCompletion();
+        TransferSession send = registry.create(TransferSession.Direction.SEND, null, completion);
+        send.attach(senderSocket);
+        TransferSession receive = session(TransferSession.Direction.RECEIVE, receiverSocket);
+        // Paused before it starts, the receiver parks at its first chunk and never reads the body,
+        // so the sender fills the socket buffers and blocks in write()
+        assertTrue(receive.pause());
+        receive(receive, new ByteArrayOutputStream());
+        Future<?> sender = send(send, new ByteArrayInputStream(data), data.length);
+        awaitParked(receive);
+        Thread.sleep(200);
+        assertFalse(sender.isDone());
+
+        long cancelledAt = System.nanoTime();
+        assertTrue(send.cancel());
+        long stopMs = awaitFailure(sender, cancelledAt);
+
+        assertTrue("stopped after " + stopMs + " ms", stopMs <= MAX_CANCEL_LATENCY_MS);
+        assertEquals(TransferSession.State.CANCELLED, send.getState());
+        assertTrue(senderSocket.isClosed());
+        assertEquals(1, completion.rejected.get());
+        assertEquals("TRANSFER_CANCELLED", completion.lastCode);
+        assertEquals(1, registry.getCancelledCount());
+    }
+
+    @Test
+    public void cancelUnblocksAReceiverStuckInReadAndDeletesThePartialFile() throws Exception {
+        byte[] data = randomBytes(8 * 1024 * 1024);
+        File directory = folder.newFolder("received");
+        TransferSession send = session(TransferSession.Direction.SEND, senderSocket);
+        TransferSession receive = session(TransferSession.Direction.RECEIVE, receiverSocket);
+        Future<?> receiver = executor.submit((Callable<Void>) () -> {
+            TransferReceiver protocol = new TransferReceiver(receiverSocket.getInputStream(), receiverSocket.getOutputStream());
+            TransferHeader header = protocol.readHeader();
+            protocol.accept();
+            ReceiveFile file = ReceiveFile.open(directory, header.fileName, header.fileSize,
+                ReceiveFile.FsyncPolicy.NONE, 0, null);
+            try {
+                protocol.receive(file, receive, receive.track(null));
+                file.commit();
+            } catch (IOException e) {
+                file.abort(); // What receiveFileOverSocket does on the way out
+                throw e;
+            }
+            return null;
+        });
+        send(send, new PacedSource(data, 32 * 1024, 2), data.length);
+
+        // A parked sender stops writing, so the receiver blocks in read()
+        Thread.sleep(100);
+        assertTrue(send.pause());
+        awaitParked(send);
+        Thread.sleep(100);
+        assertEquals(1, directory.list().length);
+
+        long cancelledAt = System.nanoTime();
+        assertTrue(receive.cancel());
+        long stopMs = awaitFailure(receiver, cancelledAt);
+
+        assertTrue("stopped after " + stopMs + " ms", stopMs <= MAX_CANCEL_LATENCY_MS);
+        assertEquals(0, directory.list().length);
+        assertTrue(receiverSocket.isClosed());
+        send.cancel();
+    }
+
+    @Test
+    public void cancelWhilePausedWakesTheParkedLoop() throws Exception {
+        byte[] data = randomBytes(8 * 1024 * 1024);
+        TransferSession send = session(TransferSession.Direction.SEND, senderSocket);
+        receive(null, new ByteArrayOutputStream());
+        Future<?> sender = send(send, new PacedSource(data, 32 * 1024, 2), data.length);
+
+        Thread.sleep(100);
+        assertTrue(send.pause());
+        awaitParked(send);
+
+        long cancelledAt = System.nanoTime();
+        assertTrue(send.cancel());
+        long stopMs = awaitFailure(sender, cancelledAt);
+
+        assertTrue("stopped after " + stopMs + " ms", stopMs <= MAX_CANCEL_LATENCY_MS);
+        assertFalse(send.resume());
+        assertFalse(send.pause());
+    }
+
+    @Test
+    public void runningCheckpointDoesNotBlock() throws IOException {
+        TransferSession session = registry.create(TransferSession.Direction.SEND, null, null);
+        session.begin("clip.mp4", 1, "127.0.0.1");
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000000; i++) {
+            session.checkpoint(i);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertTrue("1M checkpoints took " + elapsedMs + " ms", elapsedMs < 500);
+    }
+
+    private TransferSession session(TransferSession.Direction direction, Socket socket) {
+        TransferSession session = registry.create(direction, null, null);
+        session.attach(socket);
+        return session;
+    }
+
+    /** sendFileOverSocket's side; {@code session} null for an ungated sender. */
+    private Future<?> send(TransferSession session, InputStream source, long size) {
+        return executor.submit((Callable<Void>) () -> {
+            TransferHeader header = new TransferHeader("clip.mp4", size,
+                Collections.singletonMap(TransferHeader.PROP_EXPECT_REPLY, "1"));
+            if (session != null) {
+                session.begin(header.fileName, size, "127.0.0.1");
+            }
+            TransferSender.send(header, source, senderSocket.getInputStream(), senderSocket.getOutputStream(),
+                session, session != null ? session.track(null) : null);
+            if (session != null) {
+                session.complete(null);
+            }
+            return null;
+        });
+    }
+
+    private void shortenReadTimeouts() throws IOException {
+        senderSocket.setSoTimeout(SHORT_READ_TIMEOUT_MS);
+        receiverSocket.setSoTimeout(SHORT_READ_TIMEOUT_MS);
+    }
+
+    /** What sendFileOverSocket offers: ACKs, a trailer and a framed body. */
+    private Future<TransferSender.Result> sendFramed(TransferSession session, InputStream source, byte[] data) {
+        return executor.submit(() -> {
+            Map<String, String> props = new HashMap<>();
+            props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+            props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+            props.put(TransferHeader.PROP_ACKS, "1");
+            props.put(TransferHeader.PROP_KEEPALIVE, "1");
+            TransferHeader header = new TransferHeader("clip.mp4", data.length, props);
+            if (session != null) {
+                session.begin(header.fileName, data.length, "127.0.0.1");
+            }
+            TransferSender.Result result = TransferSender.send(header, source, senderSocket.getInputStream(),
+                senderSocket.getOutputStream(), session, session != null ? session.track(null) : null);
+            if (session != null) {
+                session.complete(null);
+            }
+            return result;
+        });
+    }
+
+    private Future<TransferReceiver> receiveFramed(TransferSession session, ByteArrayOutputStream into) {
+        return executor.submit(() -> {
+            TransferReceiver receiver = new TransferReceiver(receiverSocket.getInputStream(), receiverSocket.getOutputStream());
+            TransferHeader header = receiver.readHeader();
+            if (session != null) {
+                session.begin(header.fileName, header.fileSize, "127.0.0.1");
+            }
+            receiver.accept();
+            assertTrue(receiver.isFramed());
+            receiver.receive(into::write, session, session != null ? session.track(null) : null);
+            receiver.confirm();
+            if (session != null) {
+                session.complete(null);
+            }
+            return receiver;
+        });
+    }
+
+    private Future<?> receive(TransferSession session, ByteArrayOutputStream into) {
+        return receive(session, into::write);
+    }
+
+    private Future<?> receive(TransferSession session, TransferPipeline.Sink sink) {
+        return executor.submit((Callable<Void>) () -> {
+            TransferReceiver receiver = new TransferReceiver(receiverSocket.getInputStream(), receiverSocket.getOutputStream());
+            TransferHeader header = receiver.readHeader();
+            if (session != null) {
+                session.begin(header.fileName, header.fileSize, "127.0.0.1");
+            }
+            receiver.accept();
+            receiver.receive(sink, session, session != null ? session.track(null) : null);
+            if (session != null) {
+                session.complete(null);
+            }
+            return null;
+        });
+    }
+
+    private static void awaitParked(TransferSession session) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (session.getParkedAtNanos() == 0) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("Loop never parked");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /** Milliseconds from {@code since} until {@code future} fails, as a cancelled transfer must. */
+    private static long awaitFailure(Future<?> future, long since) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Cancelled transfer finished normally");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+        return (System.nanoTime() - since) / 1000000;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A file that yields at most {@code chunk} bytes per read, {@code delayMs} apart. */
+    private static final class PacedSource extends InputStream {
+        final AtomicInteger reads = new AtomicInteger();
+        private final byte[] data;
+        private final int chunk;
+        private final long delayMs;
+        private int position;
+
+        PacedSource(byte[] data, int chunk, long delayMs) {
+            this.data = data;
+            this.chunk = chunk;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= data.length) {
+                return -1;
+            }
+            sleepQuietly(delayMs);
+            int n = Math.min(Math.min(length, chunk), data.length - position);
+            System.arraycopy(data, position, buffer, offset, n);
+            position += n;
+            reads.incrementAndGet();
+            return n;
+        }
+    }
+
+    private static final class CountingCompletion implements TransferSession.Completion {
+        final AtomicInteger rejected = new AtomicInteger();
+        volatile String lastCode;
+
+        @Override
+        public void resolve(Object result) {
+        }
+
+        @Override
+        public void reject(String code, String message) {
+            rejected.incrementAndGet();
+            lastCode = code;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Delta resends of synthetic edits: the rebuilt file must match the edit
+ * exactly, and the wire must carry little more than the bytes that changed.
+ */
+public class TransferDeltaTest {
+    private static final int MB = 1024 * 1024;
+    /** An edit can disturb the chunk it lands in and the one after; allow a few chunks of slack. */
+    private static final long SLACK = 4L * TransferDelta.MAX_CHUNK_BYTES;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private byte[] original;
+    private File base;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        executor = Executors.newSingleThreadExecutor();
+        original = randomBytes(24 * MB, 1);
+        base = folder.newFile("clip.mp4");
+        Files.write(base.toPath(), original);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        serverSocket.close();
+    }
+
+    @Test
+    public void trimmedIntroReusesTheRest() throws Exception {
+        byte[] edited = slice(original, 3 * MB, original.length);
+        assertSavings(edited, 0);
+    }
+
+    @Test
+    public void newEndCardSendsOnlyTheCard() throws Exception {
+        byte[] endCard = randomBytes(2 * MB, 2);
+        assertSavings(concat(original, endCard), endCard.length);
+    }
+
+    @Test
+    public void trimmedIntroAndNewEndCard() throws Exception {
+        byte[] endCard = randomBytes(2 * MB, 3);
+        assertSavings(concat(slice(original, 5 * MB + 1234, original.length - MB), endCard), endCard.length);
+    }
+
+    @Test
+    public void insertedScenesAndPatchedBytes() throws Exception {
+        // A new 1 MB scene in the middle, and a 100-byte retimed header near the start
+        byte[] scene = randomBytes(MB, 4);
+        byte[] edited = concat(concat(slice(original, 0, 10 * MB), scene), slice(original, 10 * MB, original.length));
+        for (int i = 0; i < 100; i++) {
+            edited[4096 + i] ^= (byte) 0x5A;
+        }
+        assertSavings(edited, scene.length + 100);
+    }
+
+    @Test
+    public void unrelatedBaseStillRebuildsTheFile() throws Exception {
+        byte[] other = randomBytes(4 * MB, 5);
+        TransferSender.Result result = sendAgainst(base, other, new ByteArrayOutputStream());
+        assertTrue(result.delta);
+        assertEquals(0, result.reusedBytes);
+        // Only the instruction headers are overhead
+        assertTrue("wire " + result.wireBytes, result.wireBytes < other.length + other.length / 1000);
+    }
+
+    @Test
+    public void withoutABaseThereIsNoDelta() throws Exception {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        TransferSender.Result result = sendAgainst(null, original, received);
+        assertFalse(result.delta);
+        // Nothing to build on, so the receiver takes the other offer
+        assertTrue(result.compressed);
+        assertArrayEquals(original, received.toByteArray());
+    }
+
+    @Test
+    public void baseTooSlowToChunkFallsBackToTheWholeFile() throws Exception {
+        byte[] edited = slice(original, 3 * MB, original.length);
+        assertNull(TransferDelta.chunk(base, -1));
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        TransferSender.Result result = sendAgainst(base, edited, received, -1);
+        assertFalse(result.delta);
+        assertEquals(0, result.reusedBytes);
+        assertArrayEquals(edited, received.toByteArray());
+    }
+
+    @Test
+    public void chunkBoundariesResynchronizeAfterAnInsert() throws IOException {
+        byte[] edited = concat(concat(slice(original, 0, 7 * MB), randomBytes(333, 6)), slice(original, 7 * MB, original.length));
+        File editedFile = folder.newFile("edited.mp4");
+        Files.write(editedFile.toPath(), edited);
+
+        List<TransferDelta.Chunk> before = TransferDelta.chunk(base);
+        List<TransferDelta.Chunk> after = TransferDelta.chunk(editedFile);
+        int shared = 0;
+        Map<Object, Boolean> hashes = new HashMap<>();
+        for (TransferDelta.Chunk chunk : before) {
+            hashes.put(chunk.hash, true);
+        }
+        for (TransferDelta.Chunk chunk : after) {
+            if (hashes.containsKey(chunk.hash)) {
+                shared++;
+            }
+            assertTrue(chunk.length <= TransferDelta.MAX_CHUNK_BYTES);
+        }
+        assertTrue("shared " + shared + " of " + before.size(), shared >= before.size() - 2);
+        assertTrue("average " + original.length / before.size(), original.length / before.size() < 128 * 1024);
+    }
+
+    @Test
+    public void badCopyIndexFailsTheReceive() throws IOException {
+        ByteArrayOutputStream instructions = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(instructions);
+        out.writeByte(TransferDelta.OP_COPY);
+        out.writeInt(1 << 30);
+        try (RandomAccessFile raf = new RandomAccessFile(base, "r")) {
+            TransferDelta.Reader reader = new TransferDelta.Reader(new ByteArrayInputStream(instructions.toByteArray()),
+                raf, TransferDelta.chunk(base));
+            reader.read(new byte[16], 0, 16);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // A COPY must name a chunk the receiver reported
+        }
+    }
+
+    @Test
+    public void findBasePicksTheNewestCopyOfTheName() throws IOException {
+        File directory = folder.newFolder("received");
+        assertNull(TransferDelta.findBase(directory, "clip.mp4"));
+        File first = new File(directory, "clip.mp4");
+        File second = new File(directory, "clip (1).mp4");
+        Files.write(first.toPath(), new byte[1]);
+        Files.write(second.toPath(), new byte[1]);
+        Files.write(new File(directory, "clip (old).mp4").toPath(), new byte[1]);
+        Files.write(new File(directory, "other.mp4").toPath(), new byte[1]);
+        assertTrue(first.setLastModified(1000000000000L));
+        assertTrue(second.setLastModified(1100000000000L));
+
+        assertEquals(second, TransferDelta.findBase(directory, "clip.mp4"));
+        assertEquals(second, TransferDelta.findBase(directory, "../clip.mp4"));
+        assertNull(TransferDelta.findBase(directory, "clip.mov"));
+    }
+
+    /** Resend {@code edited} against the original; at most {@code changed} new bytes plus chunk slack may cross. */
+    private void assertSavings(byte[] edited, long changed) throws Exception {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        TransferSender.Result result = sendAgainst(base, edited, received);
+
+        assertArrayEquals(edited, received.toByteArray());
+        assertTrue(result.delta);
+        assertTrue(result.checksummed);
+        assertTrue(result.acknowledged);
+        assertTrue("sent " + result.wireBytes + " of " + edited.length + " for " + changed + " changed",
+            result.wireBytes <= changed + SLACK);
+        assertTrue(result.reusedBytes >= edited.length - changed - SLACK);
+    }
+
+    private TransferSender.Result sendAgainst(File deltaBase, byte[] data, ByteArrayOutputStream received)
+            throws Exception {
+        return sendAgainst(deltaBase, data, received, TransferDelta.CHUNKING_BUDGET_MS);
+    }
+
+    private TransferSender.Result sendAgainst(File deltaBase, byte[] data, ByteArrayOutputStream received,
+            long chunkingBudgetMs) throws Exception {
+        Future<Long> server = executor.submit((Callable<Long>) () -> {
+            try (Socket socket = serverSocket.accept()) {
+                TransferReceiver receiver = new TransferReceiver(socket.getInputStream(), socket.getOutputStream());
+                receiver.setChunkingBudgetMs(chunkingBudgetMs);
+                receiver.readHeader();
+                receiver.accept(deltaBase);
+                receiver.receive(received::write, null);
+                receiver.confirm();
+                return receiver.getWireBytes();
+            }
+        });
+
+        Map<String, String> props = new HashMap<>();
+        props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        props.put(TransferHeader.PROP_ACKS, "1");
+        props.put(TransferHeader.PROP_DELTA, TransferHeader.DELTA_CDC_GEAR);
+        // Offered too, but a delta body is never compressed
+        props.put(TransferHeader.PROP_COMPRESSION, TransferHeader.COMPRESSION_DEFLATE);
+        TransferSender.Result result;
+        try (Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort())) {
+            result = TransferSender.send(new TransferHeader("clip.mp4", data.length, props),
+                new ByteArrayInputStream(data), socket.getInputStream(), socket.getOutputStream(), null);
+        }
+        assertEquals(result.wireBytes, (long) server.get());
+        if (result.delta) {
+            assertFalse(result.compressed);
+        }
+        return result;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] slice(byte[] data, int from, int to) {
+        byte[] slice = new byte[to - from];
+        System.arraycopy(data, from, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = new byte[a.length + b.length];
+        System.arraycopy(a, 0, joined, 0, a.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+}
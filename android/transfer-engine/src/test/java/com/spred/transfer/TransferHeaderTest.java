@@ -0,0 +1,70 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TransferHeaderTest {
+
+    @Test
+    public void legacyHeaderFromOldSenderIsRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF("clip.mp4");
+        out.writeLong(1234);
+
+        TransferHeader header = TransferHeader.read(in(bytes));
+        assertEquals("clip.mp4", header.fileName);
+        assertEquals(1234, header.fileSize);
+        assertFalse(header.isExtended());
+        assertFalse(header.expectsReply());
+    }
+
+    @Test
+    public void extendedHeaderRoundTrips() throws IOException {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put(TransferHeader.PROP_SESSION_TOKEN, "abc");
+        props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        TransferHeader sent = new TransferHeader("vidéo.mov", 5L * 1024 * 1024 * 1024, props);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sent.write(new DataOutputStream(bytes));
+        assertEquals(bytes.size(), sent.encodedLength());
+
+        TransferHeader header = TransferHeader.read(in(bytes));
+        assertEquals("vidéo.mov", header.fileName);
+        assertEquals(5L * 1024 * 1024 * 1024, header.fileSize);
+        assertTrue(header.isExtended());
+        assertTrue(header.expectsReply());
+        assertEquals("abc", header.get(TransferHeader.PROP_SESSION_TOKEN));
+        assertEquals(TransferHeader.CHECKSUM_CRC32, header.get(TransferHeader.PROP_CHECKSUM));
+    }
+
+    @Test
+    public void replyRoundTrips() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TransferReply.rejected("NO_SPACE", "Disk full").write(new DataOutputStream(bytes));
+
+        TransferReply reply = TransferReply.read(in(bytes));
+        assertEquals(TransferReply.STATUS_REJECTED, reply.status);
+        assertEquals("NO_SPACE", reply.get(TransferReply.PROP_ERROR_CODE));
+        assertEquals("Disk full", reply.get(TransferReply.PROP_MESSAGE));
+        assertNull(reply.get(TransferReply.PROP_CHECKSUM));
+    }
+
+    private static DataInputStream in(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,209 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Sender and receiver talking over a real loopback socket, as the two devices would. */
+public class TransferLoopbackTest {
+
+    private interface Server {
+        Object handle(TransferReceiver receiver, Socket socket) throws Exception;
+    }
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        serverSocket.close();
+    }
+
+    @Test
+    public void checksummedBodyArrivesIntact() throws Exception {
+        byte[] data = randomBytes(3 * 1024 * 1024 + 17);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<Object> server = serve((receiver, socket) -> {
+            receiver.readHeader();
+            receiver.accept();
+            receiver.receive(received::write, null);
+            return receiver.isChecksummed();
+        });
+
+        long[] lastProgress = new long[2];
+        TransferSender.Result result;
+        try (Socket socket = connect()) {
+            result = TransferSender.send(header(data.length, true), new ByteArrayInputStream(data),
+                socket.getInputStream(), socket.getOutputStream(), (done, total) -> {
+                    lastProgress[0] = done;
+                    lastProgress[1] = total;
+                });
+        }
+
+        assertEquals(TransferSender.Outcome.SENT, result.outcome);
+        assertTrue(result.checksummed);
+        assertEquals(data.length, result.body.bytes);
+        assertEquals(Boolean.TRUE, server.get());
+        assertArrayEquals(data, received.toByteArray());
+        assertEquals(data.length, lastProgress[0]);
+        assertEquals(data.length, lastProgress[1]);
+    }
+
+    @Test
+    public void receiverWithoutChecksumSupportGetsNoTrailer() throws Exception {
+        byte[] data = randomBytes(100 * 1024);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Future<Object> server = serve((receiver, socket) -> {
+            receiver.readHeader();
+            // An older receiver: a plain SEND reply that doesn't echo the checksum
+            receiver.reply(new TransferReply(TransferReply.STATUS_SEND));
+            TransferPipeline.receive(socket.getInputStream(), data.length, received::write, null, null);
+            return socket.getInputStream().read();
+        });
+
+        TransferSender.Result result;
+        try (Socket socket = connect()) {
+            result = TransferSender.send(header(data.length, true), new ByteArrayInputStream(data),
+                socket.getInputStream(), socket.getOutputStream(), null);
+            socket.shutdownOutput();
+            assertEquals(-1, server.get());
+        }
+
+        assertFalse(result.checksummed);
+        assertArrayEquals(data, received.toByteArray());
+    }
+
+    @Test
+    public void alreadyHaveAndRejectSkipTheBody() throws Exception {
+        Future<Object> server = serve((receiver, socket) -> {
+            receiver.readHeader();
+            receiver.reply(TransferReply.alreadyHave("clip (1).mp4"));
+            return null;
+        });
+        try (Socket socket = connect()) {
+            TransferSender.Result result = TransferSender.send(header(10, true), new ByteArrayInputStream(new byte[10]),
+                socket.getInputStream(), socket.getOutputStream(), null);
+            assertEquals(TransferSender.Outcome.ALREADY_HAVE, result.outcome);
+            assertEquals("clip (1).mp4", result.reply.get(TransferReply.PROP_EXISTING_NAME));
+            assertNull(result.body);
+        }
+        server.get();
+
+        server = serve((receiver, socket) -> {
+            receiver.readHeader();
+            receiver.reply(TransferReply.rejected("INVALID_TOKEN", "Unknown session"));
+            return null;
+        });
+        try (Socket socket = connect()) {
+            TransferSender.Result result = TransferSender.send(header(10, true), new ByteArrayInputStream(new byte[10]),
+                socket.getInputStream(), socket.getOutputStream(), null);
+            assertEquals(TransferSender.Outcome.REJECTED, result.outcome);
+            assertEquals("INVALID_TOKEN", result.reply.get(TransferReply.PROP_ERROR_CODE));
+        }
+        server.get();
+    }
+
+    @Test
+    public void corruptedBodyFailsTheChecksum() throws Exception {
+        byte[] data = randomBytes(512 * 1024);
+        Future<Object> server = serve((receiver, socket) -> {
+            receiver.readHeader();
+            receiver.accept();
+            try {
+                receiver.receive(new ByteArrayOutputStream()::write, null);
+                return "accepted";
+            } catch (TransferReceiver.ChecksumMismatchException e) {
+                return "mismatch";
+            }
+        });
+
+        try (Socket socket = connect()) {
+            // Flip one bit of the body after the sender has checksummed it
+            long target = header(data.length, true).encodedLength() + 1000;
+            OutputStream corrupting = new FilterOutputStream(socket.getOutputStream()) {
+                private long written;
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (target >= written && target < written + len) {
+                        b = b.clone();
+                        b[off + (int) (target - written)] ^= 1;
+                    }
+                    written += len;
+                    out.write(b, off, len);
+                }
+            };
+            TransferSender.send(header(data.length, true), new ByteArrayInputStream(data),
+                socket.getInputStream(), corrupting, null);
+        }
+        assertEquals("mismatch", server.get());
+    }
+
+    @Test
+    public void shortSourceFailsInsteadOfHanging() throws Exception {
+        try {
+            TransferPipeline.send(new ByteArrayInputStream(new byte[10]), 20, new ByteArrayOutputStream(), null, null);
+            fail("Expected EOFException");
+        } catch (EOFException expected) {
+            // Declared size is a contract; a short source must not look like success
+        }
+    }
+
+    private Future<Object> serve(Server handler) {
+        return executor.submit((Callable<Object>) () -> {
+            try (Socket socket = serverSocket.accept()) {
+                return handler.handle(new TransferReceiver(socket.getInputStream(), socket.getOutputStream()), socket);
+            }
+        });
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    private static TransferHeader header(long size, boolean offerChecksum) {
+        Map<String, String> props = new HashMap<>();
+        props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+        if (offerChecksum) {
+            props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+        }
+        return new TransferHeader("clip.mp4", size, props);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
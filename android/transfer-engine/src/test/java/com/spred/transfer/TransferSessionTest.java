@@ -0,0 +1,242 @@
+package com.spred.transfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Many sessions at once over loopback, each with its own server socket,
+ * connection and outcome, the way concurrent sendFile / receiveFile calls
+ * run in WifiDirectModule.
+ */
+public class TransferSessionTest {
+    private static final int SESSIONS = 24;
+
+    private TransferSessionRegistry registry;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        registry = new TransferSessionRegistry();
+        executor = Executors.newFixedThreadPool(SESSIONS * 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void manySimultaneousLoopbackSessionsStayIsolated() throws Exception {
+        CountingCompletion completion = new CountingCompletion();
+        CountDownLatch go = new CountDownLatch(1);
+        List<byte[]> payloads = new ArrayList<>();
+        List<ByteArrayOutputStream> received = new ArrayList<>();
+        List<TransferSession> receives = new ArrayList<>();
+        List<TransferSession> sends = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < SESSIONS; i++) {
+            byte[] data = randomBytes(i, 64 * 1024 + i * 4099);
+            ByteArrayOutputStream into = new ByteArrayOutputStream();
+            TransferSession receive = registry.create(TransferSession.Direction.RECEIVE, "/tmp/" + i, completion);
+            TransferSession send = registry.create(TransferSession.Direction.SEND, null, completion);
+            ServerSocket server = receive.attach(TransferSockets.bindReceiveServer(0));
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            payloads.add(data);
+            received.add(into);
+            receives.add(receive);
+            sends.add(send);
+
+            futures.add(executor.submit((Callable<Void>) () -> {
+                Socket socket = receive.attach(TransferSockets.acceptOnce(server));
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                receiveInto(receive, socket, into);
+                return null;
+            }));
+            futures.add(executor.submit((Callable<Void>) () -> {
+                go.await();
+                Socket socket = send.attach(TransferSockets.connect(address));
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                sendFrom(send, socket, data);
+                return null;
+            }));
+        }
+        assertEquals(SESSIONS * 2, registry.getActiveCount());
+
+        go.countDown();
+        for (Future<?> future : futures) {
+            future.get(20, TimeUnit.SECONDS);
+        }
+
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            TransferSession receive = receives.get(i);
+            TransferSession send = sends.get(i);
+            assertEquals(TransferSession.State.COMPLETED, receive.getState());
+            assertEquals(TransferSession.State.COMPLETED, send.getState());
+            assertArrayEquals("session " + i, payloads.get(i), received.get(i).toByteArray());
+            assertEquals(payloads.get(i).length, receive.getBytesDone());
+            assertEquals(payloads.get(i).length, send.getBytesDone());
+            assertEquals("/tmp/" + i, receive.destination);
+            ids.add(receive.id);
+            ids.add(send.id);
+        }
+        assertEquals(SESSIONS * 2, ids.size());
+        assertEquals(SESSIONS * 2, completion.resolved.get());
+        assertEquals(0, completion.rejected.get());
+        assertEquals(0, registry.getActiveCount());
+        assertEquals(SESSIONS * 2, registry.getCompletedCount());
+        assertEquals(TransferSessionRegistry.FINISHED_HISTORY, registry.getAll().size());
+        for (Socket socket : sockets) {
+            assertTrue("finished sessions close their sockets", socket.isClosed());
+        }
+    }
+
+    @Test
+    public void outcomeSettlesOnce() {
+        CountingCompletion completion = new CountingCompletion();
+        TransferSession session = registry.create(TransferSession.Direction.SEND, null, completion);
+
+        assertTrue(session.complete("done"));
+        assertFalse(session.fail("SOCKET_TRANSFER_FAILED", "late timeout"));
+        assertFalse(session.complete("again"));
+
+        assertEquals(TransferSession.State.COMPLETED, session.getState());
+        assertEquals(1, completion.resolved.get());
+        assertEquals(0, completion.rejected.get());
+        assertNull(session.getErrorCode());
+    }
+
+    @Test
+    public void socketAttachedAfterFailureIsClosedAtOnce() throws IOException {
+        TransferSession session = registry.create(TransferSession.Direction.RECEIVE, "/tmp", null);
+        ServerSocket server = session.attach(TransferSockets.bindReceiveServer(0));
+        session.fail("RECEIVE_SERVER_FAILED", "gave up");
+        assertTrue(server.isClosed());
+
+        ServerSocket late = session.attach(TransferSockets.bindReceiveServer(0));
+        assertTrue(late.isClosed());
+        assertEquals("RECEIVE_SERVER_FAILED", session.getErrorCode());
+    }
+
+    @Test
+    public void finishedHistoryIsBounded() {
+        List<TransferSession> all = new ArrayList<>();
+        for (int i = 0; i < TransferSessionRegistry.FINISHED_HISTORY + 5; i++) {
+            TransferSession session = registry.create(TransferSession.Direction.SEND, null, null);
+            session.complete(null);
+            all.add(session);
+        }
+        TransferSession running = registry.create(TransferSession.Direction.RECEIVE, "/tmp", null);
+
+        assertNull(registry.get(all.get(0).id));
+        assertSame(all.get(all.size() - 1), registry.get(all.get(all.size() - 1).id));
+        assertEquals(TransferSessionRegistry.FINISHED_HISTORY + 1, registry.getAll().size());
+        assertEquals(1, registry.getActive().size());
+        assertSame(running, registry.getActive().get(0));
+    }
+
+    @Test
+    public void failAllClosesRunningSessions() throws IOException {
+        TransferSession done = registry.create(TransferSession.Direction.SEND, null, null);
+        done.complete(null);
+        TransferSession waiting = registry.create(TransferSession.Direction.RECEIVE, "/tmp", null);
+        ServerSocket server = waiting.attach(TransferSockets.bindReceiveServer(0));
+
+        assertEquals(1, registry.failAll("MODULE_INVALIDATED", "torn down"));
+        assertTrue(server.isClosed());
+        assertEquals(TransferSession.State.COMPLETED, done.getState());
+        assertEquals(TransferSession.State.FAILED, waiting.getState());
+    }
+
+    /** startReceiveServer's side, reporting into a session. */
+    private static void receiveInto(TransferSession session, Socket socket, ByteArrayOutputStream into) {
+        try {
+            TransferReceiver receiver = new TransferReceiver(socket.getInputStream(), socket.getOutputStream());
+            TransferHeader header = receiver.readHeader();
+            session.begin(header.fileName, header.fileSize, socket.getInetAddress().getHostAddress());
+            receiver.accept();
+            receiver.receive(into::write, session.track(null));
+            session.complete(into.size());
+        } catch (IOException e) {
+            session.fail("SOCKET_RECEIVE_FAILED", e.getMessage());
+        }
+    }
+
+    /** sendFileOverSocket's side. */
+    private static void sendFrom(TransferSession session, Socket socket, byte[] data) {
+        try {
+            Map<String, String> props = new HashMap<>();
+            props.put(TransferHeader.PROP_EXPECT_REPLY, "1");
+            props.put(TransferHeader.PROP_CHECKSUM, TransferHeader.CHECKSUM_CRC32);
+            TransferHeader header = new TransferHeader(session.id + ".mp4", data.length, props);
+            session.begin(header.fileName, header.fileSize, socket.getInetAddress().getHostAddress());
+            TransferSender.send(header, new ByteArrayInputStream(data), socket.getInputStream(),
+                socket.getOutputStream(), session.track(null));
+            // The receiver's session closes its socket when it finishes; wait for that before ours
+            socket.shutdownOutput();
+            while (socket.getInputStream().read() >= 0) {
+                // Drain
+            }
+            session.complete(data.length);
+        } catch (IOException e) {
+            session.fail("SOCKET_TRANSFER_FAILED", e.getMessage());
+        }
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static final class CountingCompletion implements TransferSession.Completion {
+        final AtomicInteger resolved = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+
+        @Override
+        public void resolve(Object result) {
+            resolved.incrementAndGet();
+        }
+
+        @Override
+        public void reject(String code, String message) {
+            rejected.incrementAndGet();
+        }
+    }
+}
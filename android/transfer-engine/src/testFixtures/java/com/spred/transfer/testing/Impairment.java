@@ -0,0 +1,182 @@
+package com.spred.transfer.testing;
+
+import java.util.Random;
+
+/**
+ * Impairment - Live conditions for one direction of a proxied link.
+ *
+ * Every setter takes effect on the next chunk or datagram, so a test (or an
+ * ImpairmentScript) can change the link mid-transfer. Jitter and loss draw
+ * from a seeded Random, so a run with the same seed and traffic makes the
+ * same decisions.
+ *
+ * Loss follows a two-state Gilbert-Elliott model: in the good state each
+ * datagram is dropped with the base loss rate; in the bad state every one
+ * is, which gives the bursty losses real Wi-Fi shows. Loss only applies to
+ * UDP; TCP traffic sees a stall (freeze) instead, which is how loss
+ * appears to an application reading a TCP socket.
+ */
+public final class Impairment {
+    private final Random random;
+
+    private long delayMs;
+    private long jitterMs;
+    private long bytesPerSecond;
+    private double lossRate;
+    private double enterBurstRate;
+    private double leaveBurstRate = 1;
+    private boolean inBurst;
+
+    /** System.nanoTime() after which a freeze ends; frozenForever wins over it. */
+    private long frozenUntilNanos = System.nanoTime();
+    private boolean frozenForever;
+
+    private long nextFreeNanos = System.nanoTime();
+    private long lastReleaseNanos = System.nanoTime();
+
+    // Counters
+    private long dropped;
+    private long freezes;
+
+    public Impairment() {
+        this(1);
+    }
+
+    public Impairment(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static Impairment of(ShapingProxy.LinkShape shape) {
+        return new Impairment().setDelayMs(shape.delayMs).setBytesPerSecond(shape.bytesPerSecond);
+    }
+
+    public synchronized Impairment setDelayMs(long delayMs) {
+        this.delayMs = delayMs;
+        return this;
+    }
+
+    /** Each chunk gets an extra delay drawn uniformly from 0..jitterMs. */
+    public synchronized Impairment setJitterMs(long jitterMs) {
+        this.jitterMs = jitterMs;
+        return this;
+    }
+
+    /** 0 means unlimited. */
+    public synchronized Impairment setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    public synchronized Impairment setMbps(double mbps) {
+        return setBytesPerSecond((long) (mbps * 1000 * 1000 / 8));
+    }
+
+    /** Independent loss: each UDP datagram is dropped with probability {@code lossRate}. */
+    public synchronized Impairment setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+        return this;
+    }
+
+    /**
+     * Bursty loss on top of the base rate: each datagram starts a burst with
+     * probability {@code enterBurstRate}, and a burst ends with probability
+     * {@code leaveBurstRate} per datagram (mean burst length 1 / leaveBurstRate).
+     */
+    public synchronized Impairment setBurstLoss(double enterBurstRate, double leaveBurstRate) {
+        this.enterBurstRate = enterBurstRate;
+        this.leaveBurstRate = leaveBurstRate;
+        return this;
+    }
+
+    /** Stop all traffic in this direction for {@code ms}; data queues up behind the freeze. */
+    public synchronized void freeze(long ms) {
+        long until = System.nanoTime() + ms * 1000000L;
+        if (!isFrozen() || until - frozenUntilNanos > 0) {
+            frozenUntilNanos = until;
+        }
+        freezes++;
+        notifyAll();
+    }
+
+    /** Stop all traffic until {@link #thaw()}. */
+    public synchronized void freeze() {
+        frozenForever = true;
+        freezes++;
+        notifyAll();
+    }
+
+    public synchronized void thaw() {
+        frozenForever = false;
+        frozenUntilNanos = System.nanoTime();
+        notifyAll();
+    }
+
+    public synchronized boolean isFrozen() {
+        return frozenForever || frozenUntilNanos - System.nanoTime() > 0;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    public synchronized long getFreezeCount() {
+        return freezes;
+    }
+
+    /** Block while the direction is frozen. */
+    synchronized void awaitThawed() throws InterruptedException {
+        while (true) {
+            if (frozenForever) {
+                wait();
+                continue;
+            }
+            long remainingNanos = frozenUntilNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return;
+            }
+            wait(Math.max(1, remainingNanos / 1000000L));
+        }
+    }
+
+    /**
+     * When a chunk arriving now may leave. {@code inOrder} keeps release
+     * times monotonic, as TCP delivers; UDP datagrams may overtake.
+     */
+    synchronized long releaseAtNanos(boolean inOrder) {
+        long now = System.nanoTime();
+        long jitter = jitterMs > 0 ? (long) (random.nextDouble() * jitterMs * 1000000L) : 0;
+        long release = now + delayMs * 1000000L + jitter;
+        if (inOrder && release - lastReleaseNanos < 0) {
+            release = lastReleaseNanos;
+        }
+        lastReleaseNanos = release;
+        return release;
+    }
+
+    /** When {@code bytes} put on the link now will have finished crossing it. */
+    synchronized long reserve(int bytes) {
+        long now = System.nanoTime();
+        if (bytesPerSecond <= 0) {
+            return now;
+        }
+        if (nextFreeNanos - now < 0) {
+            nextFreeNanos = now; // Link went idle
+        }
+        nextFreeNanos += bytes * 1000000000L / bytesPerSecond;
+        return nextFreeNanos;
+    }
+
+    /** Whether the next datagram is lost; advances the burst state. */
+    synchronized boolean dropNext() {
+        if (inBurst) {
+            inBurst = random.nextDouble() >= leaveBurstRate;
+        } else if (enterBurstRate > 0) {
+            inBurst = random.nextDouble() < enterBurstRate;
+        }
+        boolean drop = inBurst || (lossRate > 0 && random.nextDouble() < lossRate);
+        if (drop) {
+            dropped++;
+        }
+        return drop;
+    }
+}
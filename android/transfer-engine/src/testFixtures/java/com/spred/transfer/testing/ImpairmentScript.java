@@ -0,0 +1,101 @@
+package com.spred.transfer.testing;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImpairmentScript - A timeline of link changes to run alongside a test.
+ *
+ * <pre>
+ * ImpairmentScript script = new ImpairmentScript()
+ *     .at(0, () -> proxy.getUpstream().setDelayMs(15).setJitterMs(10))
+ *     .at(300, () -> proxy.freeze(2000))
+ *     .at(2500, proxy::severConnections)
+ *     .start();
+ * </pre>
+ *
+ * Offsets are milliseconds from start(). Steps run in offset order on one
+ * daemon thread; steps with the same offset keep the order they were
+ * added in.
+ */
+public final class ImpairmentScript implements Closeable {
+
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    private static final class Entry {
+        final long offsetMs;
+        final int order;
+        final Step step;
+
+        Entry(long offsetMs, int order, Step step) {
+            this.offsetMs = offsetMs;
+            this.order = order;
+            this.step = step;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Thread runner;
+    private volatile Throwable failure;
+
+    public ImpairmentScript at(long offsetMs, Step step) {
+        if (runner != null) {
+            throw new IllegalStateException("Script already started");
+        }
+        entries.add(new Entry(offsetMs, entries.size(), step));
+        return this;
+    }
+
+    public ImpairmentScript start() {
+        final List<Entry> timeline = new ArrayList<>(entries);
+        Collections.sort(timeline, (a, b) -> a.offsetMs != b.offsetMs
+            ? Long.compare(a.offsetMs, b.offsetMs)
+            : Integer.compare(a.order, b.order));
+        final long startNanos = System.nanoTime();
+        runner = new Thread(() -> {
+            try {
+                for (Entry entry : timeline) {
+                    ShapingProxy.sleepUntil(startNanos + entry.offsetMs * 1000000L);
+                    entry.step.run();
+                }
+            } catch (InterruptedException e) {
+                // Cancelled
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                done.countDown();
+            }
+        }, "ImpairmentScript");
+        runner.setDaemon(true);
+        runner.start();
+        return this;
+    }
+
+    /**
+     * Wait for every step to run. Returns false on timeout, and rethrows
+     * the first step that failed so the test sees it.
+     */
+    public boolean await(long timeoutMs) throws InterruptedException {
+        boolean finished = done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        if (failure != null) {
+            throw new IllegalStateException("Impairment step failed", failure);
+        }
+        return finished;
+    }
+
+    /** Stop before the remaining steps run. */
+    @Override
+    public void close() {
+        Thread thread = runner;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.spred.transfer.testing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ShapingProxy - Loopback TCP proxy that makes a local socket behave like a
+ * slower link.
+ *
+ * Each direction is an {@link Impairment}: delay, jitter, a bandwidth cap
+ * and freezes, all changeable while traffic flows. The cap is shared by
+ * every connection through the proxy, the way parallel streams share one
+ * Wi-Fi Direct radio. Data is delayed in flight rather than per write, so a
+ * sender with enough data outstanding still fills the link, the way it does
+ * on a real network. Each direction buffers at most
+ * {@link LinkShape#queueBytes} before back-pressure reaches the sender
+ * through TCP, so a freeze stalls the sender the way a radio stall does.
+ */
+public final class ShapingProxy implements Closeable {
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    /** Delay and rate for one direction of the link. */
+    public static final class LinkShape {
+        public static final LinkShape UNSHAPED = new LinkShape(0, 0);
+
+        public final long delayMs;
+        /** Bytes per second; 0 means unlimited. */
+        public final long bytesPerSecond;
+        public final int queueBytes;
+
+        public LinkShape(long delayMs, long bytesPerSecond) {
+            this(delayMs, bytesPerSecond, 4 * 1024 * 1024);
+        }
+
+        public LinkShape(long delayMs, long bytesPerSecond, int queueBytes) {
+            this.delayMs = delayMs;
+            this.bytesPerSecond = bytesPerSecond;
+            this.queueBytes = queueBytes;
+        }
+
+        /** {@code rttMs} split evenly across both directions, {@code mbps} in megabits per second. */
+        public static LinkShape of(long rttMs, double mbps) {
+            return new LinkShape(rttMs / 2, (long) (mbps * 1000 * 1000 / 8));
+        }
+
+        @Override
+        public String toString() {
+            return delayMs + "ms/" + (bytesPerSecond == 0 ? "unlimited" : bytesPerSecond * 8 / 1000 / 1000 + "Mbps");
+        }
+    }
+
+    private final InetSocketAddress target;
+    private final Impairment upstream;
+    private final Impairment downstream;
+    private final int queueBytes;
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new ArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong bytesUp = new AtomicLong();
+    private final AtomicLong bytesDown = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Forward connections on an ephemeral loopback port to {@code target}.
+     * {@code upstream} shapes client-to-target bytes, {@code downstream} the replies.
+     */
+    public ShapingProxy(InetSocketAddress target, LinkShape upstream, LinkShape downstream) throws IOException {
+        this(target, Impairment.of(upstream), Impairment.of(downstream), Math.min(upstream.queueBytes, downstream.queueBytes));
+    }
+
+    public ShapingProxy(InetSocketAddress target, LinkShape shape) throws IOException {
+        this(target, shape, shape);
+    }
+
+    /** A proxy whose conditions the caller drives through the two impairments. */
+    public ShapingProxy(InetSocketAddress target, Impairment upstream, Impairment downstream) throws IOException {
+        this(target, upstream, downstream, LinkShape.UNSHAPED.queueBytes);
+    }
+
+    private ShapingProxy(InetSocketAddress target, Impairment upstream, Impairment downstream, int queueBytes) throws IOException {
+        this.target = target;
+        this.upstream = upstream;
+        this.downstream = downstream;
+        this.queueBytes = queueBytes;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "ShapingProxy-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Where clients should connect instead of {@code target}. */
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    /** Client-to-target conditions. */
+    public Impairment getUpstream() {
+        return upstream;
+    }
+
+    /** Target-to-client conditions. */
+    public Impairment getDownstream() {
+        return downstream;
+    }
+
+    /** Stall both directions for {@code ms}, like a radio dropping out and coming back. */
+    public void freeze(long ms) {
+        upstream.freeze(ms);
+        downstream.freeze(ms);
+    }
+
+    /** Stall both directions until {@link #thaw()}. */
+    public void freeze() {
+        upstream.freeze();
+        downstream.freeze();
+    }
+
+    public void thaw() {
+        upstream.thaw();
+        downstream.thaw();
+    }
+
+    /** Reset every open connection, like the group being torn down; new connections are still accepted. */
+    public void severConnections() {
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                try {
+                    socket.setSoLinger(true, 0);
+                } catch (IOException ignored) {
+                    // Closing anyway
+                }
+                closeQuietly(socket);
+            }
+            sockets.clear();
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    public long getBytesUp() {
+        return bytesUp.get();
+    }
+
+    public long getBytesDown() {
+        return bytesDown.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverSocket);
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+            sockets.clear();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket client = serverSocket.accept();
+                Socket server = new Socket();
+                server.connect(target);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                synchronized (sockets) {
+                    if (closed) {
+                        closeQuietly(client);
+                        closeQuietly(server);
+                        return;
+                    }
+                    sockets.add(client);
+                    sockets.add(server);
+                }
+                int id = connections.incrementAndGet();
+                pipe(client, server, upstream, bytesUp, "ShapingProxy-" + id + "-up");
+                pipe(server, client, downstream, bytesDown, "ShapingProxy-" + id + "-down");
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("ShapingProxy: accept failed: " + e);
+                }
+            }
+        }
+    }
+
+    private void pipe(Socket from, Socket to, Impairment impairment, AtomicLong counter, String name) throws IOException {
+        Thread thread = new Thread(new ShapedDirection(from.getInputStream(), to.getOutputStream(), from, to,
+            impairment, queueBytes, counter, name), name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Reader side stamps chunks with their arrival time; the writer releases them after the delay at the paced rate. */
+    private static final class ShapedDirection implements Runnable {
+        private final InputStream in;
+        private final OutputStream out;
+        private final Socket from;
+        private final Socket to;
+        private final Impairment impairment;
+        private final int queueLimit;
+        private final AtomicLong counter;
+        private final String name;
+        private final ArrayDeque<Chunk> queue = new ArrayDeque<>();
+        private int queuedBytes;
+        private boolean ended;
+
+        ShapedDirection(InputStream in, OutputStream out, Socket from, Socket to, Impairment impairment, int queueLimit,
+                        AtomicLong counter, String name) {
+            this.in = in;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.impairment = impairment;
+            this.queueLimit = queueLimit;
+            this.counter = counter;
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            Thread writer = new Thread(this::writeLoop, name + "-write");
+            writer.setDaemon(true);
+            writer.start();
+            try {
+                while (true) {
+                    byte[] buffer = new byte[CHUNK_BYTES];
+                    int n = in.read(buffer);
+                    if (n == -1) {
+                        break;
+                    }
+                    offer(new Chunk(buffer, n, impairment.releaseAtNanos(true)));
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // Either side closing ends the direction
+            }
+            synchronized (queue) {
+                ended = true;
+                queue.notifyAll();
+            }
+        }
+
+        private void offer(Chunk chunk) throws InterruptedException {
+            synchronized (queue) {
+                while (queuedBytes > 0 && queuedBytes + chunk.length > queueLimit) {
+                    queue.wait();
+                }
+                queue.add(chunk);
+                queuedBytes += chunk.length;
+                queue.notifyAll();
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                while (true) {
+                    Chunk chunk;
+                    synchronized (queue) {
+                        while (queue.isEmpty() && !ended) {
+                            queue.wait();
+                        }
+                        if (queue.isEmpty()) {
+                            break;
+                        }
+                        chunk = queue.poll();
+                    }
+                    sleepUntil(chunk.releaseAtNanos);
+                    impairment.awaitThawed();
+                    sleepUntil(impairment.reserve(chunk.length));
+                    out.write(chunk.bytes, 0, chunk.length);
+                    counter.addAndGet(chunk.length);
+                    synchronized (queue) {
+                        queuedBytes -= chunk.length;
+                        queue.notifyAll();
+                    }
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // Either side closing ends the direction
+            }
+            halfClose(from, to);
+        }
+    }
+
+    private static final class Chunk {
+        final byte[] bytes;
+        final int length;
+        final long releaseAtNanos;
+
+        Chunk(byte[] bytes, int length, long releaseAtNanos) {
+            this.bytes = bytes;
+            this.length = length;
+            this.releaseAtNanos = releaseAtNanos;
+        }
+    }
+
+    static void sleepUntil(long deadlineNanos) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static void halfClose(Socket from, Socket to) {
+        try {
+            to.shutdownOutput();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+        try {
+            from.shutdownInput();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Best effort
+        }
+    }
+}
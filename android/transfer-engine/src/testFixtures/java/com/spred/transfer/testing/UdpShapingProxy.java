@@ -0,0 +1,186 @@
+package com.spred.transfer.testing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UdpShapingProxy - Loopback UDP relay with the same impairments as
+ * ShapingProxy, plus loss.
+ *
+ * Clients send to {@link #getAddress()}. Each client address gets its own
+ * relay socket towards the target, so replies find their way back. Every
+ * datagram is first checked against the direction's loss model, then
+ * delayed (jitter can reorder datagrams, as on a real network), paced to
+ * the bandwidth cap, and held while the direction is frozen.
+ */
+public final class UdpShapingProxy implements Closeable {
+    private static final int MAX_DATAGRAM_BYTES = 64 * 1024;
+
+    private final InetSocketAddress target;
+    private final Impairment upstream;
+    private final Impairment downstream;
+    private final DatagramSocket front;
+    private final Map<SocketAddress, DatagramSocket> relays = new HashMap<>();
+    private final DelayQueue<Pending> upstreamQueue = new DelayQueue<>();
+    private final DelayQueue<Pending> downstreamQueue = new DelayQueue<>();
+    private final AtomicLong delivered = new AtomicLong();
+    private volatile boolean closed;
+
+    public UdpShapingProxy(InetSocketAddress target, Impairment upstream, Impairment downstream) throws IOException {
+        this.target = target;
+        this.upstream = upstream;
+        this.downstream = downstream;
+        this.front = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        start(this::frontLoop, "UdpShapingProxy-front");
+        start(() -> deliverLoop(upstreamQueue, upstream), "UdpShapingProxy-up");
+        start(() -> deliverLoop(downstreamQueue, downstream), "UdpShapingProxy-down");
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(front.getLocalAddress(), front.getLocalPort());
+    }
+
+    public Impairment getUpstream() {
+        return upstream;
+    }
+
+    public Impairment getDownstream() {
+        return downstream;
+    }
+
+    /** Datagrams that made it through in either direction. */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        front.close();
+        synchronized (relays) {
+            for (DatagramSocket relay : relays.values()) {
+                relay.close();
+            }
+            relays.clear();
+        }
+        // Wake the delivery threads so they see closed
+        upstreamQueue.add(new Pending(null, null, null, System.nanoTime()));
+        downstreamQueue.add(new Pending(null, null, null, System.nanoTime()));
+    }
+
+    private void frontLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM_BYTES];
+        while (!closed) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                front.receive(packet);
+                DatagramSocket relay = relayFor(packet.getSocketAddress());
+                admit(upstreamQueue, upstream, relay, target, packet);
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("UdpShapingProxy: " + e);
+                }
+            }
+        }
+    }
+
+    private DatagramSocket relayFor(SocketAddress client) throws IOException {
+        synchronized (relays) {
+            DatagramSocket relay = relays.get(client);
+            if (relay == null) {
+                DatagramSocket created = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+                relays.put(client, created);
+                start(() -> replyLoop(created, client), "UdpShapingProxy-relay-" + created.getLocalPort());
+                relay = created;
+            }
+            return relay;
+        }
+    }
+
+    private void replyLoop(DatagramSocket relay, SocketAddress client) {
+        byte[] buffer = new byte[MAX_DATAGRAM_BYTES];
+        while (!closed) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                relay.receive(packet);
+                admit(downstreamQueue, downstream, front, client, packet);
+            } catch (IOException e) {
+                return; // Relay closed
+            }
+        }
+    }
+
+    private static void admit(DelayQueue<Pending> queue, Impairment impairment, DatagramSocket via,
+                              SocketAddress to, DatagramPacket packet) {
+        if (impairment.dropNext()) {
+            return;
+        }
+        byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+        long release = impairment.releaseAtNanos(false);
+        long paced = impairment.reserve(data.length);
+        queue.add(new Pending(via, to, data, paced - release > 0 ? paced : release));
+    }
+
+    private void deliverLoop(DelayQueue<Pending> queue, Impairment impairment) {
+        while (!closed) {
+            try {
+                Pending pending = queue.take();
+                if (closed) {
+                    return;
+                }
+                impairment.awaitThawed();
+                pending.via.send(new DatagramPacket(pending.data, pending.data.length, pending.to));
+                delivered.incrementAndGet();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("UdpShapingProxy: send failed: " + e);
+                }
+            }
+        }
+    }
+
+    private static void start(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static final class Pending implements Delayed {
+        final DatagramSocket via;
+        final SocketAddress to;
+        final byte[] data;
+        final long releaseAtNanos;
+
+        Pending(DatagramSocket via, SocketAddress to, byte[] data, long releaseAtNanos) {
+            this.via = via;
+            this.to = to;
+            this.data = data;
+            this.releaseAtNanos = releaseAtNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(releaseAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            long diff = releaseAtNanos - ((Pending) other).releaseAtNanos;
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+    }
+}